@@ -0,0 +1,73 @@
+package com.example.diary.benchmarks;
+
+import com.example.diary.model.Trade;
+import com.example.diary.repository.projection.ClosedTradeRow;
+import com.example.diary.service.StatisticsAccumulator;
+import com.example.diary.service.TradeAnalyticsService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Свертки аналитики (/trades/analytics/summary, monthly, symbols) и статистики (/trades/statistics)
+ * по уже загруженным строкам - без БД, только стоимость самого прохода.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class AnalyticsFoldBenchmark {
+
+    private static final LocalDate MONTHLY_START = LocalDate.of(2020, 1, 1);
+    private static final LocalDate MONTHLY_END = LocalDate.of(2026, 6, 30);
+    private static final LocalDate TODAY = LocalDate.of(2026, 7, 1);
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private List<Trade> trades;
+    private List<ClosedTradeRow> closedRows;
+    private long openTrades;
+    private Map<String, Integer> symbolCount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trades = TradeDatasets.trades(size);
+        closedRows = TradeDatasets.closedRows(trades);
+        openTrades = trades.size() - closedRows.size();
+        symbolCount = new HashMap<>();
+        for (Trade trade : trades) {
+            symbolCount.merge(trade.getSymbol(), 1, Integer::sum);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> summary() {
+        return TradeAnalyticsService.summarize(closedRows.iterator(), openTrades);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> monthly() {
+        return TradeAnalyticsService.foldMonthly(closedRows.iterator(), MONTHLY_START, MONTHLY_END);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> symbols() {
+        return TradeAnalyticsService.foldSymbols(closedRows.iterator(), symbolCount);
+    }
+
+    @Benchmark
+    public Map<String, Object> statistics() {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator(TODAY);
+        for (Trade trade : trades) {
+            accumulator.accept(trade);
+        }
+        return accumulator.toResponse();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.diary.benchmarks;
+
+import com.example.diary.importer.CsvTradeRowReader;
+import com.example.diary.importer.JsonTradeRowReader;
+import com.example.diary.importer.TradeImportRow;
+import com.example.diary.importer.TradeImportValidator;
+import com.example.diary.importer.TradeRowReader;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор тела массового импорта: чтение строк из JSON и CSV, преобразование в {@code Trade}
+ * и проверка ограничений - все, что делает импорт до записи в БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class ImportParsingBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final TradeImportValidator validator = new TradeImportValidator();
+    private byte[] json;
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var trades = TradeDatasets.trades(size);
+        json = TradeDatasets.importJson(trades);
+        csv = TradeDatasets.importCsv(trades);
+    }
+
+    @Benchmark
+    public int parseJson(Blackhole blackhole) throws IOException {
+        return read(new JsonTradeRowReader(jsonFactory, new ByteArrayInputStream(json)), blackhole, false);
+    }
+
+    @Benchmark
+    public int parseCsv(Blackhole blackhole) throws IOException {
+        return read(new CsvTradeRowReader(new ByteArrayInputStream(csv)), blackhole, false);
+    }
+
+    @Benchmark
+    public int parseAndValidateJson(Blackhole blackhole) throws IOException {
+        return read(new JsonTradeRowReader(jsonFactory, new ByteArrayInputStream(json)), blackhole, true);
+    }
+
+    private int read(TradeRowReader reader, Blackhole blackhole, boolean validate) throws IOException {
+        TradeImportRow row = new TradeImportRow();
+        int rows = 0;
+        try (reader) {
+            while (reader.next(row)) {
+                blackhole.consume(validate ? validator.validate(row) : row.toTrade());
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.diary.benchmarks;
+
+import com.example.diary.model.Trade;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прибыль закрытых сделок: прежняя цепочка геттеров на double с округлением на каждом шаге и
+ * упаковкой в Double ({@link #legacyProfit}) против расчета в копейках - через геттер
+ * {@link Trade#getProfit()} и без упаковки через {@link Trade#profitCents()}.
+ * Один вызов операции - проход по всему набору сделок; байты на операцию выводит профилировщик gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class MoneyBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private List<Trade> trades;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trades = TradeDatasets.trades(size);
+    }
+
+    @Benchmark
+    public double legacyDoubleGetters() {
+        double total = 0.0;
+        for (Trade trade : trades) {
+            Double profit = legacyProfit(trade);
+            if (profit != null) {
+                total += profit;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double boxedGetter() {
+        double total = 0.0;
+        for (Trade trade : trades) {
+            Double profit = trade.getProfit();
+            if (profit != null) {
+                total += profit;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long cents() {
+        long total = 0L;
+        for (Trade trade : trades) {
+            if (trade.getExitDate() != null && trade.getExitPrice() != null) {
+                total += trade.profitCents();
+            }
+        }
+        return total;
+    }
+
+    // Геттеры Trade до перехода на копейки: каждый пересчитывает предыдущий и округляет double
+
+    private static Double legacyTotalCost(Trade trade) {
+        if (trade.getEntryPrice() == null || trade.getQuantity() == null) return null;
+        return round2(trade.getEntryPrice().doubleValue() * trade.getQuantity());
+    }
+
+    private static Double legacyDailyInterest(Trade trade) {
+        Double totalCost = legacyTotalCost(trade);
+        if (totalCost == null || trade.getMarginAmount() == null) return null;
+        return round2(totalCost * trade.getMarginAmount().doubleValue() / 100.0 / 365.0);
+    }
+
+    private static Double legacyTotalInterest(Trade trade) {
+        Double daily = legacyDailyInterest(trade);
+        if (daily == null || trade.getEntryDate() == null || trade.getExitDate() == null) return null;
+        return round2(daily * ChronoUnit.DAYS.between(trade.getEntryDate(), trade.getExitDate()));
+    }
+
+    private static Double legacyProfit(Trade trade) {
+        Double totalInterest = legacyTotalInterest(trade);
+        if (trade.getExitPrice() == null || trade.getQuantity() == null || totalInterest == null) return null;
+        double priceProfit = (trade.getExitPrice().doubleValue() - trade.getEntryPrice().doubleValue()) * trade.getQuantity();
+        return priceProfit - totalInterest;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.diary.benchmarks;
+
+import com.example.diary.model.Trade;
+import com.example.diary.repository.projection.ClosedTradeRow;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Синтетические наборы сделок для бенчмарков. Генерация детерминирована (фиксированный seed),
+ * поэтому результаты разных запусков сравнимы. Половина сделок закрыта, срок удержания 1-90 дней.
+ */
+final class TradeDatasets {
+
+    private static final long SEED = 20240101L;
+    private static final LocalDate FIRST_ENTRY = LocalDate.of(2020, 1, 1);
+    private static final int ENTRY_DAYS = 6 * 365;
+    private static final String[] SYMBOLS = {
+        "SBER", "GAZP", "LKOH", "YNDX", "RAGR", "GMKN", "NVTK", "ROSN", "TATN", "MGNT",
+        "PLZL", "CHMF", "NLMK", "MTSS", "ALRS", "VTBR", "MOEX", "POLY", "OZON", "TCSG"
+    };
+
+    private TradeDatasets() {
+    }
+
+    static List<Trade> trades(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Trade> trades = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Trade trade = new Trade();
+            trade.setId((long) i + 1);
+            trade.setSymbol(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+            long entryCents = random.nextLong(1_000, 500_000);
+            trade.setEntryPrice(BigDecimal.valueOf(entryCents, 2));
+            trade.setQuantity(random.nextInt(1, 1_000));
+            trade.setMarginAmount(BigDecimal.valueOf(random.nextLong(1_000, 3_000), 2));
+            LocalDate entryDate = FIRST_ENTRY.plusDays(random.nextInt(ENTRY_DAYS));
+            trade.setEntryDate(entryDate);
+            if (random.nextBoolean()) {
+                trade.setExitDate(entryDate.plusDays(random.nextInt(1, 91)));
+                long exitCents = Math.max(1, entryCents + random.nextLong(-entryCents / 5, entryCents / 5 + 1));
+                trade.setExitPrice(BigDecimal.valueOf(exitCents, 2));
+            }
+            trades.add(trade);
+        }
+        return trades;
+    }
+
+    static List<ClosedTradeRow> closedRows(List<Trade> trades) {
+        List<ClosedTradeRow> rows = new ArrayList<>(trades.size() / 2 + 1);
+        for (Trade trade : trades) {
+            if (trade.getExitDate() != null) {
+                rows.add(new ClosedTradeRow(trade.getSymbol(), trade.getEntryPrice(), trade.getExitPrice(),
+                    trade.getQuantity(), trade.getEntryDate(), trade.getExitDate(), trade.getMarginAmount()));
+            }
+        }
+        return rows;
+    }
+
+    // Тело запроса POST /trades/bulk-import
+    static byte[] importJson(List<Trade> trades) {
+        StringBuilder json = new StringBuilder(trades.size() * 160).append("{\"trades\":[");
+        for (int i = 0; i < trades.size(); i++) {
+            Trade trade = trades.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"symbol\":\"").append(trade.getSymbol())
+                .append("\",\"entryPrice\":").append(trade.getEntryPrice().toPlainString())
+                .append(",\"quantity\":").append(trade.getQuantity())
+                .append(",\"marginAmount\":").append(trade.getMarginAmount().toPlainString())
+                .append(",\"entryDate\":\"").append(trade.getEntryDate()).append('"');
+            if (trade.getExitDate() != null) {
+                json.append(",\"exitDate\":\"").append(trade.getExitDate())
+                    .append("\",\"exitPrice\":").append(trade.getExitPrice().toPlainString());
+            }
+            json.append(",\"notes\":\"benchmark\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Тело запроса POST /trades/bulk-import с Content-Type text/csv
+    static byte[] importCsv(List<Trade> trades) {
+        StringBuilder csv = new StringBuilder(trades.size() * 80)
+            .append("symbol,entryPrice,quantity,marginAmount,entryDate,exitDate,exitPrice,notes\n");
+        for (Trade trade : trades) {
+            csv.append(trade.getSymbol()).append(',')
+                .append(trade.getEntryPrice().toPlainString()).append(',')
+                .append(trade.getQuantity()).append(',')
+                .append(trade.getMarginAmount().toPlainString()).append(',')
+                .append(trade.getEntryDate()).append(',')
+                .append(trade.getExitDate() != null ? trade.getExitDate().toString() : "").append(',')
+                .append(trade.getExitPrice() != null ? trade.getExitPrice().toPlainString() : "").append(',')
+                .append("\"benchmark, csv\"\n");
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.diary.benchmarks;
+
+import com.example.diary.model.Trade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вычисляемые геттеры {@link Trade}: один вызов операции - проход по всему набору сделок.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class TradeModelBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private List<Trade> trades;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trades = TradeDatasets.trades(size);
+    }
+
+    @Benchmark
+    public double profit() {
+        double total = 0.0;
+        for (Trade trade : trades) {
+            Double profit = trade.getProfit();
+            if (profit != null) {
+                total += profit;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double totalInterest() {
+        double total = 0.0;
+        for (Trade trade : trades) {
+            Double interest = trade.getTotalInterest();
+            if (interest != null) {
+                total += interest;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void dailyInterestList(Blackhole blackhole) {
+        for (Trade trade : trades) {
+            blackhole.consume(trade.getDailyInterestList());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.diary.config;
+
+import org.hibernate.Interceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+
+/**
+ * Счетчики Hibernate в пределах одного HTTP-запроса: число подготовленных SQL-запросов
+ * и загруженных сущностей. Общая статистика Hibernate (hibernate.generate_statistics)
+ * считает то же по всей фабрике сессий и не показывает, какой эндпоинт дает N+1.
+ * Счет ведется в ThreadLocal только между {@link #begin()} и {@link #end()};
+ * вне запроса (загрузка кэша при старте, фоновые задачи) перехватчики ничего не делают.
+ * Ответы, которые пишутся в другом потоке (StreamingResponseBody), не учитываются.
+ */
+public class HibernateRequestStatistics implements Interceptor, StatementInspector {
+
+    /** [0] - SQL-запросы, [1] - загруженные сущности. */
+    private static final ThreadLocal<long[]> COUNTERS = new ThreadLocal<>();
+
+    public static void begin() {
+        COUNTERS.set(new long[2]);
+    }
+
+    /**
+     * Завершает счет в текущем потоке и возвращает {запросы, сущности} или null, если счет не начинался.
+     */
+    public static long[] end() {
+        long[] counters = COUNTERS.get();
+        COUNTERS.remove();
+        return counters;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        long[] counters = COUNTERS.get();
+        if (counters != null) {
+            counters[0]++;
+        }
+        return sql;
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+        long[] counters = COUNTERS.get();
+        if (counters != null) {
+            counters[1]++;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.diary.config;
+
+import com.example.diary.service.PortfolioAggregates;
+import com.example.diary.service.PortfolioCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Метрики приложения поверх Actuator/Micrometer.
+ * Время ответа эндпоинтов (с гистограммой) собирает стандартная метрика http.server.requests,
+ * здесь добавляются датчики состояния портфеля из {@link PortfolioCache} и распределения
+ * числа SQL-запросов и загруженных сущностей на один запрос к /trades и /risk.
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private static final String TRADES_PATTERNS = "/trades/**";
+    private static final String RISK_PATTERNS = "/risk/**";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Bean
+    public HibernatePropertiesCustomizer requestStatisticsCustomizer() {
+        HibernateRequestStatistics statistics = new HibernateRequestStatistics();
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, statistics);
+            properties.put(AvailableSettings.INTERCEPTOR, statistics);
+        };
+    }
+
+    @Bean
+    public MeterBinder portfolioMetrics(PortfolioCache portfolioCache) {
+        return registry -> {
+            gauge(registry, portfolioCache, "trades.count", "Все сделки", PortfolioAggregates::getTotalTrades, "status", "all");
+            gauge(registry, portfolioCache, "trades.count", "Открытые сделки", PortfolioAggregates::getOpenTrades, "status", "open");
+            gauge(registry, portfolioCache, "trades.count", "Закрытые сделки", PortfolioAggregates::getClosedTrades, "status", "closed");
+            gauge(registry, portfolioCache, "trades.open.exposure", "Стоимость открытых позиций",
+                aggregates -> aggregates.getOpenCostCents() / 100.0);
+            gauge(registry, portfolioCache, "trades.open.daily.interest", "Дневные проценты по открытым позициям",
+                aggregates -> aggregates.getOpenDailyInterestCents() / 100.0);
+        };
+    }
+
+    private static void gauge(MeterRegistry registry, PortfolioCache cache, String name, String description,
+                              ToDoubleFunction<PortfolioAggregates> reader, String... tags) {
+        Gauge.builder(name, cache, c -> c.read(reader))
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestStatisticsInterceptor())
+            .addPathPatterns(TRADES_PATTERNS, RISK_PATTERNS);
+    }
+
+    private class RequestStatisticsInterceptor implements AsyncHandlerInterceptor {
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            HibernateRequestStatistics.begin();
+            return true;
+        }
+
+        @Override
+        public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            // Ответ допишет другой поток - счет этого потока сбрасывается, чтобы не попасть в чужой запрос
+            HibernateRequestStatistics.end();
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            long[] counters = HibernateRequestStatistics.end();
+            if (counters == null) {
+                return;
+            }
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+            String method = request.getMethod();
+            DistributionSummary.builder("hibernate.request.queries")
+                .description("SQL-запросы на один HTTP-запрос")
+                .tags("uri", uri, "method", method)
+                .register(meterRegistry)
+                .record(counters[0]);
+            DistributionSummary.builder("hibernate.request.entities.loaded")
+                .description("Загруженные сущности на один HTTP-запрос")
+                .tags("uri", uri, "method", method)
+                .register(meterRegistry)
+                .record(counters[1]);
+        }
+    }
+}
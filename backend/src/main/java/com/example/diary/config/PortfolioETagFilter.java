@@ -0,0 +1,216 @@
+package com.example.diary.config;
+
+import com.example.diary.event.PortfolioVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.cors.DefaultCorsProcessor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Условные GET и кэш ответов для /trades/**. Все ответы этих эндпоинтов - функция от сделок и текущей даты
+ * (проценты и периоды по умолчанию считаются до сегодняшнего дня), поэтому слабый ETag строится из
+ * {@link PortfolioVersion}, номера дня и хэша пути с параметрами: {@code W/"<запуск>-<версия>-<день>-<запрос>"}.
+ * Метка ставится только на ответы 200, поэтому совпавший If-None-Match означает, что при этой версии и дате
+ * ресурс по этому запросу существовал и ответ не изменился - отвечаем 304 без вызова контроллера.
+ * {@code If-None-Match: *} совпадением не считается: по нему нельзя понять, существует ли ресурс.
+ * <p>
+ * ETag вычисляется до обработки запроса: версия растет только после того, как слушатели изменений
+ * обновили свои кэши, поэтому ответ никогда не бывает старше своей метки - в худшем случае клиент
+ * с новыми данными под старой меткой один лишний раз получит 200.
+ * <p>
+ * Тела ответов 200 (кроме потоковых /trades и /trades/stream) сохраняются в {@link VersionedResponseCache}
+ * под версией данных (запуск, версия, день) и ключом запроса, поэтому ответы разных URL одной версии живут
+ * в кэше вместе - повторный запрос с теми же параметрами отдается без пересчета. Ответ кладется в кэш, только
+ * если версия за время обработки не изменилась. Фоновые задачи импорта и поток изменений
+ * /trades/updates не обрабатываются: их ответы не определяются версией портфеля.
+ */
+@Component
+public class PortfolioETagFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = "/trades";
+    private static final String IMPORT_JOBS_PREFIX = "/trades/import-jobs";
+    private static final String UPDATES_PATH = "/trades/updates";
+
+    // Ответы коротких путей (304 и кэш) не доходят до @CrossOrigin контроллеров - заголовки CORS ставим сами
+    private static final CorsConfiguration CORS = new CorsConfiguration().applyPermitDefaultValues();
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @Value("${trades.http-cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${trades.http-cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    private final VersionedResponseCache cache;
+    private final DefaultCorsProcessor corsProcessor = new DefaultCorsProcessor();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notModified;
+
+    public PortfolioETagFilter(
+            MeterRegistry meterRegistry,
+            @Value("${trades.http-cache.max-entries:256}") int maxEntries,
+            @Value("${trades.http-cache.max-bytes:33554432}") long maxBytes) {
+        this.cache = new VersionedResponseCache(maxEntries, maxBytes);
+        this.hits = meterRegistry.counter("http.response.cache", "result", "hit");
+        this.misses = meterRegistry.counter("http.response.cache", "result", "miss");
+        this.notModified = meterRegistry.counter("http.response.cache", "result", "not_modified");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) || CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        String path = path(request);
+        return !(path.equals(PREFIX) || path.startsWith(PREFIX + "/")) || path.startsWith(IMPORT_JOBS_PREFIX)
+            || path.equals(UPDATES_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long version = portfolioVersion.get();
+        long day = LocalDate.now().toEpochDay();
+        String path = path(request);
+        String key = key(path, request.getQueryString());
+        // Версия данных - общая для всех запросов и ключ поколения кэша; метка - еще и от самого запроса
+        String dataVersion = portfolioVersion.getBootId() + "-" + version + "-" + day;
+        String etag = "W/\"" + dataVersion + "-" + Integer.toHexString(key.hashCode()) + "\"";
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            notModified.increment();
+            corsProcessor.processRequest(CORS, request, response);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        HttpServletResponse tagged = new ETagResponseWrapper(response, etag);
+        if (!cacheEnabled || path.equals(PREFIX) || path.equals(PREFIX + "/stream")) {
+            chain.doFilter(request, tagged);
+            return;
+        }
+
+        VersionedResponseCache.Entry cached = cache.get(dataVersion, key);
+        if (cached != null) {
+            hits.increment();
+            corsProcessor.processRequest(CORS, request, response);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setContentType(cached.contentType());
+            response.setContentLength(cached.body().length);
+            response.getOutputStream().write(cached.body());
+            return;
+        }
+
+        misses.increment();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(tagged);
+        try {
+            chain.doFilter(request, wrapper);
+            if (wrapper.getStatus() == HttpServletResponse.SC_OK
+                    && wrapper.getContentSize() <= maxEntryBytes
+                    && portfolioVersion.get() == version
+                    && LocalDate.now().toEpochDay() == day) {
+                cache.put(dataVersion, key, new VersionedResponseCache.Entry(wrapper.getContentAsByteArray(),
+                    wrapper.getContentType()));
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    // Параметры сортируются, чтобы ?a=1&b=2 и ?b=2&a=1 попадали в одну запись
+    private static String key(String path, String query) {
+        if (query == null || query.isEmpty()) {
+            return path;
+        }
+        String[] params = query.split("&");
+        Arrays.sort(params);
+        return path + "?" + String.join("&", params);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String tag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ставит ETag перед первой записью тела, если к этому моменту статус - 200. Ответы об ошибках
+     * (400, 404 и т.п.) метку не получают, и по ней потом нельзя получить 304 для несуществующего ресурса.
+     */
+    private static final class ETagResponseWrapper extends HttpServletResponseWrapper {
+
+        private final String etag;
+        private boolean decided;
+
+        ETagResponseWrapper(HttpServletResponse response, String etag) {
+            super(response);
+            this.etag = etag;
+        }
+
+        private void tag() {
+            if (!decided) {
+                decided = true;
+                if (getStatus() == SC_OK && !isCommitted()) {
+                    setHeader(HttpHeaders.ETAG, etag);
+                }
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            tag();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            tag();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            tag();
+            super.flushBuffer();
+        }
+    }
+}
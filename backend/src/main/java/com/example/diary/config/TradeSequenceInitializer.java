@@ -0,0 +1,38 @@
+package com.example.diary.config;
+
+import com.example.diary.model.Trade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сдвигает последовательность trades_seq за максимальный существующий id.
+ * Нужна для баз, созданных до перехода с IDENTITY на последовательность:
+ * Hibernate создает trades_seq с единицы, и новые id совпали бы с уже занятыми.
+ * Для пустой таблицы последовательность тоже сдвигается, чтобы первый блок не уходил в id меньше 1.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class TradeSequenceInitializer implements InitializingBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeSequenceInitializer.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterPropertiesSet() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM trades", Long.class);
+        Long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR trades_seq", Long.class);
+        // При pooled-оптимизаторе значение последовательности - граница блока из ID_ALLOCATION_SIZE id
+        long required = maxId + Trade.ID_ALLOCATION_SIZE + 1;
+        if (next == null || next < required) {
+            jdbcTemplate.execute("ALTER SEQUENCE trades_seq RESTART WITH " + required);
+            logger.info("Последовательность trades_seq перезапущена с {}", required);
+        }
+    }
+}
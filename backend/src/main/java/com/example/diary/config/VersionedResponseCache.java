@@ -0,0 +1,53 @@
+package com.example.diary.config;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Готовые тела ответов GET для одной версии портфеля, LRU с ограничением по числу записей и байтам.
+ * Запись с другой версией в кэш не попадает, а при переходе на новую версию кэш очищается целиком -
+ * ответы старых версий уже никогда не будут отданы.
+ */
+class VersionedResponseCache {
+
+    record Entry(byte[] body, String contentType) {
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private String version;
+    private long bytes;
+
+    VersionedResponseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Entry get(String version, String key) {
+        if (!version.equals(this.version)) {
+            return null;
+        }
+        return entries.get(key);
+    }
+
+    synchronized void put(String version, String key, Entry entry) {
+        if (!version.equals(this.version)) {
+            entries.clear();
+            bytes = 0;
+            this.version = version;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.body().length;
+        }
+        bytes += entry.body().length;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().body().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.diary.controller;
+
+import com.example.diary.market.MappedPriceFile;
+import com.example.diary.market.MarketPriceStore;
+import com.example.diary.market.OhlcBar;
+import com.example.diary.model.Portfolios;
+import com.example.diary.service.MarkToMarketService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+@RestController
+@RequestMapping("/market")
+@CrossOrigin(origins = "*")
+public class MarketController {
+
+    private static final int MAX_HISTORY_BARS = 5000;
+
+    @Autowired
+    private MarketPriceStore marketPriceStore;
+
+    @Autowired
+    private MarkToMarketService markToMarketService;
+
+    // Тикеры с рыночными ценами и последний бар каждого
+    @GetMapping("/prices")
+    public ResponseEntity<?> getPrices() {
+        List<Map<String, Object>> symbols = new ArrayList<>();
+        for (String symbol : marketPriceStore.getSymbols()) {
+            MappedPriceFile file = marketPriceStore.get(symbol);
+            if (file == null || file.size() == 0) {
+                continue;
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("symbol", symbol);
+            data.put("days", file.size());
+            data.put("from", file.getFirstDate());
+            data.put("to", file.getLastDate());
+            data.put("last", file.barAt(file.size() - 1));
+            symbols.add(data);
+        }
+        return ResponseEntity.ok(symbols);
+    }
+
+    // Бар на дату или ближайший предыдущий торговый день
+    @GetMapping("/prices/{symbol}")
+    public ResponseEntity<?> getPrice(
+            @PathVariable String symbol,
+            @RequestParam(required = false) String date) {
+        try {
+            LocalDate day = date != null ? LocalDate.parse(date) : LocalDate.now();
+            OhlcBar bar = marketPriceStore.barOnOrBefore(symbol.trim().toUpperCase(), day);
+            if (bar == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(bar);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат даты: " + e.getParsedString()));
+        }
+    }
+
+    // Бары за период [from, to], не больше MAX_HISTORY_BARS
+    @GetMapping("/prices/{symbol}/history")
+    public ResponseEntity<?> getHistory(
+            @PathVariable String symbol,
+            @RequestParam String from,
+            @RequestParam(required = false) String to) {
+        try {
+            MappedPriceFile file = marketPriceStore.get(symbol.trim().toUpperCase());
+            if (file == null) {
+                return ResponseEntity.notFound().build();
+            }
+            int fromDay = (int) LocalDate.parse(from).toEpochDay();
+            int toDay = (int) (to != null ? LocalDate.parse(to) : LocalDate.now()).toEpochDay();
+            int first = file.floorIndex(fromDay - 1) + 1;
+            int last = file.floorIndex(toDay);
+            if (last - first + 1 > MAX_HISTORY_BARS) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("message", "Период содержит больше " + MAX_HISTORY_BARS + " торговых дней"));
+            }
+            List<OhlcBar> bars = new ArrayList<>();
+            for (int i = first; i <= last; i++) {
+                bars.add(file.barAt(i));
+            }
+            return ResponseEntity.ok(bars);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат даты: " + e.getParsedString()));
+        }
+    }
+
+    // Разбор новых и измененных CSV и повторное отображение файлов цен
+    @PostMapping("/prices/reload")
+    public ResponseEntity<?> reloadPrices() {
+        return ResponseEntity.ok(Map.of("symbols", marketPriceStore.reload()));
+    }
+
+    // Переоценка открытых сделок по рыночным ценам на дату, за вычетом начисленных процентов
+    @GetMapping("/mark-to-market")
+    public ResponseEntity<?> markToMarket(
+            @RequestParam(required = false) String date,
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String portfolio,
+            @RequestParam(defaultValue = "false") boolean details) {
+        try {
+            LocalDate day = date != null ? LocalDate.parse(date) : LocalDate.now();
+            String filter = symbol != null && !symbol.isBlank() ? symbol.trim().toUpperCase() : null;
+            return ResponseEntity.ok(markToMarketService.markToMarket(Portfolios.parse(portfolio), day, filter, details));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат даты: " + e.getParsedString()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+}
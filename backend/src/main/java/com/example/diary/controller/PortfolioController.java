@@ -0,0 +1,50 @@
+package com.example.diary.controller;
+
+import com.example.diary.service.PortfolioCache;
+import com.example.diary.service.PortfolioOverviewService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/portfolios")
+@CrossOrigin(origins = "*")
+public class PortfolioController {
+
+    @Autowired
+    private PortfolioCache portfolioCache;
+
+    @Autowired
+    private PortfolioOverviewService overviewService;
+
+    // Портфели со сделками и их основные итоги
+    @GetMapping
+    public ResponseEntity<?> getPortfolios() {
+        if (!portfolioCache.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("message", "Кэш портфеля еще не загружен"));
+        }
+        return ResponseEntity.ok(portfolioCache.getPortfolios());
+    }
+
+    // Статистика и VaR каждого портфеля, посчитанные параллельно, и сводные по всем портфелям
+    @GetMapping("/overview")
+    public ResponseEntity<?> getOverview(
+            @RequestParam(defaultValue = "0.95,0.99") String confidence,
+            @RequestParam(defaultValue = "1") int horizon,
+            @RequestParam(required = false) Integer scenarios) {
+        try {
+            double[] confidences = Arrays.stream(confidence.split(","))
+                .map(String::trim).mapToDouble(Double::parseDouble).toArray();
+            return ResponseEntity.ok(overviewService.getOverview(confidences, horizon, scenarios));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат параметра: " + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+}
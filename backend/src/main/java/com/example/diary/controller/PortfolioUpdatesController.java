@@ -0,0 +1,31 @@
+package com.example.diary.controller;
+
+import com.example.diary.service.PortfolioUpdateStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/trades/updates")
+@CrossOrigin(origins = "*")
+public class PortfolioUpdatesController {
+
+    @Autowired
+    private PortfolioUpdateStream updateStream;
+
+    // Изменения сделок и итогов портфеля: snapshot, затем delta после каждого изменения или resync
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe() {
+        try {
+            return ResponseEntity.ok(updateStream.subscribe());
+        } catch (RejectedExecutionException e) {
+            // Тело ответа - поток событий, поэтому при отказе только статус; EventSource повторит подключение
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.diary.controller;
+
+import com.example.diary.model.Portfolios;
+import com.example.diary.position.LotMethod;
+import com.example.diary.position.PositionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/positions")
+@CrossOrigin(origins = "*")
+public class PositionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionController.class);
+
+    @Autowired
+    private PositionService positionService;
+
+    // Открытые позиции по тикерам: количество, средняя цена и набежавшие проценты по лотам
+    @GetMapping
+    public ResponseEntity<?> getPositions(@RequestParam(required = false) String portfolio) {
+        try {
+            return ResponseEntity.ok(positionService.getPositions(Portfolios.parse(portfolio)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Лоты позиции в порядке списания выбранным методом
+    @GetMapping("/{symbol}/lots")
+    public ResponseEntity<?> getLots(
+            @PathVariable String symbol,
+            @RequestParam(required = false) String portfolio,
+            @RequestParam(required = false) String method) {
+        try {
+            return ResponseEntity.ok(positionService.getLots(Portfolios.orDefault(portfolio), symbol,
+                LotMethod.parse(method)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Продажа части позиции со списанием лотов по FIFO, LIFO или средней цене; dryRun - только подбор лотов
+    @PostMapping("/sell")
+    public ResponseEntity<?> sell(@RequestBody PositionService.SellRequest request) {
+        try {
+            return ResponseEntity.ok(positionService.sell(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Ошибка при продаже позиции", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("message", "Ошибка продажи позиции: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.diary.controller;
+
+import com.example.diary.model.Portfolios;
+import com.example.diary.risk.PriceHistoryStore;
+import com.example.diary.risk.PriceSeries;
+import com.example.diary.service.CorrelationService;
+import com.example.diary.service.MonteCarloService;
+import com.example.diary.service.RiskService;
+import com.example.diary.service.ScenarioService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+@RestController
+@RequestMapping("/risk")
+@CrossOrigin(origins = "*")
+public class RiskController {
+
+    @Autowired
+    private RiskService riskService;
+
+    @Autowired
+    private MonteCarloService monteCarloService;
+
+    @Autowired
+    private ScenarioService scenarioService;
+
+    @Autowired
+    private CorrelationService correlationService;
+
+    @Autowired
+    private PriceHistoryStore priceHistoryStore;
+
+    @Value("${risk.montecarlo.paths:10000}")
+    private int defaultPaths;
+
+    // Исторический VaR и Expected Shortfall открытых позиций портфеля или всех портфелей
+    @GetMapping("/var")
+    public ResponseEntity<?> getValueAtRisk(
+            @RequestParam(defaultValue = "0.95,0.99") String confidence,
+            @RequestParam(defaultValue = "1") String horizon,
+            @RequestParam(required = false) Integer scenarios,
+            @RequestParam(required = false) String portfolio) {
+        try {
+            double[] confidences = Arrays.stream(confidence.split(","))
+                .map(String::trim).mapToDouble(Double::parseDouble).toArray();
+            int[] horizons = Arrays.stream(horizon.split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+            return ResponseEntity.ok(riskService.getValueAtRisk(Portfolios.parse(portfolio), confidences, horizons, scenarios));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат параметра: " + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Монте-Карло P&L открытых сделок на целевую дату за вычетом процентов; seed делает результат воспроизводимым
+    @GetMapping("/monte-carlo")
+    public ResponseEntity<?> simulate(
+            @RequestParam(required = false) String targetDate,
+            @RequestParam(required = false) Integer paths,
+            @RequestParam(required = false) Long seed,
+            @RequestParam(defaultValue = "252") int lookback,
+            @RequestParam(defaultValue = "true") boolean correlated,
+            @RequestParam(defaultValue = "false") boolean details,
+            @RequestParam(required = false) String portfolio) {
+        try {
+            LocalDate target = targetDate != null ? LocalDate.parse(targetDate) : LocalDate.now().plusDays(30);
+            return ResponseEntity.ok(monteCarloService.simulate(Portfolios.parse(portfolio),
+                target, paths != null ? paths : defaultPaths, seed, lookback, correlated, details));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат даты: " + e.getParsedString()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Пакет what-if сценариев: сдвиги цен, изменение ставки и продление удержания против всех открытых сделок
+    @PostMapping("/scenarios")
+    public ResponseEntity<?> evaluateScenarios(@RequestBody ScenarioService.ScenarioRequest request) {
+        try {
+            LocalDate date = request.date() != null ? request.date() : LocalDate.now();
+            return ResponseEntity.ok(scenarioService.evaluate(Portfolios.parse(request.portfolio()), date,
+                request.scenarios()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Скользящие волатильность, корреляции и бета к эталону по торгуемым тикерам; packed - матрицы верхним треугольником
+    @GetMapping("/correlations")
+    public ResponseEntity<?> getCorrelations(
+            @RequestParam(required = false) Integer window,
+            @RequestParam(required = false) String benchmark,
+            @RequestParam(defaultValue = "false") boolean packed,
+            @RequestParam(defaultValue = "false") boolean covariance) {
+        try {
+            return ResponseEntity.ok(correlationService.getCorrelations(window, benchmark, packed, covariance));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Загруженная история цен по тикерам
+    @GetMapping("/prices")
+    public ResponseEntity<?> getPriceHistory() {
+        List<Map<String, Object>> symbols = new ArrayList<>();
+        for (String symbol : priceHistoryStore.getSymbols()) {
+            PriceSeries series = priceHistoryStore.get(symbol);
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("symbol", symbol);
+            data.put("days", series.size());
+            data.put("from", series.getFirstDate());
+            data.put("to", series.getLastDate());
+            data.put("lastClose", series.getLastClose());
+            symbols.add(data);
+        }
+        return ResponseEntity.ok(symbols);
+    }
+
+    @PostMapping("/prices/reload")
+    public ResponseEntity<?> reloadPriceHistory() {
+        return ResponseEntity.ok(Map.of("symbols", priceHistoryStore.reload()));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.diary.controller;
+
+import com.example.diary.model.Portfolios;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.service.TradeStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/trades/statistics")
+@CrossOrigin(origins = "*")
+public class StatisticsController {
+
+    @Autowired
+    private TradeStatisticsService statisticsService;
+
+    // Готовая статистика портфеля; диапазон дат применяется к дате входа, как в списке сделок
+    @GetMapping
+    public ResponseEntity<?> getStatistics(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String portfolio) {
+        TradeFilter filter = new TradeFilter();
+        try {
+            filter.setPortfolio(Portfolios.parse(portfolio));
+            if (symbol != null && !symbol.isBlank() && !"all".equalsIgnoreCase(symbol.trim())) {
+                filter.setSymbol(symbol.trim().toUpperCase());
+            }
+            if (startDate != null && !startDate.isBlank()) {
+                filter.setFrom(LocalDate.parse(startDate));
+            }
+            if (endDate != null && !endDate.isBlank()) {
+                filter.setTo(LocalDate.parse(endDate));
+            }
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверный формат даты: " + e.getParsedString()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+        return ResponseEntity.ok(statisticsService.getStatistics(filter));
+    }
+}
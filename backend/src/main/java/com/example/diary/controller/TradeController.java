@@ -1,18 +1,42 @@
 package com.example.diary.controller;
 
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.importer.TradeImportResult;
+import com.example.diary.importer.TradeImportService;
+import com.example.diary.interest.InterestEngine;
+import com.example.diary.interest.InterestGranularity;
+import com.example.diary.interest.InterestPeriod;
+import com.example.diary.model.Portfolios;
 import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeBatchWriter;
+import com.example.diary.repository.TradeCursor;
+import com.example.diary.repository.TradeFilter;
 import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.TradeSort;
+import com.example.diary.service.EquityCurveGranularity;
+import com.example.diary.service.EquityCurveService;
+import com.example.diary.service.PortfolioCache;
+import com.example.diary.service.TradeAnalyticsService;
+import com.example.diary.service.TradeBulkResult;
+import com.example.diary.service.TradeBulkService;
+import com.example.diary.service.TradeQueryService;
+import com.example.diary.service.TradeViews;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.math.BigDecimal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,13 +48,123 @@ public class TradeController {
 
     private static final Logger logger = LoggerFactory.getLogger(TradeController.class);
 
+    private static final int MAX_DAILY_INTEREST_PAGE = 1000;
+
     @Autowired
     private TradeRepository tradeRepository;
 
+    @Autowired
+    private TradeAnalyticsService analyticsService;
+
+    @Autowired
+    private PortfolioCache portfolioCache;
+
+    @Autowired
+    private EquityCurveService equityCurveService;
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @Autowired
+    private TradeQueryService tradeQueryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TradeImportService tradeImportService;
+
+    @Autowired
+    private TradeBulkService tradeBulkService;
+
+    @Autowired
+    private TradeBatchWriter batchWriter;
+
+    // Полный список отдается потоком, без построения всей таблицы в памяти; с portfolio - только сделки портфеля
     @GetMapping
-    public ResponseEntity<List<Trade>> getAllTrades() {
-        List<Trade> trades = tradeRepository.findAll();
-        return ResponseEntity.ok(trades);
+    public ResponseEntity<StreamingResponseBody> getAllTrades(@RequestParam(required = false) String portfolio) {
+        TradeFilter filter = new TradeFilter();
+        try {
+            filter.setPortfolio(Portfolios.parse(portfolio));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = Map.of("message", "Неверные параметры запроса: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+        }
+        StreamingResponseBody body = out -> tradeQueryService.writeJsonArray(filter, TradeSort.ID_ASC, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body);
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<?> getTradesPage(
+            @RequestParam(required = false) String portfolio,
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            TradeFilter filter = buildFilter(portfolio, symbol, status, from, to);
+            TradeSort tradeSort = TradeSort.parse(sort, direction);
+            TradeCursor after = TradeCursor.parse(cursor, tradeSort);
+            return ResponseEntity.ok(tradeQueryService.findPage(filter, tradeSort, after, limit));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Неверные параметры запроса: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamTrades(
+            @RequestParam(required = false) String portfolio,
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String direction) {
+        TradeFilter filter;
+        TradeSort tradeSort;
+        try {
+            filter = buildFilter(portfolio, symbol, status, from, to);
+            tradeSort = TradeSort.parse(sort, direction);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            Map<String, String> error = Map.of("message", "Неверные параметры запроса: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+        }
+        StreamingResponseBody body = out -> tradeQueryService.writeNdjson(filter, tradeSort, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+
+    private TradeFilter buildFilter(String portfolio, String symbol, String status, String from, String to) {
+        TradeFilter filter = new TradeFilter();
+        filter.setPortfolio(Portfolios.parse(portfolio));
+        if (symbol != null && !symbol.isBlank()) {
+            filter.setSymbol(symbol.trim().toUpperCase());
+        }
+        if (status != null && !status.isBlank()) {
+            try {
+                filter.setStatus(TradeFilter.Status.valueOf(status.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неверный статус: " + status);
+            }
+        }
+        if (from != null && !from.isBlank()) {
+            filter.setFrom(LocalDate.parse(from));
+        }
+        if (to != null && !to.isBlank()) {
+            filter.setTo(LocalDate.parse(to));
+        }
+        return filter;
     }
 
     @PostMapping("/buy")
@@ -59,6 +193,18 @@ public class TradeController {
             if (trade.getMarginAmount() == null) {
                 return ResponseEntity.badRequest().body(Map.of("message", "Процент за кредит не может быть пустым"));
             }
+
+            if (!trade.isDatesSupported()) {
+                return ResponseEntity.badRequest().body(Map.of("message",
+                    "Дата сделки должна быть в диапазоне " + Trade.MIN_DATE + " - " + Trade.MAX_DATE));
+            }
+
+            // Без портфеля сделка попадает в портфель по умолчанию
+            try {
+                trade.setPortfolioId(Portfolios.orDefault(trade.getPortfolioId()));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+            }
             
             // Преобразуем числовые значения в BigDecimal, если они пришли как Double
             if (!(trade.getEntryPrice() instanceof BigDecimal)) {
@@ -76,9 +222,10 @@ public class TradeController {
             logger.info("Расчет: totalCost={}, dailyInterest={}", 
                         totalCost, dailyInterestAmount);
             
-            // Сохраняем сделку
+            // Сохраняем сделку; publish не бросает исключений, поэтому после записи ответ - всегда 201
             Trade savedTrade = tradeRepository.save(trade);
             logger.info("Сделка сохранена с ID: {}", savedTrade.getId());
+            portfolioVersion.publish(TradeChangeEvent.bought(savedTrade));
             
             URI location = ServletUriComponentsBuilder
                 .fromCurrentRequest()
@@ -87,7 +234,7 @@ public class TradeController {
                 .toUri();
 
             Map<String, Object> response = new HashMap<>();
-            response.put("trade", savedTrade);
+            response.put("trade", TradeViews.detail(savedTrade, null));
             response.put("totalCost", totalCost);
             response.put("dailyInterest", dailyInterestAmount);
 
@@ -100,171 +247,71 @@ public class TradeController {
         }
     }
 
-    @PostMapping("/bulk-import")
-    public ResponseEntity<?> bulkImportTrades(@RequestBody Map<String, List<Map<String, Object>>> request) {
+    @PostMapping(value = "/bulk-import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> bulkImportTrades(InputStream body) {
         try {
             logger.info("Получен запрос на массовый импорт сделок");
+            return importResponse(tradeImportService.importJson(body));
+        } catch (Exception e) {
+            return importError(e);
+        }
+    }
 
-            List<Map<String, Object>> tradesToImport = request.get("trades");
-            if (tradesToImport == null || tradesToImport.isEmpty()) {
-                return ResponseEntity.badRequest().body(Map.of("message", "Список сделок пуст"));
-            }
-
-            List<Trade> savedTrades = new ArrayList<>();
-            int importedCount = 0;
-            int errorCount = 0;
-            List<Map<String, String>> errors = new ArrayList<>();
-
-            for (int i = 0; i < tradesToImport.size(); i++) {
-                try {
-                    Map<String, Object> tradeData = tradesToImport.get(i);
-                    Trade trade = new Trade();
-
-                    // Обязательные поля
-                    String symbol = (String) tradeData.get("symbol");
-                    if (symbol == null || symbol.trim().isEmpty()) {
-                        throw new IllegalArgumentException("Тикер не может быть пустым");
-                    }
-                    trade.setSymbol(symbol.trim().toUpperCase());
-
-                    // Цена входа
-                    Object entryPriceObj = tradeData.get("entryPrice");
-                    if (entryPriceObj == null) {
-                        throw new IllegalArgumentException("Цена входа не может быть пустой");
-                    }
-                    BigDecimal entryPrice;
-                    if (entryPriceObj instanceof String) {
-                        entryPrice = new BigDecimal((String) entryPriceObj);
-                    } else if (entryPriceObj instanceof Number) {
-                        entryPrice = BigDecimal.valueOf(((Number) entryPriceObj).doubleValue());
-                    } else {
-                        throw new IllegalArgumentException("Неверный формат цены входа");
-                    }
-                    trade.setEntryPrice(entryPrice);
-
-                    // Количество
-                    Object quantityObj = tradeData.get("quantity");
-                    if (quantityObj == null) {
-                        throw new IllegalArgumentException("Количество не может быть пустым");
-                    }
-                    Integer quantity;
-                    if (quantityObj instanceof String) {
-                        quantity = Integer.parseInt((String) quantityObj);
-                    } else if (quantityObj instanceof Number) {
-                        quantity = ((Number) quantityObj).intValue();
-                    } else {
-                        throw new IllegalArgumentException("Неверный формат количества");
-                    }
-                    trade.setQuantity(quantity);
-
-                    // Процент маржи
-                    Object marginAmountObj = tradeData.get("marginAmount");
-                    if (marginAmountObj == null) {
-                        throw new IllegalArgumentException("Процент маржи не может быть пустым");
-                    }
-                    BigDecimal marginAmount;
-                    if (marginAmountObj instanceof String) {
-                        marginAmount = new BigDecimal((String) marginAmountObj);
-                    } else if (marginAmountObj instanceof Number) {
-                        marginAmount = BigDecimal.valueOf(((Number) marginAmountObj).doubleValue());
-                    } else {
-                        throw new IllegalArgumentException("Неверный формат процента маржи");
-                    }
-                    trade.setMarginAmount(marginAmount);
-
-                    // Дата входа
-                    Object entryDateObj = tradeData.get("entryDate");
-                    if (entryDateObj == null) {
-                        throw new IllegalArgumentException("Дата входа не может быть пустой");
-                    }
-                    LocalDate entryDate;
-                    if (entryDateObj instanceof String) {
-                        entryDate = LocalDate.parse((String) entryDateObj);
-                    } else {
-                        throw new IllegalArgumentException("Неверный формат даты входа");
-                    }
-                    trade.setEntryDate(entryDate);
-
-                    // Опциональные поля
-                    // Заметки
-                    if (tradeData.containsKey("notes")) {
-                        trade.setNotes((String) tradeData.get("notes"));
-                    }
-
-                    // Дата выхода (если есть)
-                    if (tradeData.containsKey("exitDate") && tradeData.get("exitDate") != null && !((String) tradeData.get("exitDate")).isEmpty()) {
-                        LocalDate exitDate = LocalDate.parse((String) tradeData.get("exitDate"));
-                        trade.setExitDate(exitDate);
-
-                        // Если есть дата выхода, должна быть и цена выхода
-                        if (tradeData.containsKey("exitPrice") && tradeData.get("exitPrice") != null) {
-                            Object exitPriceObj = tradeData.get("exitPrice");
-                            BigDecimal exitPrice;
-                            if (exitPriceObj instanceof String) {
-                                if (!((String) exitPriceObj).isEmpty()) {
-                                    exitPrice = new BigDecimal((String) exitPriceObj);
-                                    trade.setExitPrice(exitPrice);
-                                }
-                            } else if (exitPriceObj instanceof Number) {
-                                exitPrice = BigDecimal.valueOf(((Number) exitPriceObj).doubleValue());
-                                trade.setExitPrice(exitPrice);
-                            }
-                        }
-                    }
-
-                    // Сохраняем сделку
-                    Trade savedTrade = tradeRepository.save(trade);
-                    savedTrades.add(savedTrade);
-                    importedCount++;
-                    logger.info("Импортирована сделка с ID: {}", savedTrade.getId());
-                } catch (Exception e) {
-                    errorCount++;
-                    Map<String, String> error = new HashMap<>();
-                    error.put("row", String.valueOf(i + 1));
-                    error.put("message", e.getMessage());
-                    errors.add(error);
-                    logger.error("Ошибка при импорте строки {}: {}", i + 1, e.getMessage());
-                }
-            }
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("importedCount", importedCount);
-            response.put("errorCount", errorCount);
-            if (!errors.isEmpty()) {
-                response.put("errors", errors);
-            }
-
-            if (importedCount > 0) {
-                return ResponseEntity.ok(response);
-            } else {
-                return ResponseEntity.badRequest().body(response);
-            }
+    @PostMapping(value = "/bulk-import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> bulkImportTradesCsv(InputStream body) {
+        try {
+            logger.info("Получен запрос на массовый импорт сделок из CSV");
+            return importResponse(tradeImportService.importCsv(body));
         } catch (Exception e) {
-            logger.error("Ошибка при массовом импорте сделок", e);
-            Map<String, String> error = new HashMap<>();
-            error.put("message", "Ошибка массового импорта сделок: " + e.getMessage());
-            return ResponseEntity.badRequest().body(error);
+            return importError(e);
+        }
+    }
+
+    private ResponseEntity<?> importResponse(TradeImportResult result) {
+        if (result.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Список сделок пуст"));
+        }
+        if (result.getImportedCount() > 0) {
+            return ResponseEntity.ok(result.toResponse());
+        } else {
+            return ResponseEntity.badRequest().body(result.toResponse());
         }
     }
 
+    private ResponseEntity<?> importError(Exception e) {
+        logger.error("Ошибка при массовом импорте сделок", e);
+        Map<String, String> error = new HashMap<>();
+        error.put("message", "Ошибка массового импорта сделок: " + e.getMessage());
+        return ResponseEntity.badRequest().body(error);
+    }
+
     @PostMapping("/{id}/sell")
     public ResponseEntity<?> sellTrade(
             @PathVariable Long id,
             @RequestParam Double exitPrice) {
         try {
-            Trade trade = tradeRepository.findById(id)
+            Trade before = tradeRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Сделка не найдена"));
+            if (before.getExitDate() != null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "Сделка уже закрыта"));
+            }
 
-            trade.setExitPrice(BigDecimal.valueOf(exitPrice));
-            trade.setExitDate(LocalDate.now());
-            
-            Trade updatedTrade = tradeRepository.save(trade);
+            // Закрытие с проверкой количества, как у лотов в PositionService: полная запись строки вернула бы
+            // старое количество лоту, который успели уменьшить частичной продажей
+            Trade updatedTrade = before.copy();
+            updatedTrade.setExitPrice(BigDecimal.valueOf(exitPrice));
+            updatedTrade.setExitDate(LocalDate.now());
+            if (batchWriter.closeLots(List.of(updatedTrade))[0] == 0) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", "Сделка закрыта или изменена другим запросом, обновите данные"));
+            }
+            portfolioVersion.publish(TradeChangeEvent.sold(before, updatedTrade));
 
             Map<String, Object> response = new HashMap<>();
-            response.put("trade", updatedTrade);
+            response.put("trade", TradeViews.detail(updatedTrade, null));
             response.put("totalInterest", updatedTrade.getTotalInterest());
             response.put("profit", updatedTrade.getProfit());
-            response.put("dailyInterests", updatedTrade.getDailyInterestList());
+            response.put("interestPeriods", interestPeriods(updatedTrade, InterestGranularity.MONTH));
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -275,8 +322,50 @@ public class TradeController {
         }
     }
 
+    // Закрытие набора сделок одним запросом: цена по id или по тикеру, результат по каждому id
+    @PostMapping("/bulk-sell")
+    public ResponseEntity<?> bulkSellTrades(@RequestBody TradeBulkService.CloseRequest request) {
+        try {
+            return bulkResponse(tradeBulkService.close(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Ошибка при массовом закрытии сделок", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("message", "Ошибка массового закрытия сделок: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<?> bulkDeleteTrades(@RequestBody Map<String, List<Long>> request) {
+        try {
+            return bulkResponse(tradeBulkService.delete(request.get("ids")));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Ошибка при массовом удалении сделок", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("message", "Ошибка массового удаления сделок: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    private ResponseEntity<?> bulkResponse(TradeBulkResult result) {
+        if (result.getSucceededCount() > 0) {
+            return ResponseEntity.ok(result.toResponse());
+        }
+        return ResponseEntity.badRequest().body(result.toResponse());
+    }
+
+    // График процентов по периодам; ежедневный список - только по запросу view=daily и постранично
     @GetMapping("/{id}/daily-interest")
-    public ResponseEntity<?> getDailyInterest(@PathVariable Long id) {
+    public ResponseEntity<?> getDailyInterest(
+            @PathVariable Long id,
+            @RequestParam(required = false) String granularity,
+            @RequestParam(required = false) String view,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
         try {
             Trade trade = tradeRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Сделка не найдена"));
@@ -284,7 +373,24 @@ public class TradeController {
             Map<String, Object> response = new HashMap<>();
             response.put("dailyInterest", trade.getDailyInterestAmount());
             response.put("totalInterest", trade.getTotalInterest());
-            response.put("interests", trade.getDailyInterestList());
+            response.put("periods", interestPeriods(trade, InterestGranularity.parse(granularity)));
+
+            if ("daily".equalsIgnoreCase(view)) {
+                if (page < 0 || size < 1 || size > MAX_DAILY_INTEREST_PAGE) {
+                    throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_DAILY_INTEREST_PAGE);
+                }
+                List<Trade.DailyInterest> interests = new ArrayList<>();
+                long totalDays = 0;
+                if (trade.getExitDate() != null && trade.getDailyInterestAmount() != null) {
+                    totalDays = InterestEngine.totalDays(trade.getEntryDate(), trade.getExitDate());
+                    interests = InterestEngine.dailyPage(trade.totalCostCents(), InterestEngine.segmentsOf(trade),
+                        trade.getEntryDate(), trade.getExitDate(), page, size);
+                }
+                response.put("interests", interests);
+                response.put("page", page);
+                response.put("size", size);
+                response.put("totalDays", totalDays);
+            }
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -295,20 +401,41 @@ public class TradeController {
         }
     }
 
+    // Дни [entryDate, exitDate), за которые начислен totalInterest: суммы периодов складываются в него
+    private List<InterestPeriod> interestPeriods(Trade trade, InterestGranularity granularity) {
+        if (trade.getExitDate() == null || trade.getDailyInterestAmount() == null) {
+            return Collections.emptyList();
+        }
+        return InterestEngine.periods(trade.totalCostCents(), InterestEngine.segmentsOf(trade),
+            trade.getEntryDate(), trade.getExitDate().minusDays(1), granularity);
+    }
+
+    // Подробное представление сделки; график процентов по периодам - только с параметром schedule (segment или month)
     @GetMapping("/{id}")
-    public ResponseEntity<?> getTrade(@PathVariable Long id) {
-        return tradeRepository.findById(id)
-            .map(ResponseEntity::ok)
-            .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<?> getTrade(@PathVariable Long id, @RequestParam(required = false) String schedule) {
+        InterestGranularity granularity;
+        try {
+            granularity = schedule != null ? InterestGranularity.parse(schedule) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+        Optional<Trade> trade = tradeRepository.findById(id);
+        if (trade.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        List<InterestPeriod> periods = granularity != null ? interestPeriods(trade.get(), granularity) : null;
+        return ResponseEntity.ok(TradeViews.detail(trade.get(), periods));
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteTrade(@PathVariable Long id) {
-        if (!tradeRepository.existsById(id)) {
+        Optional<Trade> trade = tradeRepository.findById(id);
+        if (trade.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         try {
-            tradeRepository.deleteById(id);
+            tradeRepository.delete(trade.get());
+            portfolioVersion.publish(TradeChangeEvent.deleted(trade.get()));
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             logger.error("Ошибка при удалении сделки", e);
@@ -322,67 +449,31 @@ public class TradeController {
     @GetMapping("/analytics/summary")
     public ResponseEntity<?> getAnalyticsSummary(
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
-        
-        List<Trade> allTrades = tradeRepository.findAll();
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String portfolio) {
         
         // Фильтрация по дате, если указаны параметры
+        LocalDate start = TradeAnalyticsService.MIN_DATE;
+        LocalDate end = TradeAnalyticsService.MAX_DATE;
         if (startDate != null || endDate != null) {
-            LocalDate start = startDate != null ? 
+            start = startDate != null ? 
                 LocalDate.parse(startDate) : LocalDate.of(1900, 1, 1);
-            LocalDate end = endDate != null ? 
+            end = endDate != null ? 
                 LocalDate.parse(endDate) : LocalDate.now();
-            
-            allTrades = allTrades.stream()
-                .filter(trade -> {
-                    // Фильтруем по дате входа для открытых сделок или по дате выхода для закрытых
-                    LocalDate date = trade.getExitDate() != null ? trade.getExitDate() : trade.getEntryDate();
-                    return !date.isBefore(start) && !date.isAfter(end);
-                })
-                .collect(Collectors.toList());
         }
         
-        // Считаем количество сделок
-        int totalTrades = allTrades.size();
-        
-        // Считаем количество прибыльных сделок (только для закрытых)
-        List<Trade> closedTrades = allTrades.stream()
-            .filter(trade -> trade.getExitDate() != null)
-            .collect(Collectors.toList());
-        
-        int winningTrades = 0;
-        double totalProfit = 0.0;
-        
-        for (Trade trade : closedTrades) {
-            Double profit = trade.getProfit();
-            if (profit != null) {
-                if (profit > 0) {
-                    winningTrades++;
-                }
-                totalProfit += profit;
-            }
+        try {
+            return ResponseEntity.ok(analyticsService.getSummary(Portfolios.parse(portfolio), start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
-        
-        // Рассчитываем процент успешных сделок
-        double winRate = closedTrades.isEmpty() ? 0 : 
-            Math.round((double) winningTrades / closedTrades.size() * 10000) / 100.0;
-        
-        Map<String, Object> summary = new HashMap<>();
-        summary.put("totalTrades", totalTrades);
-        summary.put("closedTrades", closedTrades.size());
-        summary.put("winningTrades", winningTrades);
-        summary.put("winRate", winRate);
-        summary.put("totalProfit", Math.round(totalProfit * 100) / 100.0);
-        
-        return ResponseEntity.ok(summary);
     }
     
     @GetMapping("/analytics/monthly")
     public ResponseEntity<?> getMonthlyAnalytics(
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
-        
-        List<Trade> allTrades = tradeRepository.findAll();
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String portfolio) {
         
         // Фильтрация по дате, если указаны параметры
         LocalDate start = startDate != null ? 
@@ -390,100 +481,79 @@ public class TradeController {
         LocalDate end = endDate != null ? 
             LocalDate.parse(endDate) : LocalDate.now();
         
-        // Создаем карту для хранения данных по месяцам
-        Map<String, Double> monthlyData = new HashMap<>();
-        
-        // Подготавливаем список всех месяцев в диапазоне
-        LocalDate current = start.withDayOfMonth(1);
-        DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
-        
-        while (!current.isAfter(end)) {
-            monthlyData.put(current.format(monthFormatter), 0.0);
-            current = current.plusMonths(1);
-        }
-        
-        // Заполняем данные по закрытым сделкам
-        for (Trade trade : allTrades) {
-            if (trade.getExitDate() != null) {
-                // Используем дату закрытия сделки
-                LocalDate exitDate = trade.getExitDate();
-                if (!exitDate.isBefore(start) && !exitDate.isAfter(end)) {
-                    String month = exitDate.format(monthFormatter);
-                    Double profit = trade.getProfit();
-                    if (profit != null) {
-                        monthlyData.put(month, monthlyData.getOrDefault(month, 0.0) + profit);
-                    }
-                }
-            }
-        }
-        
-        // Формируем список результатов по месяцам
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : monthlyData.entrySet()) {
-            Map<String, Object> monthData = new HashMap<>();
-            monthData.put("month", entry.getKey());
-            monthData.put("profit", Math.round(entry.getValue() * 100) / 100.0);
-            result.add(monthData);
+        try {
+            return ResponseEntity.ok(analyticsService.getMonthly(Portfolios.parse(portfolio), start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
-        
-        // Сортируем по месяцам
-        result.sort((a, b) -> ((String) a.get("month")).compareTo((String) b.get("month")));
-        
-        return ResponseEntity.ok(result);
     }
     
     @GetMapping("/analytics/symbols")
     public ResponseEntity<?> getSymbolAnalytics(
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
-        
-        List<Trade> allTrades = tradeRepository.findAll();
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String portfolio) {
         
         // Фильтрация по дате, если указаны параметры
+        LocalDate start = TradeAnalyticsService.MIN_DATE;
+        LocalDate end = TradeAnalyticsService.MAX_DATE;
         if (startDate != null || endDate != null) {
-            LocalDate start = startDate != null ? 
+            start = startDate != null ? 
                 LocalDate.parse(startDate) : LocalDate.of(1900, 1, 1);
-            LocalDate end = endDate != null ? 
+            end = endDate != null ? 
                 LocalDate.parse(endDate) : LocalDate.now();
-            
-            allTrades = allTrades.stream()
-                .filter(trade -> {
-                    // Для закрытых сделок используем дату закрытия, для открытых - дату открытия
-                    LocalDate date = trade.getExitDate() != null ? trade.getExitDate() : trade.getEntryDate();
-                    return !date.isBefore(start) && !date.isAfter(end);
-                })
-                .collect(Collectors.toList());
         }
         
-        // Группируем данные по символам
-        Map<String, Double> symbolData = new HashMap<>();
-        Map<String, Integer> symbolCount = new HashMap<>();
-        
-        for (Trade trade : allTrades) {
-            String symbol = trade.getSymbol();
-            symbolCount.put(symbol, symbolCount.getOrDefault(symbol, 0) + 1);
-            
-            if (trade.getExitDate() != null) {
-                Double profit = trade.getProfit();
-                if (profit != null) {
-                    symbolData.put(symbol, symbolData.getOrDefault(symbol, 0.0) + profit);
-                }
-            }
+        try {
+            return ResponseEntity.ok(analyticsService.getSymbols(Portfolios.parse(portfolio), start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
-        
-        // Формируем результат
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (String symbol : symbolData.keySet()) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("symbol", symbol);
-            data.put("profit", Math.round(symbolData.get(symbol) * 100) / 100.0);
-            data.put("count", symbolCount.get(symbol));
-            result.add(data);
+    }
+    
+    // Кривая капитала по дням, неделям или месяцам; по всему портфелю или одному тикеру
+    @GetMapping("/analytics/equity-curve")
+    public ResponseEntity<?> getEquityCurve(
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String granularity,
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) String portfolio) {
+        if (!equityCurveService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("message", "Дневные итоги еще не загружены"));
+        }
+        try {
+            LocalDate start = startDate != null ? LocalDate.parse(startDate) : null;
+            LocalDate end = endDate != null ? LocalDate.parse(endDate) : null;
+            return ResponseEntity.ok(equityCurveService.getEquityCurve(Portfolios.parse(portfolio),
+                symbol != null && !symbol.isBlank() ? symbol.trim().toUpperCase() : null,
+                start, end, EquityCurveGranularity.parse(granularity)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/analytics/open-positions")
+    public ResponseEntity<?> getOpenPositions(@RequestParam(required = false) String portfolio) {
+        if (!portfolioCache.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("message", "Кэш портфеля еще не загружен"));
+        }
+        try {
+            return ResponseEntity.ok(portfolioCache.getOpenPositions(Portfolios.parse(portfolio)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+    
+    // Сверка кэша портфеля с БД; при расхождении кэш перезагружается
+    @PostMapping("/analytics/cache/verify")
+    public ResponseEntity<?> verifyPortfolioCache() {
+        try {
+            return ResponseEntity.ok(portfolioCache.verify());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
         }
-        
-        // Сортируем по прибыли (по убыванию)
-        result.sort((a, b) -> Double.compare((Double) b.get("profit"), (Double) a.get("profit")));
-        
-        return ResponseEntity.ok(result);
     }
 }
@@ -0,0 +1,86 @@
+package com.example.diary.controller;
+
+import com.example.diary.importer.TradeImportJob;
+import com.example.diary.importer.TradeImportJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/trades/import-jobs")
+@CrossOrigin(origins = "*")
+public class TradeImportJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeImportJobController.class);
+
+    private static final int MAX_ERRORS_PAGE = 1000;
+
+    @Autowired
+    private TradeImportJobService importJobService;
+
+    // Фоновый импорт: тот же формат, что у /trades/bulk-import, ответ - id задачи сразу после загрузки файла
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> submitJson(InputStream body) {
+        return submit(body, "json");
+    }
+
+    @PostMapping(consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> submitCsv(InputStream body) {
+        return submit(body, "csv");
+    }
+
+    // Состояние импорта; ошибочные строки отдаются страницами
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") int errorsFrom,
+            @RequestParam(defaultValue = "100") int errorsLimit) {
+        if (errorsFrom < 0 || errorsLimit < 0 || errorsLimit > MAX_ERRORS_PAGE) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("message", "Размер страницы ошибок должен быть от 0 до " + MAX_ERRORS_PAGE));
+        }
+        Optional<TradeImportJob> job = importJobService.find(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.get().toResponse(errorsFrom, errorsLimit));
+    }
+
+    // Ход импорта через SSE: события status, progress и done
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String id) {
+        return importJobService.find(id)
+            .map(job -> ResponseEntity.ok(importJobService.subscribe(job)))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<?> submit(InputStream body, String format) {
+        try {
+            TradeImportJob job = importJobService.submit(body, format);
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{id}").buildAndExpand(job.getId()).toUri();
+            return ResponseEntity.accepted().location(location).body(job.toResponse(0, 0));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("message", "Очередь импорта заполнена, повторите позже"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("message", e.getMessage()));
+        } catch (IOException e) {
+            logger.error("Ошибка при загрузке файла импорта", e);
+            return ResponseEntity.badRequest().body(Map.of("message", "Ошибка загрузки файла импорта: " + e.getMessage()));
+        }
+    }
+}
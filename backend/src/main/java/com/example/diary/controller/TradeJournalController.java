@@ -0,0 +1,71 @@
+package com.example.diary.controller;
+
+import com.example.diary.journal.JournalEvent;
+import com.example.diary.journal.TradeJournal;
+import com.example.diary.service.TradeViews;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Журнал изменений сделок; не под /trades, потому что его ответы не определяются версией портфеля
+@RestController
+@RequestMapping("/journal")
+@CrossOrigin(origins = "*")
+public class TradeJournalController {
+
+    private static final int MAX_EVENTS = 1000;
+
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    // Сегменты, снимок, номер последней записи и как состояние восстановлено при старте
+    @GetMapping
+    public ResponseEntity<?> getStatus() {
+        return ResponseEntity.ok(tradeJournal.getStatus());
+    }
+
+    // История изменений после записи after: удаленные id и новые состояния сделок
+    @GetMapping("/events")
+    public ResponseEntity<?> getEvents(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_EVENTS) {
+            return ResponseEntity.badRequest().body(Map.of("message", "limit должен быть от 1 до " + MAX_EVENTS));
+        }
+        try {
+            List<Map<String, Object>> events = new ArrayList<>();
+            for (JournalEvent event : tradeJournal.events(after, limit)) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("sequence", event.sequence());
+                data.put("timestamp", event.timestamp());
+                data.put("type", event.type());
+                data.put("removedIds", event.removedIds());
+                data.put("added", TradeViews.summaries(event.added()));
+                events.add(data);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("after", after);
+            result.put("events", events);
+            result.put("next", events.isEmpty() ? after : events.get(events.size() - 1).get("sequence"));
+            return ResponseEntity.ok(result);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    // Свернуть закрытые сегменты в новый снимок сейчас
+    @PostMapping("/compact")
+    public ResponseEntity<?> compact() {
+        try {
+            return ResponseEntity.ok(tradeJournal.compact());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
+    }
+}
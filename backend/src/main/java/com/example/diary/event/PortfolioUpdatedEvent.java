@@ -0,0 +1,20 @@
+package com.example.diary.event;
+
+/**
+ * Изменение сделок вместе с версией портфеля, которую оно дало.
+ * Публикуется {@link PortfolioVersion} после {@link TradeChangeEvent}, когда все кэши уже обновлены
+ * и версия увеличена: подписчики могут сразу читать агрегаты новой версии.
+ */
+public class PortfolioUpdatedEvent {
+
+    private final long version;
+    private final TradeChangeEvent change;
+
+    public PortfolioUpdatedEvent(long version, TradeChangeEvent change) {
+        this.version = version;
+        this.change = change;
+    }
+
+    public long getVersion() { return version; }
+    public TradeChangeEvent getChange() { return change; }
+}
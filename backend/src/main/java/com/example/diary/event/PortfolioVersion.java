@@ -0,0 +1,55 @@
+package com.example.diary.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версия портфеля: растет на единицу после каждого изменения сделок.
+ * Изменения публикуются только через {@link #publish}: версия увеличивается, когда все подписчики
+ * {@link TradeChangeEvent} уже обновили свои кэши, поэтому ответ, посчитанный при новой версии,
+ * всегда отражает изменение. Вместе с {@link #getBootId()} версия однозначно определяет состояние
+ * сделок и после перезапуска приложения. После увеличения версии публикуется {@link PortfolioUpdatedEvent}.
+ * <p>
+ * Публикуется уже зафиксированное изменение, поэтому ошибка подписчика не выходит за пределы {@link #publish}:
+ * она записывается в лог, версия все равно растет. Вызывающий не должен принимать такую ошибку за ошибку записи
+ * и повторять ее - это создало бы дубликаты.
+ */
+@Component
+public class PortfolioVersion {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortfolioVersion.class);
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final long bootId = System.currentTimeMillis();
+    private final AtomicLong version = new AtomicLong();
+
+    public void publish(TradeChangeEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            logger.error("Подписчик изменения {} завершился с ошибкой, его данные могут отставать от БД",
+                event.getType(), e);
+        }
+        long next = version.incrementAndGet();
+        try {
+            eventPublisher.publishEvent(new PortfolioUpdatedEvent(next, event));
+        } catch (RuntimeException e) {
+            logger.error("Ошибка рассылки версии портфеля {}", next, e);
+        }
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    public long getBootId() {
+        return bootId;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.diary.event;
+
+import com.example.diary.model.Trade;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Изменение набора сделок после успешной записи в БД.
+ * Любое изменение описывается как удаление старых состояний сделок и добавление новых,
+ * поэтому подписчикам с инкрементальными агрегатами достаточно вычесть removed и прибавить added.
+ */
+public class TradeChangeEvent {
+
+    public enum Type { BOUGHT, SOLD, DELETED, IMPORTED }
+
+    private final Type type;
+    private final List<Trade> removed;
+    private final List<Trade> added;
+
+    private TradeChangeEvent(Type type, List<Trade> removed, List<Trade> added) {
+        this.type = type;
+        this.removed = removed;
+        this.added = added;
+    }
+
+    public static TradeChangeEvent bought(Trade trade) {
+        return new TradeChangeEvent(Type.BOUGHT, Collections.emptyList(), List.of(trade));
+    }
+
+    public static TradeChangeEvent sold(Trade before, Trade after) {
+        return new TradeChangeEvent(Type.SOLD, List.of(before), List.of(after));
+    }
+
+    public static TradeChangeEvent sold(List<Trade> before, List<Trade> after) {
+        return new TradeChangeEvent(Type.SOLD, List.copyOf(before), List.copyOf(after));
+    }
+
+    public static TradeChangeEvent deleted(List<Trade> trades) {
+        return new TradeChangeEvent(Type.DELETED, List.copyOf(trades), Collections.emptyList());
+    }
+
+    public static TradeChangeEvent deleted(Trade trade) {
+        return new TradeChangeEvent(Type.DELETED, List.of(trade), Collections.emptyList());
+    }
+
+    public static TradeChangeEvent imported(List<Trade> trades) {
+        return new TradeChangeEvent(Type.IMPORTED, Collections.emptyList(), List.copyOf(trades));
+    }
+
+    public Type getType() { return type; }
+    public List<Trade> getRemoved() { return removed; }
+    public List<Trade> getAdded() { return added; }
+}
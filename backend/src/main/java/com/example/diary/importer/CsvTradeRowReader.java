@@ -0,0 +1,124 @@
+package com.example.diary.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Читает CSV с заголовком, названия колонок совпадают с ключами JSON-импорта
+ * (symbol, entryPrice, quantity, marginAmount, entryDate, exitDate, exitPrice, notes).
+ * Разделитель (запятая или точка с запятой) определяется по заголовку,
+ * значения в кавычках могут содержать разделители и переводы строк.
+ */
+public class CsvTradeRowReader implements TradeRowReader {
+
+    private final BufferedReader reader;
+    private final StringBuilder cell = new StringBuilder();
+    private final List<String> cells = new ArrayList<>();
+    private String[] columns;
+    private char delimiter = ',';
+    private int rowNumber;
+
+    public CsvTradeRowReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean next(TradeImportRow row) throws IOException {
+        if (columns == null && !readHeader()) {
+            return false;
+        }
+        if (!readRecord()) {
+            return false;
+        }
+
+        row.reset(++rowNumber);
+        int count = Math.min(cells.size(), columns.length);
+        for (int i = 0; i < count; i++) {
+            String value = cells.get(i).trim();
+            row.set(columns[i], value.isEmpty() ? null : value);
+        }
+        return true;
+    }
+
+    private boolean readHeader() throws IOException {
+        String header = reader.readLine();
+        while (header != null && header.isBlank()) {
+            header = reader.readLine();
+        }
+        if (header == null) {
+            return false;
+        }
+        // Убираем BOM, который добавляет Excel
+        if (!header.isEmpty() && header.charAt(0) == '\uFEFF') {
+            header = header.substring(1);
+        }
+        delimiter = header.indexOf(';') >= 0 && header.indexOf(',') < 0 ? ';' : ',';
+
+        String[] names = header.split(String.valueOf(delimiter), -1);
+        columns = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = names[i].trim().replace("\"", "");
+        }
+        return true;
+    }
+
+    // Читает одну запись в cells, пропуская пустые строки
+    private boolean readRecord() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+        } while (line.isBlank());
+
+        cells.clear();
+        cell.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            cell.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        cell.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == delimiter) {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                } else {
+                    cell.append(c);
+                }
+            }
+            if (!quoted) {
+                break;
+            }
+            // Значение в кавычках продолжается на следующей строке
+            line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            cell.append('\n');
+        }
+        cells.add(cell.toString());
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.diary.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Читает документ вида {@code {"trades": [{...}, ...]}} потоковым парсером Jackson,
+ * не строя промежуточных Map для каждой строки.
+ */
+public class JsonTradeRowReader implements TradeRowReader {
+
+    private final JsonParser parser;
+    private boolean started;
+    private boolean finished;
+    private int rowNumber;
+
+    public JsonTradeRowReader(JsonFactory jsonFactory, InputStream in) throws IOException {
+        this.parser = jsonFactory.createParser(in);
+    }
+
+    @Override
+    public boolean next(TradeImportRow row) throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            if (!moveToTradesArray()) {
+                finished = true;
+                return false;
+            }
+        }
+
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY || token == null) {
+            finished = true;
+            return false;
+        }
+
+        row.reset(++rowNumber);
+        if (token != JsonToken.START_OBJECT) {
+            // Элемент массива не объект - строка останется пустой и не пройдет проверку
+            parser.skipChildren();
+            return true;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            row.set(field, readValue(parser.nextToken()));
+        }
+        return true;
+    }
+
+    private boolean moveToTradesArray() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Ожидается объект с полем trades");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("trades".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private Object readValue(JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return parser.getBooleanValue();
+            case VALUE_NULL:
+                return null;
+            default:
+                parser.skipChildren();
+                return TradeImportRow.UNSUPPORTED;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
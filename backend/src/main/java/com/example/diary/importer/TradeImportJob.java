@@ -0,0 +1,105 @@
+package com.example.diary.importer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Состояние фонового импорта. Изменяется потоком импорта, читается запросами опроса и SSE,
+ * поэтому все обращения синхронизированы на экземпляре.
+ * Ошибочные строки копятся по мере импорта; после завершения заменяются итоговым отчетом в порядке строк.
+ */
+public class TradeImportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String format;
+    private final Instant createdAt = Instant.now();
+
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private int processedRows;
+    private int importedCount;
+    private List<Map<String, String>> errors = new ArrayList<>();
+    private String message;
+
+    TradeImportJob(String id, String format) {
+        this.id = id;
+        this.format = format;
+    }
+
+    public String getId() { return id; }
+    public String getFormat() { return format; }
+
+    public synchronized Status getStatus() { return status; }
+    public synchronized Instant getFinishedAt() { return finishedAt; }
+
+    public synchronized boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    synchronized void start() {
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+    }
+
+    /**
+     * Переносит промежуточный итог и возвращает ошибки, появившиеся с прошлого вызова.
+     */
+    synchronized List<Map<String, String>> progress(int processedRows, TradeImportResult result) {
+        this.processedRows = processedRows;
+        this.importedCount = result.getImportedCount();
+        List<Map<String, String>> added = new ArrayList<>(result.getErrors().subList(errors.size(), result.getErrorCount()));
+        errors.addAll(added);
+        return added;
+    }
+
+    synchronized void complete(TradeImportResult result) {
+        importedCount = result.getImportedCount();
+        errors = new ArrayList<>(result.getErrors());
+        if (result.isEmpty()) {
+            message = "Список сделок пуст";
+        }
+        // Прерванный импорт - ошибка, но с числом уже сохраненных строк
+        if (result.isAborted()) {
+            message = result.getAbortMessage();
+        }
+        status = result.isAborted() ? Status.FAILED : Status.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    synchronized void fail(String message) {
+        this.message = message;
+        status = Status.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Состояние задачи с частью ошибок [errorsFrom, errorsFrom + errorsLimit).
+     */
+    public synchronized Map<String, Object> toResponse(int errorsFrom, int errorsLimit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", id);
+        response.put("format", format);
+        response.put("status", status);
+        response.put("processedRows", processedRows);
+        response.put("importedCount", importedCount);
+        response.put("errorCount", errors.size());
+        response.put("createdAt", createdAt.toString());
+        response.put("startedAt", startedAt != null ? startedAt.toString() : null);
+        response.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        if (message != null) {
+            response.put("message", message);
+        }
+        int from = Math.min(Math.max(errorsFrom, 0), errors.size());
+        int to = (int) Math.min((long) from + Math.max(errorsLimit, 0), errors.size());
+        if (to > from) {
+            response.put("errors", new ArrayList<>(errors.subList(from, to)));
+        }
+        return response;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.diary.importer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновый импорт сделок. Тело запроса сначала сохраняется во временный файл, чтобы поток Tomcat
+ * освободился сразу после загрузки, затем импорт выполняется {@link TradeImportService} на отдельном
+ * ограниченном пуле ({@code trades.import.jobs.threads} потоков и очередь на
+ * {@code trades.import.jobs.queue-capacity} задач). Пул не делит потоки и соединения с запросами
+ * к /trades и аналитике: одновременно импорт держит не больше threads соединений с БД.
+ * Ход импорта можно опрашивать или получать через SSE; завершенные задачи хранятся
+ * {@code trades.import.jobs.retention-minutes} минут.
+ */
+@Service
+public class TradeImportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeImportJobService.class);
+
+    @Autowired
+    private TradeImportService tradeImportService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${trades.import.jobs.threads:2}")
+    private int threads;
+
+    @Value("${trades.import.jobs.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${trades.import.jobs.max-upload-bytes:268435456}")
+    private long maxUploadBytes;
+
+    @Value("${trades.import.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${trades.import.jobs.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    private final Map<String, TradeImportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "trade-import-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        Gauge.builder("trades.import.jobs", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Фоновые импорты").tag("state", "running").register(meterRegistry);
+        Gauge.builder("trades.import.jobs", executor, pool -> pool.getQueue().size())
+            .description("Фоновые импорты").tag("state", "queued").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Сохраняет тело во временный файл и ставит импорт в очередь.
+     *
+     * @throws IllegalArgumentException файл больше {@code trades.import.jobs.max-upload-bytes}
+     * @throws RejectedExecutionException очередь импорта заполнена
+     */
+    public TradeImportJob submit(InputStream body, String format) throws IOException {
+        evictFinished();
+        Path file = Files.createTempFile("trade-import-", "." + format);
+        try {
+            spool(body, file);
+            TradeImportJob job = new TradeImportJob(UUID.randomUUID().toString(), format);
+            jobs.put(job.getId(), job);
+            try {
+                executor.execute(() -> run(job, file));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.getId());
+                throw e;
+            }
+            logger.info("Импорт {} поставлен в очередь: {} байт, формат {}", job.getId(), Files.size(file), format);
+            return job;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    public Optional<TradeImportJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Подписка на ход импорта: сразу отправляется текущее состояние (событие status), затем
+     * progress с новыми ошибочными строками после каждого пакета и done по завершении.
+     */
+    public SseEmitter subscribe(TradeImportJob job) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Map<String, Object> snapshot;
+        boolean finished;
+        // Под монитором задачи: завершение не может проскочить между проверкой и подпиской
+        synchronized (job) {
+            finished = job.isFinished();
+            if (!finished) {
+                List<SseEmitter> emitters = subscribers.computeIfAbsent(job.getId(), key -> new CopyOnWriteArrayList<>());
+                emitters.add(emitter);
+                emitter.onCompletion(() -> emitters.remove(emitter));
+                emitter.onTimeout(() -> emitters.remove(emitter));
+                emitter.onError(error -> emitters.remove(emitter));
+            }
+            snapshot = job.toResponse(0, 0);
+        }
+        if (send(emitter, "status", snapshot) && finished) {
+            send(emitter, "done", snapshot);
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void run(TradeImportJob job, Path file) {
+        job.start();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            TradeImportProgress progress = (processedRows, result) -> {
+                Map<String, Object> event;
+                synchronized (job) {
+                    List<Map<String, String>> added = job.progress(processedRows, result);
+                    event = job.toResponse(0, 0);
+                    event.put("errors", added);
+                }
+                // Отправка вне монитора: медленный клиент не задерживает опрос состояния
+                broadcast(job, "progress", event);
+            };
+            TradeImportResult result = "csv".equals(job.getFormat())
+                ? tradeImportService.importCsv(in, progress)
+                : tradeImportService.importJson(in, progress);
+            job.complete(result);
+        } catch (Exception e) {
+            logger.error("Ошибка фонового импорта {}", job.getId(), e);
+            job.fail("Ошибка массового импорта сделок: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Не удалось удалить временный файл импорта {}", file, e);
+            }
+            finish(job);
+        }
+    }
+
+    private void finish(TradeImportJob job) {
+        List<SseEmitter> emitters;
+        Map<String, Object> snapshot;
+        synchronized (job) {
+            emitters = subscribers.remove(job.getId());
+            snapshot = job.toResponse(0, 0);
+        }
+        if (emitters != null) {
+            broadcast(emitters, "done", snapshot);
+            emitters.forEach(SseEmitter::complete);
+        }
+    }
+
+    private void broadcast(TradeImportJob job, String name, Object data) {
+        List<SseEmitter> emitters = subscribers.get(job.getId());
+        if (emitters != null) {
+            broadcast(emitters, name, data);
+        }
+    }
+
+    private void broadcast(List<SseEmitter> emitters, String name, Object data) {
+        for (SseEmitter emitter : emitters) {
+            if (!send(emitter, name, data)) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Клиент отключился - импорт продолжается без него; запрос завершит контейнер
+            return false;
+        }
+    }
+
+    private void spool(InputStream body, Path file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int read; (read = body.read(buffer)) != -1; ) {
+                total += read;
+                if (total > maxUploadBytes) {
+                    throw new IllegalArgumentException("Файл импорта больше " + maxUploadBytes + " байт");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private void evictFinished() {
+        Instant threshold = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.diary.importer;
+
+/**
+ * Получатель промежуточных итогов импорта. Вызывается в потоке импорта после каждых
+ * {@code trades.import.batch-size} прочитанных строк.
+ */
+@FunctionalInterface
+public interface TradeImportProgress {
+
+    TradeImportProgress NONE = (processedRows, result) -> { };
+
+    /**
+     * @param processedRows сколько строк прочитано
+     * @param result        текущий итог; действителен только внутри вызова
+     */
+    void onProgress(int processedRows, TradeImportResult result);
+}
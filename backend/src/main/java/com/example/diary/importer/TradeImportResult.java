@@ -0,0 +1,69 @@
+package com.example.diary.importer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Итог импорта: количество сохраненных строк и построчный отчет об ошибках.
+ * Если тело перестало читаться на середине (синтаксическая ошибка, обрыв загрузки), импорт прерывается:
+ * строки до места ошибки уже сохранены и учтены в importedCount, а сама ошибка попадает в отчет
+ * отдельной строкой и в поле message.
+ */
+public class TradeImportResult {
+
+    private int importedCount;
+    private final List<Map<String, String>> errors = new ArrayList<>();
+    private String abortMessage;
+
+    void addImported(int count) {
+        importedCount += count;
+    }
+
+    void addError(int rowNumber, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("row", String.valueOf(rowNumber));
+        error.put("message", message);
+        errors.add(error);
+    }
+
+    void abort(int rowNumber, String message) {
+        abortMessage = "Импорт прерван на строке " + rowNumber + ": " + message
+            + ". Строки до нее обработаны";
+        addError(rowNumber, message);
+    }
+
+    // Строки из пакетов, сохраненных по одной, попадают в отчет позже - восстанавливаем порядок
+    void sortErrors() {
+        errors.sort(Comparator.comparingInt(error -> Integer.parseInt(error.get("row"))));
+    }
+
+    public int getImportedCount() { return importedCount; }
+    public int getErrorCount() { return errors.size(); }
+    public List<Map<String, String>> getErrors() { return errors; }
+    public String getAbortMessage() { return abortMessage; }
+
+    public boolean isAborted() {
+        return abortMessage != null;
+    }
+
+    public boolean isEmpty() {
+        return importedCount == 0 && errors.isEmpty();
+    }
+
+    public Map<String, Object> toResponse() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("importedCount", importedCount);
+        response.put("errorCount", errors.size());
+        if (!errors.isEmpty()) {
+            response.put("errors", errors);
+        }
+        if (isAborted()) {
+            response.put("aborted", true);
+            response.put("message", abortMessage);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.diary.importer;
+
+import com.example.diary.model.Portfolios;
+import com.example.diary.model.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Сырые значения одной строки импорта в том виде, в каком их прочитал парсер:
+ * строки, числа или null. Экземпляр переиспользуется читателем для каждой строки.
+ */
+public class TradeImportRow {
+
+    // Значение-заглушка для вложенных объектов и массивов на месте скалярного поля
+    public static final Object UNSUPPORTED = new Object();
+
+    private int rowNumber;
+    private Object symbol;
+    private Object entryPrice;
+    private Object quantity;
+    private Object marginAmount;
+    private Object entryDate;
+    private Object exitDate;
+    private Object exitPrice;
+    private Object notes;
+    private boolean notesPresent;
+    private Object portfolioId;
+
+    public void reset(int rowNumber) {
+        this.rowNumber = rowNumber;
+        symbol = null;
+        entryPrice = null;
+        quantity = null;
+        marginAmount = null;
+        entryDate = null;
+        exitDate = null;
+        exitPrice = null;
+        notes = null;
+        notesPresent = false;
+        portfolioId = null;
+    }
+
+    /**
+     * Записывает значение поля по имени ключа JSON или заголовка CSV. Неизвестные поля игнорируются.
+     */
+    public void set(String field, Object value) {
+        switch (field) {
+            case "symbol" -> symbol = value;
+            case "entryPrice" -> entryPrice = value;
+            case "quantity" -> quantity = value;
+            case "marginAmount" -> marginAmount = value;
+            case "entryDate" -> entryDate = value;
+            case "exitDate" -> exitDate = value;
+            case "exitPrice" -> exitPrice = value;
+            case "portfolioId" -> portfolioId = value;
+            case "notes" -> {
+                notes = value;
+                notesPresent = true;
+            }
+            default -> {
+            }
+        }
+    }
+
+    public int getRowNumber() { return rowNumber; }
+
+    /**
+     * Преобразует сырые значения в сделку. Ошибки формата и отсутствие обязательных полей
+     * сообщаются через IllegalArgumentException с текстом для отчета об импорте.
+     */
+    public Trade toTrade() {
+        Trade trade = new Trade();
+
+        // Обязательные поля
+        if (!(symbol == null || symbol instanceof String)) {
+            throw new IllegalArgumentException("Неверный формат тикера");
+        }
+        String symbolValue = (String) symbol;
+        if (symbolValue == null || symbolValue.trim().isEmpty()) {
+            throw new IllegalArgumentException("Тикер не может быть пустым");
+        }
+        trade.setSymbol(symbolValue.trim().toUpperCase());
+
+        // Цена входа
+        if (entryPrice == null) {
+            throw new IllegalArgumentException("Цена входа не может быть пустой");
+        }
+        trade.setEntryPrice(toDecimal(entryPrice, "Неверный формат цены входа"));
+
+        // Количество
+        if (quantity == null) {
+            throw new IllegalArgumentException("Количество не может быть пустым");
+        }
+        if (quantity instanceof String) {
+            trade.setQuantity(Integer.parseInt((String) quantity));
+        } else if (quantity instanceof Number) {
+            trade.setQuantity(((Number) quantity).intValue());
+        } else {
+            throw new IllegalArgumentException("Неверный формат количества");
+        }
+
+        // Процент маржи
+        if (marginAmount == null) {
+            throw new IllegalArgumentException("Процент маржи не может быть пустым");
+        }
+        trade.setMarginAmount(toDecimal(marginAmount, "Неверный формат процента маржи"));
+
+        // Дата входа
+        if (entryDate == null) {
+            throw new IllegalArgumentException("Дата входа не может быть пустой");
+        }
+        if (!(entryDate instanceof String)) {
+            throw new IllegalArgumentException("Неверный формат даты входа");
+        }
+        trade.setEntryDate(LocalDate.parse((String) entryDate));
+
+        // Опциональные поля
+        if (notesPresent) {
+            if (notes == UNSUPPORTED) {
+                throw new IllegalArgumentException("Неверный формат заметок");
+            }
+            trade.setNotes(notes != null ? notes.toString() : null);
+        }
+
+        // Портфель; без него сделка попадает в портфель по умолчанию
+        if (!(portfolioId == null || portfolioId instanceof String)) {
+            throw new IllegalArgumentException("Неверный формат портфеля");
+        }
+        trade.setPortfolioId(Portfolios.orDefault((String) portfolioId));
+
+        // Дата выхода (если есть); цена выхода учитывается только вместе с ней
+        if (exitDate instanceof String && !((String) exitDate).isEmpty()) {
+            trade.setExitDate(LocalDate.parse((String) exitDate));
+            if (exitPrice instanceof String && !((String) exitPrice).isEmpty()) {
+                trade.setExitPrice(new BigDecimal((String) exitPrice));
+            } else if (exitPrice instanceof Number) {
+                trade.setExitPrice(toDecimal(exitPrice, "Неверный формат цены выхода"));
+            }
+        } else if (exitDate != null && !(exitDate instanceof String)) {
+            throw new IllegalArgumentException("Неверный формат даты выхода");
+        }
+
+        return trade;
+    }
+
+    private static BigDecimal toDecimal(Object value, String formatError) {
+        if (value instanceof String) {
+            return new BigDecimal((String) value);
+        } else if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        throw new IllegalArgumentException(formatError);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.diary.importer;
+
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeBatchWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Массовый импорт сделок: потоковый разбор, проверка строк и пакетная запись.
+ * Каждый пакет из {@code trades.import.batch-size} строк сохраняется в своей транзакции
+ * одним JDBC batch через {@link TradeBatchWriter}, без событий и проверок контекста персистентности -
+ * строки к этому моменту уже проверены {@link TradeImportValidator}. Если пакет не удалось сохранить, его строки сохраняются по одной,
+ * чтобы в отчете оказались только действительно ошибочные строки.
+ * Если тело перестает читаться на середине, уже прочитанные строки дописываются, а итог помечается
+ * прерванным ({@link TradeImportResult#isAborted()}) - вызывающий видит, сколько строк уже сохранено,
+ * и повторный импорт всего файла не задвоит сделки незаметно.
+ * Итог каждого импорта добавляется к счетчику {@code trades.import.rows} с тегами result и format.
+ */
+@Service
+public class TradeImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeImportService.class);
+
+    @Autowired
+    private TradeImportValidator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TradeBatchWriter batchWriter;
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${trades.import.batch-size:500}")
+    private int batchSize;
+
+    public TradeImportResult importJson(InputStream in) throws IOException {
+        return importJson(in, TradeImportProgress.NONE);
+    }
+
+    public TradeImportResult importJson(InputStream in, TradeImportProgress progress) throws IOException {
+        try (TradeRowReader reader = new JsonTradeRowReader(objectMapper.getFactory(), in)) {
+            return countRows(importRows(reader, progress), "json");
+        }
+    }
+
+    public TradeImportResult importCsv(InputStream in) throws IOException {
+        return importCsv(in, TradeImportProgress.NONE);
+    }
+
+    public TradeImportResult importCsv(InputStream in, TradeImportProgress progress) throws IOException {
+        try (TradeRowReader reader = new CsvTradeRowReader(in)) {
+            return countRows(importRows(reader, progress), "csv");
+        }
+    }
+
+    public TradeImportResult importRows(TradeRowReader reader) throws IOException {
+        return importRows(reader, TradeImportProgress.NONE);
+    }
+
+    public TradeImportResult importRows(TradeRowReader reader, TradeImportProgress progress) throws IOException {
+        TradeImportResult result = new TradeImportResult();
+        TradeImportRow row = new TradeImportRow();
+        List<Trade> chunk = new ArrayList<>(batchSize);
+        int[] rowNumbers = new int[batchSize];
+        int processedRows = 0;
+
+        while (true) {
+            try {
+                if (!reader.next(row)) {
+                    break;
+                }
+            } catch (IOException e) {
+                // Строка, на которой оборвался разбор, не учитывается; прочитанные до нее сохраняем
+                if (!chunk.isEmpty()) {
+                    persistChunk(chunk, rowNumbers, result);
+                    chunk.clear();
+                }
+                result.abort(processedRows + 1, e.getMessage());
+                logger.warn("Импорт прерван на строке {}: {}", processedRows + 1, e.getMessage());
+                break;
+            }
+            try {
+                Trade trade = validator.validate(row);
+                rowNumbers[chunk.size()] = row.getRowNumber();
+                chunk.add(trade);
+            } catch (RuntimeException e) {
+                result.addError(row.getRowNumber(), e.getMessage());
+                logger.debug("Ошибка при импорте строки {}: {}", row.getRowNumber(), e.getMessage());
+            }
+
+            if (chunk.size() == batchSize) {
+                persistChunk(chunk, rowNumbers, result);
+                chunk.clear();
+            }
+            if (++processedRows % batchSize == 0) {
+                progress.onProgress(processedRows, result);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            persistChunk(chunk, rowNumbers, result);
+        }
+        progress.onProgress(processedRows, result);
+
+        result.sortErrors();
+        logger.info("Импорт завершен: сохранено {}, ошибок {}", result.getImportedCount(), result.getErrorCount());
+        return result;
+    }
+
+    private TradeImportResult countRows(TradeImportResult result, String format) {
+        meterRegistry.counter("trades.import.rows", "result", "imported", "format", format)
+            .increment(result.getImportedCount());
+        meterRegistry.counter("trades.import.rows", "result", "failed", "format", format)
+            .increment(result.getErrorCount());
+        return result;
+    }
+
+    private void persistChunk(List<Trade> chunk, int[] rowNumbers, TradeImportResult result) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<Trade> saved;
+        try {
+            transaction.executeWithoutResult(status -> batchWriter.insertAll(chunk));
+            saved = chunk;
+        } catch (RuntimeException chunkError) {
+            logger.warn("Пакет из {} строк не сохранен, повтор по одной строке: {}",
+                chunk.size(), chunkError.getMessage());
+            meterRegistry.counter("trades.import.chunk.retries").increment();
+            saved = new ArrayList<>();
+            // Id, назначенные пакету до отката, сохраняются за строками: повтор по одной строке
+            // не берет на каждую строку новый блок из trades_seq
+            for (int i = 0; i < chunk.size(); i++) {
+                Trade trade = chunk.get(i);
+                try {
+                    transaction.executeWithoutResult(status -> batchWriter.insertAll(List.of(trade)));
+                    saved.add(trade);
+                } catch (RuntimeException e) {
+                    result.addError(rowNumbers[i], e.getMessage());
+                    logger.debug("Ошибка при импорте строки {}: {}", rowNumbers[i], e.getMessage());
+                }
+            }
+        }
+        // Публикация - после всех записей и вне их обработки ошибок: сохраненные строки уже в БД
+        result.addImported(saved.size());
+        if (!saved.isEmpty()) {
+            portfolioVersion.publish(TradeChangeEvent.imported(saved));
+        }
+    }
+}
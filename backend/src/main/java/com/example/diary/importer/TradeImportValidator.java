@@ -0,0 +1,51 @@
+package com.example.diary.importer;
+
+import com.example.diary.model.Trade;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Path;
+import jakarta.validation.TraversableResolver;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.springframework.stereotype.Component;
+
+import java.lang.annotation.ElementType;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка строки импорта до записи в БД: разбор значений и ограничения из аннотаций {@link Trade}.
+ * Строки, прошедшие проверку, при сохранении уже не отклоняются валидацией JPA.
+ */
+@Component
+public class TradeImportValidator {
+
+    // Новые сделки не связаны с контекстом персистентности, поэтому проверка достижимости
+    // свойств через JPA (по умолчанию при наличии JPA) здесь только тратит время на каждую строку
+    private final Validator validator = Validation.byDefaultProvider()
+        .configure()
+        .traversableResolver(new TraversableResolver() {
+            @Override
+            public boolean isReachable(Object bean, Path.Node node, Class<?> rootType, Path path, ElementType type) {
+                return true;
+            }
+
+            @Override
+            public boolean isCascadable(Object bean, Path.Node node, Class<?> rootType, Path path, ElementType type) {
+                return true;
+            }
+        })
+        .buildValidatorFactory()
+        .getValidator();
+
+    public Trade validate(TradeImportRow row) {
+        Trade trade = row.toTrade();
+        Set<ConstraintViolation<Trade>> violations = validator.validate(trade);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; ")));
+        }
+        return trade;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.diary.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Потоковый источник строк импорта. Строки читаются по одной, весь файл в памяти не держится.
+ */
+public interface TradeRowReader extends Closeable {
+
+    /**
+     * Заполняет переданную строку значениями следующей записи.
+     *
+     * @return false, если записей больше нет
+     */
+    boolean next(TradeImportRow row) throws IOException;
+}
@@ -0,0 +1,163 @@
+package com.example.diary.interest;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Расчет процентов по одной сделке без построения записи на каждый день: итог в замкнутом виде
+ * (сумма за день × число дней) и график периодами с одинаковой суммой за день. Суммы считаются в копейках,
+ * сумма за день округляется так же, как в {@link Trade#getDailyInterestAmount()}.
+ * <p>
+ * Агрегаты по колонкам и лотам (кривая капитала, позиции, сценарии, статистика) работают с копейками
+ * и номерами дней без LocalDate и считают то же произведение напрямую через
+ * {@link TradeCalculator#totalInterestCents(long, long)}.
+ */
+public final class InterestEngine {
+
+    private InterestEngine() {
+    }
+
+    /**
+     * Сегменты ставки сделки для графика: пока ставка хранится одна на сделку, это один сегмент с даты входа.
+     */
+    public static List<RateSegment> segmentsOf(Trade trade) {
+        return Collections.singletonList(new RateSegment(trade.getEntryDate(), trade.getMarginAmount().doubleValue()));
+    }
+
+    /**
+     * Проценты за дни [entryDate, exitDate) по одной ставке в сотых долях процента, в копейках:
+     * сумма за день × число дней. Через этот метод считают {@link Trade#getTotalInterest()} и представление сделки.
+     */
+    public static long totalInterestCents(long totalCostCents, long rateHundredths,
+                                          LocalDate entryDate, LocalDate exitDate) {
+        return TradeCalculator.totalInterestCents(TradeCalculator.dailyInterestCents(totalCostCents, rateHundredths),
+            ChronoUnit.DAYS.between(entryDate, exitDate));
+    }
+
+    /**
+     * График за дни [start, end] включительно, свернутый в периоды.
+     * Новый период начинается при смене ставки и, для {@link InterestGranularity#MONTH}, с каждого месяца.
+     */
+    public static List<InterestPeriod> periods(long totalCostCents, List<RateSegment> segments,
+                                               LocalDate start, LocalDate end, InterestGranularity granularity) {
+        List<InterestPeriod> result = new ArrayList<>();
+        if (start == null || end == null || end.isBefore(start)) {
+            return result;
+        }
+
+        Rates rates = new Rates(totalCostCents, segments);
+        LocalDate cursor = start;
+        while (!cursor.isAfter(end)) {
+            int index = rates.indexAt(cursor);
+            LocalDate boundary = end;
+            LocalDate next = rates.nextChange(index);
+            if (next != null && !next.isAfter(boundary)) {
+                boundary = next.minusDays(1);
+            }
+            if (granularity == InterestGranularity.MONTH) {
+                LocalDate monthEnd = cursor.withDayOfMonth(cursor.lengthOfMonth());
+                if (monthEnd.isBefore(boundary)) {
+                    boundary = monthEnd;
+                }
+            }
+
+            long days = ChronoUnit.DAYS.between(cursor, boundary) + 1;
+            long daily = rates.daily[index];
+            result.add(new InterestPeriod(cursor, boundary, days, rates.rate[index], Money.toDouble(daily),
+                Money.toDouble(TradeCalculator.totalInterestCents(daily, days))));
+            cursor = boundary.plusDays(1);
+        }
+        return result;
+    }
+
+    /**
+     * Страница ежедневного списка за дни [start, end] включительно; строится только запрошенная часть.
+     */
+    public static List<Trade.DailyInterest> dailyPage(long totalCostCents, List<RateSegment> segments,
+                                                      LocalDate start, LocalDate end, int page, int size) {
+        List<Trade.DailyInterest> result = new ArrayList<>();
+        long totalDays = totalDays(start, end);
+        long from = (long) page * size;
+        if (from >= totalDays) {
+            return result;
+        }
+        long to = Math.min(from + size, totalDays);
+
+        Rates rates = new Rates(totalCostCents, segments);
+        LocalDate date = start.plusDays(from);
+        int index = rates.indexAt(date);
+        for (long k = from; k < to; k++) {
+            LocalDate next = rates.nextChange(index);
+            if (next != null && !date.isBefore(next)) {
+                index = rates.indexAt(date);
+            }
+            Trade.DailyInterest daily = new Trade.DailyInterest();
+            daily.setDate(date);
+            daily.setAmount(Money.toDouble(rates.daily[index]));
+            result.add(daily);
+            date = date.plusDays(1);
+        }
+        return result;
+    }
+
+    public static long totalDays(LocalDate start, LocalDate end) {
+        if (start == null || end == null || end.isBefore(start)) {
+            return 0;
+        }
+        return ChronoUnit.DAYS.between(start, end) + 1;
+    }
+
+    // Сегменты, отсортированные по дате, и сумма за день в копейках для каждого
+    private static final class Rates {
+        private final LocalDate[] from;
+        private final double[] rate;
+        private final long[] daily;
+
+        Rates(long totalCostCents, List<RateSegment> segments) {
+            if (segments == null || segments.isEmpty()) {
+                throw new IllegalArgumentException("Не задана ставка");
+            }
+            List<RateSegment> sorted = new ArrayList<>(segments);
+            sorted.sort(Comparator.comparing(RateSegment::getFrom));
+            int n = sorted.size();
+            from = new LocalDate[n];
+            rate = new double[n];
+            daily = new long[n];
+            for (int i = 0; i < n; i++) {
+                RateSegment segment = sorted.get(i);
+                from[i] = segment.getFrom();
+                rate[i] = segment.getAnnualRate();
+                daily[i] = TradeCalculator.dailyInterestCents(totalCostCents, Money.fromDouble(segment.getAnnualRate()));
+            }
+        }
+
+        // Первый сегмент действует и для дат до его начала
+        int indexAt(LocalDate date) {
+            int low = 1;
+            int high = from.length - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (!from[mid].isAfter(date)) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        LocalDate nextChange(int index) {
+            return index + 1 < from.length ? from[index + 1] : null;
+        }
+    }
+}
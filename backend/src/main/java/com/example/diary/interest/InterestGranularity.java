@@ -0,0 +1,22 @@
+package com.example.diary.interest;
+
+/**
+ * Как делить график процентов на периоды.
+ */
+public enum InterestGranularity {
+    // Только по сменам ставки
+    SEGMENT,
+    // Дополнительно по календарным месяцам
+    MONTH;
+
+    public static InterestGranularity parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return MONTH;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверная группировка графика процентов: " + value);
+        }
+    }
+}
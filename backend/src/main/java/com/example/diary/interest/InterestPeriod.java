@@ -0,0 +1,33 @@
+package com.example.diary.interest;
+
+import java.time.LocalDate;
+
+/**
+ * Непрерывный отрезок графика процентов с одинаковой суммой за день:
+ * заменяет {@code days} одинаковых записей ежедневного списка одной.
+ */
+public class InterestPeriod {
+
+    private final LocalDate start;
+    private final LocalDate end;
+    private final long days;
+    private final double rate;
+    private final double dailyAmount;
+    private final double amount;
+
+    public InterestPeriod(LocalDate start, LocalDate end, long days, double rate, double dailyAmount, double amount) {
+        this.start = start;
+        this.end = end;
+        this.days = days;
+        this.rate = rate;
+        this.dailyAmount = dailyAmount;
+        this.amount = amount;
+    }
+
+    public LocalDate getStart() { return start; }
+    public LocalDate getEnd() { return end; }
+    public long getDays() { return days; }
+    public double getRate() { return rate; }
+    public double getDailyAmount() { return dailyAmount; }
+    public double getAmount() { return amount; }
+}
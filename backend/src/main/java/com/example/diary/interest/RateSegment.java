@@ -0,0 +1,20 @@
+package com.example.diary.interest;
+
+import java.time.LocalDate;
+
+/**
+ * Годовая ставка (в процентах), действующая с указанной даты до начала следующего сегмента.
+ */
+public class RateSegment {
+
+    private final LocalDate from;
+    private final double annualRate;
+
+    public RateSegment(LocalDate from, double annualRate) {
+        this.from = from;
+        this.annualRate = annualRate;
+    }
+
+    public LocalDate getFrom() { return from; }
+    public double getAnnualRate() { return annualRate; }
+}
@@ -0,0 +1,69 @@
+package com.example.diary.journal;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Событие журнала сделок. В записи хранятся время, тип, id удаленных состояний и полные новые состояния
+ * сделок: старое состояние уже есть в предыдущих записях или в снимке, поэтому повтор события - удалить
+ * removedIds и записать added.
+ * <p>
+ * Тело записи (little-endian): время в миллисекундах эпохи, тип (номер {@link TradeChangeEvent.Type}),
+ * число и id удаленных сделок, число и сделки в формате {@link TradeRecordCodec}.
+ */
+public record JournalEvent(long sequence, Instant timestamp, TradeChangeEvent.Type type, List<Long> removedIds,
+                           List<Trade> added) {
+
+    private static final TradeChangeEvent.Type[] TYPES = TradeChangeEvent.Type.values();
+
+    static ByteBuffer encode(TradeRecordCodec.Writer writer, TradeChangeEvent event, long timestamp) {
+        writer.clear().putLong(timestamp).putByte((byte) event.getType().ordinal());
+        writer.putInt(event.getRemoved().size());
+        for (Trade trade : event.getRemoved()) {
+            writer.putLong(trade.getId());
+        }
+        writer.putInt(event.getAdded().size());
+        for (Trade trade : event.getAdded()) {
+            writer.putTrade(trade);
+        }
+        return writer.written();
+    }
+
+    static JournalEvent decode(long sequence, ByteBuffer body) {
+        long timestamp = body.getLong();
+        TradeChangeEvent.Type type = TYPES[body.get()];
+        int removedCount = body.getInt();
+        List<Long> removed = new ArrayList<>(removedCount);
+        for (int i = 0; i < removedCount; i++) {
+            removed.add(body.getLong());
+        }
+        int addedCount = body.getInt();
+        List<Trade> added = new ArrayList<>(addedCount);
+        for (int i = 0; i < addedCount; i++) {
+            added.add(TradeRecordCodec.readTrade(body));
+        }
+        return new JournalEvent(sequence, Instant.ofEpochMilli(timestamp), type, removed, added);
+    }
+
+    /**
+     * Применяет тело записи к состоянию, не разбирая сделки целиком.
+     */
+    static void apply(ByteBuffer body, JournalState state) {
+        body.position(body.position() + 9);
+        int removedCount = body.getInt();
+        for (int i = 0; i < removedCount; i++) {
+            state.remove(body.getLong());
+        }
+        int addedCount = body.getInt();
+        for (int i = 0; i < addedCount; i++) {
+            int start = body.position();
+            TradeRecordCodec.skipTrade(body);
+            state.put(body.duplicate().position(start).limit(body.position()).slice());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.diary.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Сегмент журнала - файл фиксированного размера, отображенный в память.
+ * <p>
+ * Формат (little-endian): заголовок из {@link #HEADER_BYTES} байт - сигнатура, версия, номер первой записи;
+ * затем записи подряд: длина (номер записи и тело), CRC32C номера и тела, номер записи, тело. Номера записей
+ * идут без пропусков. Нулевая длина - конец записанной части: остаток файла заполнен нулями. Длина пишется
+ * последней, поэтому запись, оборванная падением процесса, видна как конец данных или как запись с неверной
+ * контрольной суммой; такой хвост отбрасывается при открытии.
+ */
+final class JournalSegment {
+
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_HEADER_BYTES = 16;
+
+    private static final int MAGIC = 0x544A5347;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "segment-";
+    private static final String EXTENSION = ".log";
+
+    /**
+     * Обработчик записи: тело - срез буфера сегмента только для чтения, действителен до выхода из обработчика.
+     */
+    interface RecordVisitor {
+        void visit(long sequence, ByteBuffer body);
+    }
+
+    private final Path file;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private int position = HEADER_BYTES;
+    private long lastSequence;
+    private boolean torn;
+
+    private JournalSegment(Path file, long firstSequence, MappedByteBuffer buffer) {
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static String fileName(long firstSequence) {
+        return String.format("%s%020d%s", PREFIX, firstSequence, EXTENSION);
+    }
+
+    static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(EXTENSION);
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int capacity) throws IOException {
+        Path file = directory.resolve(fileName(firstSequence));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            JournalSegment segment = new JournalSegment(file, firstSequence, mapped);
+            mapped.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, firstSequence);
+            return segment;
+        }
+    }
+
+    /**
+     * Открывает сегмент и находит конец записанной части. Испорченный хвост отмечается {@link #isTorn()};
+     * для записи (writable) он сразу обнуляется, и новые записи пишутся поверх него.
+     */
+    static JournalSegment open(Path file, boolean writable) throws IOException {
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        try (FileChannel channel = writable
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("неверный размер сегмента журнала " + file);
+            }
+            MappedByteBuffer mapped = channel.map(mode, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("неизвестный формат сегмента журнала " + file);
+            }
+            JournalSegment segment = new JournalSegment(file, mapped.getLong(8), mapped);
+            segment.scan(null);
+            if (writable && segment.torn) {
+                for (int i = segment.position; i < mapped.capacity(); i++) {
+                    mapped.put(i, (byte) 0);
+                }
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Добавляет запись; false - в сегменте не хватает места.
+     */
+    boolean append(long sequence, ByteBuffer body) {
+        int length = 8 + body.remaining();
+        if (position + 8 + length > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer target = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        target.position(position + 8);
+        target.putLong(sequence);
+        target.put(body.duplicate());
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(position + 8).limit(position + 8 + length));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        position += 8 + length;
+        lastSequence = sequence;
+        torn = false;
+        return true;
+    }
+
+    /**
+     * Обходит целые записи по порядку и возвращает их число.
+     */
+    int forEach(RecordVisitor visitor) {
+        return scan(visitor);
+    }
+
+    private int scan(RecordVisitor visitor) {
+        int offset = HEADER_BYTES;
+        long expected = firstSequence;
+        int records = 0;
+        int capacity = buffer.capacity();
+        boolean broken = false;
+        while (offset + 8 <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 8 || length > capacity - offset - 8) {
+                broken = true;
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate().position(offset + 8).limit(offset + 8 + length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4) || buffer.getLong(offset + 8) != expected) {
+                broken = true;
+                break;
+            }
+            if (visitor != null) {
+                ByteBuffer body = buffer.duplicate().position(offset + RECORD_HEADER_BYTES).limit(offset + 8 + length)
+                    .slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+                visitor.visit(expected, body);
+            }
+            expected++;
+            records++;
+            offset += 8 + length;
+        }
+        if (visitor == null) {
+            position = offset;
+            lastSequence = expected - 1;
+            torn = broken;
+        }
+        return records;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Path getFile() { return file; }
+    long getFirstSequence() { return firstSequence; }
+    long getLastSequence() { return lastSequence; }
+    int getCapacity() { return buffer.capacity(); }
+    int getUsedBytes() { return position; }
+
+    boolean isEmpty() {
+        return lastSequence < firstSequence;
+    }
+
+    /**
+     * После открытия за последней целой записью нашлись непустые байты - оборванная или испорченная запись.
+     */
+    boolean isTorn() {
+        return torn;
+    }
+}
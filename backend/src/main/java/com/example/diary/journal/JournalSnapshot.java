@@ -0,0 +1,163 @@
+package com.example.diary.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Снимок журнала - все живые сделки после записи с номером sequence, по возрастанию id.
+ * <p>
+ * Формат (little-endian): заголовок из {@link #HEADER_BYTES} байт - сигнатура, версия, номер последней
+ * учтенной записи, число сделок, CRC32C и длина тела; тело - сделки в формате {@link TradeRecordCodec},
+ * каждая с длиной впереди. Снимок пишется во временный файл и атомарно переименовывается, поэтому на диске
+ * он либо целый, либо отсутствует; контрольная сумма ловит повреждение уже записанного файла.
+ */
+final class JournalSnapshot {
+
+    private static final int HEADER_BYTES = 32;
+    private static final int MAGIC = 0x544A534E;
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String EXTENSION = ".bin";
+
+    interface TradeVisitor {
+        void visit(ByteBuffer trade);
+    }
+
+    // Источник сделок для записи: по возрастанию id
+    interface TradeSource {
+        void forEach(TradeVisitor visitor);
+    }
+
+    private JournalSnapshot() {
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, EXTENSION);
+    }
+
+    static boolean isSnapshot(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(EXTENSION);
+    }
+
+    static Path write(Path directory, long sequence, TradeSource trades) throws IOException {
+        Path target = directory.resolve(fileName(sequence));
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32C crc = new CRC32C();
+                ByteBuffer out = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                long[] totals = new long[2];
+                IOException[] failure = new IOException[1];
+                channel.position(HEADER_BYTES);
+                trades.forEach(trade -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        if (out.remaining() < 4 + trade.remaining()) {
+                            totals[1] += flush(channel, out, crc);
+                        }
+                        if (out.remaining() < 4 + trade.remaining()) {
+                            ByteBuffer large = ByteBuffer.allocate(4 + trade.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+                            large.putInt(trade.remaining()).put(trade.duplicate());
+                            totals[1] += flush(channel, large, crc);
+                        } else {
+                            out.putInt(trade.remaining()).put(trade.duplicate());
+                        }
+                        totals[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                totals[1] += flush(channel, out, crc);
+                if (totals[0] > Integer.MAX_VALUE) {
+                    throw new IOException("слишком много сделок для снимка журнала");
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt((int) totals[0])
+                    .putInt((int) crc.getValue()).putLong(totals[1]).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, HEADER_BYTES - header.remaining());
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return target;
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer out, CRC32C crc) throws IOException {
+        out.flip();
+        crc.update(out.duplicate());
+        long written = out.remaining();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+        return written;
+    }
+
+    /**
+     * Номер последней учтенной записи из заголовка; -1 - файл не похож на снимок.
+     */
+    static long readSequence(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // читаем заголовок целиком
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return -1L;
+            }
+            return header.getLong(8);
+        }
+    }
+
+    /**
+     * Проверяет контрольную сумму и обходит сделки снимка; возвращает их число.
+     */
+    static int read(Path file, TradeVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("неверный размер снимка журнала " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("неизвестный формат снимка журнала " + file);
+            }
+            int count = mapped.getInt(16);
+            long bodyBytes = mapped.getLong(24);
+            if (bodyBytes != channel.size() - HEADER_BYTES) {
+                throw new IOException("снимок журнала обрезан: " + file);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(mapped.duplicate().position(HEADER_BYTES));
+            if ((int) crc.getValue() != mapped.getInt(20)) {
+                throw new IOException("неверная контрольная сумма снимка журнала " + file);
+            }
+            ByteBuffer body = mapped.duplicate().position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                int length = body.getInt();
+                ByteBuffer trade = body.duplicate().limit(body.position() + length).slice().order(ByteOrder.LITTLE_ENDIAN);
+                body.position(body.position() + length);
+                visitor.visit(trade);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.diary.journal;
+
+import com.example.diary.repository.projection.TradeColumnRow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Живые сделки, собранные из снимка и записей журнала: id -> закодированная сделка.
+ * Сделки не разбираются, пока не понадобятся строки для агрегатов.
+ */
+final class JournalState {
+
+    private final Map<Long, byte[]> trades = new HashMap<>();
+
+    // trade - закодированная сделка от позиции до предела, первые 8 байт - id
+    void put(ByteBuffer trade) {
+        ByteBuffer source = trade.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] bytes = new byte[source.remaining()];
+        long id = source.getLong(source.position());
+        source.get(bytes);
+        trades.put(id, bytes);
+    }
+
+    void remove(long id) {
+        trades.remove(id);
+    }
+
+    int size() {
+        return trades.size();
+    }
+
+    long maxId() {
+        long max = 0;
+        for (long id : trades.keySet()) {
+            max = Math.max(max, id);
+        }
+        return max;
+    }
+
+    private long[] sortedIds() {
+        long[] ids = new long[trades.size()];
+        int i = 0;
+        for (long id : trades.keySet()) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Строки сделок по возрастанию id, как при чтении из БД.
+     */
+    List<TradeColumnRow> rows() {
+        long[] ids = sortedIds();
+        List<TradeColumnRow> rows = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            rows.add(TradeRecordCodec.readRow(ByteBuffer.wrap(trades.get(id)).order(ByteOrder.LITTLE_ENDIAN)));
+        }
+        return rows;
+    }
+
+    JournalSnapshot.TradeSource source() {
+        return visitor -> {
+            for (long id : sortedIds()) {
+                visitor.visit(ByteBuffer.wrap(trades.get(id)));
+            }
+        };
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.diary.journal;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.TradeSort;
+import com.example.diary.repository.projection.TradeColumnRow;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Журнал изменений сделок только на дозапись рядом с БД: каждое {@link TradeChangeEvent} (покупка, продажа,
+ * удаление, пакет импорта) записывается в сегменты, отображенные в память ({@link JournalSegment}),
+ * с контрольной суммой на каждую запись.
+ * <p>
+ * При старте состояние сделок восстанавливается из последнего снимка ({@link JournalSnapshot}) и записей после
+ * него, и агрегаты в памяти строятся по {@link #recoveredRows()} вместо отдельных полных чтений таблицы.
+ * Журналу доверяют, только если прошлый запуск закрыл его штатно (файл-метка с номером последней записи)
+ * и число сделок и максимальный id совпадают с БД. Иначе - после падения процесса, ошибки записи в журнал
+ * или правки БД в обход приложения - сделки один раз читаются из БД, и журнал начинается заново со снимка
+ * этого состояния. БД остается основным хранилищем: журнал только ускоряет старт и хранит историю изменений.
+ * <p>
+ * Когда закрытых сегментов набирается {@code trades.journal.compact-segments}, в фоне пишется новый снимок
+ * (старый снимок плюс записи закрытых сегментов), а сегменты удаляются или переносятся в archive.
+ */
+@Service
+public class TradeJournal implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeJournal.class);
+
+    private static final String CLEAN_MARKER = "clean";
+    private static final String ARCHIVE = "archive";
+
+    /**
+     * Откуда при старте взято состояние сделок.
+     */
+    public enum Source { JOURNAL, DATABASE }
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${trades.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trades.journal.dir:./data/journal}")
+    private String directory;
+
+    @Value("${trades.journal.segment-bytes:16777216}")
+    private int segmentBytes;
+
+    @Value("${trades.journal.compact-segments:4}")
+    private int compactSegments;
+
+    @Value("${trades.journal.force-on-append:false}")
+    private boolean forceOnAppend;
+
+    @Value("${trades.journal.archive-compacted:false}")
+    private boolean archiveCompacted;
+
+    @Value("${trades.stream.fetch-size:500}")
+    private int fetchSize;
+
+    private final TradeRecordCodec.Writer writer = new TradeRecordCodec.Writer();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trade-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+    // Все поля ниже - под блокировкой this
+    private Path root;
+    private boolean recovered;
+    private boolean open;
+    private final List<JournalSegment> sealed = new ArrayList<>();
+    private JournalSegment active;
+    private long lastSequence;
+    private long snapshotSequence;
+    private Path snapshotFile;
+    private List<TradeColumnRow> recoveredRows;
+    private final Map<String, Object> recovery = new LinkedHashMap<>();
+    private long compactions;
+
+    // Результат чтения журнала с диска
+    private record Replay(Path snapshot, long snapshotSequence, List<JournalSegment> segments, List<Path> stale,
+                          JournalState state, long lastSequence, long events) {
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        recover();
+    }
+
+    /**
+     * Сделки по возрастанию id на момент старта - из журнала или из единственного чтения БД.
+     * null - журнал выключен или не работает, агрегаты читают БД сами. После старта приложения список освобождается.
+     */
+    public synchronized List<TradeColumnRow> recoveredRows() {
+        recover();
+        return recoveredRows;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void releaseRecoveredRows() {
+        recoveredRows = null;
+    }
+
+    private synchronized void recover() {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+        if (!enabled) {
+            // Изменения этого запуска в журнал не попадут: при включении журнал пересобирается из БД
+            try {
+                Files.deleteIfExists(Paths.get(directory).resolve(CLEAN_MARKER));
+            } catch (IOException e) {
+                logger.warn("Не удалось удалить метку закрытия журнала: {}", e.getMessage());
+            }
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            root = Paths.get(directory).toAbsolutePath().normalize();
+            Files.createDirectories(root);
+            long cleanSequence = takeCleanMarker();
+            Replay replay = null;
+            String reason = null;
+            try {
+                replay = replay();
+            } catch (IOException | RuntimeException e) {
+                reason = "журнал не читается: " + e.getMessage();
+            }
+            if (reason == null) {
+                reason = mismatch(replay, cleanSequence);
+            }
+            if (reason == null) {
+                install(replay);
+                recovery.put("source", Source.JOURNAL);
+                recovery.put("events", replay.events());
+            } else {
+                logger.warn("Журнал сделок не используется для восстановления: {}. Сделки читаются из БД", reason);
+                long sequence = Math.max(Math.max(cleanSequence, 0L), replay != null ? replay.lastSequence() : 0L);
+                rebaseline(sequence);
+                recovery.put("source", Source.DATABASE);
+                recovery.put("reason", reason);
+            }
+            open = true;
+            recovery.put("trades", recoveredRows.size());
+            recovery.put("elapsedMs", System.currentTimeMillis() - started);
+            logger.info("Журнал сделок открыт: {} сделок восстановлено ({}) за {} мс, последняя запись {}",
+                recoveredRows.size(), recovery.get("source"), System.currentTimeMillis() - started, lastSequence);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Журнал сделок отключен до перезапуска", e);
+            open = false;
+            recoveredRows = null;
+            recovery.clear();
+            recovery.put("error", e.getMessage());
+        }
+    }
+
+    // Причина не доверять журналу или null
+    private String mismatch(Replay replay, long cleanSequence) {
+        if (cleanSequence < 0) {
+            return "прошлый запуск не закрыл журнал";
+        }
+        if (cleanSequence != replay.lastSequence()) {
+            return "последняя запись журнала " + replay.lastSequence() + ", при закрытии была " + cleanSequence;
+        }
+        long[] database = jdbcTemplate.queryForObject("SELECT COUNT(*), COALESCE(MAX(id), 0) FROM trades",
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2)});
+        if (database[0] != replay.state().size() || database[1] != replay.state().maxId()) {
+            return "в БД " + database[0] + " сделок (max id " + database[1] + "), в журнале "
+                + replay.state().size() + " (max id " + replay.state().maxId() + ")";
+        }
+        return null;
+    }
+
+    private Replay replay() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        List<Path> segmentFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : files.sorted().toList()) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (JournalSnapshot.isSnapshot(file)) {
+                    snapshots.add(file);
+                } else if (JournalSegment.isSegment(file)) {
+                    segmentFiles.add(file);
+                }
+            }
+        }
+        List<Path> stale = new ArrayList<>();
+        JournalState state = new JournalState();
+        Path snapshot = null;
+        long base = 0;
+        if (!snapshots.isEmpty()) {
+            // Номер в имени файла дополнен нулями, поэтому последний по имени - самый свежий
+            snapshot = snapshots.get(snapshots.size() - 1);
+            stale.addAll(snapshots.subList(0, snapshots.size() - 1));
+            base = JournalSnapshot.readSequence(snapshot);
+            JournalSnapshot.read(snapshot, state::put);
+        } else if (!segmentFiles.isEmpty()) {
+            throw new IOException("есть сегменты, но нет снимка");
+        }
+
+        long snapshotBase = base;
+        long expected = base + 1;
+        long events = 0;
+        List<JournalSegment> segments = new ArrayList<>();
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            JournalSegment segment = JournalSegment.open(segmentFiles.get(i), i == segmentFiles.size() - 1);
+            if (segment.isTorn()) {
+                throw new IOException("испорчена запись после " + segment.getLastSequence() + " в " + segment.getFile());
+            }
+            if (!segment.isEmpty() && segment.getLastSequence() <= base) {
+                // Сегмент уже вошел в снимок: сжатие прервалось до удаления
+                stale.add(segment.getFile());
+                continue;
+            }
+            if (segment.getFirstSequence() > expected) {
+                throw new IOException("пропущены записи " + expected + ".." + (segment.getFirstSequence() - 1));
+            }
+            events += segment.forEach((sequence, body) -> {
+                if (sequence > snapshotBase) {
+                    JournalEvent.apply(body, state);
+                }
+            });
+            expected = Math.max(expected, segment.getLastSequence() + 1);
+            segments.add(segment);
+        }
+        return new Replay(snapshot, base, segments, stale, state, expected - 1, events);
+    }
+
+    private void install(Replay replay) throws IOException {
+        for (Path file : replay.stale()) {
+            retire(file);
+        }
+        sealed.clear();
+        sealed.addAll(replay.segments());
+        active = sealed.isEmpty() ? null : sealed.remove(sealed.size() - 1);
+        snapshotFile = replay.snapshot();
+        snapshotSequence = replay.snapshotSequence();
+        lastSequence = replay.lastSequence();
+        if (active == null) {
+            active = JournalSegment.create(root, lastSequence + 1, segmentBytes);
+        }
+        recoveredRows = replay.state().rows();
+    }
+
+    // Снимок состояния БД как новое начало журнала; прежние сегменты и снимки больше не нужны
+    private void rebaseline(long sequence) throws IOException {
+        List<TradeColumnRow> rows = new ArrayList<>();
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        TradeRecordCodec.Writer encoder = new TradeRecordCodec.Writer();
+        Path snapshot = JournalSnapshot.write(root, sequence, visitor -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<Trade> trades = tradeRepository.streamTrades(null, TradeSort.ID_ASC, fetchSize)) {
+                trades.forEach(trade -> {
+                    rows.add(new TradeColumnRow(trade.getId(), trade.getPortfolioId(), trade.getSymbol(),
+                        trade.getEntryPrice(), trade.getExitPrice(), trade.getQuantity(), trade.getEntryDate(),
+                        trade.getExitDate(), trade.getMarginAmount()));
+                    visitor.visit(encoder.clear().putTrade(trade).written());
+                    entityManager.detach(trade);
+                });
+            }
+        }));
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : files.toList()) {
+                if (JournalSegment.isSegment(file) || (JournalSnapshot.isSnapshot(file) && !file.equals(snapshot))) {
+                    retire(file);
+                }
+            }
+        }
+        sealed.clear();
+        snapshotFile = snapshot;
+        snapshotSequence = sequence;
+        lastSequence = sequence;
+        active = JournalSegment.create(root, sequence + 1, segmentBytes);
+        recoveredRows = rows;
+    }
+
+    @EventListener
+    public void onTradeChange(TradeChangeEvent event) {
+        boolean compact;
+        synchronized (this) {
+            if (!open) {
+                if (recovered && root != null) {
+                    // Изменение не попало в журнал: при следующем старте журналу верить нельзя
+                    deleteCleanMarker();
+                }
+                return;
+            }
+            try {
+                ByteBuffer body = JournalEvent.encode(writer, event, System.currentTimeMillis());
+                long sequence = lastSequence + 1;
+                if (!active.append(sequence, body)) {
+                    roll(body.remaining());
+                    if (!active.append(sequence, body)) {
+                        throw new IOException("запись не помещается в новый сегмент");
+                    }
+                }
+                lastSequence = sequence;
+                if (forceOnAppend) {
+                    active.force();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Изменение {} не записано в журнал сделок, журнал отключен до перезапуска", event.getType(), e);
+                open = false;
+                return;
+            }
+            compact = sealed.size() >= compactSegments;
+        }
+        if (compact && compactionQueued.compareAndSet(false, true)) {
+            compactor.submit(() -> {
+                try {
+                    compactSealed();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Ошибка сжатия журнала сделок", e);
+                } finally {
+                    compactionQueued.set(false);
+                }
+            });
+        }
+    }
+
+    // Закрывает текущий сегмент и начинает новый, в который поместится запись из bodyBytes байт
+    private void roll(int bodyBytes) throws IOException {
+        int capacity = (int) Math.max(segmentBytes,
+            (long) JournalSegment.HEADER_BYTES + JournalSegment.RECORD_HEADER_BYTES + bodyBytes);
+        active.force();
+        if (active.isEmpty()) {
+            Files.delete(active.getFile());
+        } else {
+            sealed.add(active);
+        }
+        active = JournalSegment.create(root, lastSequence + 1, capacity);
+    }
+
+    /**
+     * Сжимает журнал сразу: закрывает текущий сегмент и сворачивает все закрытые сегменты в новый снимок.
+     *
+     * @throws IllegalStateException журнал выключен или сжатие не удалось
+     */
+    public Map<String, Object> compact() {
+        synchronized (this) {
+            requireOpen();
+            if (!active.isEmpty()) {
+                try {
+                    roll(0);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Не удалось закрыть сегмент журнала: " + e.getMessage(), e);
+                }
+            }
+        }
+        try {
+            compactor.submit(() -> {
+                compactSealed();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Сжатие журнала прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка сжатия журнала: " + e.getCause().getMessage(), e.getCause());
+        }
+        return getStatus();
+    }
+
+    // Выполняется только в потоке compactor: закрытые сегменты не меняются, запись в текущий сегмент не ждет
+    private void compactSealed() throws IOException {
+        List<JournalSegment> segments;
+        Path previous;
+        long base;
+        synchronized (this) {
+            if (!open || sealed.isEmpty()) {
+                return;
+            }
+            segments = new ArrayList<>(sealed);
+            previous = snapshotFile;
+            base = snapshotSequence;
+        }
+        long started = System.currentTimeMillis();
+        JournalState state = new JournalState();
+        if (previous != null) {
+            JournalSnapshot.read(previous, state::put);
+        }
+        for (JournalSegment segment : segments) {
+            segment.forEach((sequence, body) -> {
+                if (sequence > base) {
+                    JournalEvent.apply(body, state);
+                }
+            });
+        }
+        long sequence = segments.get(segments.size() - 1).getLastSequence();
+        Path snapshot = JournalSnapshot.write(root, sequence, state.source());
+        synchronized (this) {
+            sealed.removeAll(segments);
+            snapshotFile = snapshot;
+            snapshotSequence = sequence;
+            compactions++;
+        }
+        if (previous != null && !previous.equals(snapshot)) {
+            retire(previous);
+        }
+        for (JournalSegment segment : segments) {
+            retire(segment.getFile());
+        }
+        logger.info("Журнал сделок сжат: {} сегментов свернуты в снимок до записи {} ({} сделок) за {} мс",
+            segments.size(), sequence, state.size(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * События журнала с номерами больше after, не больше limit. События, уже свернутые в снимок, недоступны.
+     */
+    public synchronized List<JournalEvent> events(long after, int limit) {
+        requireOpen();
+        List<JournalEvent> events = new ArrayList<>();
+        List<JournalSegment> segments = new ArrayList<>(sealed);
+        segments.add(active);
+        for (JournalSegment segment : segments) {
+            if (events.size() >= limit) {
+                break;
+            }
+            if (segment.getLastSequence() <= after) {
+                continue;
+            }
+            segment.forEach((sequence, body) -> {
+                if (sequence > after && events.size() < limit) {
+                    events.add(JournalEvent.decode(sequence, body));
+                }
+            });
+        }
+        return events;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("open", open);
+        status.put("directory", root != null ? root.toString() : directory);
+        if (open) {
+            status.put("lastSequence", lastSequence);
+            status.put("snapshotSequence", snapshotSequence);
+            status.put("firstAvailableSequence", snapshotSequence + 1);
+            List<Map<String, Object>> segments = new ArrayList<>();
+            List<JournalSegment> all = new ArrayList<>(sealed);
+            all.add(active);
+            for (JournalSegment segment : all) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("file", segment.getFile().getFileName().toString());
+                data.put("firstSequence", segment.getFirstSequence());
+                data.put("lastSequence", segment.getLastSequence());
+                data.put("usedBytes", segment.getUsedBytes());
+                data.put("capacityBytes", segment.getCapacity());
+                data.put("active", segment == active);
+                segments.add(data);
+            }
+            status.put("segments", segments);
+            status.put("compactions", compactions);
+        }
+        status.put("recovery", new LinkedHashMap<>(recovery));
+        return status;
+    }
+
+    @PreDestroy
+    void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Сжатие журнала сделок не завершилось до остановки");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            try {
+                active.force();
+                writeCleanMarker(lastSequence);
+                logger.info("Журнал сделок закрыт на записи {}", lastSequence);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Журнал сделок не закрыт штатно, при следующем старте сделки будут прочитаны из БД", e);
+            }
+        }
+    }
+
+    private void requireOpen() {
+        if (!open) {
+            throw new IllegalStateException("Журнал сделок выключен или отключен после ошибки");
+        }
+    }
+
+    // Номер последней записи из метки штатного закрытия; метка удаляется, чтобы падение не оставило ее устаревшей
+    private long takeCleanMarker() throws IOException {
+        Path marker = root.resolve(CLEAN_MARKER);
+        if (!Files.exists(marker)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(Files.readString(marker).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        } finally {
+            Files.delete(marker);
+        }
+    }
+
+    private void writeCleanMarker(long sequence) throws IOException {
+        Path temp = Files.createTempFile(root, CLEAN_MARKER, ".tmp");
+        try {
+            Files.writeString(temp, Long.toString(sequence));
+            Files.move(temp, root.resolve(CLEAN_MARKER), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void deleteCleanMarker() {
+        try {
+            if (Files.deleteIfExists(root.resolve(CLEAN_MARKER))) {
+                logger.warn("Изменение сделок после закрытия журнала: журнал будет пересобран из БД при следующем старте");
+            }
+        } catch (IOException e) {
+            logger.error("Не удалось удалить метку закрытия журнала", e);
+        }
+    }
+
+    // Ненужный файл журнала удаляется или, с trades.journal.archive-compacted, переносится в archive
+    private void retire(Path file) throws IOException {
+        if (archiveCompacted) {
+            Path archive = Files.createDirectories(root.resolve(ARCHIVE));
+            Files.move(file, archive.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+    }
+}
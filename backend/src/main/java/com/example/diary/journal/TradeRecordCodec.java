@@ -0,0 +1,200 @@
+package com.example.diary.journal;
+
+import com.example.diary.model.Trade;
+import com.example.diary.repository.projection.TradeColumnRow;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Двоичная запись сделки в журнале и снимке (little-endian): id, портфель, тикер, цены входа и выхода,
+ * количество, даты входа и выхода, ставка, daily_interest и заметки. Числа с фиксированной точкой -
+ * байт масштаба и long без масштаба, даты - дни эпохи, строки - длина в байтах UTF-8 и байты;
+ * отсутствующее значение помечается масштабом, днем или длиной-маркером.
+ */
+final class TradeRecordCodec {
+
+    private static final byte NULL_SCALE = Byte.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private TradeRecordCodec() {
+    }
+
+    /**
+     * Растущий буфер для кодирования одной записи журнала.
+     */
+    static final class Writer {
+        private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+        Writer clear() {
+            buffer.clear();
+            return this;
+        }
+
+        /**
+         * Записанные байты: от нуля до текущей позиции.
+         */
+        ByteBuffer written() {
+            return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).flip();
+        }
+
+        Writer putByte(byte value) {
+            ensure(1).put(value);
+            return this;
+        }
+
+        Writer putInt(int value) {
+            ensure(4).putInt(value);
+            return this;
+        }
+
+        Writer putLong(long value) {
+            ensure(8).putLong(value);
+            return this;
+        }
+
+        Writer putTrade(Trade trade) {
+            putLong(trade.getId());
+            putString(trade.getPortfolioId());
+            putString(trade.getSymbol());
+            putDecimal(trade.getEntryPrice());
+            putDecimal(trade.getExitPrice());
+            putInt(trade.getQuantity() != null ? trade.getQuantity() : NULL_INT);
+            putDay(trade.getEntryDate());
+            putDay(trade.getExitDate());
+            putDecimal(trade.getMarginAmount());
+            putString(trade.getDailyInterest());
+            putString(trade.getNotes());
+            return this;
+        }
+
+        private void putDay(LocalDate date) {
+            putInt(date != null ? (int) date.toEpochDay() : NULL_INT);
+        }
+
+        private void putDecimal(BigDecimal value) {
+            if (value == null) {
+                putByte(NULL_SCALE);
+                return;
+            }
+            if (value.scale() <= NULL_SCALE || value.scale() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Масштаб числа не помещается в запись журнала: " + value);
+            }
+            putByte((byte) value.scale());
+            putLong(value.unscaledValue().longValueExact());
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length).put(bytes);
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Пропускает сделку и возвращает ее id; позиция буфера встает на следующую запись.
+     */
+    static long skipTrade(ByteBuffer in) {
+        long id = in.getLong();
+        skipString(in);
+        skipString(in);
+        skipDecimal(in);
+        skipDecimal(in);
+        in.position(in.position() + 12);
+        skipDecimal(in);
+        skipString(in);
+        skipString(in);
+        return id;
+    }
+
+    /**
+     * Поля сделки для агрегатов в памяти - без daily_interest и заметок.
+     */
+    static TradeColumnRow readRow(ByteBuffer in) {
+        long id = in.getLong();
+        String portfolio = readString(in);
+        String symbol = readString(in);
+        BigDecimal entryPrice = readDecimal(in);
+        BigDecimal exitPrice = readDecimal(in);
+        Integer quantity = readInteger(in);
+        LocalDate entryDate = readDay(in);
+        LocalDate exitDate = readDay(in);
+        BigDecimal marginAmount = readDecimal(in);
+        skipString(in);
+        skipString(in);
+        return new TradeColumnRow(id, portfolio, symbol, entryPrice, exitPrice, quantity, entryDate, exitDate, marginAmount);
+    }
+
+    static Trade readTrade(ByteBuffer in) {
+        Trade trade = new Trade();
+        trade.setId(in.getLong());
+        trade.setPortfolioId(readString(in));
+        trade.setSymbol(readString(in));
+        trade.setEntryPrice(readDecimal(in));
+        trade.setExitPrice(readDecimal(in));
+        trade.setQuantity(readInteger(in));
+        trade.setEntryDate(readDay(in));
+        trade.setExitDate(readDay(in));
+        trade.setMarginAmount(readDecimal(in));
+        trade.setDailyInterest(readString(in));
+        trade.setNotes(readString(in));
+        return trade;
+    }
+
+    private static Integer readInteger(ByteBuffer in) {
+        int value = in.getInt();
+        return value != NULL_INT ? value : null;
+    }
+
+    private static LocalDate readDay(ByteBuffer in) {
+        int day = in.getInt();
+        return day != NULL_INT ? LocalDate.ofEpochDay(day) : null;
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        byte scale = in.get();
+        return scale != NULL_SCALE ? new BigDecimal(BigInteger.valueOf(in.getLong()), scale) : null;
+    }
+
+    private static void skipDecimal(ByteBuffer in) {
+        if (in.get() != NULL_SCALE) {
+            in.position(in.position() + 8);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length > 0) {
+            in.position(in.position() + length);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.diary.market;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * История цен одного тикера в двоичном файле, отображенном в память.
+ * <p>
+ * Формат (little-endian): заголовок из {@link #HEADER_BYTES} байт - сигнатура, версия, число баров,
+ * время изменения исходного CSV; затем столбцы по порядку: дни эпохи int[n] по возрастанию,
+ * open, high, low, close - double[n], объем - long[n]. Поиск по дате - двоичный поиск по столбцу дней,
+ * который занимает 4 байта на бар и целиком попадает в несколько страниц.
+ * <p>
+ * Данные в куче не копируются: все чтения - абсолютные обращения к буферу, поэтому объект
+ * потокобезопасен и не растет вместе с историей.
+ */
+public final class MappedPriceFile {
+
+    public static final String EXTENSION = ".ohlc";
+
+    private static final int MAGIC = 0x4F484C43;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final String symbol;
+    private final ByteBuffer buffer;
+    private final int size;
+    private final long sourceModified;
+
+    private MappedPriceFile(String symbol, ByteBuffer buffer) {
+        this.symbol = symbol;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("неизвестный формат файла цен");
+        }
+        this.size = buffer.getInt(8);
+        this.sourceModified = buffer.getLong(16);
+        if (size < 0 || buffer.capacity() < fileSize(size)) {
+            throw new IllegalArgumentException("файл цен обрезан");
+        }
+    }
+
+    public static MappedPriceFile open(String symbol, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedPriceFile(symbol, mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Записывает бары (дни по возрастанию, без повторов) во временный файл и атомарно заменяет им target,
+     * чтобы читатели старого отображения не увидели недописанный файл.
+     */
+    public static void write(Path target, long sourceModified, int size, int[] days, double[] opens, double[] highs,
+                             double[] lows, double[] closes, long[] volumes) throws IOException {
+        if (fileSize(size) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("слишком длинная история цен: " + size + " баров");
+        }
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer out = ByteBuffer.allocate((int) fileSize(size)).order(ByteOrder.LITTLE_ENDIAN);
+                out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).putLong(sourceModified).putLong(0L);
+                for (int i = 0; i < size; i++) out.putInt(days[i]);
+                for (int i = 0; i < size; i++) out.putDouble(opens[i]);
+                for (int i = 0; i < size; i++) out.putDouble(highs[i]);
+                for (int i = 0; i < size; i++) out.putDouble(lows[i]);
+                for (int i = 0; i < size; i++) out.putDouble(closes[i]);
+                for (int i = 0; i < size; i++) out.putLong(volumes[i]);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Время изменения CSV, из которого записан файл; по нему решается, нужно ли перечитать CSV.
+     */
+    public static long readSourceModified(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // читаем заголовок целиком
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return -1L;
+            }
+            return header.getLong(16);
+        }
+    }
+
+    private static long fileSize(int size) {
+        return HEADER_BYTES + 4L * size + 5L * 8L * size;
+    }
+
+    public String getSymbol() { return symbol; }
+
+    public int size() { return size; }
+
+    public long getSourceModified() { return sourceModified; }
+
+    public int dayAt(int index) {
+        return buffer.getInt(HEADER_BYTES + 4 * index);
+    }
+
+    public double closeAt(int index) {
+        return buffer.getDouble(column(4) + 8 * index);
+    }
+
+    public OhlcBar barAt(int index) {
+        return new OhlcBar(LocalDate.ofEpochDay(dayAt(index)),
+            buffer.getDouble(column(1) + 8 * index),
+            buffer.getDouble(column(2) + 8 * index),
+            buffer.getDouble(column(3) + 8 * index),
+            buffer.getDouble(column(4) + 8 * index),
+            buffer.getLong(column(5) + 8 * index));
+    }
+
+    public LocalDate getFirstDate() {
+        return size > 0 ? LocalDate.ofEpochDay(dayAt(0)) : null;
+    }
+
+    public LocalDate getLastDate() {
+        return size > 0 ? LocalDate.ofEpochDay(dayAt(size - 1)) : null;
+    }
+
+    /**
+     * Индекс бара на день или ближайший предыдущий торговый день; -1, если истории до этого дня нет.
+     */
+    public int floorIndex(int epochDay) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int day = dayAt(mid);
+            if (day < epochDay) {
+                low = mid + 1;
+            } else if (day > epochDay) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return high;
+    }
+
+    // Смещение столбца: 0 - дни, 1..4 - open/high/low/close, 5 - объем
+    private int column(int number) {
+        return number == 0 ? HEADER_BYTES : HEADER_BYTES + 4 * size + 8 * size * (number - 1);
+    }
+}
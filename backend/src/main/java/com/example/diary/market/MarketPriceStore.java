@@ -0,0 +1,242 @@
+package com.example.diary.market;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Локальные рыночные цены по дням. Исходные данные - CSV-файлы в каталоге {@code market.prices.dir}
+ * (по умолчанию тот же, что у истории цен для риска): имя файла - тикер, в заголовке обязательны
+ * колонки date и close, необязательны open, high, low и volume. При загрузке каждый CSV, измененный
+ * после прошлого разбора, переписывается в двоичный {@link MappedPriceFile} в {@code market.prices.store-dir},
+ * после чего все двоичные файлы отображаются в память. Цена на дату ищется двоичным поиском за O(log n),
+ * история в куче не хранится.
+ */
+@Component
+public class MarketPriceStore implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarketPriceStore.class);
+
+    @Value("${market.prices.dir:${risk.prices.dir:./data/prices}}")
+    private String pricesDir;
+
+    @Value("${market.prices.store-dir:./data/prices/bin}")
+    private String storeDir;
+
+    private volatile Map<String, MappedPriceFile> files = Collections.emptyMap();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    /**
+     * Разбирает новые и измененные CSV и заново отображает двоичные файлы; возвращает число тикеров.
+     */
+    public synchronized int reload() {
+        Path source = Paths.get(pricesDir);
+        Path store = Paths.get(storeDir);
+        int ingested = 0;
+        try {
+            Files.createDirectories(store);
+            if (Files.isDirectory(source)) {
+                try (DirectoryStream<Path> csvFiles = Files.newDirectoryStream(source, "*.csv")) {
+                    for (Path csv : csvFiles) {
+                        if (ingest(csv, store)) {
+                            ingested++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Не удалось обновить двоичные файлы цен в {}: {}", store, e.getMessage());
+        }
+
+        Map<String, MappedPriceFile> mapped = new HashMap<>();
+        if (Files.isDirectory(store)) {
+            try (DirectoryStream<Path> binaries = Files.newDirectoryStream(store, "*" + MappedPriceFile.EXTENSION)) {
+                for (Path file : binaries) {
+                    String name = file.getFileName().toString();
+                    String symbol = name.substring(0, name.length() - MappedPriceFile.EXTENSION.length());
+                    try {
+                        mapped.put(symbol, MappedPriceFile.open(symbol, file));
+                    } catch (IOException | IllegalArgumentException e) {
+                        logger.warn("Не удалось открыть файл цен {}: {}", file, e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Не удалось прочитать каталог файлов цен {}: {}", store, e.getMessage());
+            }
+        }
+        files = mapped;
+        logger.info("Рыночные цены: {} тикеров, разобрано CSV: {}", mapped.size(), ingested);
+        return mapped.size();
+    }
+
+    public MappedPriceFile get(String symbol) {
+        return files.get(symbol);
+    }
+
+    public Set<String> getSymbols() {
+        return new TreeSet<>(files.keySet());
+    }
+
+    /**
+     * Бар на дату или ближайший предыдущий торговый день; null, если тикера или истории до даты нет.
+     */
+    public OhlcBar barOnOrBefore(String symbol, LocalDate date) {
+        MappedPriceFile file = files.get(symbol);
+        if (file == null) {
+            return null;
+        }
+        int index = file.floorIndex((int) date.toEpochDay());
+        return index >= 0 ? file.barAt(index) : null;
+    }
+
+    private boolean ingest(Path csv, Path store) throws IOException {
+        String name = csv.getFileName().toString();
+        String symbol = name.substring(0, name.length() - 4).trim().toUpperCase();
+        Path target = store.resolve(symbol + MappedPriceFile.EXTENSION);
+        long modified = Files.getLastModifiedTime(csv).toMillis();
+        if (Files.exists(target) && MappedPriceFile.readSourceModified(target) == modified) {
+            return false;
+        }
+        try {
+            write(csv, target, modified);
+            return true;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Не удалось разобрать цены {}: {}", csv, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void write(Path csv, Path target, long modified) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IllegalArgumentException("пустой файл");
+            }
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            String delimiter = header.indexOf(';') >= 0 ? ";" : ",";
+            Map<String, Integer> columns = new HashMap<>();
+            String[] names = header.split(delimiter, -1);
+            for (int i = 0; i < names.length; i++) {
+                columns.put(names[i].trim().toLowerCase(), i);
+            }
+            Integer dateColumn = columns.get("date");
+            Integer closeColumn = columns.get("close");
+            if (dateColumn == null || closeColumn == null) {
+                throw new IllegalArgumentException("в заголовке нет колонок date и close");
+            }
+            int openColumn = columns.getOrDefault("open", -1);
+            int highColumn = columns.getOrDefault("high", -1);
+            int lowColumn = columns.getOrDefault("low", -1);
+            int volumeColumn = columns.getOrDefault("volume", -1);
+
+            int[] days = new int[1024];
+            double[] opens = new double[1024];
+            double[] highs = new double[1024];
+            double[] lows = new double[1024];
+            double[] closes = new double[1024];
+            long[] volumes = new long[1024];
+            int count = 0;
+            boolean sorted = true;
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] cells = line.split(delimiter, -1);
+                if (count == days.length) {
+                    int capacity = count * 2;
+                    days = Arrays.copyOf(days, capacity);
+                    opens = Arrays.copyOf(opens, capacity);
+                    highs = Arrays.copyOf(highs, capacity);
+                    lows = Arrays.copyOf(lows, capacity);
+                    closes = Arrays.copyOf(closes, capacity);
+                    volumes = Arrays.copyOf(volumes, capacity);
+                }
+                try {
+                    days[count] = (int) LocalDate.parse(cell(cells, dateColumn, lineNumber)).toEpochDay();
+                    closes[count] = price(cells, closeColumn, lineNumber);
+                    opens[count] = openColumn >= 0 ? price(cells, openColumn, lineNumber) : closes[count];
+                    highs[count] = highColumn >= 0 ? price(cells, highColumn, lineNumber) : closes[count];
+                    lows[count] = lowColumn >= 0 ? price(cells, lowColumn, lineNumber) : closes[count];
+                    String volume = volumeColumn >= 0 ? cell(cells, volumeColumn, lineNumber) : "";
+                    volumes[count] = volume.isEmpty() ? 0L : (long) Double.parseDouble(volume.replace(',', '.'));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    throw new IllegalArgumentException("строка " + lineNumber + ": " + e.getMessage());
+                }
+                if (count > 0 && days[count] <= days[count - 1]) {
+                    sorted = false;
+                }
+                count++;
+            }
+
+            if (!sorted) {
+                // Файлы в порядке убывания дат или с повторами: для повторяющейся даты берем последнюю строку
+                long[] keyed = new long[count];
+                for (int i = 0; i < count; i++) {
+                    keyed[i] = ((long) days[i] << 32) | i;
+                }
+                Arrays.sort(keyed);
+                int[] sortedDays = new int[count];
+                double[] sortedOpens = new double[count];
+                double[] sortedHighs = new double[count];
+                double[] sortedLows = new double[count];
+                double[] sortedCloses = new double[count];
+                long[] sortedVolumes = new long[count];
+                int unique = 0;
+                for (long key : keyed) {
+                    int i = (int) key;
+                    if (unique > 0 && sortedDays[unique - 1] == days[i]) {
+                        unique--;
+                    }
+                    sortedDays[unique] = days[i];
+                    sortedOpens[unique] = opens[i];
+                    sortedHighs[unique] = highs[i];
+                    sortedLows[unique] = lows[i];
+                    sortedCloses[unique] = closes[i];
+                    sortedVolumes[unique] = volumes[i];
+                    unique++;
+                }
+                MappedPriceFile.write(target, modified, unique, sortedDays, sortedOpens, sortedHighs, sortedLows,
+                    sortedCloses, sortedVolumes);
+                return;
+            }
+            MappedPriceFile.write(target, modified, count, days, opens, highs, lows, closes, volumes);
+        }
+    }
+
+    private static String cell(String[] cells, int column, int lineNumber) {
+        if (column >= cells.length) {
+            throw new IllegalArgumentException("строка " + lineNumber + ": не хватает колонок");
+        }
+        return cells[column].trim();
+    }
+
+    private static double price(String[] cells, int column, int lineNumber) {
+        double value = Double.parseDouble(cell(cells, column, lineNumber).replace(',', '.'));
+        if (!(value > 0)) {
+            throw new IllegalArgumentException("строка " + lineNumber + ": цена должна быть положительной");
+        }
+        return value;
+    }
+}
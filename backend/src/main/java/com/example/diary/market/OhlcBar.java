@@ -0,0 +1,9 @@
+package com.example.diary.market;
+
+import java.time.LocalDate;
+
+/**
+ * Дневной бар: цены открытия, максимума, минимума, закрытия и объем.
+ */
+public record OhlcBar(LocalDate date, double open, double high, double low, double close, long volume) {
+}
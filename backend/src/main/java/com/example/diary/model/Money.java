@@ -0,0 +1,59 @@
+package com.example.diary.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Денежные суммы в копейках ({@code long}) и ставки в сотых долях процента - так же, как цены и ставки
+ * хранятся в БД (NUMERIC(38, 2)) и в {@link com.example.diary.store.TradeColumns}.
+ * Сложение и умножение на количество в копейках точные; единственное деление в расчетах по сделке -
+ * дневной процент - округляется по {@link #divideHalfUp} (половина - от нуля, как RoundingMode.HALF_UP).
+ * <p>
+ * Методы статические и не создают объектов, поэтому годятся для горячих циклов агрегатов.
+ */
+public final class Money {
+
+    public static final int SCALE = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Значение в сотых долях. Больше двух знаков округляется до сотых по HALF_UP в десятичной арифметике,
+     * как при записи в NUMERIC(38, 2): через double 10.005 дало бы 1000 вместо 1001.
+     */
+    public static long fromDecimal(BigDecimal value) {
+        return round(value).unscaledValue().longValue();
+    }
+
+    /**
+     * Значение, округленное до сотых так же, как его сохранит БД; null остается null.
+     */
+    public static BigDecimal round(BigDecimal value) {
+        return value != null ? value.setScale(2, RoundingMode.HALF_UP) : null;
+    }
+
+    public static long fromDouble(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long cents) {
+        return (double) cents / SCALE;
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * numerator / denominator с округлением половины от нуля; denominator > 0.
+     */
+    public static long divideHalfUp(long numerator, long denominator) {
+        long quotient = numerator / denominator;
+        long remainder = Math.abs(numerator % denominator);
+        if (remainder >= denominator - remainder) {
+            quotient += numerator < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.diary.model;
+
+import java.util.regex.Pattern;
+
+/**
+ * Идентификаторы портфелей (счетов), по которым разделены сделки.
+ * Запросы на чтение без портфеля относятся ко всем портфелям сразу, новые сделки без портфеля
+ * попадают в {@link #DEFAULT}.
+ */
+public final class Portfolios {
+
+    public static final String DEFAULT = "default";
+
+    // Латиница, цифры, дефис и подчеркивание; длина ограничена колонкой portfolio_id
+    public static final String PATTERN = "[A-Za-z0-9_-]{1,32}";
+
+    private static final Pattern COMPILED = Pattern.compile(PATTERN);
+
+    private Portfolios() {
+    }
+
+    /**
+     * Портфель из параметра запроса: null для пустого значения (все портфели).
+     */
+    public static String parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String portfolio = value.trim();
+        if (!COMPILED.matcher(portfolio).matches()) {
+            throw new IllegalArgumentException("Неверный идентификатор портфеля: " + value);
+        }
+        return portfolio;
+    }
+
+    /**
+     * Портфель новой сделки: пустое значение заменяется портфелем по умолчанию.
+     */
+    public static String orDefault(String value) {
+        String portfolio = parse(value);
+        return portfolio != null ? portfolio : DEFAULT;
+    }
+}
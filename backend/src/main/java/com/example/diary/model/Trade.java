@@ -1,10 +1,11 @@
 package com.example.diary.model;
 
+import com.example.diary.interest.InterestEngine;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,8 +13,17 @@ import java.util.List;
 @Table(name = "trades")
 public class Trade {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Допустимые даты входа и выхода: дневные ряды (DailyRollup) плотные по дням, и дата вроде 0001-01-01
+    // растянула бы их на сотни тысяч дней
+    public static final LocalDate MIN_DATE = LocalDate.of(1970, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(2099, 12, 31);
+
+    // Последовательность с выделением блоков позволяет Hibernate объединять INSERT в JDBC batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trades_seq")
+    @SequenceGenerator(name = "trades_seq", sequenceName = "trades_seq", allocationSize = Trade.ID_ALLOCATION_SIZE)
     private Long id;
 
     @NotBlank(message = "Symbol is required")
@@ -53,6 +63,11 @@ public class Trade {
     @Column(columnDefinition = "TEXT")
     private String notes;
 
+    @NotNull(message = "Portfolio is required")
+    @Pattern(regexp = Portfolios.PATTERN, message = "Portfolio must be 1-32 latin letters, digits, '-' or '_'")
+    @Column(name = "portfolio_id", nullable = false, length = 32)
+    private String portfolioId = Portfolios.DEFAULT;
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
 
@@ -60,10 +75,10 @@ public class Trade {
     public void setSymbol(String symbol) { this.symbol = symbol; }
 
     public BigDecimal getEntryPrice() { return entryPrice; }
-    public void setEntryPrice(BigDecimal entryPrice) { this.entryPrice = entryPrice; }
+    public void setEntryPrice(BigDecimal entryPrice) { this.entryPrice = Money.round(entryPrice); }
 
     public BigDecimal getExitPrice() { return exitPrice; }
-    public void setExitPrice(BigDecimal exitPrice) { this.exitPrice = exitPrice; }
+    public void setExitPrice(BigDecimal exitPrice) { this.exitPrice = Money.round(exitPrice); }
 
     public Integer getQuantity() { return quantity; }
     public void setQuantity(Integer quantity) { this.quantity = quantity; }
@@ -75,7 +90,7 @@ public class Trade {
     public void setExitDate(LocalDate exitDate) { this.exitDate = exitDate; }
 
     public BigDecimal getMarginAmount() { return marginAmount; }
-    public void setMarginAmount(BigDecimal marginAmount) { this.marginAmount = marginAmount; }
+    public void setMarginAmount(BigDecimal marginAmount) { this.marginAmount = Money.round(marginAmount); }
 
     public String getDailyInterest() { return dailyInterest; }
     public void setDailyInterest(String dailyInterest) { this.dailyInterest = dailyInterest; }
@@ -83,15 +98,47 @@ public class Trade {
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
 
+    public String getPortfolioId() { return portfolioId; }
+    public void setPortfolioId(String portfolioId) { this.portfolioId = portfolioId; }
+
+    /**
+     * Копия текущего состояния сделки, например до изменения при продаже.
+     */
+    public Trade copy() {
+        Trade copy = new Trade();
+        copy.id = id;
+        copy.symbol = symbol;
+        copy.entryPrice = entryPrice;
+        copy.exitPrice = exitPrice;
+        copy.quantity = quantity;
+        copy.entryDate = entryDate;
+        copy.exitDate = exitDate;
+        copy.marginAmount = marginAmount;
+        copy.dailyInterest = dailyInterest;
+        copy.notes = notes;
+        copy.portfolioId = portfolioId;
+        return copy;
+    }
+
+    public static boolean isSupportedDate(LocalDate date) {
+        return date == null || (!date.isBefore(MIN_DATE) && !date.isAfter(MAX_DATE));
+    }
+
+    @Transient
+    @JsonIgnore
+    @AssertTrue(message = "Dates must be between 1970-01-01 and 2099-12-31")
+    public boolean isDatesSupported() {
+        return isSupportedDate(entryDate) && isSupportedDate(exitDate);
+    }
+
     @Transient
     public Double getTotalCost() {
         if (entryPrice == null || quantity == null) return null;
-        // Округляем до 2 знаков после запятой
-        double result = entryPrice.doubleValue() * quantity;
-        return Math.round(result * 100.0) / 100.0;
+        return Money.toDouble(totalCostCents());
     }
 
     @Transient
+    @JsonIgnore
     public Double getMarginRequired() {
         // Не используется в новой модели, оставляем для совместимости
         return null;
@@ -99,40 +146,61 @@ public class Trade {
 
     @Transient
     public Double getDailyInterestAmount() {
-        if (getTotalCost() == null || marginAmount == null) return null;
-        // Процентная ставка из marginAmount (годовая ставка в процентах)
-        double yearlyInterest = getTotalCost() * marginAmount.doubleValue() / 100.0;
-        double dailyInterest = yearlyInterest / 365.0;
-        // Округляем до 2 знаков после запятой
-        return Math.round(dailyInterest * 100.0) / 100.0;
+        if (entryPrice == null || quantity == null || marginAmount == null) return null;
+        return Money.toDouble(dailyInterestCents());
     }
 
     @Transient
     public Double getTotalInterest() {
-        if (getDailyInterestAmount() == null || entryDate == null || exitDate == null) return null;
-        long days = ChronoUnit.DAYS.between(entryDate, exitDate);
-        double interest = getDailyInterestAmount() * days;
-        // Округляем до 2 знаков после запятой
-        return Math.round(interest * 100.0) / 100.0;
+        if (entryPrice == null || quantity == null || marginAmount == null || entryDate == null || exitDate == null) {
+            return null;
+        }
+        return Money.toDouble(totalInterestCents());
     }
 
     @Transient
     public Double getProfit() {
-        if (exitPrice == null || quantity == null || getTotalInterest() == null) return null;
-        double priceProfit = (exitPrice.doubleValue() - entryPrice.doubleValue()) * quantity;
-        return priceProfit - getTotalInterest();
+        if (exitPrice == null || entryPrice == null || quantity == null || marginAmount == null
+                || entryDate == null || exitDate == null) {
+            return null;
+        }
+        return Money.toDouble(profitCents());
+    }
+
+    // Расчеты в копейках без упаковки; вызываются только при заполненных полях, как проверяют геттеры выше
+
+    public long totalCostCents() {
+        return TradeCalculator.totalCostCents(Money.fromDecimal(entryPrice), quantity);
+    }
+
+    // Процентная ставка из marginAmount (годовая ставка в процентах)
+    public long dailyInterestCents() {
+        return TradeCalculator.dailyInterestCents(totalCostCents(), Money.fromDecimal(marginAmount));
+    }
+
+    public long totalInterestCents() {
+        return InterestEngine.totalInterestCents(totalCostCents(), Money.fromDecimal(marginAmount), entryDate, exitDate);
+    }
+
+    public long profitCents() {
+        return TradeCalculator.profitCents(Money.fromDecimal(entryPrice), Money.fromDecimal(exitPrice), quantity,
+            totalInterestCents());
     }
 
+    // Список на каждый день удержания не сериализуется: ответы API строятся через TradeViews,
+    // ежедневный график отдается постранично
     @Transient
+    @JsonIgnore
     public List<DailyInterest> getDailyInterestList() {
         List<DailyInterest> result = new ArrayList<>();
-        if (entryDate == null || exitDate == null || getDailyInterestAmount() == null) return result;
+        Double dailyInterestAmount = getDailyInterestAmount();
+        if (entryDate == null || exitDate == null || dailyInterestAmount == null) return result;
 
         LocalDate currentDate = entryDate;
         while (!currentDate.isAfter(exitDate)) {
             DailyInterest daily = new DailyInterest();
             daily.setDate(currentDate);
-            daily.setAmount(getDailyInterestAmount());
+            daily.setAmount(dailyInterestAmount);
             result.add(daily);
             currentDate = currentDate.plusDays(1);
         }
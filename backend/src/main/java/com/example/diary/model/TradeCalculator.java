@@ -0,0 +1,90 @@
+package com.example.diary.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Расчеты по сделке на примитивах.
+ * Используются геттерами {@link Trade} и агрегирующими запросами, чтобы
+ * результаты совпадали до последнего знака независимо от источника данных.
+ * <p>
+ * Основные методы работают в копейках и сотых долях процента ({@link Money}) и округляют только
+ * дневной процент. Методы на double переводят аргументы в копейки и считают тем же кодом,
+ * поэтому дают те же суммы без накопленной погрешности плавающей точки.
+ */
+public final class TradeCalculator {
+
+    // Годовая ставка в сотых долях процента: сумма * ставка / (100 * 100) / 365
+    private static final long DAILY_RATE_DIVISOR = 100L * 100L * 365L;
+
+    private TradeCalculator() {
+    }
+
+    // Округляем до 2 знаков после запятой
+    public static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    public static long totalCostCents(long entryPriceCents, int quantity) {
+        return entryPriceCents * quantity;
+    }
+
+    /**
+     * Дневной процент в копейках по годовой ставке в сотых долях процента, округленный половиной от нуля.
+     * Сумма раскладывается на частное и остаток по делителю, чтобы произведение не переполняло long.
+     */
+    public static long dailyInterestCents(long totalCostCents, long rateHundredths) {
+        long whole = totalCostCents / DAILY_RATE_DIVISOR;
+        long rest = totalCostCents % DAILY_RATE_DIVISOR;
+        return whole * rateHundredths + Money.divideHalfUp(rest * rateHundredths, DAILY_RATE_DIVISOR);
+    }
+
+    public static long totalInterestCents(long dailyInterestCents, long days) {
+        return dailyInterestCents * days;
+    }
+
+    public static long profitCents(long entryPriceCents, long exitPriceCents, int quantity, long totalInterestCents) {
+        return (exitPriceCents - entryPriceCents) * quantity - totalInterestCents;
+    }
+
+    public static double totalCost(double entryPrice, int quantity) {
+        return Money.toDouble(totalCostCents(Money.fromDouble(entryPrice), quantity));
+    }
+
+    // Процентная ставка - годовая ставка в процентах
+    public static double dailyInterest(double totalCost, double marginRate) {
+        return Money.toDouble(dailyInterestCents(Money.fromDouble(totalCost), Money.fromDouble(marginRate)));
+    }
+
+    public static double totalInterest(double dailyInterest, long days) {
+        return Money.toDouble(totalInterestCents(Money.fromDouble(dailyInterest), days));
+    }
+
+    /**
+     * Прибыль по произвольной цене выхода (например, рыночной с долями копейки):
+     * разница цен округляется до копеек один раз, на всю позицию.
+     */
+    public static double profit(double entryPrice, double exitPrice, int quantity, double totalInterest) {
+        long priceProfitCents = Money.fromDouble((exitPrice - entryPrice) * quantity);
+        return Money.toDouble(priceProfitCents - Money.fromDouble(totalInterest));
+    }
+
+    /**
+     * Полный расчет прибыли закрытой сделки в копейках, эквивалентный {@link Trade#getProfit()}.
+     */
+    public static long profitCents(long entryPriceCents, long exitPriceCents, int quantity, long rateHundredths,
+                                   LocalDate entryDate, LocalDate exitDate) {
+        long daily = dailyInterestCents(totalCostCents(entryPriceCents, quantity), rateHundredths);
+        long days = ChronoUnit.DAYS.between(entryDate, exitDate);
+        return profitCents(entryPriceCents, exitPriceCents, quantity, totalInterestCents(daily, days));
+    }
+
+    /**
+     * Полный расчет прибыли закрытой сделки, эквивалентный {@link Trade#getProfit()}.
+     */
+    public static double profit(double entryPrice, double exitPrice, int quantity, double marginRate,
+                                LocalDate entryDate, LocalDate exitDate) {
+        return Money.toDouble(profitCents(Money.fromDouble(entryPrice), Money.fromDouble(exitPrice), quantity,
+            Money.fromDouble(marginRate), entryDate, exitDate));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.diary.position;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.projection.TradeColumnRow;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * Лот - открытая сделка в позиции: неизменяемый снимок строки trades с ценой и ставкой в копейках и сотых.
+ * Проценты по лоту считаются так же, как у {@link Trade}: дневной процент от стоимости лота по его
+ * ставке marginAmount, умноженный на дни удержания.
+ */
+public record Lot(long id, LocalDate entryDate, int quantity, long entryPriceCents, long rateHundredths,
+                  long dailyInterestCents) {
+
+    // Порядок покупок: по дате входа, в пределах дня - по id
+    public static final Comparator<Lot> ORDER = Comparator.comparing(Lot::entryDate).thenComparingLong(Lot::id);
+
+    public static Lot of(Trade trade) {
+        return of(trade.getId(), trade.getEntryDate(), trade.getQuantity(), Money.fromDecimal(trade.getEntryPrice()),
+            Money.fromDecimal(trade.getMarginAmount()));
+    }
+
+    public static Lot of(TradeColumnRow row) {
+        return of(row.id(), row.entryDate(), row.quantity(), Money.fromDecimal(row.entryPrice()),
+            Money.fromDecimal(row.marginAmount()));
+    }
+
+    private static Lot of(long id, LocalDate entryDate, int quantity, long entryPriceCents, long rateHundredths) {
+        return new Lot(id, entryDate, quantity, entryPriceCents, rateHundredths,
+            dailyInterestCents(entryPriceCents, quantity, rateHundredths));
+    }
+
+    public static long dailyInterestCents(long entryPriceCents, int quantity, long rateHundredths) {
+        return TradeCalculator.dailyInterestCents(TradeCalculator.totalCostCents(entryPriceCents, quantity),
+            rateHundredths);
+    }
+
+    public long costCents() {
+        return TradeCalculator.totalCostCents(entryPriceCents, quantity);
+    }
+
+    // Проценты, набежавшие к дате: дни удержания считаются как ChronoUnit.DAYS.between(entryDate, date)
+    public long interestCents(LocalDate date) {
+        return TradeCalculator.totalInterestCents(dailyInterestCents, holdingDays(date));
+    }
+
+    public long holdingDays(LocalDate date) {
+        return date.toEpochDay() - entryDate.toEpochDay();
+    }
+}
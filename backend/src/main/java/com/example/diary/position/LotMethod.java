@@ -0,0 +1,24 @@
+package com.example.diary.position;
+
+/**
+ * Порядок списания лотов при продаже части позиции.
+ */
+public enum LotMethod {
+    // Сначала самые ранние покупки
+    FIFO,
+    // Сначала самые поздние покупки
+    LIFO,
+    // Пропорционально всем лотам: прибыль считается от средней цены позиции
+    AVERAGE;
+
+    public static LotMethod parse(String value) {
+        if (value == null || value.isBlank()) {
+            return FIFO;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный метод списания лотов: " + value);
+        }
+    }
+}
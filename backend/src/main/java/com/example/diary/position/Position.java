@@ -0,0 +1,67 @@
+package com.example.diary.position;
+
+import java.time.LocalDate;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Позиция по одному тикеру в одном портфеле: открытые лоты в порядке покупок и их суммы.
+ * Набежавшие проценты позиции считаются за O(1): сумма daily * (date - entryDay) по лотам равна
+ * date * sum(daily) - sum(daily * entryDay), обе суммы поддерживаются при добавлении и удалении лота.
+ * Изменяется и читается только {@link PositionBook} под его блокировкой.
+ */
+final class Position {
+
+    private final String portfolio;
+    private final String symbol;
+    private final TreeSet<Lot> lots = new TreeSet<>(Lot.ORDER);
+    private long quantity;
+    private long costCents;
+    private long dailyInterestCents;
+    private long dailyInterestDays;
+
+    Position(String portfolio, String symbol) {
+        this.portfolio = portfolio;
+        this.symbol = symbol;
+    }
+
+    void add(Lot lot) {
+        lots.add(lot);
+        quantity += lot.quantity();
+        costCents += lot.costCents();
+        dailyInterestCents += lot.dailyInterestCents();
+        dailyInterestDays += lot.dailyInterestCents() * lot.entryDate().toEpochDay();
+    }
+
+    void remove(Lot lot) {
+        lots.remove(lot);
+        quantity -= lot.quantity();
+        costCents -= lot.costCents();
+        dailyInterestCents -= lot.dailyInterestCents();
+        dailyInterestDays -= lot.dailyInterestCents() * lot.entryDate().toEpochDay();
+    }
+
+    // Лоты, купленные не позже даты: продать можно только их
+    NavigableSet<Lot> eligible(LocalDate date) {
+        return lots.headSet(new Lot(Long.MAX_VALUE, date, 0, 0, 0, 0), true);
+    }
+
+    NavigableSet<Lot> lots() {
+        return lots;
+    }
+
+    boolean isEmpty() {
+        return lots.isEmpty();
+    }
+
+    String getPortfolio() { return portfolio; }
+    String getSymbol() { return symbol; }
+    int getLotCount() { return lots.size(); }
+    long getQuantity() { return quantity; }
+    long getCostCents() { return costCents; }
+    long getDailyInterestCents() { return dailyInterestCents; }
+
+    long accruedInterestCents(LocalDate date) {
+        return dailyInterestCents * date.toEpochDay() - dailyInterestDays;
+    }
+}
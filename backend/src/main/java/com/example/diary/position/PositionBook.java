@@ -0,0 +1,278 @@
+package com.example.diary.position;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.journal.TradeJournal;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.projection.TradeColumnRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Книга позиций: открытые сделки как лоты, сгруппированные по портфелю и тикеру.
+ * Лоты позиции упорядочены по дате покупки ({@link Lot#ORDER}), поэтому подбор лотов под продажу
+ * по FIFO и LIFO берет их с нужного конца за O(log n) на лот, а суммы позиции поддерживаются при каждом изменении.
+ * При старте строится по сделкам из {@link TradeJournal} или из БД, затем обновляется по {@link TradeChangeEvent}: лоты из removed удаляются,
+ * открытые сделки из added добавляются. Импорт сотен тысяч сделок обходится добавлением лотов
+ * без пересчета всей книги.
+ */
+@Service
+public class PositionBook implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionBook.class);
+
+    /**
+     * Сколько бумаг списывается с лота при продаже.
+     */
+    public record Allocation(Lot lot, int quantity) {
+    }
+
+    /**
+     * Снимок позиции: суммы в копейках, набежавшие проценты - к дате снимка.
+     */
+    public record Summary(String portfolio, String symbol, int lots, long quantity, long costCents,
+                          long dailyInterestCents, long accruedInterestCents, LocalDate firstEntryDate,
+                          LocalDate lastEntryDate) {
+    }
+
+    // Лот и позиция, в которой он лежит, - для удаления по id
+    private record Entry(Position position, Lot lot) {
+    }
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Портфель -> тикер -> позиция, оба уровня в алфавитном порядке
+    private final TreeMap<String, TreeMap<String, Position>> portfolios = new TreeMap<>();
+    private final Map<Long, Entry> lots = new HashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load(tradeJournal.recoveredRows());
+    }
+
+    // recovered - сделки, восстановленные журналом при старте; null - чтение открытых сделок из БД
+    private void load(List<TradeColumnRow> recovered) {
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            portfolios.clear();
+            lots.clear();
+            if (recovered != null) {
+                for (TradeColumnRow row : recovered) {
+                    if (row.exitDate() == null) {
+                        add(row.portfolioId(), row.symbol(), Lot.of(row));
+                    }
+                }
+            } else {
+                TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+                readOnlyTransaction.setReadOnly(true);
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    try (Stream<TradeColumnRow> rows = tradeRepository.streamOpenColumnRows()) {
+                        rows.forEach(row -> add(row.portfolioId(), row.symbol(), Lot.of(row)));
+                    }
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Книга позиций загружена: {} лотов за {} мс", lots.size(), System.currentTimeMillis() - started);
+    }
+
+    @EventListener
+    public void onTradeChange(TradeChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (Trade trade : event.getRemoved()) {
+                remove(trade.getId());
+            }
+            for (Trade trade : event.getAdded()) {
+                remove(trade.getId());
+                if (trade.getExitDate() == null) {
+                    add(trade.getPortfolioId(), trade.getSymbol(), Lot.of(trade));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Позиции портфеля или всех портфелей (portfolio == null) на дату.
+     */
+    public List<Summary> positions(String portfolio, LocalDate date) {
+        lock.readLock().lock();
+        try {
+            List<Summary> result = new ArrayList<>();
+            for (Map.Entry<String, TreeMap<String, Position>> entry : portfolios.entrySet()) {
+                if (portfolio == null || portfolio.equals(entry.getKey())) {
+                    for (Position position : entry.getValue().values()) {
+                        result.add(summary(position, date));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Позиция по тикеру на дату или null, если открытых лотов нет.
+     */
+    public Summary position(String portfolio, String symbol, LocalDate date) {
+        lock.readLock().lock();
+        try {
+            Position position = find(portfolio, symbol);
+            return position != null ? summary(position, date) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Лоты позиции в порядке списания: FIFO и AVERAGE - от ранних покупок, LIFO - от поздних.
+     */
+    public List<Lot> lots(String portfolio, String symbol, LotMethod method) {
+        lock.readLock().lock();
+        try {
+            Position position = find(portfolio, symbol);
+            if (position == null) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(method == LotMethod.LIFO ? position.lots().descendingSet() : position.lots());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Подбирает лоты под продажу quantity бумаг датой date. Продаются только лоты, купленные не позже этой даты.
+     * FIFO и LIFO списывают лоты целиком с одного конца, последний затронутый лот - частично.
+     * AVERAGE списывает со всех лотов пропорционально их количеству, остаток от округления достается лотам
+     * с наибольшей дробной частью; прибыль такой продажи равна прибыли от средней цены позиции.
+     */
+    public List<Allocation> match(String portfolio, String symbol, int quantity, LocalDate date, LotMethod method) {
+        lock.readLock().lock();
+        try {
+            Position position = find(portfolio, symbol);
+            if (position == null) {
+                throw new IllegalArgumentException("Нет открытой позиции " + symbol + " в портфеле " + portfolio);
+            }
+            NavigableSet<Lot> eligible = position.eligible(date);
+            long available = 0;
+            for (Lot lot : eligible) {
+                available += lot.quantity();
+                if (available >= quantity && method != LotMethod.AVERAGE) {
+                    break;
+                }
+            }
+            if (available < quantity) {
+                throw new IllegalArgumentException("Недостаточно бумаг " + symbol + " на " + date + ": в позиции "
+                    + available + ", продается " + quantity);
+            }
+            return switch (method) {
+                case FIFO -> sequential(eligible.iterator(), quantity);
+                case LIFO -> sequential(eligible.descendingIterator(), quantity);
+                case AVERAGE -> proportional(eligible, available, quantity);
+            };
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<Allocation> sequential(Iterator<Lot> lots, int quantity) {
+        List<Allocation> allocations = new ArrayList<>();
+        int left = quantity;
+        while (left > 0) {
+            Lot lot = lots.next();
+            int taken = Math.min(left, lot.quantity());
+            allocations.add(new Allocation(lot, taken));
+            left -= taken;
+        }
+        return allocations;
+    }
+
+    private static List<Allocation> proportional(Collection<Lot> lots, long available, int quantity) {
+        Lot[] sorted = lots.toArray(new Lot[0]);
+        int[] taken = new int[sorted.length];
+        long[] remainders = new long[sorted.length];
+        long assigned = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            long share = (long) quantity * sorted[i].quantity();
+            taken[i] = (int) (share / available);
+            remainders[i] = share % available;
+            assigned += taken[i];
+        }
+        // Оставшиеся бумаги (меньше числа лотов) - по одной лотам с наибольшим остатком, при равенстве - ранним
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(remainders[b], remainders[a]));
+        for (int i = 0; assigned < quantity; i++) {
+            taken[order[i]]++;
+            assigned++;
+        }
+        List<Allocation> allocations = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            if (taken[i] > 0) {
+                allocations.add(new Allocation(sorted[i], taken[i]));
+            }
+        }
+        return allocations;
+    }
+
+    private Position find(String portfolio, String symbol) {
+        TreeMap<String, Position> positions = portfolios.get(portfolio);
+        return positions != null ? positions.get(symbol) : null;
+    }
+
+    private static Summary summary(Position position, LocalDate date) {
+        return new Summary(position.getPortfolio(), position.getSymbol(), position.getLotCount(),
+            position.getQuantity(), position.getCostCents(), position.getDailyInterestCents(),
+            position.accruedInterestCents(date), position.lots().first().entryDate(),
+            position.lots().last().entryDate());
+    }
+
+    private void add(String portfolio, String symbol, Lot lot) {
+        Position position = portfolios.computeIfAbsent(portfolio, key -> new TreeMap<>())
+            .computeIfAbsent(symbol, key -> new Position(portfolio, symbol));
+        position.add(lot);
+        lots.put(lot.id(), new Entry(position, lot));
+    }
+
+    private void remove(Long id) {
+        Entry entry = lots.remove(id);
+        if (entry == null) {
+            return;
+        }
+        Position position = entry.position();
+        position.remove(entry.lot());
+        if (position.isEmpty()) {
+            TreeMap<String, Position> positions = portfolios.get(position.getPortfolio());
+            positions.remove(position.getSymbol());
+            if (positions.isEmpty()) {
+                portfolios.remove(position.getPortfolio());
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.diary.position;
+
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Money;
+import com.example.diary.model.Portfolios;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.TradeBatchWriter;
+import com.example.diary.repository.TradeRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Позиции по тикерам и продажа части позиции со списанием лотов по {@link LotMethod}.
+ * Лот, проданный целиком, закрывается как обычная сделка. Лот, проданный частично, делится:
+ * строка сделки остается открытой с уменьшенным количеством, а проданная часть записывается новой
+ * закрытой сделкой с той же ценой, датой входа и ставкой - прибыль и проценты каждой части
+ * считаются обычными формулами сделки. Все изменения одной продажи пишутся JDBC batch в одной транзакции
+ * и публикуются одним событием; если лот успели изменить после подбора, продажа откатывается целиком.
+ */
+@Service
+public class PositionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionService.class);
+
+    /**
+     * Продажа quantity бумаг тикера по цене price. Без портфеля - портфель по умолчанию,
+     * без даты - сегодня, без метода - FIFO. dryRun только показывает, какие лоты будут списаны.
+     */
+    public record SellRequest(String portfolio, String symbol, Integer quantity, BigDecimal price,
+                              LocalDate exitDate, String method, Boolean dryRun) {
+    }
+
+    @Autowired
+    private PositionBook positionBook;
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private TradeBatchWriter batchWriter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${trades.import.batch-size:500}")
+    private int batchSize;
+
+    // Продажи выполняются по одной: следующая подбирает лоты уже по книге после предыдущей
+    private final ReentrantLock sales = new ReentrantLock();
+
+    public Map<String, Object> getPositions(String portfolio) {
+        LocalDate today = LocalDate.now();
+        List<Map<String, Object>> positions = new ArrayList<>();
+        for (PositionBook.Summary summary : positionBook.positions(portfolio, today)) {
+            positions.add(toResponse(summary));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("date", today);
+        result.put("portfolio", portfolio);
+        result.put("positions", positions);
+        return result;
+    }
+
+    public Map<String, Object> getLots(String portfolio, String symbol, LotMethod method) {
+        String key = symbol.trim().toUpperCase();
+        LocalDate today = LocalDate.now();
+        List<Map<String, Object>> lots = new ArrayList<>();
+        for (Lot lot : positionBook.lots(portfolio, key, method)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", lot.id());
+            row.put("entryDate", lot.entryDate());
+            row.put("quantity", lot.quantity());
+            row.put("entryPrice", Money.toDouble(lot.entryPriceCents()));
+            row.put("cost", Money.toDouble(lot.costCents()));
+            row.put("rate", Money.toDouble(lot.rateHundredths()));
+            row.put("dailyInterest", Money.toDouble(lot.dailyInterestCents()));
+            row.put("holdingDays", lot.holdingDays(today));
+            row.put("accruedInterest", Money.toDouble(lot.interestCents(today)));
+            lots.add(row);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("date", today);
+        result.put("portfolio", portfolio);
+        result.put("symbol", key);
+        result.put("method", method);
+        result.put("position", toResponse(positionBook.position(portfolio, key, today)));
+        result.put("lots", lots);
+        return result;
+    }
+
+    public Map<String, Object> sell(SellRequest request) {
+        if (request.symbol() == null || request.symbol().isBlank()) {
+            throw new IllegalArgumentException("Тикер не может быть пустым");
+        }
+        if (request.quantity() == null || request.quantity() < 1) {
+            throw new IllegalArgumentException("Количество должно быть положительным");
+        }
+        if (request.price() == null || request.price().signum() <= 0) {
+            throw new IllegalArgumentException("Цена продажи должна быть положительной");
+        }
+        String portfolio = Portfolios.orDefault(request.portfolio());
+        String symbol = request.symbol().trim().toUpperCase();
+        LotMethod method = LotMethod.parse(request.method());
+        LocalDate exitDate = request.exitDate() != null ? request.exitDate() : LocalDate.now();
+        if (!Trade.isSupportedDate(exitDate)) {
+            throw new IllegalArgumentException("Дата продажи должна быть в диапазоне " + Trade.MIN_DATE + " - "
+                + Trade.MAX_DATE);
+        }
+        boolean dryRun = Boolean.TRUE.equals(request.dryRun());
+
+        sales.lock();
+        try {
+            List<PositionBook.Allocation> allocations =
+                positionBook.match(portfolio, symbol, request.quantity(), exitDate, method);
+            Map<Long, Long> closedTradeIds = dryRun ? Map.of() : execute(allocations, request.price(), exitDate);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("portfolio", portfolio);
+            result.put("symbol", symbol);
+            result.put("method", method);
+            result.put("exitDate", exitDate);
+            result.put("price", request.price());
+            result.put("quantity", request.quantity());
+            result.put("dryRun", dryRun);
+            putSale(result, allocations, Money.fromDecimal(request.price()), exitDate, closedTradeIds);
+            if (!dryRun) {
+                result.put("position", toResponse(positionBook.position(portfolio, symbol, LocalDate.now())));
+                logger.info("Продажа {} {} из портфеля {} ({}): списано лотов {}", request.quantity(), symbol,
+                    portfolio, method, allocations.size());
+            }
+            return result;
+        } finally {
+            sales.unlock();
+        }
+    }
+
+    // Возвращает id закрытой сделки для каждого списанного лота
+    private Map<Long, Long> execute(List<PositionBook.Allocation> allocations, BigDecimal price, LocalDate exitDate) {
+        List<Trade> before = new ArrayList<>();
+        List<Trade> closed = new ArrayList<>();
+        List<Trade> reduced = new ArrayList<>();
+        List<Trade> parts = new ArrayList<>();
+        Map<Long, Long> closedTradeIds = new HashMap<>();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<Long, Trade> trades = load(allocations);
+            int[] previousQuantities = new int[allocations.size()];
+            for (PositionBook.Allocation allocation : allocations) {
+                Lot lot = allocation.lot();
+                Trade trade = trades.get(lot.id());
+                if (trade == null || trade.getExitDate() != null || trade.getQuantity() != lot.quantity()) {
+                    throw new IllegalStateException("Лот " + lot.id() + " изменился во время продажи, повторите запрос");
+                }
+                before.add(trade.copy());
+                if (allocation.quantity() == lot.quantity()) {
+                    trade.setExitPrice(price);
+                    trade.setExitDate(exitDate);
+                    closed.add(trade);
+                } else {
+                    Trade part = trade.copy();
+                    part.setId(null);
+                    part.setQuantity(allocation.quantity());
+                    part.setExitPrice(price);
+                    part.setExitDate(exitDate);
+                    parts.add(part);
+                    previousQuantities[reduced.size()] = trade.getQuantity();
+                    trade.setQuantity(trade.getQuantity() - allocation.quantity());
+                    reduced.add(trade);
+                }
+            }
+
+            requireAll(closed.isEmpty() ? new int[0] : batchWriter.closeLots(closed));
+            requireAll(reduced.isEmpty() ? new int[0]
+                : batchWriter.reduceLots(reduced, Arrays.copyOf(previousQuantities, reduced.size())));
+            if (!parts.isEmpty()) {
+                batchWriter.insertAll(parts);
+            }
+        });
+
+        for (Trade trade : closed) {
+            closedTradeIds.put(trade.getId(), trade.getId());
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            closedTradeIds.put(reduced.get(i).getId(), parts.get(i).getId());
+        }
+        List<Trade> after = new ArrayList<>(closed);
+        after.addAll(reduced);
+        after.addAll(parts);
+        portfolioVersion.publish(TradeChangeEvent.sold(before, after));
+        return closedTradeIds;
+    }
+
+    // Строка не обновилась - лот закрыли, удалили или изменили в обход книги; транзакция откатывается
+    private static void requireAll(int[] counts) {
+        for (int count : counts) {
+            if (count == 0) {
+                throw new IllegalStateException("Позиция изменилась во время продажи, повторите запрос");
+            }
+        }
+    }
+
+    // Сделки читаются пакетами IN (...) и отсоединяются: дальше они меняются только через JDBC batch
+    private Map<Long, Trade> load(List<PositionBook.Allocation> allocations) {
+        List<Long> ids = new ArrayList<>(allocations.size());
+        for (PositionBook.Allocation allocation : allocations) {
+            ids.add(allocation.lot().id());
+        }
+        Map<Long, Trade> trades = new HashMap<>(ids.size() * 2);
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            for (Trade trade : tradeRepository.findAllById(chunk)) {
+                trades.put(trade.getId(), trade);
+            }
+            entityManager.clear();
+        }
+        return trades;
+    }
+
+    // Итоги продажи и списание по лотам: те же формулы, что у закрытой сделки с количеством из списания
+    private static void putSale(Map<String, Object> result, List<PositionBook.Allocation> allocations,
+                                long exitPriceCents, LocalDate exitDate, Map<Long, Long> closedTradeIds) {
+        long proceeds = 0;
+        long costBasis = 0;
+        long interest = 0;
+        long profit = 0;
+        List<Map<String, Object>> lots = new ArrayList<>(allocations.size());
+        for (PositionBook.Allocation allocation : allocations) {
+            Lot lot = allocation.lot();
+            int quantity = allocation.quantity();
+            long cost = TradeCalculator.totalCostCents(lot.entryPriceCents(), quantity);
+            long days = lot.holdingDays(exitDate);
+            long lotInterest = TradeCalculator.totalInterestCents(
+                Lot.dailyInterestCents(lot.entryPriceCents(), quantity, lot.rateHundredths()), days);
+            long lotProfit = TradeCalculator.profitCents(lot.entryPriceCents(), exitPriceCents, quantity, lotInterest);
+            proceeds += TradeCalculator.totalCostCents(exitPriceCents, quantity);
+            costBasis += cost;
+            interest += lotInterest;
+            profit += lotProfit;
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("lotId", lot.id());
+            row.put("tradeId", closedTradeIds.get(lot.id()));
+            row.put("quantity", quantity);
+            row.put("remainingQuantity", lot.quantity() - quantity);
+            row.put("entryDate", lot.entryDate());
+            row.put("entryPrice", Money.toDouble(lot.entryPriceCents()));
+            row.put("holdingDays", days);
+            row.put("cost", Money.toDouble(cost));
+            row.put("interest", Money.toDouble(lotInterest));
+            row.put("profit", Money.toDouble(lotProfit));
+            lots.add(row);
+        }
+        int quantity = (Integer) result.get("quantity");
+        result.put("proceeds", Money.toDouble(proceeds));
+        result.put("costBasis", Money.toDouble(costBasis));
+        result.put("averageCost", Money.toDouble(Money.divideHalfUp(costBasis, quantity)));
+        result.put("interest", Money.toDouble(interest));
+        result.put("profit", Money.toDouble(profit));
+        result.put("lots", lots);
+    }
+
+    private static Map<String, Object> toResponse(PositionBook.Summary summary) {
+        if (summary == null) {
+            return null;
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("portfolio", summary.portfolio());
+        row.put("symbol", summary.symbol());
+        row.put("lots", summary.lots());
+        row.put("quantity", summary.quantity());
+        row.put("cost", Money.toDouble(summary.costCents()));
+        row.put("averagePrice", Money.toDouble(Money.divideHalfUp(summary.costCents(), summary.quantity())));
+        row.put("dailyInterest", Money.toDouble(summary.dailyInterestCents()));
+        row.put("accruedInterest", Money.toDouble(summary.accruedInterestCents()));
+        row.put("firstEntryDate", summary.firstEntryDate());
+        row.put("lastEntryDate", summary.lastEntryDate());
+        return row;
+    }
+}
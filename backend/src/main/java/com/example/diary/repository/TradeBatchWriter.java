@@ -0,0 +1,126 @@
+package com.example.diary.repository;
+
+import com.example.diary.model.Trade;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пакетная вставка, закрытие, уменьшение лотов и удаление сделок через JDBC в обход контекста персистентности.
+ * Id берутся блоками из trades_seq по той же схеме, что и pooled-оптимизатор Hibernate
+ * (значение последовательности - верхняя граница блока), поэтому не пересекаются с id,
+ * выданными через {@link TradeRepository#save}.
+ */
+@Repository
+public class TradeBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO trades " +
+        "(id, symbol, entry_price, exit_price, quantity, entry_date, exit_date, margin_amount, daily_interest, notes, " +
+        "portfolio_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Лот закрывается или уменьшается, только если его количество не изменилось с момента подбора лотов
+    private static final String CLOSE_LOT_SQL =
+        "UPDATE trades SET exit_price = ?, exit_date = ? WHERE id = ? AND exit_date IS NULL AND quantity = ?";
+
+    private static final String REDUCE_LOT_SQL =
+        "UPDATE trades SET quantity = ? WHERE id = ? AND exit_date IS NULL AND quantity = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM trades WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Назначает id сделкам без id и вставляет их одним JDBC batch. Должен вызываться внутри транзакции.
+     * Сделки, получившие id в откаченной попытке, вставляются с ним же: id из trades_seq не переиспользуются
+     * другими, а повтор не тратит новый блок последовательности.
+     */
+    public void insertAll(List<Trade> trades) {
+        assignIds(trades);
+        jdbcTemplate.batchUpdate(INSERT_SQL, trades, trades.size(), (ps, trade) -> {
+            ps.setLong(1, trade.getId());
+            ps.setString(2, trade.getSymbol());
+            ps.setBigDecimal(3, trade.getEntryPrice());
+            ps.setBigDecimal(4, trade.getExitPrice());
+            ps.setInt(5, trade.getQuantity());
+            ps.setDate(6, Date.valueOf(trade.getEntryDate()));
+            if (trade.getExitDate() != null) {
+                ps.setDate(7, Date.valueOf(trade.getExitDate()));
+            } else {
+                ps.setNull(7, Types.DATE);
+            }
+            ps.setBigDecimal(8, trade.getMarginAmount());
+            ps.setString(9, trade.getDailyInterest());
+            ps.setString(10, trade.getNotes());
+            ps.setString(11, trade.getPortfolioId());
+        });
+    }
+
+    /**
+     * Закрывает лоты целиком одним JDBC batch, проверяя, что количество в строке равно количеству в объекте.
+     * Возвращает число измененных строк для каждого лота: 0 - лот уже закрыт, удален или изменен.
+     */
+    public int[] closeLots(List<Trade> lots) {
+        return flatten(jdbcTemplate.batchUpdate(CLOSE_LOT_SQL, lots, lots.size(), (ps, lot) -> {
+            ps.setBigDecimal(1, lot.getExitPrice());
+            ps.setDate(2, Date.valueOf(lot.getExitDate()));
+            ps.setLong(3, lot.getId());
+            ps.setInt(4, lot.getQuantity());
+        }), lots.size());
+    }
+
+    /**
+     * Уменьшает количество открытых лотов до значений из объектов; previousQuantities - количество
+     * на момент подбора лотов, в том же порядке. Возвращает число измененных строк для каждого лота.
+     */
+    public int[] reduceLots(List<Trade> lots, int[] previousQuantities) {
+        List<Integer> positions = new ArrayList<>(lots.size());
+        for (int i = 0; i < lots.size(); i++) {
+            positions.add(i);
+        }
+        return flatten(jdbcTemplate.batchUpdate(REDUCE_LOT_SQL, positions, lots.size(), (ps, i) -> {
+            Trade lot = lots.get(i);
+            ps.setInt(1, lot.getQuantity());
+            ps.setLong(2, lot.getId());
+            ps.setInt(3, previousQuantities[i]);
+        }), lots.size());
+    }
+
+    /**
+     * Удаляет сделки по id одним JDBC batch. Возвращает число удаленных строк для каждого id.
+     */
+    public int[] deleteAll(List<Long> ids) {
+        return flatten(jdbcTemplate.batchUpdate(DELETE_SQL, ids, ids.size(),
+            (ps, id) -> ps.setLong(1, id)), ids.size());
+    }
+
+    private static int[] flatten(int[][] batches, int size) {
+        int[] counts = new int[size];
+        int position = 0;
+        for (int[] batch : batches) {
+            System.arraycopy(batch, 0, counts, position, batch.length);
+            position += batch.length;
+        }
+        return counts;
+    }
+
+    private void assignIds(List<Trade> trades) {
+        long next = 0;
+        long hi = -1;
+        for (Trade trade : trades) {
+            if (trade.getId() != null) {
+                continue;
+            }
+            if (next > hi) {
+                hi = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR trades_seq", Long.class);
+                next = hi - Trade.ID_ALLOCATION_SIZE + 1;
+            }
+            trade.setId(next++);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.diary.repository;
+
+import com.example.diary.model.Trade;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Позиция последней выданной сделки для keyset-пагинации.
+ * Текстовый вид: {@code id} при сортировке по id или {@code yyyy-MM-dd_id} при сортировке по дате входа.
+ */
+public class TradeCursor {
+
+    private final LocalDate entryDate;
+    private final long id;
+
+    public TradeCursor(LocalDate entryDate, long id) {
+        this.entryDate = entryDate;
+        this.id = id;
+    }
+
+    public LocalDate getEntryDate() { return entryDate; }
+    public long getId() { return id; }
+
+    public static TradeCursor after(Trade trade, TradeSort sort) {
+        return new TradeCursor(sort.isByEntryDate() ? trade.getEntryDate() : null, trade.getId());
+    }
+
+    public static TradeCursor parse(String value, TradeSort sort) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (!sort.isByEntryDate()) {
+                return new TradeCursor(null, Long.parseLong(value));
+            }
+            int separator = value.indexOf('_');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Неверный курсор: " + value);
+            }
+            return new TradeCursor(LocalDate.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Неверный курсор: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return entryDate != null ? entryDate + "_" + id : String.valueOf(id);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.diary.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Серверный фильтр списка сделок. Пустые поля не ограничивают выборку:
+ * без портфеля выбираются сделки всех портфелей. Диапазон дат применяется к дате входа.
+ * {@code openOn} - сделки, открытые на дату: куплены не позже нее и не закрыты до нее включительно,
+ * в отличие от {@link Status#OPEN}, который означает "не закрыта сейчас".
+ */
+public class TradeFilter {
+
+    public enum Status { OPEN, CLOSED }
+
+    private String portfolio;
+    private String symbol;
+    private Status status;
+    private LocalDate from;
+    private LocalDate to;
+    private LocalDate openOn;
+
+    public String getPortfolio() { return portfolio; }
+    public void setPortfolio(String portfolio) { this.portfolio = portfolio; }
+
+    public String getSymbol() { return symbol; }
+    public void setSymbol(String symbol) { this.symbol = symbol; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public LocalDate getFrom() { return from; }
+    public void setFrom(LocalDate from) { this.from = from; }
+
+    public LocalDate getTo() { return to; }
+    public void setTo(LocalDate to) { this.to = to; }
+
+    public LocalDate getOpenOn() { return openOn; }
+    public void setOpenOn(LocalDate openOn) { this.openOn = openOn; }
+}
@@ -1,32 +1,77 @@
 package com.example.diary.repository;
 
 import com.example.diary.model.Trade;
+import com.example.diary.repository.projection.ClosedTradeRow;
+import com.example.diary.repository.projection.SymbolTradeCount;
+import com.example.diary.repository.projection.TradeColumnRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface TradeRepository extends JpaRepository<Trade, Long> {
+public interface TradeRepository extends JpaRepository<Trade, Long>, TradeRepositoryCustom {
     
-    @Query("SELECT t FROM Trade t WHERE t.exitDate BETWEEN :startDate AND :endDate ORDER BY t.exitDate DESC")
-    List<Trade> findByExitDateBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    // Закрытые сделки в диапазоне дат выхода - только поля для расчета прибыли.
+    // Варианты с портфелем - отдельные запросы с равенством по portfolio_id, чтобы H2 брал индексы V3
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.diary.repository.projection.ClosedTradeRow(" +
+           "t.symbol, t.entryPrice, t.exitPrice, t.quantity, t.entryDate, t.exitDate, t.marginAmount) " +
+           "FROM Trade t " +
+           "WHERE t.exitDate BETWEEN :startDate AND :endDate")
+    Stream<ClosedTradeRow> streamClosedTrades(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query("SELECT t.symbol, SUM((t.exitPrice - t.entryPrice) * t.quantity) as profit " +
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.diary.repository.projection.ClosedTradeRow(" +
+           "t.symbol, t.entryPrice, t.exitPrice, t.quantity, t.entryDate, t.exitDate, t.marginAmount) " +
            "FROM Trade t " +
-           "WHERE t.exitDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY t.symbol " +
-           "ORDER BY profit DESC")
-    List<Object[]> findSymbolProfits(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+           "WHERE t.portfolioId = :portfolio AND t.exitDate BETWEEN :startDate AND :endDate")
+    Stream<ClosedTradeRow> streamClosedTrades(@Param("portfolio") String portfolio,
+                                              @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Открытые сделки в диапазоне дат входа
+    @Query("SELECT COUNT(t) FROM Trade t WHERE t.exitDate IS NULL AND t.entryDate BETWEEN :startDate AND :endDate")
+    long countOpenTrades(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT COUNT(t) FROM Trade t " +
+           "WHERE t.portfolioId = :portfolio AND t.exitDate IS NULL AND t.entryDate BETWEEN :startDate AND :endDate")
+    long countOpenTrades(@Param("portfolio") String portfolio,
+                         @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query("SELECT FUNCTION('DATE_FORMAT', t.exitDate, '%Y-%m') as month, " +
-           "SUM((t.exitPrice - t.entryPrice) * t.quantity) as profit " +
+    // Количество сделок по тикерам: закрытые по дате выхода, открытые по дате входа
+    @Query("SELECT t.symbol AS symbol, COUNT(t) AS trades " +
            "FROM Trade t " +
            "WHERE t.exitDate BETWEEN :startDate AND :endDate " +
-           "GROUP BY FUNCTION('DATE_FORMAT', t.exitDate, '%Y-%m') " +
-           "ORDER BY month")
-    List<Object[]> findMonthlyProfits(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+           "OR (t.exitDate IS NULL AND t.entryDate BETWEEN :startDate AND :endDate) " +
+           "GROUP BY t.symbol")
+    List<SymbolTradeCount> countTradesBySymbol(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT t.symbol AS symbol, COUNT(t) AS trades " +
+           "FROM Trade t " +
+           "WHERE t.portfolioId = :portfolio AND (t.exitDate BETWEEN :startDate AND :endDate " +
+           "OR (t.exitDate IS NULL AND t.entryDate BETWEEN :startDate AND :endDate)) " +
+           "GROUP BY t.symbol")
+    List<SymbolTradeCount> countTradesBySymbol(@Param("portfolio") String portfolio,
+                                               @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Все сделки для столбцового снимка - без TEXT-колонок и без контекста персистентности
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.diary.repository.projection.TradeColumnRow(" +
+           "t.id, t.portfolioId, t.symbol, t.entryPrice, t.exitPrice, t.quantity, t.entryDate, t.exitDate, t.marginAmount) " +
+           "FROM Trade t ORDER BY t.id")
+    Stream<TradeColumnRow> streamColumnRows();
+
+    // Открытые сделки для книги позиций - та же проекция, только лоты без даты выхода
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.diary.repository.projection.TradeColumnRow(" +
+           "t.id, t.portfolioId, t.symbol, t.entryPrice, t.exitPrice, t.quantity, t.entryDate, t.exitDate, t.marginAmount) " +
+           "FROM Trade t WHERE t.exitDate IS NULL ORDER BY t.id")
+    Stream<TradeColumnRow> streamOpenColumnRows();
 }
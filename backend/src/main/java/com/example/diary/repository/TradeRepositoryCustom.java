@@ -0,0 +1,23 @@
+package com.example.diary.repository;
+
+import com.example.diary.model.Trade;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Запросы со сборкой условий во время выполнения: keyset-пагинация и потоковая выгрузка.
+ */
+public interface TradeRepositoryCustom {
+
+    /**
+     * Страница сделок строго после курсора (или с начала, если курсор null).
+     */
+    List<Trade> findPage(TradeFilter filter, TradeSort sort, TradeCursor after, int limit);
+
+    /**
+     * Поток сделок с ограниченным размером выборки с курсора JDBC.
+     * Должен вызываться внутри транзакции, поток необходимо закрыть.
+     */
+    Stream<Trade> streamTrades(TradeFilter filter, TradeSort sort, int fetchSize);
+}
@@ -0,0 +1,104 @@
+package com.example.diary.repository;
+
+import com.example.diary.model.Trade;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TradeRepositoryImpl implements TradeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Trade> findPage(TradeFilter filter, TradeSort sort, TradeCursor after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Trade> query = cb.createQuery(Trade.class);
+        Root<Trade> trade = query.from(Trade.class);
+
+        List<Predicate> predicates = filterPredicates(cb, trade, filter);
+        if (after != null) {
+            predicates.add(keysetPredicate(cb, trade, sort, after));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(orders(cb, trade, sort));
+
+        return entityManager.createQuery(query)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    @Override
+    public Stream<Trade> streamTrades(TradeFilter filter, TradeSort sort, int fetchSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Trade> query = cb.createQuery(Trade.class);
+        Root<Trade> trade = query.from(Trade.class);
+
+        query.where(filterPredicates(cb, trade, filter).toArray(new Predicate[0]));
+        query.orderBy(orders(cb, trade, sort));
+
+        return entityManager.createQuery(query)
+            .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+    }
+
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Trade> trade, TradeFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter == null) {
+            return predicates;
+        }
+        if (filter.getPortfolio() != null) {
+            predicates.add(cb.equal(trade.get("portfolioId"), filter.getPortfolio()));
+        }
+        if (filter.getSymbol() != null) {
+            predicates.add(cb.equal(trade.get("symbol"), filter.getSymbol()));
+        }
+        if (filter.getStatus() == TradeFilter.Status.OPEN) {
+            predicates.add(cb.isNull(trade.get("exitDate")));
+        } else if (filter.getStatus() == TradeFilter.Status.CLOSED) {
+            predicates.add(cb.isNotNull(trade.get("exitDate")));
+        }
+        if (filter.getFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(trade.<LocalDate>get("entryDate"), filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(trade.<LocalDate>get("entryDate"), filter.getTo()));
+        }
+        if (filter.getOpenOn() != null) {
+            Path<LocalDate> exitDate = trade.get("exitDate");
+            predicates.add(cb.lessThanOrEqualTo(trade.<LocalDate>get("entryDate"), filter.getOpenOn()));
+            predicates.add(cb.or(cb.isNull(exitDate), cb.greaterThan(exitDate, filter.getOpenOn())));
+        }
+        return predicates;
+    }
+
+    // (entryDate, id) > (:entryDate, :id) для прямого порядка и < для обратного
+    private Predicate keysetPredicate(CriteriaBuilder cb, Root<Trade> trade, TradeSort sort, TradeCursor after) {
+        Path<Long> id = trade.get("id");
+        Predicate idAfter = sort.isAscending() ? cb.greaterThan(id, after.getId()) : cb.lessThan(id, after.getId());
+        if (!sort.isByEntryDate()) {
+            return idAfter;
+        }
+        Path<LocalDate> entryDate = trade.get("entryDate");
+        Predicate dateAfter = sort.isAscending()
+            ? cb.greaterThan(entryDate, after.getEntryDate())
+            : cb.lessThan(entryDate, after.getEntryDate());
+        return cb.or(dateAfter, cb.and(cb.equal(entryDate, after.getEntryDate()), idAfter));
+    }
+
+    private List<Order> orders(CriteriaBuilder cb, Root<Trade> trade, TradeSort sort) {
+        List<Order> orders = new ArrayList<>(2);
+        if (sort.isByEntryDate()) {
+            orders.add(sort.isAscending() ? cb.asc(trade.get("entryDate")) : cb.desc(trade.get("entryDate")));
+        }
+        orders.add(sort.isAscending() ? cb.asc(trade.get("id")) : cb.desc(trade.get("id")));
+        return orders;
+    }
+}
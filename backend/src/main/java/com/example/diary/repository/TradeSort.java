@@ -0,0 +1,48 @@
+package com.example.diary.repository;
+
+/**
+ * Порядок выдачи сделок для keyset-пагинации.
+ * Сортировка по дате входа всегда дополняется id, чтобы курсор был однозначным.
+ */
+public enum TradeSort {
+    ID_ASC(false, true),
+    ID_DESC(false, false),
+    ENTRY_DATE_ASC(true, true),
+    ENTRY_DATE_DESC(true, false);
+
+    private final boolean byEntryDate;
+    private final boolean ascending;
+
+    TradeSort(boolean byEntryDate, boolean ascending) {
+        this.byEntryDate = byEntryDate;
+        this.ascending = ascending;
+    }
+
+    public boolean isByEntryDate() { return byEntryDate; }
+    public boolean isAscending() { return ascending; }
+
+    public static TradeSort parse(String sort, String direction) {
+        boolean byEntryDate;
+        if (sort == null || sort.equalsIgnoreCase("id")) {
+            byEntryDate = false;
+        } else if (sort.equalsIgnoreCase("entryDate")) {
+            byEntryDate = true;
+        } else {
+            throw new IllegalArgumentException("Неверное поле сортировки: " + sort);
+        }
+
+        boolean ascending;
+        if (direction == null || direction.equalsIgnoreCase("asc")) {
+            ascending = true;
+        } else if (direction.equalsIgnoreCase("desc")) {
+            ascending = false;
+        } else {
+            throw new IllegalArgumentException("Неверное направление сортировки: " + direction);
+        }
+
+        if (byEntryDate) {
+            return ascending ? ENTRY_DATE_ASC : ENTRY_DATE_DESC;
+        }
+        return ascending ? ID_ASC : ID_DESC;
+    }
+}
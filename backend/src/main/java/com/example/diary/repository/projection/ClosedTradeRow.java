@@ -0,0 +1,53 @@
+package com.example.diary.repository.projection;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.TradeCalculator;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Облегченная проекция закрытой сделки для аналитики.
+ * Содержит только поля, необходимые для расчета прибыли, без notes/daily_interest.
+ */
+public class ClosedTradeRow {
+
+    private final String symbol;
+    private final BigDecimal entryPrice;
+    private final BigDecimal exitPrice;
+    private final Integer quantity;
+    private final LocalDate entryDate;
+    private final LocalDate exitDate;
+    private final BigDecimal marginAmount;
+
+    public ClosedTradeRow(String symbol, BigDecimal entryPrice, BigDecimal exitPrice, Integer quantity,
+                          LocalDate entryDate, LocalDate exitDate, BigDecimal marginAmount) {
+        this.symbol = symbol;
+        this.entryPrice = entryPrice;
+        this.exitPrice = exitPrice;
+        this.quantity = quantity;
+        this.entryDate = entryDate;
+        this.exitDate = exitDate;
+        this.marginAmount = marginAmount;
+    }
+
+    public String getSymbol() { return symbol; }
+    public BigDecimal getEntryPrice() { return entryPrice; }
+    public BigDecimal getExitPrice() { return exitPrice; }
+    public Integer getQuantity() { return quantity; }
+    public LocalDate getEntryDate() { return entryDate; }
+    public LocalDate getExitDate() { return exitDate; }
+    public BigDecimal getMarginAmount() { return marginAmount; }
+
+    /**
+     * Прибыль, совпадающая с {@link com.example.diary.model.Trade#getProfit()}; null, если ее нельзя посчитать.
+     */
+    public Double getProfit() {
+        if (exitPrice == null || entryPrice == null || quantity == null
+                || marginAmount == null || entryDate == null || exitDate == null) {
+            return null;
+        }
+        return Money.toDouble(TradeCalculator.profitCents(Money.fromDecimal(entryPrice), Money.fromDecimal(exitPrice),
+                quantity, Money.fromDecimal(marginAmount), entryDate, exitDate));
+    }
+}
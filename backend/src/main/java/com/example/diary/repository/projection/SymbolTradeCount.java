@@ -0,0 +1,11 @@
+package com.example.diary.repository.projection;
+
+/**
+ * Интерфейсная проекция количества сделок по тикеру.
+ */
+public interface SymbolTradeCount {
+
+    String getSymbol();
+
+    long getTrades();
+}
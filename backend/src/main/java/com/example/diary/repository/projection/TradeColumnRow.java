@@ -0,0 +1,31 @@
+package com.example.diary.repository.projection;
+
+import com.example.diary.model.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Проекция сделки для загрузки столбцового снимка: только числовые поля, даты, портфель и тикер,
+ * без notes/daily_interest и без управляемой сущности.
+ */
+public record TradeColumnRow(Long id, String portfolioId, String symbol, BigDecimal entryPrice, BigDecimal exitPrice,
+                             Integer quantity, LocalDate entryDate, LocalDate exitDate, BigDecimal marginAmount) {
+
+    /**
+     * Сделка вне контекста JPA с полями проекции, для агрегатов, которые считаются по {@link Trade}.
+     */
+    public Trade toTrade() {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setPortfolioId(portfolioId);
+        trade.setSymbol(symbol);
+        trade.setEntryPrice(entryPrice);
+        trade.setExitPrice(exitPrice);
+        trade.setQuantity(quantity);
+        trade.setEntryDate(entryDate);
+        trade.setExitDate(exitDate);
+        trade.setMarginAmount(marginAmount);
+        return trade;
+    }
+}
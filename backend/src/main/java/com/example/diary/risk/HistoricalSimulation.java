@@ -0,0 +1,226 @@
+package com.example.diary.risk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Историческое моделирование: сценарий - фактическая доходность тикеров за горизонт между общими датами истории,
+ * P&L сценария - сумма по позициям (стоимость позиции × доходность тикера).
+ * Цены выравниваются один раз в плоский массив по тикерам ({@code closes[i * length + d]}) и переиспользуются
+ * для всех горизонтов; доходности считаются прямо в цикле по сценариям, который выполняется в fork-join пуле.
+ */
+public final class HistoricalSimulation {
+
+    // Примерный объем умножений на одну подзадачу fork-join
+    private static final int WORK_PER_TASK = 1 << 16;
+
+    private HistoricalSimulation() {
+    }
+
+    /**
+     * Цены тикеров на общих датах: {@code closes[i * length + d]} - цена тикера i на дату days[d].
+     */
+    public record PriceMatrix(int positions, int length, int[] days, double[] closes) {
+
+        /**
+         * Число сценариев для горизонта: не больше maxScenarios последних.
+         */
+        public int scenarioCount(int horizon, int maxScenarios) {
+            return Math.max(0, Math.min(length - horizon, maxScenarios));
+        }
+
+        // Индекс даты начала сценария s, если всего сценариев count
+        int startIndex(int horizon, int count, int s) {
+            return length - horizon - count + s;
+        }
+
+        public int scenarioEndDay(int horizon, int count, int s) {
+            return days[startIndex(horizon, count, s) + horizon];
+        }
+    }
+
+    /**
+     * Результат на одном уровне доверия. Вклады тикеров в VaR - их убыток в сценарии, задающем VaR,
+     * вклады в ES - средний убыток в хвостовых сценариях; суммы вкладов равны VaR и ES.
+     */
+    public record Level(double confidence, double valueAtRisk, double expectedShortfall, int tailScenarios,
+                        double[] varContributions, double[] esContributions) {
+    }
+
+    /**
+     * Выравнивает историю по датам, на которые есть цены всех тикеров, и оставляет последние {@code window} дат.
+     * Истории обходятся курсорами за один линейный проход.
+     */
+    public static PriceMatrix align(List<PriceSeries> series, int window) {
+        int positions = series.size();
+        if (positions == 0 || window < 1) {
+            return new PriceMatrix(positions, 0, new int[0], new double[0]);
+        }
+
+        PriceSeries shortest = series.get(0);
+        for (PriceSeries candidate : series) {
+            if (candidate.size() < shortest.size()) {
+                shortest = candidate;
+            }
+        }
+        int[] cursors = new int[positions];
+        int[] commonDays = new int[shortest.size()];
+        int common = 0;
+        for (int d = 0; d < shortest.size(); d++) {
+            int day = shortest.dayAt(d);
+            boolean everywhere = true;
+            for (int i = 0; i < positions && everywhere; i++) {
+                PriceSeries other = series.get(i);
+                int cursor = cursors[i];
+                while (cursor < other.size() && other.dayAt(cursor) < day) {
+                    cursor++;
+                }
+                cursors[i] = cursor;
+                everywhere = cursor < other.size() && other.dayAt(cursor) == day;
+            }
+            if (everywhere) {
+                commonDays[common++] = day;
+            }
+        }
+
+        int length = Math.min(common, window);
+        int[] days = Arrays.copyOfRange(commonDays, common - length, common);
+        double[] closes = new double[positions * length];
+        for (int i = 0; i < positions; i++) {
+            PriceSeries prices = series.get(i);
+            int cursor = 0;
+            int offset = i * length;
+            for (int d = 0; d < length; d++) {
+                while (prices.dayAt(cursor) < days[d]) {
+                    cursor++;
+                }
+                closes[offset + d] = prices.closeAt(cursor);
+            }
+        }
+        return new PriceMatrix(positions, length, days, closes);
+    }
+
+    /**
+     * P&L портфеля в каждом из count последних сценариев горизонта.
+     */
+    public static double[] scenarioPnl(PriceMatrix matrix, double[] exposures, int horizon, int count) {
+        double[] pnl = new double[count];
+        if (count > 0 && matrix.positions() > 0) {
+            int threshold = Math.max(64, WORK_PER_TASK / matrix.positions());
+            ForkJoinPool.commonPool().invoke(new PnlTask(matrix, exposures, horizon, count, pnl, 0, count, threshold));
+        }
+        return pnl;
+    }
+
+    /**
+     * VaR и ES по распределению P&L. VaR - убыток на квантиле (1 - confidence),
+     * ES - средний убыток в худших ceil(n × (1 - confidence)) сценариях.
+     */
+    public static List<Level> evaluate(PriceMatrix matrix, double[] exposures, int horizon,
+                                       double[] pnl, double[] confidences) {
+        List<Level> levels = new ArrayList<>(confidences.length);
+        int n = pnl.length;
+        int positions = matrix.positions();
+        if (n == 0) {
+            for (double confidence : confidences) {
+                levels.add(new Level(confidence, 0.0, 0.0, 0, new double[positions], new double[positions]));
+            }
+            return levels;
+        }
+
+        double[] sorted = pnl.clone();
+        Arrays.parallelSort(sorted);
+
+        for (double confidence : confidences) {
+            int tail = Math.max(1, (int) Math.ceil(n * (1.0 - confidence) - 1e-9));
+            tail = Math.min(tail, n);
+            double threshold = sorted[tail - 1];
+
+            // Хвост - сценарии с P&L ниже квантиля и столько равных ему, сколько их среди худших tail
+            int equalAllowed = 0;
+            for (int i = tail - 1; i >= 0 && sorted[i] == threshold; i--) {
+                equalAllowed++;
+            }
+            int[] tailScenarios = new int[tail];
+            int taken = 0;
+            int varScenario = -1;
+            double tailSum = 0.0;
+            for (int s = 0; s < n && taken < tail; s++) {
+                double value = pnl[s];
+                if (value < threshold || (value == threshold && equalAllowed-- > 0)) {
+                    if (value == threshold && varScenario < 0) {
+                        varScenario = s;
+                    }
+                    tailScenarios[taken++] = s;
+                    tailSum += value;
+                }
+            }
+
+            double[] varContributions = new double[positions];
+            double[] esContributions = new double[positions];
+            for (int i = 0; i < positions; i++) {
+                int offset = i * matrix.length();
+                double tailPnl = 0.0;
+                for (int t = 0; t < taken; t++) {
+                    tailPnl += scenarioReturn(matrix, offset, horizon, n, tailScenarios[t]);
+                }
+                esContributions[i] = -exposures[i] * tailPnl / taken;
+                varContributions[i] = -exposures[i] * scenarioReturn(matrix, offset, horizon, n, varScenario);
+            }
+            levels.add(new Level(confidence, -threshold, -tailSum / taken, taken, varContributions, esContributions));
+        }
+        return levels;
+    }
+
+    private static double scenarioReturn(PriceMatrix matrix, int offset, int horizon, int count, int s) {
+        int start = offset + matrix.startIndex(horizon, count, s);
+        return matrix.closes()[start + horizon] / matrix.closes()[start] - 1.0;
+    }
+
+    private static final class PnlTask extends RecursiveAction {
+        private final PriceMatrix matrix;
+        private final double[] exposures;
+        private final int horizon;
+        private final int count;
+        private final double[] pnl;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        PnlTask(PriceMatrix matrix, double[] exposures, int horizon, int count, double[] pnl,
+                int from, int to, int threshold) {
+            this.matrix = matrix;
+            this.exposures = exposures;
+            this.horizon = horizon;
+            this.count = count;
+            this.pnl = pnl;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                double[] closes = matrix.closes();
+                int length = matrix.length();
+                int first = matrix.startIndex(horizon, count, 0);
+                // По тикерам во внешнем цикле: внутренний цикл идет по соседним ценам одного тикера
+                for (int i = 0; i < matrix.positions(); i++) {
+                    double exposure = exposures[i];
+                    int start = i * length + first;
+                    for (int s = from; s < to; s++) {
+                        pnl[s] += exposure * (closes[start + s + horizon] / closes[start + s] - 1.0);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PnlTask(matrix, exposures, horizon, count, pnl, from, middle, threshold),
+                new PnlTask(matrix, exposures, horizon, count, pnl, middle, to, threshold));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.diary.risk;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Монте-Карло по открытым позициям: цена каждого тикера на целевую дату моделируется геометрическим
+ * броуновским движением, P&L считается за вычетом процентов по марже до целевой даты.
+ * Для P&L на одну дату нужна только цена в конце пути, поэтому она берется из точного решения GBM
+ * одним шагом: ln S(T) = ln S(0) + drift × n + vol × sqrt(n) × Z, где Z при заданной корреляции - L × eps.
+ * <p>
+ * Пути делятся на блоки по {@link #BLOCK_PATHS}; генератор каждого блока заранее отщепляется от
+ * {@link SplittableRandom} с заданным seed, поэтому результат не зависит от числа потоков.
+ * Каждый поток выделяет буферы один раз и переиспользует их для всех своих путей.
+ */
+public final class MonteCarloSimulator {
+
+    static final int BLOCK_PATHS = 1024;
+
+    private MonteCarloSimulator() {
+    }
+
+    /**
+     * Параметры моделирования; тикеры пронумерованы от 0 до symbols - 1.
+     *
+     * @param drift         средний лог-доход за шаг
+     * @param volatility    стандартное отклонение лог-дохода за шаг
+     * @param cholesky      нижнетреугольный множитель корреляционной матрицы (symbols × symbols) или null
+     * @param quantity      суммарное количество бумаг по тикеру
+     * @param fixedCost     стоимость входа плюс проценты до целевой даты по тикеру
+     * @param tradeOffsets  сделки тикера i занимают [tradeOffsets[i], tradeOffsets[i + 1]) в breakevens
+     * @param breakevens    цены безубыточности сделок, по возрастанию внутри тикера
+     */
+    public record Model(int symbols, int steps, double[] spot, double[] drift, double[] volatility, double[] cholesky,
+                        double[] quantity, double[] fixedCost, int[] tradeOffsets, double[] breakevens) {
+    }
+
+    /**
+     * @param pnl                  P&L портфеля по путям
+     * @param symbolBelowBreakeven число путей, где позиция по тикеру в убытке
+     * @param tradeBelowBreakeven  число путей, где сделка в убытке (в порядке breakevens)
+     * @param meanTerminal         средняя смоделированная цена тикера
+     */
+    public record Result(double[] pnl, long[] symbolBelowBreakeven, long[] tradeBelowBreakeven, double[] meanTerminal) {
+    }
+
+    /**
+     * Параметры GBM, оцененные по истории; cholesky равен null, если корреляция не учитывается.
+     */
+    public record Parameters(double[] drift, double[] volatility, double[] cholesky) {
+    }
+
+    /**
+     * Оценка drift и vol по лог-доходностям выровненных цен; при correlated - еще и множитель Холецкого
+     * корреляционной матрицы (null, если матрица вырождена).
+     */
+    public static Parameters estimate(HistoricalSimulation.PriceMatrix prices, boolean correlated) {
+        int k = prices.positions();
+        int n = prices.length() - 1;
+        double[] closes = prices.closes();
+        double[] drift = new double[k];
+        double[] volatility = new double[k];
+        double[] standardized = correlated ? new double[k * Math.max(n, 0)] : null;
+        for (int i = 0; i < k; i++) {
+            int offset = i * prices.length();
+            double sum = 0.0;
+            for (int d = 0; d < n; d++) {
+                sum += Math.log(closes[offset + d + 1] / closes[offset + d]);
+            }
+            double mean = n > 0 ? sum / n : 0.0;
+            double squares = 0.0;
+            for (int d = 0; d < n; d++) {
+                double deviation = Math.log(closes[offset + d + 1] / closes[offset + d]) - mean;
+                squares += deviation * deviation;
+            }
+            drift[i] = mean;
+            volatility[i] = n > 1 ? Math.sqrt(squares / (n - 1)) : 0.0;
+            if (standardized != null) {
+                for (int d = 0; d < n; d++) {
+                    double deviation = Math.log(closes[offset + d + 1] / closes[offset + d]) - mean;
+                    standardized[i * n + d] = volatility[i] > 0 ? deviation / volatility[i] : 0.0;
+                }
+            }
+        }
+        double[] cholesky = standardized != null && n > 1 ? cholesky(standardized, k, n) : null;
+        return new Parameters(drift, volatility, cholesky);
+    }
+
+    public static Result simulate(Model model, int paths, long seed) {
+        int k = model.symbols();
+        int blocks = (paths + BLOCK_PATHS - 1) / BLOCK_PATHS;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] generators = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            generators[b] = root.split();
+        }
+
+        double[] pnl = new double[paths];
+        double[] blockTerminalSums = new double[blocks * k];
+        int workers = Math.max(1, Math.min(blocks, ForkJoinPool.commonPool().getParallelism()));
+        Worker[] tasks = new Worker[workers];
+        AtomicInteger nextBlock = new AtomicInteger();
+        for (int w = 0; w < workers; w++) {
+            tasks[w] = new Worker(model, paths, generators, nextBlock, pnl, blockTerminalSums);
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // Целочисленные счетчики складываются в любом порядке, суммы цен - по порядку блоков
+        long[] symbolBelow = new long[k];
+        long[] tradeBuckets = new long[model.breakevens().length + k];
+        for (Worker task : tasks) {
+            for (int i = 0; i < k; i++) {
+                symbolBelow[i] += task.symbolBelow[i];
+            }
+            for (int j = 0; j < tradeBuckets.length; j++) {
+                tradeBuckets[j] += task.tradeBuckets[j];
+            }
+        }
+        double[] meanTerminal = new double[k];
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < k; i++) {
+                meanTerminal[i] += blockTerminalSums[b * k + i];
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            meanTerminal[i] /= paths;
+        }
+
+        // Корзина j сделок тикера: пути, где цена ниже безубыточности сделок j и выше; накопленная сумма дает счетчик сделки
+        long[] tradeBelow = new long[model.breakevens().length];
+        for (int i = 0; i < k; i++) {
+            long running = 0;
+            int from = model.tradeOffsets()[i];
+            int to = model.tradeOffsets()[i + 1];
+            for (int j = from; j < to; j++) {
+                running += tradeBuckets[j + i];
+                tradeBelow[j] = running;
+            }
+        }
+        return new Result(pnl, symbolBelow, tradeBelow, meanTerminal);
+    }
+
+    // Множитель Холецкого выборочной корреляционной матрицы стандартизованных доходностей
+    private static double[] cholesky(double[] standardized, int k, int n) {
+        double[] matrix = new double[k * k];
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = 0.0;
+                for (int d = 0; d < n; d++) {
+                    sum += standardized[a * n + d] * standardized[b * n + d];
+                }
+                matrix[a * k + b] = a == b ? 1.0 : sum / (n - 1);
+            }
+        }
+        double[] lower = new double[k * k];
+        for (int a = 0; a < k; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = matrix[a * k + b];
+                for (int c = 0; c < b; c++) {
+                    sum -= lower[a * k + c] * lower[b * k + c];
+                }
+                if (a == b) {
+                    if (sum <= 1e-12) {
+                        return null;
+                    }
+                    lower[a * k + a] = Math.sqrt(sum);
+                } else {
+                    lower[a * k + b] = sum / lower[b * k + b];
+                }
+            }
+        }
+        return lower;
+    }
+
+    private static final class Worker extends RecursiveAction {
+        private final Model model;
+        private final int paths;
+        private final SplittableRandom[] generators;
+        private final AtomicInteger nextBlock;
+        private final double[] pnl;
+        private final double[] blockTerminalSums;
+
+        // Буферы потока: выделяются один раз на все пути
+        private final double[] epsilon;
+        private final double[] shocks;
+        private final double[] logSpot;
+        private final double[] scale;
+        private final double[] breakevenPrices;
+        final long[] symbolBelow;
+        final long[] tradeBuckets;
+
+        Worker(Model model, int paths, SplittableRandom[] generators, AtomicInteger nextBlock,
+               double[] pnl, double[] blockTerminalSums) {
+            this.model = model;
+            this.paths = paths;
+            this.generators = generators;
+            this.nextBlock = nextBlock;
+            this.pnl = pnl;
+            this.blockTerminalSums = blockTerminalSums;
+            int k = model.symbols();
+            this.epsilon = new double[k];
+            this.shocks = model.cholesky() != null ? new double[k] : epsilon;
+            this.logSpot = new double[k];
+            this.scale = new double[k];
+            this.breakevenPrices = new double[k];
+            this.symbolBelow = new long[k];
+            this.tradeBuckets = new long[model.breakevens().length + k];
+            double sqrtSteps = Math.sqrt(model.steps());
+            for (int i = 0; i < k; i++) {
+                logSpot[i] = Math.log(model.spot()[i]) + model.drift()[i] * model.steps();
+                scale[i] = model.volatility()[i] * sqrtSteps;
+                breakevenPrices[i] = model.quantity()[i] > 0 ? model.fixedCost()[i] / model.quantity()[i] : 0.0;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            int k = model.symbols();
+            double[] cholesky = model.cholesky();
+            int[] offsets = model.tradeOffsets();
+            double[] breakevens = model.breakevens();
+            double[] quantity = model.quantity();
+            double[] fixedCost = model.fixedCost();
+
+            int block;
+            while ((block = nextBlock.getAndIncrement()) < generators.length) {
+                SplittableRandom random = generators[block];
+                int first = block * BLOCK_PATHS;
+                int last = Math.min(paths, first + BLOCK_PATHS);
+                int sumsOffset = block * k;
+                for (int path = first; path < last; path++) {
+                    for (int i = 0; i < k; i++) {
+                        epsilon[i] = random.nextGaussian();
+                    }
+                    if (cholesky != null) {
+                        for (int a = 0; a < k; a++) {
+                            double sum = 0.0;
+                            int row = a * k;
+                            for (int b = 0; b <= a; b++) {
+                                sum += cholesky[row + b] * epsilon[b];
+                            }
+                            shocks[a] = sum;
+                        }
+                    }
+
+                    double total = 0.0;
+                    for (int i = 0; i < k; i++) {
+                        double price = Math.exp(logSpot[i] + scale[i] * shocks[i]);
+                        blockTerminalSums[sumsOffset + i] += price;
+                        total += quantity[i] * price - fixedCost[i];
+                        if (price < breakevenPrices[i]) {
+                            symbolBelow[i]++;
+                        }
+                        // Первая сделка тикера с безубыточностью выше цены: она и все следующие в убытке
+                        int from = offsets[i];
+                        int to = offsets[i + 1];
+                        int low = from;
+                        int high = to;
+                        while (low < high) {
+                            int middle = (low + high) >>> 1;
+                            if (breakevens[middle] > price) {
+                                high = middle;
+                            } else {
+                                low = middle + 1;
+                            }
+                        }
+                        if (low < to) {
+                            tradeBuckets[low + i]++;
+                        }
+                    }
+                    pnl[path] = total;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.diary.risk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальная история цен: по CSV-файлу на тикер в каталоге {@code risk.prices.dir}
+ * (имя файла - тикер, например {@code SBER.csv}). В заголовке нужны колонки date и close,
+ * остальные колонки игнорируются; разделитель - запятая или точка с запятой.
+ * Файлы читаются при старте и по {@link #reload()}, в сеть хранилище не ходит.
+ */
+@Component
+public class PriceHistoryStore implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceHistoryStore.class);
+
+    @Value("${risk.prices.dir:./data/prices}")
+    private String pricesDir;
+
+    private volatile Map<String, PriceSeries> series = Collections.emptyMap();
+    // Растет при каждой перезагрузке: по нему потребители сбрасывают посчитанные по ценам данные
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    /**
+     * Перечитывает все файлы каталога; возвращает число загруженных тикеров.
+     */
+    public int reload() {
+        Path dir = Paths.get(pricesDir);
+        Map<String, PriceSeries> loaded = new HashMap<>();
+        if (!Files.isDirectory(dir)) {
+            logger.info("Каталог истории цен {} не найден, риск-расчеты будут без цен", dir.toAbsolutePath());
+            series = loaded;
+            version.incrementAndGet();
+            return 0;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String symbol = name.substring(0, name.length() - 4).trim().toUpperCase();
+                try {
+                    PriceSeries parsed = read(symbol, file);
+                    if (parsed.size() > 0) {
+                        loaded.put(symbol, parsed);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.warn("Не удалось прочитать историю цен {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Не удалось прочитать каталог истории цен {}: {}", dir, e.getMessage());
+        }
+        series = loaded;
+        version.incrementAndGet();
+        logger.info("История цен загружена: {} тикеров", loaded.size());
+        return loaded.size();
+    }
+
+    public PriceSeries get(String symbol) {
+        return series.get(symbol);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public Set<String> getSymbols() {
+        return new TreeSet<>(series.keySet());
+    }
+
+    private static PriceSeries read(String symbol, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return new PriceSeries(symbol, new int[0], new double[0]);
+            }
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            String delimiter = header.indexOf(';') >= 0 ? ";" : ",";
+            String[] columns = header.split(delimiter, -1);
+            int dateColumn = -1;
+            int closeColumn = -1;
+            for (int i = 0; i < columns.length; i++) {
+                String column = columns[i].trim().toLowerCase();
+                if (column.equals("date")) {
+                    dateColumn = i;
+                } else if (column.equals("close")) {
+                    closeColumn = i;
+                }
+            }
+            if (dateColumn < 0 || closeColumn < 0) {
+                throw new IllegalArgumentException("в заголовке нет колонок date и close");
+            }
+
+            int[] days = new int[1024];
+            double[] closes = new double[1024];
+            int count = 0;
+            boolean sorted = true;
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] cells = line.split(delimiter, -1);
+                if (cells.length <= Math.max(dateColumn, closeColumn)) {
+                    throw new IllegalArgumentException("строка " + lineNumber + ": не хватает колонок");
+                }
+                int day;
+                double close;
+                try {
+                    day = (int) LocalDate.parse(cells[dateColumn].trim()).toEpochDay();
+                    close = Double.parseDouble(cells[closeColumn].trim().replace(',', '.'));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    throw new IllegalArgumentException("строка " + lineNumber + ": " + e.getMessage());
+                }
+                if (!(close > 0)) {
+                    throw new IllegalArgumentException("строка " + lineNumber + ": цена должна быть положительной");
+                }
+                if (count == days.length) {
+                    days = Arrays.copyOf(days, count * 2);
+                    closes = Arrays.copyOf(closes, count * 2);
+                }
+                if (count > 0 && day <= days[count - 1]) {
+                    sorted = false;
+                }
+                days[count] = day;
+                closes[count] = close;
+                count++;
+            }
+
+            days = Arrays.copyOf(days, count);
+            closes = Arrays.copyOf(closes, count);
+            if (!sorted) {
+                return sortedSeries(symbol, days, closes);
+            }
+            return new PriceSeries(symbol, days, closes);
+        }
+    }
+
+    // Файлы в порядке убывания дат или с повторами: сортируем, для повторяющейся даты берем последнюю строку
+    private static PriceSeries sortedSeries(String symbol, int[] days, double[] closes) {
+        long[] keyed = new long[days.length];
+        for (int i = 0; i < days.length; i++) {
+            keyed[i] = ((long) days[i] << 32) | i;
+        }
+        Arrays.sort(keyed);
+        int[] sortedDays = new int[days.length];
+        double[] sortedCloses = new double[days.length];
+        int count = 0;
+        for (long key : keyed) {
+            int day = (int) (key >> 32);
+            int index = (int) key;
+            if (count > 0 && sortedDays[count - 1] == day) {
+                count--;
+            }
+            sortedDays[count] = day;
+            sortedCloses[count] = closes[index];
+            count++;
+        }
+        return new PriceSeries(symbol, Arrays.copyOf(sortedDays, count), Arrays.copyOf(sortedCloses, count));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.diary.risk;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Дневные цены закрытия одного тикера: дни (epoch day) по возрастанию и цены в параллельных массивах.
+ */
+public final class PriceSeries {
+
+    private final String symbol;
+    private final int[] days;
+    private final double[] closes;
+
+    public PriceSeries(String symbol, int[] days, double[] closes) {
+        if (days.length != closes.length) {
+            throw new IllegalArgumentException("Длины массивов дат и цен не совпадают");
+        }
+        this.symbol = symbol;
+        this.days = days;
+        this.closes = closes;
+    }
+
+    public String getSymbol() { return symbol; }
+
+    public int size() {
+        return days.length;
+    }
+
+    public int dayAt(int index) {
+        return days[index];
+    }
+
+    public double closeAt(int index) {
+        return closes[index];
+    }
+
+    public LocalDate getFirstDate() {
+        return days.length > 0 ? LocalDate.ofEpochDay(days[0]) : null;
+    }
+
+    public LocalDate getLastDate() {
+        return days.length > 0 ? LocalDate.ofEpochDay(days[days.length - 1]) : null;
+    }
+
+    public double getLastClose() {
+        return closes[closes.length - 1];
+    }
+
+    /**
+     * Индекс дня или отрицательное значение, если цены за этот день нет.
+     */
+    public int indexOf(int epochDay) {
+        return Arrays.binarySearch(days, epochDay);
+    }
+
+    /**
+     * Цена закрытия на дату или ближайшую предыдущую торговую дату; NaN, если истории до этой даты нет.
+     */
+    public double closeOnOrBefore(int epochDay) {
+        int index = indexOf(epochDay);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index >= 0 ? closes[index] : Double.NaN;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.diary.risk;
+
+import java.util.Arrays;
+
+/**
+ * Скользящие средние и ковариации дневных доходностей n тикеров за последние window дней.
+ * <p>
+ * Хранятся кольцевой буфер доходностей, суммы доходностей и суммы попарных произведений. Матрица
+ * произведений симметрична и хранится упакованным верхним треугольником с диагональю
+ * ({@link #packedIndex}), n(n+1)/2 чисел. Новый день прибавляет свой вектор и вычитает вектор, выпавший
+ * из окна, - O(n²) на день вместо O(window·n²) на пересчет окна. Чтобы ошибка округления от вычитаний
+ * не накапливалась, суммы раз в window дней пересчитываются по буферу заново - в среднем это тоже O(n²) на день.
+ * Не потокобезопасен.
+ */
+public final class RollingCovariance {
+
+    private final int n;
+    private final int window;
+    private final double[] ring;
+    private final int[] days;
+    private final double[] sum;
+    private final double[] cross;
+    private int head;
+    private int count;
+    private int sinceResync;
+
+    public RollingCovariance(int n, int window) {
+        if (window < 2) {
+            throw new IllegalArgumentException("Окно должно быть не меньше 2 дней");
+        }
+        this.n = n;
+        this.window = window;
+        this.ring = new double[window * n];
+        this.days = new int[window];
+        this.sum = new double[n];
+        this.cross = new double[packedSize(n)];
+    }
+
+    public static int packedSize(int n) {
+        return n * (n + 1) / 2;
+    }
+
+    /**
+     * Позиция элемента (i, j) в упакованном верхнем треугольнике; порядок i и j не важен.
+     */
+    public static int packedIndex(int n, int i, int j) {
+        if (i > j) {
+            int swap = i;
+            i = j;
+            j = swap;
+        }
+        return i * n - i * (i - 1) / 2 + (j - i);
+    }
+
+    /**
+     * Добавляет доходности дня day (по одной на тикер); самый старый день выпадает, если окно заполнено.
+     */
+    public void push(int day, double[] returns) {
+        int offset = head * n;
+        if (count == window) {
+            accumulate(ring, offset, -1.0);
+        } else {
+            count++;
+        }
+        System.arraycopy(returns, 0, ring, offset, n);
+        days[head] = day;
+        head = (head + 1) % window;
+        if (++sinceResync >= window) {
+            resync();
+        } else {
+            accumulate(ring, offset, 1.0);
+        }
+    }
+
+    private void accumulate(double[] values, int offset, double sign) {
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            double vi = sign * values[offset + i];
+            sum[i] += vi;
+            for (int j = i; j < n; j++) {
+                cross[k++] += vi * values[offset + j];
+            }
+        }
+    }
+
+    private void resync() {
+        Arrays.fill(sum, 0.0);
+        Arrays.fill(cross, 0.0);
+        for (int d = 0; d < count; d++) {
+            accumulate(ring, d * n, 1.0);
+        }
+        sinceResync = 0;
+    }
+
+    public int size() { return n; }
+    public int window() { return window; }
+    public int observations() { return count; }
+
+    public int firstDay() {
+        return days[count == window ? head : 0];
+    }
+
+    public int lastDay() {
+        return days[(head + window - 1) % window];
+    }
+
+    public double mean(int i) {
+        return sum[i] / count;
+    }
+
+    /**
+     * Выборочные ковариации в упакованном виде (знаменатель observations - 1).
+     */
+    public double[] covariance() {
+        double[] result = new double[cross.length];
+        if (count < 2) {
+            return result;
+        }
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                result[k] = (cross[k] - sum[i] * sum[j] / count) / (count - 1);
+                k++;
+            }
+        }
+        return result;
+    }
+}
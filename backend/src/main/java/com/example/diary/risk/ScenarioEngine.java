@@ -0,0 +1,102 @@
+package com.example.diary.risk;
+
+import com.example.diary.model.TradeCalculator;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Стресс-сценарии по открытым сделкам: сдвиг цен по тикерам, изменение ставки по марже и продление удержания.
+ * <p>
+ * P&L позиции линеен по цене, поэтому ценовая часть сценария считается по суммам тикера (количество и
+ * стоимость входа) за O(тикеров). Проценты сделки зависят от ставки нелинейно (округление дневного процента
+ * до копейки), поэтому по массивам сделок проходят один раз на каждое различное изменение ставки, собирая
+ * по тикеру сумму дневных процентов и сумму дневной процент × дни удержания; продление на extraDays
+ * добавляет extraDays × сумма дневных процентов. Проходы по разным ставкам и сами сценарии считаются
+ * параллельно (общий ForkJoinPool), результат от числа потоков не зависит.
+ */
+public final class ScenarioEngine {
+
+    private ScenarioEngine() {
+    }
+
+    /**
+     * Открытые сделки по столбцам; тикеры пронумерованы от 0 до symbols - 1.
+     *
+     * @param symbol    номер тикера сделки
+     * @param quantity  количество бумаг
+     * @param costCents стоимость входа в копейках
+     * @param rate      годовая ставка в сотых процента
+     * @param heldDays  дни удержания на дату оценки
+     * @param spot      цена тикера на дату оценки
+     */
+    public record Book(int symbols, int[] symbol, int[] quantity, long[] costCents, int[] rate, int[] heldDays,
+                       double[] spot) {
+        public int trades() {
+            return symbol.length;
+        }
+    }
+
+    /**
+     * Сценарий: множитель цены каждого тикера, изменение ставки в сотых процента (ставка не опускается ниже нуля)
+     * и число дней удержания сверх даты оценки.
+     */
+    public record Shock(double[] priceFactor, int rateChange, int extraDays) {
+    }
+
+    /**
+     * Итоги сценария по тикерам: рыночная стоимость, проценты за весь срок удержания в копейках и P&L за вычетом процентов.
+     */
+    public record Outcome(double[] marketValue, long[] interestCents, double[] pnl) {
+    }
+
+    // Суммы процентов по тикерам при одном изменении ставки
+    private record InterestSums(long[] daily, long[] dailyDays) {
+    }
+
+    public static Outcome[] evaluate(Book book, Shock[] shocks) {
+        int k = book.symbols();
+        long[] quantity = new long[k];
+        long[] cost = new long[k];
+        for (int i = 0; i < book.trades(); i++) {
+            quantity[book.symbol()[i]] += book.quantity()[i];
+            cost[book.symbol()[i]] += book.costCents()[i];
+        }
+
+        int[] rateChanges = Arrays.stream(shocks).mapToInt(Shock::rateChange).distinct().sorted().toArray();
+        InterestSums[] sums = IntStream.range(0, rateChanges.length).parallel()
+            .mapToObj(r -> interest(book, rateChanges[r]))
+            .toArray(InterestSums[]::new);
+
+        return IntStream.range(0, shocks.length).parallel()
+            .mapToObj(j -> {
+                Shock shock = shocks[j];
+                InterestSums interest = sums[Arrays.binarySearch(rateChanges, shock.rateChange())];
+                double[] marketValue = new double[k];
+                long[] interestCents = new long[k];
+                double[] pnl = new double[k];
+                for (int s = 0; s < k; s++) {
+                    marketValue[s] = book.spot()[s] * shock.priceFactor()[s] * quantity[s];
+                    interestCents[s] = interest.dailyDays()[s] + shock.extraDays() * interest.daily()[s];
+                    pnl[s] = marketValue[s] - (cost[s] + interestCents[s]) / 100.0;
+                }
+                return new Outcome(marketValue, interestCents, pnl);
+            })
+            .toArray(Outcome[]::new);
+    }
+
+    private static InterestSums interest(Book book, int rateChange) {
+        long[] daily = new long[book.symbols()];
+        long[] dailyDays = new long[book.symbols()];
+        int[] symbol = book.symbol();
+        long[] cost = book.costCents();
+        int[] rate = book.rate();
+        int[] held = book.heldDays();
+        for (int i = 0; i < symbol.length; i++) {
+            long dailyCents = TradeCalculator.dailyInterestCents(cost[i], Math.max(0, rate[i] + rateChange));
+            daily[symbol[i]] += dailyCents;
+            dailyDays[symbol[i]] += TradeCalculator.totalInterestCents(dailyCents, held[i]);
+        }
+        return new InterestSums(daily, dailyDays);
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.diary.service;
+
+import com.example.diary.risk.HistoricalSimulation;
+import com.example.diary.risk.PriceHistoryStore;
+import com.example.diary.risk.PriceSeries;
+import com.example.diary.risk.RollingCovariance;
+import com.example.diary.store.TradeColumnStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Скользящие волатильность, корреляции, ковариации и бета к эталону по дневным логарифмическим доходностям
+ * всех тикеров, по которым есть сделки, и эталона. Доходности считаются по общим датам истории цен
+ * ({@link PriceHistoryStore}), как в историческом VaR.
+ * <p>
+ * Статистика окна держится в {@link RollingCovariance} и обновляется при запросе. После перезагрузки цен,
+ * если история каждого тикера до последней учтенной даты не изменилась (проверяется по хешу префикса ряда),
+ * в окно добавляются только новые общие даты - O(тикеров²) на день. Пересчет всего окна нужен, только когда
+ * меняется набор тикеров или переписана уже учтенная история.
+ */
+@Service
+public class CorrelationService {
+
+    private static final int TRADING_DAYS_PER_YEAR = 252;
+
+    // Состояния для нескольких последних пар окно/эталон
+    private static final int STATE_CACHE_SIZE = 4;
+
+    private record StateKey(int window, String benchmark) {
+    }
+
+    // Окно статистики и положение в рядах цен, до которого они учтены
+    private static final class Rolling {
+        private final List<String> symbols;
+        private final RollingCovariance stats;
+        private final int[] prefix;
+        private final long[] prefixHash;
+        private final double[] lastCloses;
+        private int lastDay;
+        private long pricesVersion;
+
+        Rolling(List<String> symbols, int window, long pricesVersion) {
+            this.symbols = symbols;
+            this.stats = new RollingCovariance(symbols.size(), window);
+            this.prefix = new int[symbols.size()];
+            this.prefixHash = new long[symbols.size()];
+            this.lastCloses = new double[symbols.size()];
+            this.pricesVersion = pricesVersion;
+        }
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private PriceHistoryStore priceHistoryStore;
+
+    @Value("${risk.correlation.window:60}")
+    private int defaultWindow;
+
+    @Value("${risk.correlation.max-window:1000}")
+    private int maxWindow;
+
+    @Value("${risk.correlation.benchmark:}")
+    private String defaultBenchmark;
+
+    @Value("${risk.correlation.max-symbols:500}")
+    private int maxSymbols;
+
+    private final Map<StateKey, Rolling> states = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StateKey, Rolling> eldest) {
+            return size() > STATE_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Статистика по всем торгуемым тикерам с историей цен.
+     *
+     * @param window     число дневных доходностей в окне; null - из настроек
+     * @param benchmark  тикер эталона для беты; null - из настроек, без эталона бета не считается
+     * @param packed     матрицы упакованным верхним треугольником с диагональю (строка за строкой) вместо n×n
+     * @param covariance добавить в ответ матрицу ковариаций
+     */
+    public Map<String, Object> getCorrelations(Integer window, String benchmark, boolean packed, boolean covariance) {
+        long started = System.currentTimeMillis();
+        int days = window != null ? window : defaultWindow;
+        if (days < 2 || days > maxWindow) {
+            throw new IllegalArgumentException("Окно должно быть от 2 до " + maxWindow + " дней");
+        }
+        String benchmarkSymbol = benchmark != null && !benchmark.isBlank() ? benchmark.trim().toUpperCase()
+            : defaultBenchmark != null && !defaultBenchmark.isBlank() ? defaultBenchmark.trim().toUpperCase() : null;
+
+        SortedSet<String> traded = columnStore.symbols();
+        List<String> missingHistory = new ArrayList<>();
+        SortedSet<String> tracked = new TreeSet<>();
+        for (String symbol : traded) {
+            if (priceHistoryStore.get(symbol) != null) {
+                tracked.add(symbol);
+            } else {
+                missingHistory.add(symbol);
+            }
+        }
+        if (benchmarkSymbol != null) {
+            if (priceHistoryStore.get(benchmarkSymbol) == null) {
+                throw new IllegalArgumentException("Нет истории цен эталона " + benchmarkSymbol);
+            }
+            tracked.add(benchmarkSymbol);
+        }
+        if (tracked.size() > maxSymbols) {
+            throw new IllegalArgumentException("Статистика считается не больше чем по " + maxSymbols + " тикерам");
+        }
+        List<String> symbols = new ArrayList<>(tracked);
+
+        int n = symbols.size();
+        int observations;
+        int firstDay;
+        int lastDay;
+        double[] cov;
+        double[] mean = new double[n];
+        synchronized (states) {
+            Rolling state = refresh(new StateKey(days, benchmarkSymbol), symbols);
+            RollingCovariance stats = state.stats;
+            observations = stats.observations();
+            firstDay = observations > 0 ? stats.firstDay() : 0;
+            lastDay = observations > 0 ? stats.lastDay() : 0;
+            cov = stats.covariance();
+            for (int i = 0; i < n && observations > 0; i++) {
+                mean[i] = stats.mean(i);
+            }
+        }
+
+        boolean enough = observations >= 2;
+        Double[] correlation = new Double[cov.length];
+        double[] sd = new double[n];
+        for (int i = 0; i < n; i++) {
+            sd[i] = Math.sqrt(cov[RollingCovariance.packedIndex(n, i, i)]);
+        }
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                correlation[k] = enough && sd[i] > 0 && sd[j] > 0 ? clamp(cov[k] / (sd[i] * sd[j])) : null;
+                k++;
+            }
+        }
+        int b = benchmarkSymbol != null ? symbols.indexOf(benchmarkSymbol) : -1;
+        double benchmarkVariance = b >= 0 ? cov[RollingCovariance.packedIndex(n, b, b)] : 0.0;
+
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("symbol", symbols.get(i));
+            data.put("traded", traded.contains(symbols.get(i)));
+            data.put("volatility", enough ? sd[i] * Math.sqrt(TRADING_DAYS_PER_YEAR) : null);
+            data.put("meanReturn", observations > 0 ? mean[i] * TRADING_DAYS_PER_YEAR : null);
+            data.put("beta", enough && benchmarkVariance > 0
+                ? cov[RollingCovariance.packedIndex(n, i, b)] / benchmarkVariance : null);
+            double sum = 0.0;
+            int count = 0;
+            for (int j = 0; j < n; j++) {
+                Double value = correlation[RollingCovariance.packedIndex(n, i, j)];
+                if (j != i && value != null) {
+                    sum += value;
+                    count++;
+                }
+            }
+            data.put("averageCorrelation", count > 0 ? sum / count : null);
+            rows.add(data);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("window", days);
+        result.put("observations", observations);
+        result.put("from", observations > 0 ? LocalDate.ofEpochDay(firstDay) : null);
+        result.put("to", observations > 0 ? LocalDate.ofEpochDay(lastDay) : null);
+        result.put("benchmark", benchmarkSymbol);
+        result.put("packed", packed);
+        result.put("symbols", rows);
+        result.put("correlation", packed ? correlation : unpack(n, correlation));
+        if (covariance) {
+            Double[] values = new Double[cov.length];
+            for (int i = 0; i < cov.length; i++) {
+                values[i] = enough ? cov[i] : null;
+            }
+            result.put("covariance", packed ? values : unpack(n, values));
+        }
+        result.put("missingHistory", missingHistory);
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    // Вызывается под блокировкой states
+    private Rolling refresh(StateKey key, List<String> symbols) {
+        long version = priceHistoryStore.getVersion();
+        Rolling state = states.get(key);
+        if (state != null && state.symbols.equals(symbols) && state.pricesVersion == version) {
+            return state;
+        }
+        List<PriceSeries> series = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            PriceSeries prices = priceHistoryStore.get(symbol);
+            if (prices == null) {
+                // История пропала между проверкой и чтением - окно строится заново при следующем запросе
+                state = new Rolling(symbols, key.window(), -1);
+                states.put(key, state);
+                return state;
+            }
+            series.add(prices);
+        }
+        if (state == null || !state.symbols.equals(symbols) || !append(state, series)) {
+            state = rebuild(symbols, series, key.window());
+            states.put(key, state);
+        }
+        state.pricesVersion = version;
+        return state;
+    }
+
+    private static Rolling rebuild(List<String> symbols, List<PriceSeries> series, int window) {
+        int n = symbols.size();
+        Rolling state = new Rolling(symbols, window, 0);
+        HistoricalSimulation.PriceMatrix matrix = HistoricalSimulation.align(series, window + 1);
+        int length = matrix.length();
+        if (n == 0 || length == 0) {
+            return state;
+        }
+        double[] closes = matrix.closes();
+        double[] returns = new double[n];
+        for (int d = 1; d < length; d++) {
+            for (int i = 0; i < n; i++) {
+                returns[i] = Math.log(closes[i * length + d] / closes[i * length + d - 1]);
+            }
+            state.stats.push(matrix.days()[d], returns);
+        }
+        state.lastDay = matrix.days()[length - 1];
+        for (int i = 0; i < n; i++) {
+            PriceSeries prices = series.get(i);
+            state.lastCloses[i] = closes[i * length + length - 1];
+            state.prefix[i] = prices.indexOf(state.lastDay) + 1;
+            state.prefixHash[i] = extendHash(0L, prices, 0, state.prefix[i]);
+        }
+        return state;
+    }
+
+    /**
+     * Добавляет общие даты после последней учтенной. false - история до нее изменилась, окно надо строить заново.
+     */
+    private static boolean append(Rolling state, List<PriceSeries> series) {
+        int n = series.size();
+        if (n == 0 || state.prefix[0] == 0) {
+            return false;
+        }
+        int[] cursors = new int[n];
+        for (int i = 0; i < n; i++) {
+            PriceSeries prices = series.get(i);
+            int prefix = state.prefix[i];
+            if (prices.size() < prefix || extendHash(0L, prices, 0, prefix) != state.prefixHash[i]) {
+                return false;
+            }
+            cursors[i] = prefix;
+        }
+
+        double[] returns = new double[n];
+        while (true) {
+            int day = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (cursors[i] >= series.get(i).size()) {
+                    day = Integer.MAX_VALUE;
+                    break;
+                }
+                day = Math.max(day, series.get(i).dayAt(cursors[i]));
+            }
+            if (day == Integer.MAX_VALUE) {
+                break;
+            }
+            boolean everywhere = true;
+            for (int i = 0; i < n; i++) {
+                PriceSeries prices = series.get(i);
+                while (cursors[i] < prices.size() && prices.dayAt(cursors[i]) < day) {
+                    cursors[i]++;
+                }
+                everywhere &= cursors[i] < prices.size() && prices.dayAt(cursors[i]) == day;
+            }
+            if (!everywhere) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                PriceSeries prices = series.get(i);
+                double close = prices.closeAt(cursors[i]);
+                returns[i] = Math.log(close / state.lastCloses[i]);
+                state.lastCloses[i] = close;
+                cursors[i]++;
+                state.prefixHash[i] = extendHash(state.prefixHash[i], prices, state.prefix[i], cursors[i]);
+                state.prefix[i] = cursors[i];
+            }
+            state.stats.push(day, returns);
+            state.lastDay = day;
+        }
+        return true;
+    }
+
+    // Хеш дат и цен ряда: продолжается с hash по точкам [from, to)
+    private static long extendHash(long hash, PriceSeries prices, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = hash * 1_000_003L + prices.dayAt(i);
+            hash = hash * 1_000_003L + Double.doubleToLongBits(prices.closeAt(i));
+        }
+        return hash;
+    }
+
+    private static Double clamp(double value) {
+        return Math.max(-1.0, Math.min(1.0, value));
+    }
+
+    private static Double[][] unpack(int n, Double[] packed) {
+        Double[][] matrix = new Double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                matrix[i][j] = packed[RollingCovariance.packedIndex(n, i, j)];
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.diary.service;
+
+/**
+ * Дневные итоги одного тикера (или всего портфеля) в копейках по дням эпохи.
+ * Для каждого ряда хранятся значения по дням и дерево Фенвика над ними: изменение дня - O(log D),
+ * сумма от начала до дня - O(log D), где D - длина покрытого диапазона дней.
+ * <ul>
+ *   <li>{@link #REALIZED} - чистая прибыль сделок, закрытых в этот день;</li>
+ *   <li>{@link #INTEREST_PAID} - проценты за весь срок сделок, закрытых в этот день;</li>
+ *   <li>{@link #EXPOSURE}, {@link #ACCRUAL}, {@link #OPEN_TRADES} - разностные ряды: +стоимость,
+ *       +дневные проценты и +1 в день входа, минус то же в день выхода. Сумма от начала до дня -
+ *       открытая стоимость, дневные проценты и число открытых сделок на этот день.</li>
+ * </ul>
+ * Проценты начисляются за дни [вход, выход), как в {@link com.example.diary.model.Trade#getTotalInterest()}.
+ * Накопленные проценты - сумма сумм ряда ACCRUAL - считаются по второму дереву над i * ACCRUAL[i].
+ * Диапазон дней растет по мере надобности, деревья при этом перестраиваются за O(D).
+ * Не потокобезопасен.
+ */
+public class DailyRollup {
+
+    public static final int REALIZED = 0;
+    public static final int INTEREST_PAID = 1;
+    public static final int EXPOSURE = 2;
+    public static final int ACCRUAL = 3;
+    public static final int OPEN_TRADES = 4;
+
+    private static final int SERIES = 5;
+    private static final int ACCRUAL_WEIGHTED = SERIES;
+
+    // Запас при расширении диапазона, дней
+    private static final int MARGIN_BEFORE = 31;
+    private static final int MARGIN_AFTER = 366;
+
+    private int origin;
+    private int length;
+    private long[][] values = new long[SERIES][0];
+    private long[][] trees = new long[SERIES + 1][1];
+
+    private int firstDay = Integer.MAX_VALUE;
+
+    public void add(int series, int day, long amount) {
+        if (amount == 0) {
+            return;
+        }
+        ensure(day);
+        int index = day - origin;
+        values[series][index] += amount;
+        update(trees[series], index, amount);
+        if (series == ACCRUAL) {
+            update(trees[ACCRUAL_WEIGHTED], index, amount * index);
+        }
+        firstDay = Math.min(firstDay, day);
+    }
+
+    /** Самый ранний день, в который что-либо добавлялось, или null для пустых итогов. */
+    public Integer getFirstDay() {
+        return firstDay == Integer.MAX_VALUE ? null : firstDay;
+    }
+
+    public long value(int series, int day) {
+        int index = day - origin;
+        return index >= 0 && index < length ? values[series][index] : 0L;
+    }
+
+    /** Сумма ряда по всем дням до day включительно. */
+    public long prefix(int series, int day) {
+        if (length == 0 || day < origin) {
+            return 0L;
+        }
+        return query(trees[series], Math.min(day - origin, length - 1));
+    }
+
+    /** Сумма значений, накопленных за [from, to]. */
+    public long range(int series, int from, int to) {
+        return from > to ? 0L : prefix(series, to) - prefix(series, from - 1);
+    }
+
+    /** Проценты, начисленные по всем сделкам за дни до day включительно. */
+    public long accruedInterest(int day) {
+        if (length == 0 || day < origin) {
+            return 0L;
+        }
+        int x = day - origin;
+        int last = Math.min(x, length - 1);
+        long rate = query(trees[ACCRUAL], last);
+        long accrued = (last + 1L) * rate - query(trees[ACCRUAL_WEIGHTED], last);
+        // За пределами диапазона ряд не меняется - каждый следующий день добавляет ту же ставку
+        return accrued + (long) (x - last) * rate;
+    }
+
+    private void ensure(int day) {
+        if (length > 0 && day >= origin && day < origin + length) {
+            return;
+        }
+        int newOrigin = length == 0 ? day - MARGIN_BEFORE : Math.min(origin, day - MARGIN_BEFORE);
+        int end = length == 0 ? day + MARGIN_AFTER : Math.max(origin + length, day + MARGIN_AFTER);
+        if (length > 0 && end > origin + length) {
+            // Рост вправо - с удвоением, чтобы поток новых дней не перестраивал деревья на каждом шаге
+            end = Math.max(end, origin + length * 2);
+        }
+        int newLength = end - newOrigin;
+        long[][] newValues = new long[SERIES][newLength];
+        for (int series = 0; series < SERIES && length > 0; series++) {
+            System.arraycopy(values[series], 0, newValues[series], origin - newOrigin, length);
+        }
+        origin = newOrigin;
+        length = newLength;
+        values = newValues;
+        rebuild();
+    }
+
+    private void rebuild() {
+        trees = new long[SERIES + 1][];
+        for (int series = 0; series < SERIES; series++) {
+            trees[series] = build(values[series], false);
+        }
+        trees[ACCRUAL_WEIGHTED] = build(values[ACCRUAL], true);
+    }
+
+    private long[] build(long[] source, boolean weighted) {
+        long[] tree = new long[length + 1];
+        for (int i = 0; i < length; i++) {
+            tree[i + 1] = weighted ? source[i] * i : source[i];
+        }
+        for (int i = 1; i <= length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= length) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+
+    private void update(long[] tree, int index, long amount) {
+        for (int i = index + 1; i <= length; i += i & -i) {
+            tree[i] += amount;
+        }
+    }
+
+    private static long query(long[] tree, int index) {
+        long sum = 0;
+        for (int i = index + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.diary.service;
+
+/**
+ * Шаг точек кривой капитала.
+ */
+public enum EquityCurveGranularity {
+    DAY,
+    // Неделя с понедельника по воскресенье
+    WEEK,
+    MONTH;
+
+    public static EquityCurveGranularity parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return DAY;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неверный шаг кривой капитала: " + value);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.diary.service;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.journal.TradeJournal;
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.projection.TradeColumnRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Кривая капитала и дневные итоги портфеля и каждого тикера ({@link DailyRollup}) - сводно по всем портфелям
+ * и отдельно по каждому.
+ * При старте строится по сделкам из {@link TradeJournal} или из БД, затем обновляется по {@link TradeChangeEvent}: сделки из removed
+ * вычитаются, из added - прибавляются, каждая за O(log D). Точка кривой за любой период
+ * считается по суммам от начала за O(log D), поэтому ответ строится за O(точек * log D)
+ * независимо от числа сделок.
+ */
+@Service
+public class EquityCurveService implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(EquityCurveService.class);
+
+    // Итоги неизвестного тикера; только для чтения
+    private static final DailyRollup EMPTY = new DailyRollup();
+
+    // Итоги одного портфеля или сводные: весь портфель и каждый тикер
+    private static final class Rollups {
+        private final DailyRollup total = new DailyRollup();
+        private final Map<String, DailyRollup> symbols = new HashMap<>();
+    }
+
+    private static final Rollups NO_ROLLUPS = new Rollups();
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    @Value("${analytics.equity-curve.max-days:36600}")
+    private int maxDays;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Rollups all = new Rollups();
+    private Map<String, Rollups> portfolios = new HashMap<>();
+    private volatile boolean ready;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load(tradeJournal.recoveredRows());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // recovered - сделки, восстановленные журналом при старте; null - чтение из БД
+    private void load(List<TradeColumnRow> recovered) {
+        long started = System.currentTimeMillis();
+        Rollups freshAll = new Rollups();
+        Map<String, Rollups> freshPortfolios = new HashMap<>();
+        Consumer<TradeColumnRow> loader = trade -> {
+            Rollups portfolio = freshPortfolios.computeIfAbsent(trade.portfolioId(), key -> new Rollups());
+            for (Rollups rollups : new Rollups[] {freshAll, portfolio}) {
+                apply(rollups, trade.symbol(), trade.entryPrice(), trade.exitPrice(), trade.quantity(),
+                    trade.entryDate(), trade.exitDate(), trade.marginAmount(), 1);
+            }
+        };
+        if (recovered != null) {
+            recovered.forEach(loader);
+        } else {
+            TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+            readOnlyTransaction.setReadOnly(true);
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<TradeColumnRow> trades = tradeRepository.streamColumnRows()) {
+                    trades.forEach(loader);
+                }
+            });
+        }
+        lock.writeLock().lock();
+        try {
+            all = freshAll;
+            portfolios = freshPortfolios;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Дневные итоги загружены: {} тикеров в {} портфелях за {} мс",
+            freshAll.symbols.size(), freshPortfolios.size(), System.currentTimeMillis() - started);
+    }
+
+    @EventListener
+    public void onTradeChange(TradeChangeEvent event) {
+        if (!ready) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Trade trade : event.getRemoved()) {
+                apply(trade, -1);
+            }
+            for (Trade trade : event.getAdded()) {
+                apply(trade, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Кривая капитала за [start, end] по портфелю или одному тикеру (symbol != null);
+     * portfolio == null - по всем портфелям.
+     * Без start кривая начинается с первой сделки, без end - заканчивается сегодня.
+     */
+    public Map<String, Object> getEquityCurve(String portfolio, String symbol, LocalDate start, LocalDate end,
+                                              EquityCurveGranularity granularity) {
+        lock.readLock().lock();
+        try {
+            Rollups rollups = rollupsOf(portfolio);
+            DailyRollup rollup = symbol != null ? rollups.symbols.getOrDefault(symbol, EMPTY) : rollups.total;
+            LocalDate to = end != null ? end : LocalDate.now();
+            LocalDate from = start;
+            if (from == null) {
+                Integer firstDay = rollup.getFirstDay();
+                from = firstDay != null ? LocalDate.ofEpochDay(Math.min(firstDay, to.toEpochDay())) : to;
+            }
+            if (from.isAfter(to)) {
+                throw new IllegalArgumentException("Дата начала позже даты окончания");
+            }
+            if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+                throw new IllegalArgumentException("Период кривой капитала не может быть длиннее " + maxDays + " дней");
+            }
+
+            List<Map<String, Object>> points = new ArrayList<>();
+            LocalDate bucketStart = from;
+            while (!bucketStart.isAfter(to)) {
+                LocalDate bucketEnd = bucketEnd(bucketStart, granularity);
+                if (bucketEnd.isAfter(to)) {
+                    bucketEnd = to;
+                }
+                points.add(point(rollup, bucketStart, bucketEnd));
+                bucketStart = bucketEnd.plusDays(1);
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("portfolio", portfolio);
+            result.put("symbol", symbol);
+            result.put("granularity", granularity.name().toLowerCase());
+            result.put("startDate", from.toString());
+            result.put("endDate", to.toString());
+            result.put("points", points);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Помесячная прибыль за [start, end] в формате {@link TradeAnalyticsService#foldMonthly}
+     * или null, пока итоги не загружены. Каждый месяц - разность двух сумм от начала.
+     */
+    public List<Map<String, Object>> getMonthly(String portfolio, LocalDate start, LocalDate end) {
+        if (!ready) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            DailyRollup total = rollupsOf(portfolio).total;
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (YearMonth month = YearMonth.from(start); !month.isAfter(YearMonth.from(end)); month = month.plusMonths(1)) {
+                LocalDate from = month.atDay(1).isBefore(start) ? start : month.atDay(1);
+                LocalDate to = month.atEndOfMonth().isAfter(end) ? end : month.atEndOfMonth();
+                Map<String, Object> monthData = new HashMap<>();
+                monthData.put("month", month.toString());
+                monthData.put("profit", total.range(DailyRollup.REALIZED, day(from), day(to)) / 100.0);
+                result.add(monthData);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Точка кривой за [from, to]: прибыль и проценты за период, накопленные итоги и открытые позиции на конец.
+     * Капитал - накопленная чистая прибыль закрытых сделок минус проценты, уже начисленные по открытым.
+     */
+    private static Map<String, Object> point(DailyRollup rollup, LocalDate from, LocalDate to) {
+        int first = day(from);
+        int last = day(to);
+        long realized = rollup.prefix(DailyRollup.REALIZED, last);
+        long accrued = rollup.accruedInterest(last);
+        long accruedOpen = accrued - rollup.prefix(DailyRollup.INTEREST_PAID, last);
+
+        Map<String, Object> point = new HashMap<>();
+        point.put("date", from.toString());
+        point.put("endDate", to.toString());
+        point.put("realizedProfit", rollup.range(DailyRollup.REALIZED, first, last) / 100.0);
+        point.put("interestAccrued", (accrued - rollup.accruedInterest(first - 1)) / 100.0);
+        point.put("cumulativeRealizedProfit", realized / 100.0);
+        point.put("accruedOpenInterest", accruedOpen / 100.0);
+        point.put("equity", (realized - accruedOpen) / 100.0);
+        point.put("exposure", rollup.prefix(DailyRollup.EXPOSURE, last) / 100.0);
+        point.put("dailyInterest", rollup.prefix(DailyRollup.ACCRUAL, last) / 100.0);
+        point.put("openTrades", rollup.prefix(DailyRollup.OPEN_TRADES, last));
+        return point;
+    }
+
+    private static LocalDate bucketEnd(LocalDate start, EquityCurveGranularity granularity) {
+        switch (granularity) {
+            case WEEK:
+                return start.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+            case MONTH:
+                return start.with(TemporalAdjusters.lastDayOfMonth());
+            default:
+                return start;
+        }
+    }
+
+    // Вызывается под блокировкой
+    private Rollups rollupsOf(String portfolio) {
+        return portfolio != null ? portfolios.getOrDefault(portfolio, NO_ROLLUPS) : all;
+    }
+
+    private void apply(Trade trade, int sign) {
+        Rollups portfolio = portfolios.computeIfAbsent(trade.getPortfolioId(), key -> new Rollups());
+        for (Rollups rollups : new Rollups[] {all, portfolio}) {
+            apply(rollups, trade.getSymbol(), trade.getEntryPrice(), trade.getExitPrice(), trade.getQuantity(),
+                trade.getEntryDate(), trade.getExitDate(), trade.getMarginAmount(), sign);
+        }
+    }
+
+    /**
+     * Прибавляет (sign = 1) или вычитает (sign = -1) сделку из итогов портфеля и ее тикера.
+     * Суммы считаются теми же {@link TradeCalculator}, что и геттеры {@link Trade}.
+     */
+    private static void apply(Rollups rollups, String symbol,
+                              BigDecimal entryPrice, BigDecimal exitPrice, Integer quantity,
+                              LocalDate entryDate, LocalDate exitDate, BigDecimal marginAmount, int sign) {
+        if (entryDate == null || entryPrice == null || quantity == null) {
+            return;
+        }
+        long entryCents = Money.fromDecimal(entryPrice);
+        long totalCost = TradeCalculator.totalCostCents(entryCents, quantity);
+        long dailyInterest = marginAmount != null
+            ? TradeCalculator.dailyInterestCents(totalCost, Money.fromDecimal(marginAmount)) : 0L;
+        long costCents = sign * totalCost;
+        long dailyCents = sign * dailyInterest;
+
+        DailyRollup bySymbol = rollups.symbols.computeIfAbsent(symbol, key -> new DailyRollup());
+        for (DailyRollup rollup : new DailyRollup[] {rollups.total, bySymbol}) {
+            int entryDay = day(entryDate);
+            rollup.add(DailyRollup.EXPOSURE, entryDay, costCents);
+            rollup.add(DailyRollup.ACCRUAL, entryDay, dailyCents);
+            rollup.add(DailyRollup.OPEN_TRADES, entryDay, sign);
+            if (exitDate == null) {
+                continue;
+            }
+            int exitDay = day(exitDate);
+            rollup.add(DailyRollup.EXPOSURE, exitDay, -costCents);
+            rollup.add(DailyRollup.ACCRUAL, exitDay, -dailyCents);
+            rollup.add(DailyRollup.OPEN_TRADES, exitDay, -sign);
+            long interest = TradeCalculator.totalInterestCents(dailyInterest, ChronoUnit.DAYS.between(entryDate, exitDate));
+            rollup.add(DailyRollup.INTEREST_PAID, exitDay, sign * interest);
+            if (exitPrice != null) {
+                long profit = TradeCalculator.profitCents(entryCents, Money.fromDecimal(exitPrice), quantity, interest);
+                rollup.add(DailyRollup.REALIZED, exitDay, sign * profit);
+            }
+        }
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+}
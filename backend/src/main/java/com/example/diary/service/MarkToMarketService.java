@@ -0,0 +1,160 @@
+package com.example.diary.service;
+
+import com.example.diary.market.MarketPriceStore;
+import com.example.diary.market.OhlcBar;
+import com.example.diary.model.Money;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.store.TradeColumnStore;
+import com.example.diary.store.TradeColumns;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static com.example.diary.service.PortfolioAggregates.toCents;
+
+/**
+ * Переоценка открытых сделок по рыночным ценам из {@link MarketPriceStore}.
+ * Цена берется на дату оценки или ближайший предыдущий торговый день - по одному двоичному поиску на тикер.
+ * Нереализованная прибыль считается так же, как прибыль при продаже по этой цене в дату оценки:
+ * разница цен минус проценты за дни с даты входа ({@link TradeCalculator#profit}).
+ * Учитываются сделки, открытые на дату оценки ({@link TradeFilter#setOpenOn}): для прошлой даты - и те,
+ * что закрыты позже нее. Тикеры без цен перечисляются в {@code unpricedSymbols} и в итоги по рынку не входят.
+ */
+@Service
+public class MarkToMarketService {
+
+    private static final class SymbolTotals {
+        private final String symbol;
+        private final OhlcBar bar;
+        private int trades;
+        private long quantity;
+        private long costCents;
+        private long marketValueCents;
+        private long priceProfitCents;
+        private long interestCents;
+        private long unrealizedCents;
+
+        private SymbolTotals(String symbol, OhlcBar bar) {
+            this.symbol = symbol;
+            this.bar = bar;
+        }
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private MarketPriceStore marketPriceStore;
+
+    public Map<String, Object> markToMarket(String portfolio, LocalDate date, String symbol, boolean details) {
+        int valuationDay = TradeColumns.epochDay(date);
+        TradeFilter filter = new TradeFilter();
+        filter.setPortfolio(portfolio);
+        filter.setSymbol(symbol);
+        filter.setOpenOn(date);
+
+        Map<String, SymbolTotals> bySymbol = new TreeMap<>();
+        List<Map<String, Object>> trades = new ArrayList<>();
+        columnStore.scan(filter, (columns, row) -> {
+            String tradeSymbol = columns.dictionary().symbol(columns.symbols()[row]);
+            SymbolTotals totals = bySymbol.computeIfAbsent(tradeSymbol,
+                key -> new SymbolTotals(key, marketPriceStore.barOnOrBefore(key, date)));
+
+            long entryCents = columns.entryPrices()[row];
+            double entryPrice = TradeColumns.decode(entryCents);
+            int quantity = columns.quantities()[row];
+            long costCents = TradeCalculator.totalCostCents(entryCents, quantity);
+            long dailyCents = TradeCalculator.dailyInterestCents(costCents, columns.rates()[row]);
+            long interestCents = TradeCalculator.totalInterestCents(dailyCents,
+                Math.max(0L, (long) valuationDay - columns.entryDays()[row]));
+            double totalCost = Money.toDouble(costCents);
+            double interest = Money.toDouble(interestCents);
+
+            totals.trades++;
+            totals.quantity += quantity;
+            totals.costCents += costCents;
+            totals.interestCents += interestCents;
+
+            Map<String, Object> trade = details ? new HashMap<>() : null;
+            if (totals.bar != null) {
+                double price = totals.bar.close();
+                double marketValue = price * quantity;
+                // Рыночная цена может иметь доли копейки: разница округляется до копеек на всю позицию
+                long priceProfitCents = toCents((price - entryPrice) * quantity);
+                long unrealizedCents = priceProfitCents - interestCents;
+                totals.marketValueCents += toCents(marketValue);
+                totals.priceProfitCents += priceProfitCents;
+                totals.unrealizedCents += unrealizedCents;
+                if (trade != null) {
+                    trade.put("marketPrice", price);
+                    trade.put("marketValue", TradeCalculator.round2(marketValue));
+                    trade.put("priceProfit", Money.toDouble(priceProfitCents));
+                    trade.put("unrealizedProfit", Money.toDouble(unrealizedCents));
+                }
+            }
+            if (trade != null) {
+                trade.put("id", columns.ids()[row]);
+                trade.put("symbol", tradeSymbol);
+                trade.put("quantity", quantity);
+                trade.put("entryPrice", entryPrice);
+                trade.put("entryDate", LocalDate.ofEpochDay(columns.entryDays()[row]).toString());
+                trade.put("totalCost", totalCost);
+                trade.put("accruedInterest", interest);
+                trades.add(trade);
+            }
+        });
+
+        List<Map<String, Object>> symbols = new ArrayList<>();
+        List<String> unpriced = new ArrayList<>();
+        int pricedTrades = 0;
+        long cost = 0;
+        long marketValue = 0;
+        long priceProfit = 0;
+        long interest = 0;
+        long unrealized = 0;
+        for (SymbolTotals totals : bySymbol.values()) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("symbol", totals.symbol);
+            data.put("openTrades", totals.trades);
+            data.put("quantity", totals.quantity);
+            data.put("totalCost", totals.costCents / 100.0);
+            data.put("accruedInterest", totals.interestCents / 100.0);
+            if (totals.bar == null) {
+                unpriced.add(totals.symbol);
+            } else {
+                data.put("marketPrice", totals.bar.close());
+                data.put("priceDate", totals.bar.date().toString());
+                data.put("marketValue", totals.marketValueCents / 100.0);
+                data.put("priceProfit", totals.priceProfitCents / 100.0);
+                data.put("unrealizedProfit", totals.unrealizedCents / 100.0);
+                pricedTrades += totals.trades;
+                cost += totals.costCents;
+                marketValue += totals.marketValueCents;
+                priceProfit += totals.priceProfitCents;
+                interest += totals.interestCents;
+                unrealized += totals.unrealizedCents;
+            }
+            symbols.add(data);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("date", date.toString());
+        result.put("pricedTrades", pricedTrades);
+        result.put("totalCost", cost / 100.0);
+        result.put("marketValue", marketValue / 100.0);
+        result.put("priceProfit", priceProfit / 100.0);
+        result.put("accruedInterest", interest / 100.0);
+        result.put("unrealizedProfit", unrealized / 100.0);
+        result.put("symbols", symbols);
+        result.put("unpricedSymbols", unpriced);
+        if (details) {
+            trades.sort(Comparator.comparing((Map<String, Object> trade) -> (String) trade.get("symbol"))
+                .thenComparing(trade -> (Long) trade.get("id")));
+            result.put("trades", trades);
+        }
+        return result;
+    }
+}
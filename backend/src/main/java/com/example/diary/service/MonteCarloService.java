@@ -0,0 +1,243 @@
+package com.example.diary.service;
+
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.risk.HistoricalSimulation;
+import com.example.diary.risk.MonteCarloSimulator;
+import com.example.diary.risk.PriceHistoryStore;
+import com.example.diary.risk.PriceSeries;
+import com.example.diary.store.TradeColumnStore;
+import com.example.diary.store.TradeColumns;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Монте-Карло P&L открытых сделок на целевую дату с учетом процентов по марже.
+ * Параметры GBM оцениваются по последним lookback общим датам истории цен,
+ * число шагов - календарные дни от последней цены до целевой даты, пересчитанные
+ * по частоте наблюдений в истории (для биржевых данных это примерно 252 шага в году).
+ */
+@Service
+public class MonteCarloService {
+
+    private static final double[] PERCENTILES = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+
+    private record OpenTrade(long id, String symbol, int quantity, double entryPrice, double interest) {
+        double cost() {
+            return TradeCalculator.totalCost(entryPrice, quantity);
+        }
+
+        double breakeven() {
+            return (cost() + interest) / quantity;
+        }
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private PriceHistoryStore priceHistoryStore;
+
+    @Value("${risk.montecarlo.max-paths:200000}")
+    private int maxPaths;
+
+    @Value("${risk.montecarlo.max-correlated-symbols:250}")
+    private int maxCorrelatedSymbols;
+
+    public Map<String, Object> simulate(String portfolio, LocalDate targetDate, int paths, Long seed, int lookback,
+                                        boolean correlated, boolean details) {
+        if (paths < 1 || paths > maxPaths) {
+            throw new IllegalArgumentException("Число путей должно быть от 1 до " + maxPaths);
+        }
+        if (lookback < 2) {
+            throw new IllegalArgumentException("Окно оценки параметров должно быть не меньше 2 дней");
+        }
+        long started = System.currentTimeMillis();
+        long usedSeed = seed != null ? seed : new SplittableRandom().nextLong();
+
+        // Открытые сделки по тикерам; проценты считаются до целевой даты так же, как в Trade#getTotalInterest
+        Map<String, List<OpenTrade>> bySymbol = new TreeMap<>();
+        TradeFilter filter = new TradeFilter();
+        filter.setPortfolio(portfolio);
+        filter.setStatus(TradeFilter.Status.OPEN);
+        int targetDay = TradeColumns.epochDay(targetDate);
+        columnStore.scan(filter, (columns, row) -> {
+            int quantity = columns.quantities()[row];
+            if (quantity > 0) {
+                double entryPrice = TradeColumns.decode(columns.entryPrices()[row]);
+                double cost = TradeCalculator.totalCost(entryPrice, quantity);
+                double rate = TradeColumns.decode(columns.rates()[row]);
+                long days = Math.max(0, (long) targetDay - columns.entryDays()[row]);
+                double interest = TradeCalculator.totalInterest(TradeCalculator.dailyInterest(cost, rate), days);
+                String symbol = columns.dictionary().symbol(columns.symbols()[row]);
+                bySymbol.computeIfAbsent(symbol, key -> new ArrayList<>())
+                    .add(new OpenTrade(columns.ids()[row], symbol, quantity, entryPrice, interest));
+            }
+        });
+
+        List<String> missingHistory = new ArrayList<>();
+        List<PriceSeries> series = new ArrayList<>();
+        List<List<OpenTrade>> groups = new ArrayList<>();
+        for (Map.Entry<String, List<OpenTrade>> entry : bySymbol.entrySet()) {
+            PriceSeries prices = priceHistoryStore.get(entry.getKey());
+            if (prices == null) {
+                missingHistory.add(entry.getKey());
+            } else {
+                series.add(prices);
+                groups.add(entry.getValue());
+            }
+        }
+
+        HistoricalSimulation.PriceMatrix prices = HistoricalSimulation.align(series, lookback + 1);
+        if (!series.isEmpty() && prices.length() < 2) {
+            throw new IllegalArgumentException("У тикеров недостаточно общей истории цен для оценки параметров");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        int k = series.size();
+        LocalDate asOf = k > 0 ? LocalDate.ofEpochDay(prices.days()[prices.length() - 1]) : LocalDate.now();
+        if (!targetDate.isAfter(asOf)) {
+            throw new IllegalArgumentException("Целевая дата должна быть позже даты последней цены " + asOf);
+        }
+
+        boolean useCorrelation = correlated && k > 1 && k <= maxCorrelatedSymbols;
+        MonteCarloSimulator.Parameters parameters = MonteCarloSimulator.estimate(prices, useCorrelation);
+        int steps = steps(prices, asOf, targetDate);
+
+        double[] spot = new double[k];
+        double[] quantity = new double[k];
+        double[] fixedCost = new double[k];
+        double[] interest = new double[k];
+        int[] offsets = new int[k + 1];
+        List<OpenTrade> ordered = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            spot[i] = prices.closes()[i * prices.length() + prices.length() - 1];
+            List<OpenTrade> group = groups.get(i);
+            group.sort(Comparator.comparingDouble(OpenTrade::breakeven));
+            offsets[i] = ordered.size();
+            for (OpenTrade trade : group) {
+                quantity[i] += trade.quantity();
+                fixedCost[i] += trade.cost() + trade.interest();
+                interest[i] += trade.interest();
+                ordered.add(trade);
+            }
+        }
+        offsets[k] = ordered.size();
+        double[] breakevens = new double[ordered.size()];
+        for (int j = 0; j < breakevens.length; j++) {
+            breakevens[j] = ordered.get(j).breakeven();
+        }
+
+        MonteCarloSimulator.Model model = new MonteCarloSimulator.Model(k, steps, spot, parameters.drift(),
+            parameters.volatility(), parameters.cholesky(), quantity, fixedCost, offsets, breakevens);
+        MonteCarloSimulator.Result simulation = MonteCarloSimulator.simulate(model, paths, usedSeed);
+
+        result.put("asOf", asOf);
+        result.put("targetDate", targetDate);
+        result.put("steps", steps);
+        result.put("paths", paths);
+        result.put("seed", usedSeed);
+        result.put("correlated", parameters.cholesky() != null);
+        result.put("lookbackDays", Math.max(0, prices.length() - 1));
+        result.put("portfolio", portfolio(simulation.pnl(), spot, quantity, fixedCost, interest));
+
+        List<Map<String, Object>> symbols = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("symbol", series.get(i).getSymbol());
+            data.put("quantity", (long) quantity[i]);
+            data.put("spot", spot[i]);
+            data.put("drift", parameters.drift()[i]);
+            data.put("volatility", parameters.volatility()[i]);
+            data.put("expectedPrice", TradeCalculator.round2(simulation.meanTerminal()[i]));
+            data.put("breakevenPrice", TradeCalculator.round2(fixedCost[i] / quantity[i]));
+            data.put("interestToTarget", TradeCalculator.round2(interest[i]));
+            data.put("expectedPnl", TradeCalculator.round2(quantity[i] * simulation.meanTerminal()[i] - fixedCost[i]));
+            data.put("probabilityBelowBreakeven", (double) simulation.symbolBelowBreakeven()[i] / paths);
+            symbols.add(data);
+        }
+        result.put("symbols", symbols);
+
+        if (details) {
+            List<Map<String, Object>> trades = new ArrayList<>(ordered.size());
+            for (int j = 0; j < ordered.size(); j++) {
+                OpenTrade trade = ordered.get(j);
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("id", trade.id());
+                data.put("symbol", trade.symbol());
+                data.put("quantity", trade.quantity());
+                data.put("entryPrice", trade.entryPrice());
+                data.put("interestToTarget", trade.interest());
+                data.put("breakevenPrice", TradeCalculator.round2(trade.breakeven()));
+                data.put("probabilityBelowBreakeven", (double) simulation.tradeBelowBreakeven()[j] / paths);
+                trades.add(data);
+            }
+            trades.sort(Comparator.comparing(data -> (Long) data.get("id")));
+            result.put("trades", trades);
+        }
+        result.put("missingHistory", missingHistory);
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    private static Map<String, Object> portfolio(double[] pnl, double[] spot, double[] quantity,
+                                                 double[] fixedCost, double[] interest) {
+        double marketValue = 0.0;
+        double entryCost = 0.0;
+        double totalInterest = 0.0;
+        for (int i = 0; i < spot.length; i++) {
+            marketValue += spot[i] * quantity[i];
+            entryCost += fixedCost[i] - interest[i];
+            totalInterest += interest[i];
+        }
+
+        int n = pnl.length;
+        double mean = 0.0;
+        int below = 0;
+        for (double value : pnl) {
+            mean += value;
+            if (value < 0) {
+                below++;
+            }
+        }
+        mean /= n;
+        double squares = 0.0;
+        for (double value : pnl) {
+            squares += (value - mean) * (value - mean);
+        }
+
+        double[] sorted = pnl.clone();
+        Arrays.parallelSort(sorted);
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        for (double p : PERCENTILES) {
+            int index = Math.min(n - 1, (int) Math.floor(p * n));
+            percentiles.put("p" + Math.round(p * 100), TradeCalculator.round2(sorted[index]));
+        }
+
+        Map<String, Object> portfolio = new LinkedHashMap<>();
+        portfolio.put("marketValue", TradeCalculator.round2(marketValue));
+        portfolio.put("entryCost", TradeCalculator.round2(entryCost));
+        portfolio.put("interestToTarget", TradeCalculator.round2(totalInterest));
+        portfolio.put("expectedPnl", TradeCalculator.round2(mean));
+        portfolio.put("stdDev", TradeCalculator.round2(Math.sqrt(n > 1 ? squares / (n - 1) : 0.0)));
+        portfolio.put("percentiles", percentiles);
+        portfolio.put("probabilityBelowBreakeven", (double) below / n);
+        return portfolio;
+    }
+
+    // Число шагов: календарные дни до целевой даты × число наблюдений истории на календарный день
+    private static int steps(HistoricalSimulation.PriceMatrix prices, LocalDate asOf, LocalDate targetDate) {
+        long calendarDays = ChronoUnit.DAYS.between(asOf, targetDate);
+        int length = prices.length();
+        double perDay = 1.0;
+        if (length > 1) {
+            int span = prices.days()[length - 1] - prices.days()[0];
+            perDay = span > 0 ? (double) (length - 1) / span : 1.0;
+        }
+        return (int) Math.max(1, Math.round(calendarDays * perDay));
+    }
+}
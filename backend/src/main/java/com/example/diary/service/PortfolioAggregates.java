@@ -0,0 +1,193 @@
+package com.example.diary.service;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Агрегаты портфеля, которые обновляются добавлением и вычитанием отдельных сделок.
+ * Денежные суммы хранятся в копейках (long), чтобы многократные прибавления и вычитания
+ * не накапливали ошибку округления. Класс не потокобезопасен, синхронизацию обеспечивает {@link PortfolioCache}.
+ */
+public class PortfolioAggregates {
+
+    public static class SymbolStats {
+        private int count;
+        private int profitCount;
+        private long profitCents;
+        private int openCount;
+        private long openQuantity;
+        private long openCostCents;
+
+        public int getCount() { return count; }
+        public int getProfitCount() { return profitCount; }
+        public long getProfitCents() { return profitCents; }
+        public int getOpenCount() { return openCount; }
+        public long getOpenQuantity() { return openQuantity; }
+        public long getOpenCostCents() { return openCostCents; }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+    public static class MonthStats {
+        private int closedCount;
+        private long profitCents;
+
+        public int getClosedCount() { return closedCount; }
+        public long getProfitCents() { return profitCents; }
+    }
+
+    private int totalTrades;
+    private int closedTrades;
+    private int winningTrades;
+    private long totalProfitCents;
+    private int openTrades;
+    private long openCostCents;
+    private long openDailyInterestCents;
+
+    private final Map<String, SymbolStats> symbols = new HashMap<>();
+    private final TreeMap<YearMonth, MonthStats> months = new TreeMap<>();
+    // Количество закрытых сделок на каждую дату выхода: границы неполных месяцев и последняя дата выхода
+    private final TreeMap<LocalDate, Integer> exitDates = new TreeMap<>();
+    // Месяцы раньше этого вытеснены и в кэше отсутствуют
+    private YearMonth evictedBefore;
+
+    public void add(Trade trade) {
+        apply(trade, 1);
+    }
+
+    public void remove(Trade trade) {
+        apply(trade, -1);
+    }
+
+    private void apply(Trade trade, int sign) {
+        totalTrades += sign;
+        SymbolStats symbol = symbols.computeIfAbsent(trade.getSymbol(), key -> new SymbolStats());
+        symbol.count += sign;
+
+        if (trade.getExitDate() != null) {
+            closedTrades += sign;
+            exitDates.merge(trade.getExitDate(), sign, (a, b) -> a + b == 0 ? null : a + b);
+
+            if (trade.getExitPrice() != null && trade.getEntryPrice() != null && trade.getQuantity() != null
+                    && trade.getMarginAmount() != null && trade.getEntryDate() != null) {
+                long cents = trade.profitCents();
+                totalProfitCents += sign * cents;
+                if (cents > 0) {
+                    winningTrades += sign;
+                }
+                symbol.profitCount += sign;
+                symbol.profitCents += sign * cents;
+
+                YearMonth month = YearMonth.from(trade.getExitDate());
+                if (!isEvicted(month)) {
+                    MonthStats stats = months.computeIfAbsent(month, key -> new MonthStats());
+                    stats.closedCount += sign;
+                    stats.profitCents += sign * cents;
+                    if (stats.closedCount == 0) {
+                        months.remove(month);
+                    }
+                }
+            }
+        } else {
+            openTrades += sign;
+            if (trade.getEntryPrice() != null && trade.getQuantity() != null) {
+                long costCents = trade.totalCostCents();
+                openCostCents += sign * costCents;
+                symbol.openCostCents += sign * costCents;
+                if (trade.getMarginAmount() != null) {
+                    openDailyInterestCents += sign * trade.dailyInterestCents();
+                }
+            }
+            symbol.openCount += sign;
+            symbol.openQuantity += (long) sign * (trade.getQuantity() != null ? trade.getQuantity() : 0);
+        }
+
+        if (symbol.isEmpty()) {
+            symbols.remove(trade.getSymbol());
+        }
+    }
+
+    /**
+     * Оставляет не больше maxMonths последних месяцев; более ранние считаются вытесненными.
+     */
+    public void evictMonths(int maxMonths) {
+        while (months.size() > maxMonths) {
+            YearMonth oldest = months.firstKey();
+            months.remove(oldest);
+            evictedBefore = oldest.plusMonths(1);
+        }
+    }
+
+    public boolean isEvicted(YearMonth month) {
+        return evictedBefore != null && month.isBefore(evictedBefore);
+    }
+
+    /**
+     * Есть ли закрытые сделки с датой выхода в интервале [from, to].
+     */
+    public boolean hasExitsBetween(LocalDate from, LocalDate to) {
+        return !from.isAfter(to) && !exitDates.subMap(from, true, to, true).isEmpty();
+    }
+
+    public static long toCents(double amount) {
+        return Money.fromDouble(amount);
+    }
+
+    public int getTotalTrades() { return totalTrades; }
+    public int getClosedTrades() { return closedTrades; }
+    public int getWinningTrades() { return winningTrades; }
+    public long getTotalProfitCents() { return totalProfitCents; }
+    public int getOpenTrades() { return openTrades; }
+    public long getOpenCostCents() { return openCostCents; }
+    public long getOpenDailyInterestCents() { return openDailyInterestCents; }
+    public Map<String, SymbolStats> getSymbols() { return symbols; }
+    public NavigableMap<YearMonth, MonthStats> getMonths() { return months; }
+
+    /**
+     * Различия с другим набором агрегатов (пустой список, если совпадают). Вытесненные месяцы не сравниваются.
+     */
+    public List<String> diff(PortfolioAggregates other) {
+        List<String> differences = new ArrayList<>();
+        compare(differences, "totalTrades", totalTrades, other.totalTrades);
+        compare(differences, "closedTrades", closedTrades, other.closedTrades);
+        compare(differences, "winningTrades", winningTrades, other.winningTrades);
+        compare(differences, "totalProfitCents", totalProfitCents, other.totalProfitCents);
+        compare(differences, "openTrades", openTrades, other.openTrades);
+        compare(differences, "openCostCents", openCostCents, other.openCostCents);
+        compare(differences, "openDailyInterestCents", openDailyInterestCents, other.openDailyInterestCents);
+
+        Set<String> allSymbols = new TreeSet<>(symbols.keySet());
+        allSymbols.addAll(other.symbols.keySet());
+        for (String name : allSymbols) {
+            SymbolStats a = symbols.getOrDefault(name, new SymbolStats());
+            SymbolStats b = other.symbols.getOrDefault(name, new SymbolStats());
+            compare(differences, name + ".count", a.count, b.count);
+            compare(differences, name + ".profitCents", a.profitCents, b.profitCents);
+            compare(differences, name + ".openQuantity", a.openQuantity, b.openQuantity);
+        }
+
+        Set<YearMonth> allMonths = new TreeSet<>(months.keySet());
+        allMonths.addAll(other.months.keySet());
+        for (YearMonth month : allMonths) {
+            if (isEvicted(month) || other.isEvicted(month)) {
+                continue;
+            }
+            MonthStats a = months.getOrDefault(month, new MonthStats());
+            MonthStats b = other.months.getOrDefault(month, new MonthStats());
+            compare(differences, month + ".profitCents", a.profitCents, b.profitCents);
+        }
+        return differences;
+    }
+
+    private static void compare(List<String> differences, String name, long cached, long actual) {
+        if (cached != actual) {
+            differences.add(name + ": " + cached + " != " + actual);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.diary.service;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.journal.TradeJournal;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.TradeSort;
+import com.example.diary.repository.projection.TradeColumnRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Кэш состояния портфеля в памяти со сквозной записью.
+ * Загружается один раз при старте - по сделкам из {@link TradeJournal} или из БД, затем обновляется по {@link TradeChangeEvent}
+ * после каждой покупки, продажи, удаления и импорта. Агрегаты ведутся по каждому портфелю
+ * и сводно по всем; методы чтения принимают портфель, null - сводные агрегаты. Сводка и аналитика
+ * по тикерам отдаются за O(1) и O(тикеров), помесячная - за O(месяцев в диапазоне).
+ * Хранится не больше {@code portfolio.cache.max-months} месяцев; запросы к более
+ * ранним месяцам выполняются по БД.
+ */
+@Service
+public class PortfolioCache implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortfolioCache.class);
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    @Value("${portfolio.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${portfolio.cache.max-months:120}")
+    private int maxMonths;
+
+    @Value("${trades.stream.fetch-size:500}")
+    private int fetchSize;
+
+    // Агрегаты неизвестного портфеля; только для чтения
+    private static final PortfolioAggregates EMPTY = new PortfolioAggregates();
+
+    private record Snapshot(PortfolioAggregates total, TreeMap<String, PortfolioAggregates> portfolios) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private PortfolioAggregates aggregates = new PortfolioAggregates();
+    private TreeMap<String, PortfolioAggregates> portfolios = new TreeMap<>();
+    private volatile boolean ready;
+    // События, пришедшие во время сверки; null - сверка не идет. Изменяется под блокировкой записи
+    private List<TradeChangeEvent> verifying;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            load(tradeJournal.recoveredRows());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // recovered - сделки, восстановленные журналом при старте; null - чтение из БД
+    private void load(List<TradeColumnRow> recovered) {
+        long started = System.currentTimeMillis();
+        Snapshot fresh = recovered != null ? fromRows(recovered) : loadFromDatabase(null);
+        lock.writeLock().lock();
+        try {
+            aggregates = fresh.total();
+            portfolios = fresh.portfolios();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Кэш портфеля загружен: {} сделок в {} портфелях за {} мс",
+            fresh.total().getTotalTrades(), fresh.portfolios().size(), System.currentTimeMillis() - started);
+    }
+
+    @EventListener
+    public void onTradeChange(TradeChangeEvent event) {
+        if (!ready) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            apply(aggregates, portfolios, event);
+            if (verifying != null) {
+                verifying.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Сверяет кэш с БД. При расхождении кэш заменяется пересчитанным состоянием.
+     * <p>
+     * БД читается без блокировки: изменения продолжают попадать в кэш и запоминаются. Событие публикуется
+     * после коммита, поэтому изменение, пришедшее за время чтения, может уже быть в прочитанных строках,
+     * а может и не быть. Прочитанные сделки хранятся по id, и для каждой сделки из запомненных событий
+     * в порядке их прихода прочитанное состояние заменяется состоянием после события - так снимок
+     * оказывается в той же точке потока изменений, что и кэш, и ни одно изменение не учитывается дважды.
+     */
+    public Map<String, Object> verify() {
+        List<TradeChangeEvent> events = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            if (verifying != null) {
+                throw new IllegalStateException("Сверка кэша уже выполняется");
+            }
+            verifying = events;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, Trade> loaded = new HashMap<>();
+        Snapshot actual;
+        try {
+            actual = loadFromDatabase(loaded);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            verifying = null;
+            lock.writeLock().unlock();
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            verifying = null;
+            for (TradeChangeEvent event : events) {
+                catchUp(actual, loaded, event);
+            }
+            actual.total().evictMonths(maxMonths);
+            for (PortfolioAggregates portfolio : actual.portfolios().values()) {
+                portfolio.evictMonths(maxMonths);
+            }
+
+            List<String> differences = aggregates.diff(actual.total());
+            Set<String> names = new TreeSet<>(portfolios.keySet());
+            names.addAll(actual.portfolios().keySet());
+            for (String name : names) {
+                for (String difference : portfolios.getOrDefault(name, EMPTY)
+                        .diff(actual.portfolios().getOrDefault(name, EMPTY))) {
+                    differences.add(name + "/" + difference);
+                }
+            }
+            if (!differences.isEmpty()) {
+                logger.warn("Кэш портфеля расходится с БД, выполняется перезагрузка: {}", differences);
+                aggregates = actual.total();
+                portfolios = actual.portfolios();
+                ready = true;
+            }
+
+            Map<String, Object> report = new HashMap<>();
+            report.put("consistent", differences.isEmpty());
+            report.put("differences", differences);
+            report.put("totalTrades", actual.total().getTotalTrades());
+            report.put("portfolios", actual.portfolios().size());
+            report.put("changesDuringVerify", events.size());
+            return report;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(PortfolioAggregates total, TreeMap<String, PortfolioAggregates> byPortfolio,
+                       TradeChangeEvent event) {
+        for (Trade trade : event.getRemoved()) {
+            remove(total, byPortfolio, trade);
+        }
+        for (Trade trade : event.getAdded()) {
+            total.add(trade);
+            byPortfolio.computeIfAbsent(trade.getPortfolioId(), key -> new PortfolioAggregates()).add(trade);
+        }
+        total.evictMonths(maxMonths);
+        for (PortfolioAggregates portfolio : byPortfolio.values()) {
+            portfolio.evictMonths(maxMonths);
+        }
+    }
+
+    // Сделки события получают в снимке состояние после события, независимо от того, успело ли оно попасть в чтение
+    private void catchUp(Snapshot snapshot, Map<Long, Trade> loaded, TradeChangeEvent event) {
+        for (List<Trade> trades : List.of(event.getRemoved(), event.getAdded())) {
+            for (Trade trade : trades) {
+                Trade current = loaded.remove(trade.getId());
+                if (current != null) {
+                    remove(snapshot.total(), snapshot.portfolios(), current);
+                }
+            }
+        }
+        for (Trade trade : event.getAdded()) {
+            snapshot.total().add(trade);
+            snapshot.portfolios().computeIfAbsent(trade.getPortfolioId(), key -> new PortfolioAggregates()).add(trade);
+            loaded.put(trade.getId(), trade);
+        }
+    }
+
+    private static void remove(PortfolioAggregates total, TreeMap<String, PortfolioAggregates> byPortfolio,
+                               Trade trade) {
+        total.remove(trade);
+        PortfolioAggregates portfolio = byPortfolio.get(trade.getPortfolioId());
+        if (portfolio != null) {
+            portfolio.remove(trade);
+            if (portfolio.getTotalTrades() == 0) {
+                byPortfolio.remove(trade.getPortfolioId());
+            }
+        }
+    }
+
+    public Map<String, Object> getSummary(String portfolio) {
+        lock.readLock().lock();
+        try {
+            PortfolioAggregates aggregates = aggregatesOf(portfolio);
+            int closed = aggregates.getClosedTrades();
+            int winning = aggregates.getWinningTrades();
+            double winRate = closed == 0 ? 0 :
+                Math.round((double) winning / closed * 10000) / 100.0;
+
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("totalTrades", aggregates.getTotalTrades());
+            summary.put("closedTrades", closed);
+            summary.put("winningTrades", winning);
+            summary.put("winRate", winRate);
+            summary.put("totalProfit", aggregates.getTotalProfitCents() / 100.0);
+            return summary;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Map<String, Object>> getSymbols(String portfolio) {
+        lock.readLock().lock();
+        try {
+            PortfolioAggregates aggregates = aggregatesOf(portfolio);
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (Map.Entry<String, PortfolioAggregates.SymbolStats> entry : aggregates.getSymbols().entrySet()) {
+                PortfolioAggregates.SymbolStats stats = entry.getValue();
+                if (stats.getProfitCount() == 0) {
+                    continue;
+                }
+                Map<String, Object> data = new HashMap<>();
+                data.put("symbol", entry.getKey());
+                data.put("profit", stats.getProfitCents() / 100.0);
+                data.put("count", stats.getCount());
+                result.add(data);
+            }
+            result.sort((a, b) -> Double.compare((Double) b.get("profit"), (Double) a.get("profit")));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Помесячная прибыль за [start, end] или null, если кэш не может ответить точно:
+     * месяц вытеснен или в неполном крайнем месяце есть выходы за пределами диапазона.
+     */
+    public List<Map<String, Object>> getMonthly(String portfolio, LocalDate start, LocalDate end) {
+        lock.readLock().lock();
+        try {
+            PortfolioAggregates aggregates = aggregatesOf(portfolio);
+            YearMonth first = YearMonth.from(start);
+            YearMonth last = YearMonth.from(end);
+            if (aggregates.isEvicted(first)
+                    || aggregates.hasExitsBetween(first.atDay(1), start.minusDays(1))
+                    || aggregates.hasExitsBetween(end.plusDays(1), last.atEndOfMonth())) {
+                return null;
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                PortfolioAggregates.MonthStats stats = aggregates.getMonths().get(month);
+                Map<String, Object> monthData = new HashMap<>();
+                monthData.put("month", month.toString());
+                monthData.put("profit", stats != null ? stats.getProfitCents() / 100.0 : 0.0);
+                result.add(monthData);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Открытые позиции: общие суммы и разбивка по тикерам.
+     */
+    public Map<String, Object> getOpenPositions(String portfolio) {
+        lock.readLock().lock();
+        try {
+            PortfolioAggregates aggregates = aggregatesOf(portfolio);
+            List<Map<String, Object>> symbols = new ArrayList<>();
+            for (Map.Entry<String, PortfolioAggregates.SymbolStats> entry : aggregates.getSymbols().entrySet()) {
+                PortfolioAggregates.SymbolStats stats = entry.getValue();
+                if (stats.getOpenCount() == 0) {
+                    continue;
+                }
+                Map<String, Object> data = new HashMap<>();
+                data.put("symbol", entry.getKey());
+                data.put("openTrades", stats.getOpenCount());
+                data.put("quantity", stats.getOpenQuantity());
+                data.put("totalCost", stats.getOpenCostCents() / 100.0);
+                symbols.add(data);
+            }
+            symbols.sort(Comparator.comparing(data -> (String) data.get("symbol")));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("openTrades", aggregates.getOpenTrades());
+            result.put("totalCost", aggregates.getOpenCostCents() / 100.0);
+            result.put("dailyInterest", aggregates.getOpenDailyInterestCents() / 100.0);
+            result.put("symbols", symbols);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Портфели со сделками в алфавитном порядке и их основные итоги.
+     */
+    public List<Map<String, Object>> getPortfolios() {
+        lock.readLock().lock();
+        try {
+            List<Map<String, Object>> result = new ArrayList<>(portfolios.size());
+            portfolios.forEach((name, portfolio) -> {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("portfolio", name);
+                data.put("totalTrades", portfolio.getTotalTrades());
+                data.put("openTrades", portfolio.getOpenTrades());
+                data.put("closedTrades", portfolio.getClosedTrades());
+                data.put("totalProfit", portfolio.getTotalProfitCents() / 100.0);
+                data.put("openCost", portfolio.getOpenCostCents() / 100.0);
+                result.add(data);
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Одно числовое значение из сводных агрегатов под блокировкой чтения; NaN, пока кэш не загружен.
+     * Используется датчиками метрик, которым не нужны полные ответы сводки.
+     */
+    public double read(ToDoubleFunction<PortfolioAggregates> reader) {
+        if (!ready) {
+            return Double.NaN;
+        }
+        lock.readLock().lock();
+        try {
+            return reader.applyAsDouble(aggregates);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Вызывается под блокировкой
+    private PortfolioAggregates aggregatesOf(String portfolio) {
+        return portfolio != null ? portfolios.getOrDefault(portfolio, EMPTY) : aggregates;
+    }
+
+    private Snapshot fromRows(List<TradeColumnRow> rows) {
+        Snapshot loaded = new Snapshot(new PortfolioAggregates(), new TreeMap<>());
+        for (TradeColumnRow row : rows) {
+            Trade trade = row.toTrade();
+            loaded.total().add(trade);
+            loaded.portfolios().computeIfAbsent(trade.getPortfolioId(), key -> new PortfolioAggregates()).add(trade);
+        }
+        loaded.total().evictMonths(maxMonths);
+        for (PortfolioAggregates portfolio : loaded.portfolios().values()) {
+            portfolio.evictMonths(maxMonths);
+        }
+        return loaded;
+    }
+
+    // byId - если задан, сюда складываются прочитанные сделки; месяцы не вытесняются, это делает вызывающий
+    private Snapshot loadFromDatabase(Map<Long, Trade> byId) {
+        Snapshot loaded = new Snapshot(new PortfolioAggregates(), new TreeMap<>());
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<Trade> trades = tradeRepository.streamTrades(null, TradeSort.ID_ASC, fetchSize)) {
+                trades.forEach(trade -> {
+                    loaded.total().add(trade);
+                    loaded.portfolios().computeIfAbsent(trade.getPortfolioId(), key -> new PortfolioAggregates()).add(trade);
+                    entityManager.detach(trade);
+                    if (byId != null) {
+                        byId.put(trade.getId(), trade);
+                    }
+                });
+            }
+        });
+        if (byId == null) {
+            loaded.total().evictMonths(maxMonths);
+            for (PortfolioAggregates portfolio : loaded.portfolios().values()) {
+                portfolio.evictMonths(maxMonths);
+            }
+        }
+        return loaded;
+    }
+}
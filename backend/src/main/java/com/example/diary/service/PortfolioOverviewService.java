@@ -0,0 +1,105 @@
+package com.example.diary.service;
+
+import com.example.diary.store.TradeColumnStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Сводка по всем портфелям: статистика и исторический VaR каждого портфеля и сводные по всем.
+ * Статистика каждого портфеля считается своим {@link StatisticsAccumulator} параллельно по столбцам
+ * этого портфеля ({@link TradeColumnStore#scanEach}); сводная статистика - слияние накопителей портфелей,
+ * без второго прохода по сделкам. VaR портфелей считается параллельно ({@link RiskService#valueAtRisk}),
+ * сводный VaR - по сложенным позициям: он не равен сумме VaR портфелей, разница показывается как
+ * эффект диверсификации.
+ */
+@Service
+public class PortfolioOverviewService {
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private RiskService riskService;
+
+    public Map<String, Object> getOverview(double[] confidences, int horizon, Integer scenarios) {
+        int[] horizons = {horizon};
+        riskService.checkParameters(confidences, horizons, scenarios);
+        long started = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+
+        Map<String, StatisticsAccumulator> statistics = columnStore.scanEach(null,
+            portfolio -> new StatisticsAccumulator(today), (accumulator, columns, row) -> accumulator.accept(columns, row));
+        Map<String, List<TradeColumnStore.OpenPosition>> positions = columnStore.openPositionsByPortfolio();
+
+        // Портфель мог появиться или исчезнуть между двумя чтениями снимка - берем объединение
+        Set<String> names = new TreeSet<>(statistics.keySet());
+        names.addAll(positions.keySet());
+        List<String> portfolios = new ArrayList<>(names);
+
+        // Последняя задача - сводный VaR; все расчеты идут параллельно
+        List<List<TradeColumnStore.OpenPosition>> inputs = new ArrayList<>(portfolios.size() + 1);
+        for (String portfolio : portfolios) {
+            inputs.add(positions.getOrDefault(portfolio, List.of()));
+        }
+        inputs.add(TradeColumnStore.merge(positions.values()));
+        List<Map<String, Object>> risks = inputs.parallelStream()
+            .map(open -> riskService.valueAtRisk(open, confidences, horizons, scenarios, false))
+            .toList();
+
+        StatisticsAccumulator consolidated = new StatisticsAccumulator(today);
+        List<Map<String, Object>> rows = new ArrayList<>(portfolios.size());
+        double[] varSum = new double[confidences.length];
+        for (int i = 0; i < portfolios.size(); i++) {
+            StatisticsAccumulator accumulator = statistics.get(portfolios.get(i));
+            if (accumulator == null) {
+                accumulator = new StatisticsAccumulator(today);
+            }
+            consolidated.merge(accumulator);
+            List<Map<String, Object>> levels = levels(risks.get(i));
+            for (int j = 0; j < levels.size(); j++) {
+                varSum[j] += (Double) levels.get(j).get("valueAtRisk");
+            }
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("portfolio", portfolios.get(i));
+            row.put("statistics", accumulator.toResponse().get("overview"));
+            row.put("risk", risks.get(i));
+            rows.add(row);
+        }
+
+        Map<String, Object> consolidatedRisk = risks.get(portfolios.size());
+        List<Map<String, Object>> diversification = new ArrayList<>(confidences.length);
+        List<Map<String, Object>> levels = levels(consolidatedRisk);
+        for (int j = 0; j < levels.size(); j++) {
+            double valueAtRisk = (Double) levels.get(j).get("valueAtRisk");
+            Map<String, Object> level = new LinkedHashMap<>();
+            level.put("confidence", levels.get(j).get("confidence"));
+            level.put("sumOfValueAtRisk", Math.round(varSum[j] * 100) / 100.0);
+            level.put("valueAtRisk", valueAtRisk);
+            level.put("benefit", Math.round((varSum[j] - valueAtRisk) * 100) / 100.0);
+            diversification.add(level);
+        }
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("statistics", consolidated.toResponse().get("overview"));
+        total.put("risk", consolidatedRisk);
+        total.put("diversification", diversification);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("date", today);
+        result.put("horizonDays", horizon);
+        result.put("portfolios", rows);
+        result.put("consolidated", total);
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    // Уровни доверия единственного горизонта из ответа RiskService
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> levels(Map<String, Object> risk) {
+        List<Map<String, Object>> horizons = (List<Map<String, Object>>) risk.get("horizons");
+        return (List<Map<String, Object>>) horizons.get(0).get("levels");
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.diary.service;
+
+import com.example.diary.event.PortfolioUpdatedEvent;
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток изменений портфеля для открытых вкладок (SSE, {@code GET /trades/updates}).
+ * <p>
+ * После каждого изменения сделок ({@link PortfolioUpdatedEvent}) строится один компактный JSON -
+ * добавленные, закрытые и удаленные сделки и итоги портфеля из {@link PortfolioCache} - и кладется
+ * в очередь каждого подписчика. Запрос, изменивший сделки, только сериализует событие один раз и
+ * раскладывает ссылку по очередям; отправка идет на отдельном пуле ({@code portfolio.stream.threads}),
+ * и на каждого подписчика в пуле не больше одной задачи, поэтому медленный клиент не задерживает
+ * ни записывающий запрос, ни остальных подписчиков.
+ * <p>
+ * Очередь подписчика ограничена {@code portfolio.stream.queue-size} событиями. Если клиент не успевает,
+ * накопленные изменения сворачиваются в одно событие resync с текущей версией и итогами: клиент
+ * перечитывает сделки, а последующие изменения снова приходят дельтами. Так же, одним resync,
+ * отправляются изменения больше {@code portfolio.stream.max-delta-trades} сделок (крупный импорт).
+ * Раз в {@code portfolio.stream.heartbeat-seconds} секунд простаивающим подписчикам отправляется
+ * комментарий - так обнаруживаются закрытые соединения.
+ */
+@Service
+public class PortfolioUpdateStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortfolioUpdateStream.class);
+
+    private record Frame(String name, String data) {
+    }
+
+    private static final String RESYNC = "resync";
+    private static final Frame HEARTBEAT = new Frame(null, null);
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    @Autowired
+    private PortfolioCache portfolioCache;
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${portfolio.stream.threads:2}")
+    private int threads;
+
+    @Value("${portfolio.stream.queue-size:64}")
+    private int queueSize;
+
+    @Value("${portfolio.stream.max-subscribers:256}")
+    private int maxSubscribers;
+
+    @Value("${portfolio.stream.max-delta-trades:100}")
+    private int maxDeltaTrades;
+
+    @Value("${portfolio.stream.heartbeat-seconds:20}")
+    private long heartbeatSeconds;
+
+    @Value("${portfolio.stream.timeout-ms:3600000}")
+    private long timeoutMs;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService heartbeat;
+    private Counter sent;
+    private Counter dropped;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // Задач в очереди не больше, чем подписчиков: у каждого не больше одной запланированной отправки
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "portfolio-stream-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+
+        Gauge.builder("portfolio.stream.subscribers", subscribers, Set::size)
+            .description("Подписчики потока изменений портфеля").register(meterRegistry);
+        sent = meterRegistry.counter("portfolio.stream.events", "result", "sent");
+        dropped = meterRegistry.counter("portfolio.stream.events", "result", "dropped");
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        executor.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Новая подписка; первым событием (snapshot) приходят текущая версия и итоги.
+     *
+     * @throws RejectedExecutionException подписчиков уже {@code portfolio.stream.max-subscribers}
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RejectedExecutionException("Слишком много подписчиков потока изменений: " + maxSubscribers);
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        offer(subscriber, frame("snapshot", state(portfolioVersion.get())));
+        return emitter;
+    }
+
+    @EventListener
+    public void onPortfolioUpdated(PortfolioUpdatedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Frame frame = frame(event);
+        for (Subscriber subscriber : subscribers) {
+            offer(subscriber, frame);
+        }
+    }
+
+    private Frame frame(PortfolioUpdatedEvent event) {
+        TradeChangeEvent change = event.getChange();
+        Map<String, Object> data = state(event.getVersion());
+        data.put("type", change.getType().name());
+        if (change.getRemoved().size() + change.getAdded().size() > maxDeltaTrades) {
+            data.put("count", Math.max(change.getRemoved().size(), change.getAdded().size()));
+            return frame(RESYNC, data);
+        }
+
+        Set<Long> removedIds = new HashSet<>();
+        for (Trade trade : change.getRemoved()) {
+            removedIds.add(trade.getId());
+        }
+        List<Trade> added = new ArrayList<>();
+        List<Trade> closed = new ArrayList<>();
+        for (Trade trade : change.getAdded()) {
+            (removedIds.remove(trade.getId()) ? closed : added).add(trade);
+        }
+        // Сделки в том же кратком представлении, что и в списке /trades
+        data.put("added", TradeViews.summaries(added));
+        data.put("closed", TradeViews.summaries(closed));
+        data.put("removed", removedIds);
+        return frame("delta", data);
+    }
+
+    private Map<String, Object> state(long version) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("version", version);
+        data.put("bootId", portfolioVersion.getBootId());
+        if (portfolioCache.isReady()) {
+            Map<String, Object> aggregates = new LinkedHashMap<>(portfolioCache.getSummary(null));
+            aggregates.put("openTrades", (int) portfolioCache.read(PortfolioAggregates::getOpenTrades));
+            aggregates.put("openCost", portfolioCache.read(PortfolioAggregates::getOpenCostCents) / 100.0);
+            aggregates.put("openDailyInterest",
+                portfolioCache.read(PortfolioAggregates::getOpenDailyInterestCents) / 100.0);
+            data.put("aggregates", aggregates);
+        }
+        return data;
+    }
+
+    private Frame frame(String name, Map<String, Object> data) {
+        try {
+            return new Frame(name, objectMapper.writeValueAsString(data));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать событие портфеля", e);
+        }
+    }
+
+    private void offer(Subscriber subscriber, Frame frame) {
+        boolean schedule;
+        synchronized (subscriber) {
+            if (frame == HEARTBEAT && !subscriber.pending.isEmpty()) {
+                return;
+            }
+            if (subscriber.pending.size() >= queueSize) {
+                // Клиент не успевает: вместо накопленных дельт - одно событие resync с текущим состоянием
+                dropped.increment(subscriber.pending.size());
+                subscriber.pending.clear();
+                Map<String, Object> data = state(portfolioVersion.get());
+                data.put("type", "OVERFLOW");
+                frame = frame(RESYNC, data);
+            }
+            Frame last = subscriber.pending.peekLast();
+            if (last != null && RESYNC.equals(last.name()) && RESYNC.equals(frame.name())) {
+                // Несколько resync подряд (пакеты крупного импорта) - клиенту нужен только последний
+                subscriber.pending.pollLast();
+                dropped.increment();
+            }
+            subscriber.pending.add(frame);
+            schedule = !subscriber.scheduled;
+            subscriber.scheduled = true;
+        }
+        if (schedule) {
+            try {
+                executor.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                // Пул остановлен - приложение завершается
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Frame frame;
+            synchronized (subscriber) {
+                frame = subscriber.pending.poll();
+                if (frame == null) {
+                    subscriber.scheduled = false;
+                    return;
+                }
+            }
+            if (!send(subscriber.emitter, frame)) {
+                // Клиент отключился - соединение завершит контейнер
+                subscribers.remove(subscriber);
+                synchronized (subscriber) {
+                    subscriber.pending.clear();
+                    subscriber.scheduled = false;
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, Frame frame) {
+        try {
+            if (frame == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("ping"));
+            } else {
+                emitter.send(SseEmitter.event().name(frame.name()).data(frame.data()));
+                sent.increment();
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void sendHeartbeats() {
+        try {
+            for (Subscriber subscriber : subscribers) {
+                offer(subscriber, HEARTBEAT);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ошибка отправки heartbeat потока изменений", e);
+        }
+    }
+}
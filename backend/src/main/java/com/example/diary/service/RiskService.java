@@ -0,0 +1,188 @@
+package com.example.diary.service;
+
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.risk.HistoricalSimulation;
+import com.example.diary.risk.PriceHistoryStore;
+import com.example.diary.risk.PriceSeries;
+import com.example.diary.store.TradeColumnStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Риск открытых позиций методом исторического моделирования.
+ * Позиции сворачиваются по тикерам, стоимость позиции - количество × последняя цена из истории.
+ * Тикеры без истории цен в расчет не входят и перечисляются в {@code missingHistory}.
+ * Считается по одному портфелю или по сводным позициям всех портфелей.
+ */
+@Service
+public class RiskService {
+
+    private static final int MAX_HORIZON_DAYS = 250;
+
+    // Выровненные цены нескольких последних наборов тикеров: портфели считаются параллельно
+    private static final int MATRIX_CACHE_SIZE = 8;
+
+    private record MatrixKey(List<String> symbols, int window, long pricesVersion) {
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private PriceHistoryStore priceHistoryStore;
+
+    @Value("${risk.var.max-scenarios:10000}")
+    private int maxScenarios;
+
+    // Выровненные цены последних расчетов: пока набор тикеров и история не меняются, выравнивание не повторяется
+    private final Map<MatrixKey, HistoricalSimulation.PriceMatrix> matrices = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MatrixKey, HistoricalSimulation.PriceMatrix> eldest) {
+            return size() > MATRIX_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * VaR открытых позиций портфеля; portfolio == null - сводных позиций всех портфелей.
+     */
+    public Map<String, Object> getValueAtRisk(String portfolio, double[] confidences, int[] horizons, Integer scenarios) {
+        return valueAtRisk(columnStore.openPositions(portfolio), confidences, horizons, scenarios, true);
+    }
+
+    /**
+     * VaR по готовому списку позиций. Без details в ответе нет позиций и вкладов тикеров - только итоги.
+     */
+    public Map<String, Object> valueAtRisk(List<TradeColumnStore.OpenPosition> openPositions, double[] confidences,
+                                           int[] horizons, Integer scenarios, boolean details) {
+        int scenarioLimit = checkParameters(confidences, horizons, scenarios);
+
+        long started = System.currentTimeMillis();
+        // Версия берется до чтения цен, чтобы перезагрузка во время расчета не закрепила в кэше старые цены
+        long pricesVersion = priceHistoryStore.getVersion();
+        List<PriceSeries> series = new ArrayList<>();
+        List<Map<String, Object>> positions = new ArrayList<>();
+        List<String> missingHistory = new ArrayList<>();
+        double[] exposures = new double[16];
+        double marketValue = 0.0;
+
+        for (TradeColumnStore.OpenPosition open : openPositions) {
+            String symbol = open.symbol();
+            long quantity = open.quantity();
+            double cost = open.cost();
+            PriceSeries prices = priceHistoryStore.get(symbol);
+
+            Map<String, Object> position = new LinkedHashMap<>();
+            position.put("symbol", symbol);
+            position.put("openTrades", open.trades());
+            position.put("quantity", quantity);
+            position.put("entryCost", TradeCalculator.round2(cost));
+            if (prices == null) {
+                missingHistory.add(symbol);
+                positions.add(position);
+                continue;
+            }
+
+            double value = quantity * prices.getLastClose();
+            if (series.size() == exposures.length) {
+                exposures = Arrays.copyOf(exposures, exposures.length * 2);
+            }
+            exposures[series.size()] = value;
+            series.add(prices);
+            marketValue += value;
+            position.put("price", prices.getLastClose());
+            position.put("priceDate", prices.getLastDate());
+            position.put("marketValue", TradeCalculator.round2(value));
+            positions.add(position);
+        }
+        exposures = Arrays.copyOf(exposures, series.size());
+
+        int maxHorizon = Arrays.stream(horizons).max().orElse(1);
+        HistoricalSimulation.PriceMatrix matrix = alignedPrices(series, scenarioLimit + maxHorizon, pricesVersion);
+
+        List<Map<String, Object>> horizonResults = new ArrayList<>();
+        for (int horizon : horizons) {
+            int count = matrix.scenarioCount(horizon, scenarioLimit);
+            double[] pnl = HistoricalSimulation.scenarioPnl(matrix, exposures, horizon, count);
+
+            List<Map<String, Object>> levels = new ArrayList<>();
+            for (HistoricalSimulation.Level level : HistoricalSimulation.evaluate(matrix, exposures, horizon, pnl, confidences)) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("confidence", level.confidence());
+                data.put("valueAtRisk", TradeCalculator.round2(level.valueAtRisk()));
+                data.put("expectedShortfall", TradeCalculator.round2(level.expectedShortfall()));
+                data.put("tailScenarios", level.tailScenarios());
+                if (details) {
+                    List<Map<String, Object>> contributions = new ArrayList<>(series.size());
+                    for (int i = 0; i < series.size(); i++) {
+                        Map<String, Object> contribution = new LinkedHashMap<>();
+                        contribution.put("symbol", series.get(i).getSymbol());
+                        contribution.put("valueAtRisk", TradeCalculator.round2(level.varContributions()[i]));
+                        contribution.put("expectedShortfall", TradeCalculator.round2(level.esContributions()[i]));
+                        contributions.add(contribution);
+                    }
+                    data.put("contributions", contributions);
+                }
+                levels.add(data);
+            }
+
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("horizonDays", horizon);
+            data.put("scenarios", count);
+            data.put("from", count > 0 ? LocalDate.ofEpochDay(matrix.scenarioEndDay(horizon, count, 0)) : null);
+            data.put("to", count > 0 ? LocalDate.ofEpochDay(matrix.scenarioEndDay(horizon, count, count - 1)) : null);
+            data.put("levels", levels);
+            horizonResults.add(data);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("marketValue", TradeCalculator.round2(marketValue));
+        if (details) {
+            result.put("positions", positions);
+        }
+        result.put("missingHistory", missingHistory);
+        result.put("horizons", horizonResults);
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    /**
+     * Проверяет параметры расчета и возвращает число сценариев (по умолчанию {@code risk.var.max-scenarios}).
+     */
+    public int checkParameters(double[] confidences, int[] horizons, Integer scenarios) {
+        for (double confidence : confidences) {
+            if (!(confidence > 0.0 && confidence < 1.0)) {
+                throw new IllegalArgumentException("Уровень доверия должен быть в интервале (0, 1): " + confidence);
+            }
+        }
+        for (int horizon : horizons) {
+            if (horizon < 1 || horizon > MAX_HORIZON_DAYS) {
+                throw new IllegalArgumentException("Горизонт должен быть от 1 до " + MAX_HORIZON_DAYS + " дней: " + horizon);
+            }
+        }
+        int scenarioLimit = scenarios != null ? scenarios : maxScenarios;
+        if (scenarioLimit < 1 || scenarioLimit > maxScenarios) {
+            throw new IllegalArgumentException("Число сценариев должно быть от 1 до " + maxScenarios);
+        }
+        return scenarioLimit;
+    }
+
+    // Выравнивание идет вне блокировки, чтобы параллельные расчеты разных портфелей не ждали друг друга
+    private HistoricalSimulation.PriceMatrix alignedPrices(List<PriceSeries> series, int window, long pricesVersion) {
+        MatrixKey key = new MatrixKey(series.stream().map(PriceSeries::getSymbol).toList(), window, pricesVersion);
+        synchronized (matrices) {
+            HistoricalSimulation.PriceMatrix cached = matrices.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        HistoricalSimulation.PriceMatrix aligned = HistoricalSimulation.align(series, window);
+        synchronized (matrices) {
+            matrices.put(key, aligned);
+        }
+        return aligned;
+    }
+}
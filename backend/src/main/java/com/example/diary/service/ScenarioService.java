@@ -0,0 +1,273 @@
+package com.example.diary.service;
+
+import com.example.diary.market.MarketPriceStore;
+import com.example.diary.market.OhlcBar;
+import com.example.diary.model.Money;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.risk.ScenarioEngine;
+import com.example.diary.store.TradeColumnStore;
+import com.example.diary.store.TradeColumns;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Пакетная оценка what-if сценариев по сделкам, открытым на дату оценки ({@link ScenarioEngine}).
+ * Базовая оценка совпадает с переоценкой {@link MarkToMarketService}: цена закрытия на дату оценки или ближайший
+ * предыдущий торговый день, проценты за дни с даты входа. Сценарий меняет цену всех тикеров (priceChange) или
+ * отдельных тикеров (symbolPriceChanges, заменяет общий сдвиг для тикера), ставку marginAmount всех сделок на
+ * rateChange процентных пунктов - как если бы ставку сделки изменили, то есть за весь срок удержания, - и срок
+ * удержания на extraDays дней после даты оценки. Для каждого сценария возвращаются итоги и разница с базовой
+ * оценкой по портфелю и по тикерам. Тикеры без цен в оценку не входят и перечисляются в unpricedSymbols.
+ */
+@Service
+public class ScenarioService {
+
+    /**
+     * Сценарий: priceChange и значения symbolPriceChanges - доли (-0.1 - падение на 10%),
+     * rateChange - процентные пункты годовой ставки, extraDays - дни удержания сверх даты оценки.
+     */
+    public record Scenario(String name, Double priceChange, Map<String, Double> symbolPriceChanges,
+                           Double rateChange, Integer extraDays) {
+    }
+
+    public record ScenarioRequest(String portfolio, LocalDate date, List<Scenario> scenarios) {
+    }
+
+    // Открытые сделки, собранные из столбцового снимка в массивы для ScenarioEngine
+    private static final class BookBuilder {
+        private final List<Double> spots = new ArrayList<>();
+        private int[] symbol = new int[1024];
+        private int[] quantity = new int[1024];
+        private long[] cost = new long[1024];
+        private int[] rate = new int[1024];
+        private int[] held = new int[1024];
+        private int size;
+
+        void add(int symbolIndex, int tradeQuantity, long costCents, int rateHundredths, int heldDays) {
+            if (size == symbol.length) {
+                int capacity = size * 2;
+                symbol = Arrays.copyOf(symbol, capacity);
+                quantity = Arrays.copyOf(quantity, capacity);
+                cost = Arrays.copyOf(cost, capacity);
+                rate = Arrays.copyOf(rate, capacity);
+                held = Arrays.copyOf(held, capacity);
+            }
+            symbol[size] = symbolIndex;
+            quantity[size] = tradeQuantity;
+            cost[size] = costCents;
+            rate[size] = rateHundredths;
+            held[size] = heldDays;
+            size++;
+        }
+
+        ScenarioEngine.Book build() {
+            double[] spot = new double[spots.size()];
+            for (int i = 0; i < spot.length; i++) {
+                spot[i] = spots.get(i);
+            }
+            return new ScenarioEngine.Book(spot.length, Arrays.copyOf(symbol, size), Arrays.copyOf(quantity, size),
+                Arrays.copyOf(cost, size), Arrays.copyOf(rate, size), Arrays.copyOf(held, size), spot);
+        }
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Autowired
+    private MarketPriceStore marketPriceStore;
+
+    @Value("${risk.scenarios.max:1000}")
+    private int maxScenarios;
+
+    @Value("${risk.scenarios.max-extra-days:3650}")
+    private int maxExtraDays;
+
+    public Map<String, Object> evaluate(String portfolio, LocalDate date, List<Scenario> scenarios) {
+        if (scenarios == null || scenarios.isEmpty()) {
+            throw new IllegalArgumentException("Список сценариев пуст");
+        }
+        if (scenarios.size() > maxScenarios) {
+            throw new IllegalArgumentException("За один запрос можно оценить не больше " + maxScenarios + " сценариев");
+        }
+        long started = System.currentTimeMillis();
+
+        // Тикеры нумеруются в порядке появления, для ответа упорядочиваются по имени
+        BookBuilder builder = new BookBuilder();
+        Map<String, Integer> index = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        Set<String> unpriced = new TreeSet<>();
+        int valuationDay = TradeColumns.epochDay(date);
+        TradeFilter filter = new TradeFilter();
+        filter.setPortfolio(portfolio);
+        // Позиции на дату сценария: для прошлой даты - и сделки, закрытые позже нее
+        filter.setOpenOn(date);
+        columnStore.scan(filter, (columns, row) -> {
+            String symbol = columns.dictionary().symbol(columns.symbols()[row]);
+            Integer symbolIndex = index.get(symbol);
+            if (symbolIndex == null) {
+                if (unpriced.contains(symbol)) {
+                    return;
+                }
+                OhlcBar bar = marketPriceStore.barOnOrBefore(symbol, date);
+                if (bar == null) {
+                    unpriced.add(symbol);
+                    return;
+                }
+                symbolIndex = names.size();
+                index.put(symbol, symbolIndex);
+                names.add(symbol);
+                builder.spots.add(bar.close());
+            }
+            int quantity = columns.quantities()[row];
+            builder.add(symbolIndex, quantity, TradeCalculator.totalCostCents(columns.entryPrices()[row], quantity),
+                columns.rates()[row], Math.max(0, valuationDay - columns.entryDays()[row]));
+        });
+        ScenarioEngine.Book book = builder.build();
+
+        ScenarioEngine.Shock[] shocks = new ScenarioEngine.Shock[scenarios.size() + 1];
+        shocks[0] = new ScenarioEngine.Shock(filled(book.symbols(), 1.0), 0, 0);
+        for (int j = 0; j < scenarios.size(); j++) {
+            shocks[j + 1] = shock(scenarios.get(j), j, index, book.symbols());
+        }
+        ScenarioEngine.Outcome[] outcomes = ScenarioEngine.evaluate(book, shocks);
+
+        Integer[] order = new Integer[book.symbols()];
+        for (int s = 0; s < order.length; s++) {
+            order[s] = s;
+        }
+        Arrays.sort(order, Comparator.comparing(names::get));
+
+        long[] quantity = new long[book.symbols()];
+        for (int i = 0; i < book.trades(); i++) {
+            quantity[book.symbol()[i]] += book.quantity()[i];
+        }
+        ScenarioEngine.Outcome baseline = outcomes[0];
+        Totals baseTotals = Totals.of(baseline);
+        Map<String, Object> base = baseTotals.toResponse(null);
+        List<Map<String, Object>> baseSymbols = new ArrayList<>(order.length);
+        for (int s : order) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("symbol", names.get(s));
+            data.put("quantity", quantity[s]);
+            data.put("price", book.spot()[s]);
+            data.put("marketValue", TradeCalculator.round2(baseline.marketValue()[s]));
+            data.put("interest", Money.toDouble(baseline.interestCents()[s]));
+            data.put("pnl", TradeCalculator.round2(baseline.pnl()[s]));
+            baseSymbols.add(data);
+        }
+        base.put("symbols", baseSymbols);
+
+        List<Map<String, Object>> results = new ArrayList<>(scenarios.size());
+        for (int j = 0; j < scenarios.size(); j++) {
+            ScenarioEngine.Outcome outcome = outcomes[j + 1];
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("name", name(scenarios.get(j), j));
+            data.putAll(Totals.of(outcome).toResponse(baseTotals));
+            List<Map<String, Object>> symbols = new ArrayList<>(order.length);
+            for (int s : order) {
+                Map<String, Object> symbol = new LinkedHashMap<>();
+                symbol.put("symbol", names.get(s));
+                symbol.put("price", TradeCalculator.round2(book.spot()[s] * shocks[j + 1].priceFactor()[s]));
+                symbol.put("marketValue", TradeCalculator.round2(outcome.marketValue()[s]));
+                symbol.put("interest", Money.toDouble(outcome.interestCents()[s]));
+                symbol.put("pnl", TradeCalculator.round2(outcome.pnl()[s]));
+                symbol.put("pnlDelta", TradeCalculator.round2(outcome.pnl()[s] - baseline.pnl()[s]));
+                symbol.put("interestDelta",
+                    Money.toDouble(outcome.interestCents()[s] - baseline.interestCents()[s]));
+                symbols.add(symbol);
+            }
+            data.put("symbols", symbols);
+            results.add(data);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("date", date);
+        result.put("portfolio", portfolio);
+        result.put("trades", book.trades());
+        result.put("baseline", base);
+        result.put("scenarios", results);
+        result.put("unpricedSymbols", new ArrayList<>(unpriced));
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    private ScenarioEngine.Shock shock(Scenario scenario, int position, Map<String, Integer> index, int symbols) {
+        String name = name(scenario, position);
+        double common = scenario.priceChange() != null ? scenario.priceChange() : 0.0;
+        checkPriceChange(name, common);
+        double[] factors = filled(symbols, 1.0 + common);
+        if (scenario.symbolPriceChanges() != null) {
+            for (Map.Entry<String, Double> entry : scenario.symbolPriceChanges().entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    throw new IllegalArgumentException("Сценарий " + name + ": пустой тикер или сдвиг цены");
+                }
+                checkPriceChange(name, entry.getValue());
+                // Тикеры, которых нет среди оцененных позиций, не влияют на результат
+                Integer symbol = index.get(entry.getKey().trim().toUpperCase());
+                if (symbol != null) {
+                    factors[symbol] = 1.0 + entry.getValue();
+                }
+            }
+        }
+        double rateChange = scenario.rateChange() != null ? scenario.rateChange() : 0.0;
+        if (!Double.isFinite(rateChange) || Math.abs(rateChange) > 1000) {
+            throw new IllegalArgumentException("Сценарий " + name + ": изменение ставки должно быть от -1000 до 1000 п.п.");
+        }
+        int extraDays = scenario.extraDays() != null ? scenario.extraDays() : 0;
+        if (extraDays < 0 || extraDays > maxExtraDays) {
+            throw new IllegalArgumentException("Сценарий " + name + ": продление удержания должно быть от 0 до "
+                + maxExtraDays + " дней");
+        }
+        return new ScenarioEngine.Shock(factors, (int) Money.fromDouble(rateChange), extraDays);
+    }
+
+    private static void checkPriceChange(String name, double change) {
+        if (!Double.isFinite(change) || change < -1.0) {
+            throw new IllegalArgumentException("Сценарий " + name + ": сдвиг цены должен быть не меньше -1 (падение до нуля)");
+        }
+    }
+
+    private static String name(Scenario scenario, int position) {
+        return scenario.name() != null && !scenario.name().isBlank() ? scenario.name() : "#" + (position + 1);
+    }
+
+    // Итоги сценария по портфелю
+    private record Totals(double marketValue, long interestCents, double pnl) {
+        static Totals of(ScenarioEngine.Outcome outcome) {
+            double marketValue = 0.0;
+            long interest = 0;
+            double pnl = 0.0;
+            for (int s = 0; s < outcome.pnl().length; s++) {
+                marketValue += outcome.marketValue()[s];
+                interest += outcome.interestCents()[s];
+                pnl += outcome.pnl()[s];
+            }
+            return new Totals(marketValue, interest, pnl);
+        }
+
+        // С base - еще и разница с базовой оценкой
+        Map<String, Object> toResponse(Totals base) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("marketValue", TradeCalculator.round2(marketValue));
+            data.put("interest", Money.toDouble(interestCents));
+            data.put("pnl", TradeCalculator.round2(pnl));
+            if (base != null) {
+                data.put("marketValueDelta", TradeCalculator.round2(marketValue - base.marketValue));
+                data.put("interestDelta", Money.toDouble(interestCents - base.interestCents));
+                data.put("pnlDelta", TradeCalculator.round2(pnl - base.pnl));
+            }
+            return data;
+        }
+    }
+
+    private static double[] filled(int length, double value) {
+        double[] array = new double[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+}
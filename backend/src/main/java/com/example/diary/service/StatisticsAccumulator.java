@@ -0,0 +1,596 @@
+package com.example.diary.service;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+import com.example.diary.store.TradeColumns;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Статистика портфеля за один проход по сделкам (те же показатели, что раньше считались в Statistics.jsx).
+ * Денежные суммы копятся в копейках; упорядочивание по дате выхода нужно только сериям и просадке,
+ * для них сохраняются компактные ключи и дневные итоги, а не сами сделки.
+ * Класс не потокобезопасен: один экземпляр на один расчет.
+ */
+public class StatisticsAccumulator {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    // Границы групп срока удержания, дней включительно
+    private static final int[] HOLDING_BOUNDS = {7, 30, 90};
+    private static final String[] HOLDING_LABELS = {"1-7", "8-30", "31-90", "91+"};
+
+    private static final int UPCOMING_LIMIT = 5;
+    private static final int ENTRY_PRICE_RANGES = 5;
+
+    // Ключ сортировки закрытой сделки: день выхода (22 бита со сдвигом), id (40 бит), признак прибыли (1 бит)
+    private static final long EPOCH_DAY_OFFSET = 1L << 20;
+    private static final int ID_BITS = 40;
+
+    private static class SymbolStats {
+        int trades;
+        int openTrades;
+        int closedTrades;
+        int winningTrades;
+        long priceProfitCents;
+        long interestPaidCents;
+        long quantity;
+        long openQuantity;
+        long openCostCents;
+        long accruedInterestCents;
+    }
+
+    private static class MonthStats {
+        int closedTrades;
+        int winningTrades;
+        long priceProfitCents;
+        long interestPaidCents;
+    }
+
+    // Итоги дня выхода: чистая прибыль, прибыль по цене, проценты, закрытые и прибыльные сделки
+    private static final int DAY_NET = 0;
+    private static final int DAY_PRICE = 1;
+    private static final int DAY_INTEREST = 2;
+    private static final int DAY_CLOSED = 3;
+    private static final int DAY_WINNING = 4;
+
+    private final int today;
+
+    private int openTrades;
+    private int closedTrades;
+    private int winningTrades;
+    private long openCostCents;
+    private long openShares;
+    private long openDailyInterestCents;
+    private long accruedInterestCents;
+    private double openRateWeighted;
+    private long investedCents;
+    private double closedRateWeighted;
+    private long priceProfitCents;
+    private long interestPaidCents;
+
+    private final int[] closedHolding = new int[HOLDING_LABELS.length];
+    private final int[] openHolding = new int[HOLDING_LABELS.length];
+    private long closedHoldingDays;
+    private long maxHoldingDays;
+
+    private final Map<String, SymbolStats> symbols = new HashMap<>();
+    private final Map<Integer, long[]> exitDays = new HashMap<>();
+
+    private long[] exitKeys = new long[256];
+    private double[] returns = new double[256];
+    private int closedWithExitPrice;
+
+    // Цены входа всех сделок в копейках - для распределения по диапазонам цен
+    private long[] entryPrices = new long[256];
+    private int entryPriceCount;
+
+    // Открытые сделки с наибольшими накопленными процентами, наверху самая дешевая из отобранных
+    private final PriorityQueue<Map<String, Object>> upcoming =
+        new PriorityQueue<>(Comparator.comparingDouble(row -> (Double) row.get("accruedInterest")));
+
+    public StatisticsAccumulator(LocalDate today) {
+        this.today = TradeColumns.epochDay(today);
+    }
+
+    public void accept(Trade trade) {
+        accept(trade.getId() != null ? trade.getId() : 0L,
+            trade.getSymbol(),
+            trade.getEntryPrice() != null ? trade.getEntryPrice().doubleValue() : 0.0,
+            trade.getQuantity() != null ? trade.getQuantity() : 0,
+            trade.getMarginAmount() != null ? trade.getMarginAmount().doubleValue() : 0.0,
+            TradeColumns.epochDay(trade.getEntryDate()),
+            TradeColumns.epochDay(trade.getExitDate()),
+            trade.getExitPrice() != null ? trade.getExitPrice().doubleValue() : Double.NaN);
+    }
+
+    public void accept(TradeColumns columns, int row) {
+        long exitPrice = columns.exitPrices()[row];
+        accept(columns.ids()[row],
+            columns.dictionary().symbol(columns.symbols()[row]),
+            TradeColumns.decode(columns.entryPrices()[row]),
+            columns.quantities()[row],
+            TradeColumns.decode(columns.rates()[row]),
+            columns.entryDays()[row],
+            columns.exitDays()[row],
+            exitPrice != TradeColumns.NO_PRICE ? TradeColumns.decode(exitPrice) : Double.NaN);
+    }
+
+    /**
+     * Учитывает одну сделку. Даты - номера дней эпохи или {@link TradeColumns#NO_DAY},
+     * отсутствующая цена выхода - NaN.
+     */
+    public void accept(long id, String symbolName, double entryPrice, int quantity, double rate,
+                       int entryDay, int exitDay, double exitPrice) {
+        SymbolStats symbol = symbols.computeIfAbsent(symbolName, key -> new SymbolStats());
+        symbol.trades++;
+        symbol.quantity += quantity;
+        appendEntryPrice(Money.fromDouble(entryPrice));
+
+        long costCents = TradeCalculator.totalCostCents(Money.fromDouble(entryPrice), quantity);
+        long dailyCents = TradeCalculator.dailyInterestCents(costCents, Money.fromDouble(rate));
+        double totalCost = Money.toDouble(costCents);
+        double dailyInterest = Money.toDouble(dailyCents);
+
+        if (exitDay == TradeColumns.NO_DAY) {
+            long daysHeld = holdingDays(entryDay, today);
+            long accruedCents = TradeCalculator.totalInterestCents(dailyCents, daysHeld);
+            openTrades++;
+            openCostCents += costCents;
+            openShares += quantity;
+            openDailyInterestCents += dailyCents;
+            accruedInterestCents += accruedCents;
+            openRateWeighted += rate * totalCost;
+            openHolding[holdingBucket(daysHeld)]++;
+            symbol.openTrades++;
+            symbol.openQuantity += quantity;
+            symbol.openCostCents += costCents;
+            symbol.accruedInterestCents += accruedCents;
+            offerUpcoming(id, symbolName, quantity, entryPrice, entryDay, dailyInterest, daysHeld, accruedCents);
+            return;
+        }
+
+        closedTrades++;
+        symbol.closedTrades++;
+        if (Double.isNaN(exitPrice) || entryDay == TradeColumns.NO_DAY) {
+            return;
+        }
+
+        long priceCents = (Money.fromDouble(exitPrice) - Money.fromDouble(entryPrice)) * quantity;
+        long days = exitDay - entryDay;
+        long interestCents = TradeCalculator.totalInterestCents(dailyCents, days);
+        long netCents = priceCents - interestCents;
+        boolean win = netCents > 0;
+
+        priceProfitCents += priceCents;
+        interestPaidCents += interestCents;
+        investedCents += costCents;
+        closedRateWeighted += rate * totalCost;
+        if (win) {
+            winningTrades++;
+            symbol.winningTrades++;
+        }
+        symbol.priceProfitCents += priceCents;
+        symbol.interestPaidCents += interestCents;
+
+        long[] day = exitDays.computeIfAbsent(exitDay, key -> new long[5]);
+        day[DAY_NET] += netCents;
+        day[DAY_PRICE] += priceCents;
+        day[DAY_INTEREST] += interestCents;
+        day[DAY_CLOSED]++;
+        if (win) {
+            day[DAY_WINNING]++;
+        }
+
+        long holding = holdingDays(entryDay, exitDay);
+        closedHolding[holdingBucket(holding)]++;
+        closedHoldingDays += holding;
+        maxHoldingDays = Math.max(maxHoldingDays, holding);
+
+        appendExit(exitDay, id, win, costCents > 0 ? (double) priceCents / costCents : 0.0);
+    }
+
+    /**
+     * Добавляет сделки другого расчета на ту же дату (например, другого портфеля):
+     * результат тот же, что при обходе сделок обоих расчетов одним экземпляром.
+     */
+    public void merge(StatisticsAccumulator other) {
+        if (other.today != today) {
+            throw new IllegalArgumentException("Статистика посчитана на разные даты");
+        }
+        openTrades += other.openTrades;
+        closedTrades += other.closedTrades;
+        winningTrades += other.winningTrades;
+        openCostCents += other.openCostCents;
+        openShares += other.openShares;
+        openDailyInterestCents += other.openDailyInterestCents;
+        accruedInterestCents += other.accruedInterestCents;
+        openRateWeighted += other.openRateWeighted;
+        investedCents += other.investedCents;
+        closedRateWeighted += other.closedRateWeighted;
+        priceProfitCents += other.priceProfitCents;
+        interestPaidCents += other.interestPaidCents;
+
+        for (int i = 0; i < HOLDING_LABELS.length; i++) {
+            closedHolding[i] += other.closedHolding[i];
+            openHolding[i] += other.openHolding[i];
+        }
+        closedHoldingDays += other.closedHoldingDays;
+        maxHoldingDays = Math.max(maxHoldingDays, other.maxHoldingDays);
+
+        other.symbols.forEach((name, stats) -> {
+            SymbolStats symbol = symbols.computeIfAbsent(name, key -> new SymbolStats());
+            symbol.trades += stats.trades;
+            symbol.openTrades += stats.openTrades;
+            symbol.closedTrades += stats.closedTrades;
+            symbol.winningTrades += stats.winningTrades;
+            symbol.priceProfitCents += stats.priceProfitCents;
+            symbol.interestPaidCents += stats.interestPaidCents;
+            symbol.quantity += stats.quantity;
+            symbol.openQuantity += stats.openQuantity;
+            symbol.openCostCents += stats.openCostCents;
+            symbol.accruedInterestCents += stats.accruedInterestCents;
+        });
+        other.exitDays.forEach((exitDay, totals) -> {
+            long[] day = exitDays.computeIfAbsent(exitDay, key -> new long[5]);
+            for (int i = 0; i < totals.length; i++) {
+                day[i] += totals[i];
+            }
+        });
+
+        int count = closedWithExitPrice + other.closedWithExitPrice;
+        if (count > exitKeys.length) {
+            int capacity = Math.max(count, exitKeys.length * 2);
+            exitKeys = Arrays.copyOf(exitKeys, capacity);
+            returns = Arrays.copyOf(returns, capacity);
+        }
+        System.arraycopy(other.exitKeys, 0, exitKeys, closedWithExitPrice, other.closedWithExitPrice);
+        System.arraycopy(other.returns, 0, returns, closedWithExitPrice, other.closedWithExitPrice);
+        closedWithExitPrice = count;
+
+        if (entryPriceCount + other.entryPriceCount > entryPrices.length) {
+            entryPrices = Arrays.copyOf(entryPrices, Math.max(entryPriceCount + other.entryPriceCount,
+                entryPrices.length * 2));
+        }
+        System.arraycopy(other.entryPrices, 0, entryPrices, entryPriceCount, other.entryPriceCount);
+        entryPriceCount += other.entryPriceCount;
+
+        for (Map<String, Object> row : other.upcoming) {
+            upcoming.add(row);
+            if (upcoming.size() > UPCOMING_LIMIT) {
+                upcoming.poll();
+            }
+        }
+    }
+
+    public Map<String, Object> toResponse() {
+        int[] days = new int[exitDays.size()];
+        int count = 0;
+        for (Integer day : exitDays.keySet()) {
+            days[count++] = day;
+        }
+        Arrays.sort(days);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("overview", overview());
+        response.put("holdingPeriods", holdingPeriods());
+        response.put("symbols", symbolRows());
+        response.put("monthly", monthRows(days));
+        response.put("exits", exitRows(days));
+        response.put("entryPrices", entryPriceRanges());
+        response.put("drawdown", drawdown(days));
+        response.put("streaks", streaks());
+        response.put("risk", risk());
+
+        List<Map<String, Object>> top = new ArrayList<>(upcoming);
+        top.sort(Comparator.comparingDouble(row -> -(Double) row.get("accruedInterest")));
+        response.put("upcomingTrades", top);
+        return response;
+    }
+
+    private Map<String, Object> overview() {
+        Map<String, Object> overview = new LinkedHashMap<>();
+        overview.put("totalTrades", openTrades + closedTrades);
+        overview.put("openTrades", openTrades);
+        overview.put("closedTrades", closedTrades);
+        overview.put("winningTrades", winningTrades);
+        overview.put("winRate", closedTrades > 0 ? TradeCalculator.round2(winningTrades * 100.0 / closedTrades) : 0.0);
+        overview.put("openCost", money(openCostCents));
+        overview.put("openShares", openShares);
+        overview.put("openDailyInterest", money(openDailyInterestCents));
+        overview.put("openMonthlyInterest", money(openDailyInterestCents * 30));
+        overview.put("accruedInterest", money(accruedInterestCents));
+        overview.put("priceProfit", money(priceProfitCents));
+        overview.put("interestPaid", money(interestPaidCents));
+        overview.put("netProfit", money(priceProfitCents - interestPaidCents));
+
+        double avgCreditRate = 0.0;
+        if (openCostCents > 0) {
+            avgCreditRate = openRateWeighted / (openCostCents / 100.0);
+        } else if (investedCents > 0) {
+            avgCreditRate = closedRateWeighted / (investedCents / 100.0);
+        }
+        overview.put("avgCreditRate", TradeCalculator.round2(avgCreditRate));
+        overview.put("roi", investedCents > 0 ? TradeCalculator.round2(priceProfitCents * 100.0 / investedCents) : 0.0);
+        return overview;
+    }
+
+    private Map<String, Object> holdingPeriods() {
+        Map<String, Object> periods = new LinkedHashMap<>();
+        periods.put("closed", buckets(closedHolding));
+        periods.put("open", buckets(openHolding));
+        int withDates = 0;
+        for (int count : closedHolding) {
+            withDates += count;
+        }
+        periods.put("averageClosedDays", withDates > 0 ? TradeCalculator.round2((double) closedHoldingDays / withDates) : 0.0);
+        periods.put("maxClosedDays", maxHoldingDays);
+        return periods;
+    }
+
+    private List<Map<String, Object>> symbolRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(symbols.size());
+        new TreeMap<>(symbols).forEach((name, stats) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("symbol", name);
+            row.put("trades", stats.trades);
+            row.put("openTrades", stats.openTrades);
+            row.put("closedTrades", stats.closedTrades);
+            row.put("winningTrades", stats.winningTrades);
+            row.put("priceProfit", money(stats.priceProfitCents));
+            row.put("interestPaid", money(stats.interestPaidCents));
+            row.put("netProfit", money(stats.priceProfitCents - stats.interestPaidCents));
+            row.put("quantity", stats.quantity);
+            row.put("openQuantity", stats.openQuantity);
+            row.put("openCost", money(stats.openCostCents));
+            row.put("accruedInterest", money(stats.accruedInterestCents));
+            rows.add(row);
+        });
+        return rows;
+    }
+
+    // Месяцы собираются из итогов дней выхода, уже упорядоченных по дате
+    private List<Map<String, Object>> monthRows(int[] days) {
+        TreeMap<YearMonth, MonthStats> months = new TreeMap<>();
+        MonthStats stats = null;
+        YearMonth current = null;
+        for (int day : days) {
+            YearMonth month = YearMonth.from(LocalDate.ofEpochDay(day));
+            if (!month.equals(current)) {
+                current = month;
+                stats = new MonthStats();
+                months.put(month, stats);
+            }
+            long[] totals = exitDays.get(day);
+            stats.closedTrades += (int) totals[DAY_CLOSED];
+            stats.winningTrades += (int) totals[DAY_WINNING];
+            stats.priceProfitCents += totals[DAY_PRICE];
+            stats.interestPaidCents += totals[DAY_INTEREST];
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(months.size());
+        months.forEach((month, monthStats) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("month", month.format(MONTH_FORMATTER));
+            row.put("closedTrades", monthStats.closedTrades);
+            row.put("winningTrades", monthStats.winningTrades);
+            row.put("priceProfit", money(monthStats.priceProfitCents));
+            row.put("interestPaid", money(monthStats.interestPaidCents));
+            row.put("netProfit", money(monthStats.priceProfitCents - monthStats.interestPaidCents));
+            rows.add(row);
+        });
+        return rows;
+    }
+
+    // Прибыль по цене по дням выхода и нарастающим итогом
+    private List<Map<String, Object>> exitRows(int[] days) {
+        List<Map<String, Object>> rows = new ArrayList<>(days.length);
+        long cumulative = 0;
+        for (int day : days) {
+            long[] totals = exitDays.get(day);
+            cumulative += totals[DAY_PRICE];
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("date", LocalDate.ofEpochDay(day));
+            row.put("closedTrades", totals[DAY_CLOSED]);
+            row.put("priceProfit", money(totals[DAY_PRICE]));
+            row.put("cumulativePriceProfit", money(cumulative));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Число сделок в равных диапазонах между минимальной и максимальной ценой входа; верхняя граница - в последнем
+    private List<Map<String, Object>> entryPriceRanges() {
+        List<Map<String, Object>> rows = new ArrayList<>(ENTRY_PRICE_RANGES);
+        if (entryPriceCount == 0) {
+            return rows;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < entryPriceCount; i++) {
+            min = Math.min(min, entryPrices[i]);
+            max = Math.max(max, entryPrices[i]);
+        }
+        long range = max - min;
+        // Все сделки по одной цене - один диапазон вместо пяти нулевой ширины
+        int ranges = range == 0 ? 1 : ENTRY_PRICE_RANGES;
+        int[] counts = new int[ranges];
+        for (int i = 0; i < entryPriceCount; i++) {
+            int index = range == 0 ? 0
+                : (int) Math.min(ranges - 1, (entryPrices[i] - min) * ranges / range);
+            counts[index]++;
+        }
+        for (int i = 0; i < ranges; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("from", money(min + range * i / ranges));
+            row.put("to", money(min + range * (i + 1) / ranges));
+            row.put("trades", counts[i]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Максимальная просадка накопленной чистой прибыли по датам выхода
+    private Map<String, Object> drawdown(int[] days) {
+        long cumulative = 0;
+        long peak = 0;
+        long maxDrawdown = 0;
+        LocalDate peakDate = null;
+        int candidatePeak = TradeColumns.NO_DAY;
+        LocalDate troughDate = null;
+        for (int day : days) {
+            cumulative += exitDays.get(day)[DAY_NET];
+            if (cumulative > peak) {
+                peak = cumulative;
+                candidatePeak = day;
+            } else if (peak - cumulative > maxDrawdown) {
+                maxDrawdown = peak - cumulative;
+                peakDate = candidatePeak != TradeColumns.NO_DAY ? LocalDate.ofEpochDay(candidatePeak) : null;
+                troughDate = LocalDate.ofEpochDay(day);
+            }
+        }
+        Map<String, Object> drawdown = new LinkedHashMap<>();
+        drawdown.put("maxDrawdown", money(maxDrawdown));
+        drawdown.put("peakDate", peakDate);
+        drawdown.put("troughDate", troughDate);
+        drawdown.put("cumulativeProfit", money(cumulative));
+        return drawdown;
+    }
+
+    // Серии прибыльных и убыточных сделок в порядке даты выхода (при равных датах - по id)
+    private Map<String, Object> streaks() {
+        long[] keys = Arrays.copyOf(exitKeys, closedWithExitPrice);
+        Arrays.sort(keys);
+        int longestWin = 0;
+        int longestLoss = 0;
+        int current = 0;
+        for (long key : keys) {
+            if ((key & 1L) == 1L) {
+                current = current > 0 ? current + 1 : 1;
+                longestWin = Math.max(longestWin, current);
+            } else {
+                current = current < 0 ? current - 1 : -1;
+                longestLoss = Math.max(longestLoss, -current);
+            }
+        }
+        Map<String, Object> streaks = new LinkedHashMap<>();
+        streaks.put("longestWinStreak", longestWin);
+        streaks.put("longestLossStreak", longestLoss);
+        // Положительное значение - текущая серия прибыльных сделок, отрицательное - убыточных
+        streaks.put("currentStreak", current);
+        return streaks;
+    }
+
+    // Упрощенные показатели риска по доходности закрытых сделок, как на прежней клиентской странице
+    private Map<String, Object> risk() {
+        double valueAtRisk = 0.0;
+        double expectedShortfall = 0.0;
+        double sharpeRatio = 0.0;
+        int n = closedWithExitPrice;
+        if (n > 0) {
+            double[] sorted = Arrays.copyOf(returns, n);
+            Arrays.sort(sorted);
+            int varIndex = (int) Math.floor(n * 0.05);
+            double openCost = openCostCents / 100.0;
+            valueAtRisk = TradeCalculator.round2(Math.abs(sorted[varIndex]) * openCost);
+            double tail = 0.0;
+            for (int i = 0; i <= varIndex; i++) {
+                tail += sorted[i];
+            }
+            expectedShortfall = TradeCalculator.round2(Math.abs(tail / (varIndex + 1)) * openCost);
+
+            if (n > 1) {
+                double mean = 0.0;
+                for (int i = 0; i < n; i++) {
+                    mean += returns[i];
+                }
+                mean /= n;
+                double variance = 0.0;
+                for (int i = 0; i < n; i++) {
+                    variance += (returns[i] - mean) * (returns[i] - mean);
+                }
+                double stdDev = Math.sqrt(variance / n);
+                if (stdDev > 0) {
+                    sharpeRatio = TradeCalculator.round2(mean / stdDev);
+                }
+            }
+        }
+        Map<String, Object> risk = new LinkedHashMap<>();
+        risk.put("valueAtRisk", valueAtRisk);
+        risk.put("expectedShortfall", expectedShortfall);
+        risk.put("sharpeRatio", sharpeRatio);
+        return risk;
+    }
+
+    private void appendExit(int exitDay, long id, boolean win, double tradeReturn) {
+        if (closedWithExitPrice == exitKeys.length) {
+            exitKeys = Arrays.copyOf(exitKeys, exitKeys.length * 2);
+            returns = Arrays.copyOf(returns, returns.length * 2);
+        }
+        long day = exitDay + EPOCH_DAY_OFFSET;
+        exitKeys[closedWithExitPrice] = (day << (ID_BITS + 1)) | (id << 1) | (win ? 1L : 0L);
+        returns[closedWithExitPrice] = tradeReturn;
+        closedWithExitPrice++;
+    }
+
+    private void appendEntryPrice(long priceCents) {
+        if (entryPriceCount == entryPrices.length) {
+            entryPrices = Arrays.copyOf(entryPrices, entryPrices.length * 2);
+        }
+        entryPrices[entryPriceCount++] = priceCents;
+    }
+
+    private void offerUpcoming(long id, String symbol, int quantity, double entryPrice, int entryDay,
+                               double dailyInterest, long daysHeld, long accruedCents) {
+        double accrued = accruedCents / 100.0;
+        if (upcoming.size() == UPCOMING_LIMIT && (Double) upcoming.peek().get("accruedInterest") >= accrued) {
+            return;
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("symbol", symbol);
+        row.put("quantity", quantity);
+        row.put("entryPrice", entryPrice);
+        row.put("entryDate", entryDay != TradeColumns.NO_DAY ? LocalDate.ofEpochDay(entryDay) : null);
+        row.put("dailyInterest", dailyInterest);
+        row.put("daysHeld", daysHeld);
+        row.put("accruedInterest", accrued);
+        upcoming.add(row);
+        if (upcoming.size() > UPCOMING_LIMIT) {
+            upcoming.poll();
+        }
+    }
+
+    // Срок удержания в днях, не меньше одного дня
+    private static long holdingDays(int fromDay, int toDay) {
+        if (fromDay == TradeColumns.NO_DAY) {
+            return 1;
+        }
+        return Math.max(1, (long) toDay - fromDay);
+    }
+
+    private static int holdingBucket(long days) {
+        for (int i = 0; i < HOLDING_BOUNDS.length; i++) {
+            if (days <= HOLDING_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return HOLDING_BOUNDS.length;
+    }
+
+    private static Map<String, Integer> buckets(int[] counts) {
+        Map<String, Integer> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < HOLDING_LABELS.length; i++) {
+            buckets.put(HOLDING_LABELS[i], counts[i]);
+        }
+        return buckets;
+    }
+
+    private static double money(long cents) {
+        return cents / 100.0;
+    }
+}
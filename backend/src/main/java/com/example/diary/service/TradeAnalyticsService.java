@@ -0,0 +1,187 @@
+package com.example.diary.service;
+
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.projection.ClosedTradeRow;
+import com.example.diary.repository.projection.SymbolTradeCount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Аналитика по сделкам.
+ * Фильтр по датам выполняется в БД, открытые сделки только считаются запросом COUNT,
+ * а прибыль закрытых сделок сворачивается за один потоковый проход по облегченной проекции.
+ * Запросы, на которые можно точно ответить из {@link PortfolioCache}, в БД не идут;
+ * помесячная прибыль за произвольный диапазон берется из дневных итогов {@link EquityCurveService}.
+ * Все методы принимают портфель; null - сводно по всем портфелям.
+ */
+@Service
+public class TradeAnalyticsService {
+
+    // Границы диапазона, когда фильтр по датам не задан
+    public static final LocalDate MIN_DATE = LocalDate.of(1, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PortfolioCache portfolioCache;
+
+    @Autowired
+    private EquityCurveService equityCurveService;
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getSummary(String portfolio, LocalDate start, LocalDate end) {
+        if (isUnbounded(start, end) && portfolioCache.isReady()) {
+            return portfolioCache.getSummary(portfolio);
+        }
+        long openTrades = portfolio != null
+            ? tradeRepository.countOpenTrades(portfolio, start, end) : tradeRepository.countOpenTrades(start, end);
+        try (Stream<ClosedTradeRow> closed = streamClosedTrades(portfolio, start, end)) {
+            return summarize(closed.iterator(), openTrades);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getMonthly(String portfolio, LocalDate start, LocalDate end) {
+        if (portfolioCache.isReady()) {
+            List<Map<String, Object>> cached = portfolioCache.getMonthly(portfolio, start, end);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Вытесненные из кэша месяцы и неполные крайние месяцы - по дневным итогам
+        List<Map<String, Object>> rolledUp = equityCurveService.getMonthly(portfolio, start, end);
+        if (rolledUp != null) {
+            return rolledUp;
+        }
+        try (Stream<ClosedTradeRow> closed = streamClosedTrades(portfolio, start, end)) {
+            return foldMonthly(closed.iterator(), start, end);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getSymbols(String portfolio, LocalDate start, LocalDate end) {
+        if (isUnbounded(start, end) && portfolioCache.isReady()) {
+            return portfolioCache.getSymbols(portfolio);
+        }
+        Map<String, Integer> symbolCount = new HashMap<>();
+        List<SymbolTradeCount> counts = portfolio != null
+            ? tradeRepository.countTradesBySymbol(portfolio, start, end) : tradeRepository.countTradesBySymbol(start, end);
+        for (SymbolTradeCount row : counts) {
+            symbolCount.put(row.getSymbol(), (int) row.getTrades());
+        }
+        try (Stream<ClosedTradeRow> closed = streamClosedTrades(portfolio, start, end)) {
+            return foldSymbols(closed.iterator(), symbolCount);
+        }
+    }
+
+    private Stream<ClosedTradeRow> streamClosedTrades(String portfolio, LocalDate start, LocalDate end) {
+        return portfolio != null
+            ? tradeRepository.streamClosedTrades(portfolio, start, end) : tradeRepository.streamClosedTrades(start, end);
+    }
+
+    private static boolean isUnbounded(LocalDate start, LocalDate end) {
+        return MIN_DATE.equals(start) && MAX_DATE.equals(end);
+    }
+
+    /**
+     * Сводка: количество сделок, прибыльных сделок, процент успешных и общая прибыль.
+     */
+    public static Map<String, Object> summarize(Iterator<ClosedTradeRow> closedTrades, long openTrades) {
+        int closedCount = 0;
+        int winningTrades = 0;
+        double totalProfit = 0.0;
+
+        while (closedTrades.hasNext()) {
+            Double profit = closedTrades.next().getProfit();
+            closedCount++;
+            if (profit != null) {
+                if (profit > 0) {
+                    winningTrades++;
+                }
+                totalProfit += profit;
+            }
+        }
+
+        // Рассчитываем процент успешных сделок
+        double winRate = closedCount == 0 ? 0 :
+            Math.round((double) winningTrades / closedCount * 10000) / 100.0;
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalTrades", (int) (closedCount + openTrades));
+        summary.put("closedTrades", closedCount);
+        summary.put("winningTrades", winningTrades);
+        summary.put("winRate", winRate);
+        summary.put("totalProfit", Math.round(totalProfit * 100) / 100.0);
+        return summary;
+    }
+
+    /**
+     * Прибыль по месяцам закрытия; месяцы без сделок возвращаются с нулевой прибылью.
+     */
+    public static List<Map<String, Object>> foldMonthly(Iterator<ClosedTradeRow> closedTrades,
+                                                        LocalDate start, LocalDate end) {
+        // TreeMap сразу дает сортировку по месяцам
+        Map<String, Double> monthlyData = new TreeMap<>();
+
+        LocalDate current = start.withDayOfMonth(1);
+        while (!current.isAfter(end)) {
+            monthlyData.put(current.format(MONTH_FORMATTER), 0.0);
+            current = current.plusMonths(1);
+        }
+
+        while (closedTrades.hasNext()) {
+            ClosedTradeRow trade = closedTrades.next();
+            Double profit = trade.getProfit();
+            if (profit != null) {
+                monthlyData.merge(trade.getExitDate().format(MONTH_FORMATTER), profit, Double::sum);
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(monthlyData.size());
+        for (Map.Entry<String, Double> entry : monthlyData.entrySet()) {
+            Map<String, Object> monthData = new HashMap<>();
+            monthData.put("month", entry.getKey());
+            monthData.put("profit", Math.round(entry.getValue() * 100) / 100.0);
+            result.add(monthData);
+        }
+        return result;
+    }
+
+    /**
+     * Прибыль по тикерам (по убыванию прибыли) с количеством сделок по каждому тикеру.
+     */
+    public static List<Map<String, Object>> foldSymbols(Iterator<ClosedTradeRow> closedTrades,
+                                                        Map<String, Integer> symbolCount) {
+        Map<String, Double> symbolData = new HashMap<>();
+        while (closedTrades.hasNext()) {
+            ClosedTradeRow trade = closedTrades.next();
+            Double profit = trade.getProfit();
+            if (profit != null) {
+                symbolData.merge(trade.getSymbol(), profit, Double::sum);
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(symbolData.size());
+        for (Map.Entry<String, Double> entry : symbolData.entrySet()) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("symbol", entry.getKey());
+            data.put("profit", Math.round(entry.getValue() * 100) / 100.0);
+            data.put("count", symbolCount.get(entry.getKey()));
+            result.add(data);
+        }
+
+        // Сортируем по прибыли (по убыванию)
+        result.sort((a, b) -> Double.compare((Double) b.get("profit"), (Double) a.get("profit")));
+        return result;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.diary.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Итог массовой операции: статус по каждому id в порядке запроса.
+ */
+public class TradeBulkResult {
+
+    public enum Status {
+        DELETED(true),
+        CLOSED(true),
+        NOT_FOUND(false),
+        ALREADY_CLOSED(false),
+        CHANGED(false),
+        NO_PRICE(false),
+        INVALID_PRICE(false),
+        INVALID_DATE(false);
+
+        private final boolean success;
+
+        Status(boolean success) {
+            this.success = success;
+        }
+
+        public boolean isSuccess() { return success; }
+    }
+
+    private final List<Map<String, Object>> results = new ArrayList<>();
+    private int succeededCount;
+
+    void add(long id, Status status) {
+        add(id, status, null);
+    }
+
+    void add(long id, Status status, Map<String, Object> details) {
+        Map<String, Object> result = details != null ? new HashMap<>(details) : new HashMap<>();
+        result.put("id", id);
+        result.put("status", status.name());
+        results.add(result);
+        if (status.isSuccess()) {
+            succeededCount++;
+        }
+    }
+
+    public int getSucceededCount() { return succeededCount; }
+    public int getFailedCount() { return results.size() - succeededCount; }
+    public List<Map<String, Object>> getResults() { return results; }
+
+    public Map<String, Object> toResponse() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("succeededCount", succeededCount);
+        response.put("failedCount", getFailedCount());
+        response.put("results", results);
+        return response;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.diary.service;
+
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeBatchWriter;
+import com.example.diary.repository.TradeRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Массовое удаление и закрытие сделок вместо N отдельных запросов.
+ * Вся операция выполняется в одной транзакции: сделки читаются пакетами по
+ * {@code trades.import.batch-size} id, изменения пишутся одним JDBC batch через
+ * {@link TradeBatchWriter}. Ошибка по отдельной сделке не прерывает операцию, а попадает
+ * в статус этой сделки в {@link TradeBulkResult}; подписчики получают одно событие на всю операцию.
+ */
+@Service
+public class TradeBulkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeBulkService.class);
+
+    /**
+     * Запрос на закрытие: цена берется из tradePrices по id, иначе из symbolPrices по тикеру.
+     * Сделки из tradePrices закрываются, даже если их нет в ids. Без exitDate сделки закрываются сегодняшним днем.
+     */
+    public record CloseRequest(List<Long> ids, Map<String, BigDecimal> symbolPrices,
+                               Map<Long, BigDecimal> tradePrices, LocalDate exitDate) {
+    }
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private TradeBatchWriter batchWriter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PortfolioVersion portfolioVersion;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${trades.bulk.max-size:5000}")
+    private int maxSize;
+
+    @Value("${trades.import.batch-size:500}")
+    private int batchSize;
+
+    public TradeBulkResult delete(List<Long> requestedIds) {
+        List<Long> ids = distinctIds(requestedIds);
+        TradeBulkResult result = new TradeBulkResult();
+        List<Trade> removed = new ArrayList<>();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<Long, Trade> trades = load(ids);
+            List<Long> existing = new ArrayList<>(trades.keySet());
+            int[] counts = existing.isEmpty() ? new int[0] : batchWriter.deleteAll(existing);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    trades.remove(existing.get(i));
+                }
+            }
+            for (Long id : ids) {
+                Trade trade = trades.get(id);
+                if (trade != null) {
+                    removed.add(trade);
+                }
+                result.add(id, trade != null ? TradeBulkResult.Status.DELETED : TradeBulkResult.Status.NOT_FOUND);
+            }
+        });
+
+        if (!removed.isEmpty()) {
+            portfolioVersion.publish(TradeChangeEvent.deleted(removed));
+        }
+        logger.info("Массовое удаление: удалено {}, не найдено {}", result.getSucceededCount(), result.getFailedCount());
+        return result;
+    }
+
+    public TradeBulkResult close(CloseRequest request) {
+        Map<Long, BigDecimal> tradePrices = request.tradePrices() != null ? request.tradePrices() : Map.of();
+        Map<String, BigDecimal> symbolPrices = new HashMap<>();
+        if (request.symbolPrices() != null) {
+            request.symbolPrices().forEach((symbol, price) -> symbolPrices.put(symbol.trim().toUpperCase(), price));
+        }
+        List<Long> requestedIds = new ArrayList<>(request.ids() != null ? request.ids() : List.of());
+        requestedIds.addAll(tradePrices.keySet());
+        List<Long> ids = distinctIds(requestedIds);
+        LocalDate exitDate = request.exitDate() != null ? request.exitDate() : LocalDate.now();
+
+        TradeBulkResult result = new TradeBulkResult();
+        List<Trade> before = new ArrayList<>();
+        List<Trade> after = new ArrayList<>();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<Long, Trade> trades = load(ids);
+            Map<Long, TradeBulkResult.Status> rejected = new HashMap<>();
+            List<Trade> closing = new ArrayList<>();
+            for (Long id : ids) {
+                Trade trade = trades.get(id);
+                TradeBulkResult.Status rejection = null;
+                BigDecimal price = null;
+                if (trade == null) {
+                    rejection = TradeBulkResult.Status.NOT_FOUND;
+                } else if (trade.getExitDate() != null) {
+                    rejection = TradeBulkResult.Status.ALREADY_CLOSED;
+                } else {
+                    price = tradePrices.get(id);
+                    if (price == null) {
+                        price = symbolPrices.get(trade.getSymbol().trim().toUpperCase());
+                    }
+                    if (price == null) {
+                        rejection = TradeBulkResult.Status.NO_PRICE;
+                    } else if (price.signum() <= 0) {
+                        rejection = TradeBulkResult.Status.INVALID_PRICE;
+                    } else if (exitDate.isBefore(trade.getEntryDate()) || !Trade.isSupportedDate(exitDate)) {
+                        rejection = TradeBulkResult.Status.INVALID_DATE;
+                    }
+                }
+                if (rejection != null) {
+                    rejected.put(id, rejection);
+                    continue;
+                }
+                before.add(trade.copy());
+                trade.setExitPrice(price);
+                trade.setExitDate(exitDate);
+                closing.add(trade);
+            }
+
+            // Закрытие проверяет и количество: частичная продажа между чтением и обновлением уменьшает лот
+            int[] counts = closing.isEmpty() ? new int[0] : batchWriter.closeLots(closing);
+            for (int i = 0; i < counts.length; i++) {
+                Trade trade = closing.get(i);
+                // Сделку успели закрыть, удалить или уменьшить между чтением и обновлением
+                if (counts[i] == 0) {
+                    rejected.put(trade.getId(), TradeBulkResult.Status.CHANGED);
+                } else {
+                    after.add(trade);
+                }
+            }
+            before.removeIf(trade -> rejected.containsKey(trade.getId()));
+
+            for (Long id : ids) {
+                TradeBulkResult.Status rejection = rejected.get(id);
+                if (rejection != null) {
+                    result.add(id, rejection);
+                    continue;
+                }
+                Trade trade = trades.get(id);
+                Map<String, Object> details = new HashMap<>();
+                details.put("exitPrice", trade.getExitPrice());
+                details.put("exitDate", trade.getExitDate());
+                details.put("profit", trade.getProfit());
+                result.add(id, TradeBulkResult.Status.CLOSED, details);
+            }
+        });
+
+        if (!after.isEmpty()) {
+            portfolioVersion.publish(TradeChangeEvent.sold(before, after));
+        }
+        logger.info("Массовое закрытие: закрыто {}, отклонено {}", result.getSucceededCount(), result.getFailedCount());
+        return result;
+    }
+
+    private List<Long> distinctIds(List<Long> requested) {
+        if (requested == null || requested.isEmpty()) {
+            throw new IllegalArgumentException("Список id пуст");
+        }
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (Long id : requested) {
+            if (id == null) {
+                throw new IllegalArgumentException("Список id содержит пустое значение");
+            }
+            ids.add(id);
+        }
+        if (ids.size() > maxSize) {
+            throw new IllegalArgumentException("За один запрос можно обработать не больше " + maxSize + " сделок");
+        }
+        return new ArrayList<>(ids);
+    }
+
+    // Сделки читаются пакетами IN (...) и отсоединяются: дальше они меняются только через JDBC batch
+    private Map<Long, Trade> load(List<Long> ids) {
+        Map<Long, Trade> trades = new HashMap<>(ids.size() * 2);
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            for (Trade trade : tradeRepository.findAllById(chunk)) {
+                trades.put(trade.getId(), trade);
+            }
+            entityManager.clear();
+        }
+        return trades;
+    }
+}
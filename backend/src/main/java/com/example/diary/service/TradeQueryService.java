@@ -0,0 +1,126 @@
+package com.example.diary.service;
+
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeCursor;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.TradeSort;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Выдача списка сделок: keyset-страницы и потоковая выгрузка, сделки - в кратком представлении {@link TradeViews}.
+ * При выгрузке сущности отсоединяются от контекста сразу после записи,
+ * поэтому расход памяти не зависит от количества сделок.
+ */
+@Service
+public class TradeQueryService {
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${trades.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${trades.stream.fetch-size:500}")
+    private int fetchSize;
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> findPage(TradeFilter filter, TradeSort sort, TradeCursor after, int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + maxPageSize);
+        }
+
+        // Запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<Trade> items = tradeRepository.findPage(filter, sort, after, limit + 1);
+        boolean hasMore = items.size() > limit;
+        if (hasMore) {
+            items = items.subList(0, limit);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("items", TradeViews.summaries(items));
+        response.put("hasMore", hasMore);
+        response.put("nextCursor", hasMore ? TradeCursor.after(items.get(items.size() - 1), sort).toString() : null);
+        return response;
+    }
+
+    /**
+     * Записывает сделки одним JSON-массивом.
+     */
+    public void writeJsonArray(TradeFilter filter, TradeSort sort, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            forEachTrade(filter, sort, trade -> writeTrade(generator, trade));
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Записывает сделки в формате NDJSON: один JSON-объект на строку.
+     */
+    public void writeNdjson(TradeFilter filter, TradeSort sort, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            forEachTrade(filter, sort, trade -> {
+                writeTrade(generator, trade);
+                try {
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void forEachTrade(TradeFilter filter, TradeSort sort, Consumer<Trade> action)
+            throws IOException {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Trade> trades = tradeRepository.streamTrades(filter, sort, fetchSize)) {
+                    trades.forEach(trade -> {
+                        action.accept(trade);
+                        entityManager.detach(trade);
+                    });
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeTrade(JsonGenerator generator, Trade trade) {
+        try {
+            TradeViews.writeSummary(generator, trade);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
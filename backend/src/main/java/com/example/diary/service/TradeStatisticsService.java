@@ -0,0 +1,76 @@
+package com.example.diary.service;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.store.TradeColumnStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Статистика портфеля для страницы статистики.
+ * Считается на сервере за один проход ({@link StatisticsAccumulator}) по столбцовому снимку
+ * {@link TradeColumnStore}, без чтения сущностей из БД, и кэшируется по портфелю,
+ * тикеру, диапазону дат входа и текущей дате (от нее зависят накопленные проценты).
+ * Любое изменение сделок сбрасывает кэш.
+ */
+@Service
+public class TradeStatisticsService {
+
+    private record Key(String portfolio, String symbol, LocalDate from, LocalDate to, LocalDate today) {
+    }
+
+    @Autowired
+    private TradeColumnStore columnStore;
+
+    @Value("${trades.statistics.cache-size:64}")
+    private int cacheSize;
+
+    private final Map<Key, Map<String, Object>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Map<String, Object>> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    // Номер поколения данных: результат, посчитанный до изменения сделок, в кэш не попадает
+    private final AtomicLong generation = new AtomicLong();
+
+    public Map<String, Object> getStatistics(TradeFilter filter) {
+        Key key = new Key(filter.getPortfolio(), filter.getSymbol(), filter.getFrom(), filter.getTo(), LocalDate.now());
+        synchronized (cache) {
+            Map<String, Object> cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long startedAt = generation.get();
+        Map<String, Object> statistics = compute(filter, key.today());
+        synchronized (cache) {
+            if (generation.get() == startedAt) {
+                cache.put(key, statistics);
+            }
+        }
+        return statistics;
+    }
+
+    @EventListener
+    public void onTradeChange(TradeChangeEvent event) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    private Map<String, Object> compute(TradeFilter filter, LocalDate today) {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator(today);
+        columnStore.scan(filter, accumulator::accept);
+        return Collections.unmodifiableMap(accumulator.toResponse());
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.diary.service;
+
+import com.example.diary.interest.InterestEngine;
+import com.example.diary.interest.InterestPeriod;
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.model.TradeCalculator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JSON-представления сделки для ответов API.
+ * Сущность {@link Trade} напрямую не сериализуется: Jackson вызывал бы каждый производный геттер, а для закрытой
+ * сделки строил бы ежедневный список процентов на весь срок удержания. Здесь поля пишутся прямо в генератор
+ * с заранее закодированными именами, производные суммы считаются один раз в копейках, пустые поля пропускаются:
+ * <ul>
+ *   <li>краткое (списки, страницы, выгрузка): хранимые поля, стоимость и прибыль;</li>
+ *   <li>подробное (одна сделка): дополнительно дневной процент и проценты за срок, график процентов по периодам -
+ *   только если он запрошен. Ежедневный график отдается постранично в /trades/{id}/daily-interest.</li>
+ * </ul>
+ * Размер и время записи списка зависят только от числа сделок, а не от суммарного срока их удержания.
+ */
+public final class TradeViews {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString PORTFOLIO_ID = new SerializedString("portfolioId");
+    private static final SerializableString SYMBOL = new SerializedString("symbol");
+    private static final SerializableString ENTRY_PRICE = new SerializedString("entryPrice");
+    private static final SerializableString EXIT_PRICE = new SerializedString("exitPrice");
+    private static final SerializableString QUANTITY = new SerializedString("quantity");
+    private static final SerializableString ENTRY_DATE = new SerializedString("entryDate");
+    private static final SerializableString EXIT_DATE = new SerializedString("exitDate");
+    private static final SerializableString MARGIN_AMOUNT = new SerializedString("marginAmount");
+    private static final SerializableString DAILY_INTEREST = new SerializedString("dailyInterest");
+    private static final SerializableString NOTES = new SerializedString("notes");
+    private static final SerializableString TOTAL_COST = new SerializedString("totalCost");
+    private static final SerializableString DAILY_INTEREST_AMOUNT = new SerializedString("dailyInterestAmount");
+    private static final SerializableString TOTAL_INTEREST = new SerializedString("totalInterest");
+    private static final SerializableString PROFIT = new SerializedString("profit");
+    private static final SerializableString INTEREST_PERIODS = new SerializedString("interestPeriods");
+
+    private TradeViews() {
+    }
+
+    /**
+     * Список сделок в кратком представлении - для ответов, собираемых в Map.
+     */
+    public static JsonSerializable summaries(List<Trade> trades) {
+        return new View() {
+            @Override
+            public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeStartArray(trades, trades.size());
+                for (Trade trade : trades) {
+                    writeSummary(generator, trade);
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    /**
+     * Одна сделка в подробном представлении; periods - график процентов или null, если он не запрошен.
+     */
+    public static JsonSerializable detail(Trade trade, List<InterestPeriod> periods) {
+        return new View() {
+            @Override
+            public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+                writeDetail(generator, trade, periods);
+            }
+        };
+    }
+
+    public static void writeSummary(JsonGenerator generator, Trade trade) throws IOException {
+        generator.writeStartObject(trade);
+        writeFields(generator, trade);
+        Amounts amounts = Amounts.of(trade);
+        if (amounts != null) {
+            generator.writeFieldName(TOTAL_COST);
+            generator.writeNumber(Money.toDouble(amounts.totalCost));
+            if (amounts.hasProfit) {
+                generator.writeFieldName(PROFIT);
+                generator.writeNumber(Money.toDouble(amounts.profit));
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    public static void writeDetail(JsonGenerator generator, Trade trade, List<InterestPeriod> periods)
+            throws IOException {
+        generator.writeStartObject(trade);
+        writeFields(generator, trade);
+        Amounts amounts = Amounts.of(trade);
+        if (amounts != null) {
+            generator.writeFieldName(TOTAL_COST);
+            generator.writeNumber(Money.toDouble(amounts.totalCost));
+            if (amounts.hasRate) {
+                generator.writeFieldName(DAILY_INTEREST_AMOUNT);
+                generator.writeNumber(Money.toDouble(amounts.dailyInterest));
+                if (amounts.closed) {
+                    generator.writeFieldName(TOTAL_INTEREST);
+                    generator.writeNumber(Money.toDouble(amounts.totalInterest));
+                }
+                if (amounts.hasProfit) {
+                    generator.writeFieldName(PROFIT);
+                    generator.writeNumber(Money.toDouble(amounts.profit));
+                }
+            }
+        }
+        if (periods != null) {
+            generator.writeFieldName(INTEREST_PERIODS);
+            generator.writeObject(periods);
+        }
+        generator.writeEndObject();
+    }
+
+    // Хранимые поля сделки
+    private static void writeFields(JsonGenerator generator, Trade trade) throws IOException {
+        if (trade.getId() != null) {
+            generator.writeFieldName(ID);
+            generator.writeNumber(trade.getId());
+        }
+        writeString(generator, PORTFOLIO_ID, trade.getPortfolioId());
+        writeString(generator, SYMBOL, trade.getSymbol());
+        writeDecimal(generator, ENTRY_PRICE, trade.getEntryPrice());
+        writeDecimal(generator, EXIT_PRICE, trade.getExitPrice());
+        if (trade.getQuantity() != null) {
+            generator.writeFieldName(QUANTITY);
+            generator.writeNumber(trade.getQuantity());
+        }
+        writeDate(generator, ENTRY_DATE, trade.getEntryDate());
+        writeDate(generator, EXIT_DATE, trade.getExitDate());
+        writeDecimal(generator, MARGIN_AMOUNT, trade.getMarginAmount());
+        writeString(generator, DAILY_INTEREST, trade.getDailyInterest());
+        writeString(generator, NOTES, trade.getNotes());
+    }
+
+    private static void writeString(JsonGenerator generator, SerializableString name, String value)
+            throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        }
+    }
+
+    private static void writeDecimal(JsonGenerator generator, SerializableString name, BigDecimal value)
+            throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeDate(JsonGenerator generator, SerializableString name, LocalDate value)
+            throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value.toString());
+        }
+    }
+
+    /**
+     * Производные суммы сделки в копейках, те же, что у геттеров {@link Trade}, но с одним разбором цен.
+     */
+    private static final class Amounts {
+        long totalCost;
+        long dailyInterest;
+        long totalInterest;
+        long profit;
+        boolean hasRate;
+        boolean closed;
+        boolean hasProfit;
+
+        static Amounts of(Trade trade) {
+            if (trade.getEntryPrice() == null || trade.getQuantity() == null) {
+                return null;
+            }
+            Amounts amounts = new Amounts();
+            long entryPrice = Money.fromDecimal(trade.getEntryPrice());
+            int quantity = trade.getQuantity();
+            amounts.totalCost = TradeCalculator.totalCostCents(entryPrice, quantity);
+            if (trade.getMarginAmount() == null) {
+                return amounts;
+            }
+            amounts.hasRate = true;
+            amounts.dailyInterest = TradeCalculator.dailyInterestCents(amounts.totalCost,
+                Money.fromDecimal(trade.getMarginAmount()));
+            if (trade.getEntryDate() == null || trade.getExitDate() == null) {
+                return amounts;
+            }
+            amounts.closed = true;
+            amounts.totalInterest = InterestEngine.totalInterestCents(amounts.totalCost,
+                Money.fromDecimal(trade.getMarginAmount()), trade.getEntryDate(), trade.getExitDate());
+            if (trade.getExitPrice() == null) {
+                return amounts;
+            }
+            amounts.hasProfit = true;
+            amounts.profit = TradeCalculator.profitCents(entryPrice, Money.fromDecimal(trade.getExitPrice()), quantity,
+                amounts.totalInterest);
+            return amounts;
+        }
+    }
+
+    // Представление, которое Jackson записывает само, когда оно лежит в ответе-Map
+    private abstract static class View extends JsonSerializable.Base {
+        @Override
+        public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSer)
+                throws IOException {
+            serialize(generator, provider);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.diary.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Словарь тикеров: каждому тикеру - плотный int-код в порядке появления.
+ * Коды не переиспользуются, поэтому массивы, индексированные кодом, можно только наращивать.
+ * Не потокобезопасен, доступ - под блокировкой {@link TradeColumnStore}.
+ */
+public class SymbolDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] symbols = new String[16];
+
+    /**
+     * Код тикера или -1, если тикер не встречался.
+     */
+    public int code(String symbol) {
+        Integer code = codes.get(symbol);
+        return code != null ? code : -1;
+    }
+
+    public String symbol(int code) {
+        return symbols[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    int encode(String symbol) {
+        Integer code = codes.get(symbol);
+        if (code != null) {
+            return code;
+        }
+        int next = codes.size();
+        if (next == symbols.length) {
+            symbols = Arrays.copyOf(symbols, next * 2);
+        }
+        symbols[next] = symbol;
+        codes.put(symbol, next);
+        return next;
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.diary.store;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.journal.TradeJournal;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeFilter;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.projection.TradeColumnRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Снимок всех сделок по столбцам ({@link TradeColumns}) для сканирующих расчетов:
+ * статистики, Монте-Карло и открытых позиций для VaR. Сделки каждого портфеля лежат в своих
+ * столбцах, поэтому расчет по одному портфелю обходит только его строки, а сводный - все портфели подряд.
+ * При старте строится по сделкам, восстановленным {@link TradeJournal}, или читается из БД, затем обновляется по {@link TradeChangeEvent} - удаляются строки сделок
+ * из removed и добавляются или переписываются строки из added, без повторного чтения БД.
+ * Сканирование идет под блокировкой чтения, изменения - под блокировкой записи.
+ */
+@Service
+public class TradeColumnStore implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(TradeColumnStore.class);
+
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(TradeColumns columns, int row);
+    }
+
+    /**
+     * Накопление строк одного портфеля в его собственное состояние для {@link #scanEach}.
+     */
+    @FunctionalInterface
+    public interface RowAccumulator<A> {
+        void accept(A state, TradeColumns columns, int row);
+    }
+
+    /**
+     * Открытые сделки одного тикера: количество, сумма бумаг и стоимость входа в сотых.
+     */
+    public record OpenPosition(String symbol, int trades, long quantity, long costScaled) {
+        public double cost() {
+            return TradeColumns.decode(costScaled);
+        }
+    }
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Портфели в алфавитном порядке; пустой портфель удаляется вместе с последней сделкой
+    private TreeMap<String, TradeColumns> partitions = new TreeMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        load(tradeJournal.recoveredRows());
+    }
+
+    // recovered - сделки, восстановленные журналом при старте; null - чтение из БД
+    private void load(List<TradeColumnRow> recovered) {
+        long started = System.currentTimeMillis();
+        TreeMap<String, TradeColumns> fresh = recovered != null ? partition(recovered.stream()) : loadFromDatabase();
+        lock.writeLock().lock();
+        try {
+            partitions = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        int trades = 0;
+        for (TradeColumns columns : fresh.values()) {
+            trades += columns.size();
+        }
+        logger.info("Столбцовый снимок сделок загружен{}: {} сделок в {} портфелях за {} мс",
+            recovered != null ? " из журнала" : "", trades, fresh.size(), System.currentTimeMillis() - started);
+    }
+
+    // Снимок обновляется раньше остальных подписчиков: кэши, сброшенные по событию, пересчитываются уже по новым строкам
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onTradeChange(TradeChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            Map<Long, String> replaced = new HashMap<>();
+            for (Trade trade : event.getAdded()) {
+                replaced.put(trade.getId(), trade.getPortfolioId());
+            }
+            // Продажа приходит как удаление и добавление той же сделки - строка переписывается на месте
+            for (Trade trade : event.getRemoved()) {
+                if (!trade.getPortfolioId().equals(replaced.get(trade.getId()))) {
+                    TradeColumns columns = partitions.get(trade.getPortfolioId());
+                    if (columns != null) {
+                        columns.remove(trade.getId());
+                        if (columns.size() == 0) {
+                            partitions.remove(trade.getPortfolioId());
+                        }
+                    }
+                }
+            }
+            for (Trade trade : event.getAdded()) {
+                partitions.computeIfAbsent(trade.getPortfolioId(), key -> new TradeColumns(0)).put(trade);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Портфели, в которых есть сделки, в алфавитном порядке.
+     */
+    public List<String> portfolios() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(partitions.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Обходит живые строки, подходящие под фильтр (те же условия, что в TradeRepository#streamTrades).
+     * С портфелем в фильтре обходятся только его столбцы.
+     */
+    public void scan(TradeFilter filter, RowVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (TradeColumns data : selected(filter)) {
+                scan(data, filter, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Обходит каждый портфель отдельно и параллельно (общий ForkJoinPool), накапливая его строки
+     * в собственное состояние из factory. Все портфели читаются под одной блокировкой чтения,
+     * поэтому результаты относятся к одному состоянию сделок.
+     */
+    public <A> Map<String, A> scanEach(TradeFilter filter, Function<String, A> factory, RowAccumulator<A> accumulator) {
+        lock.readLock().lock();
+        try {
+            List<Map.Entry<String, TradeColumns>> entries = new ArrayList<>();
+            for (Map.Entry<String, TradeColumns> entry : partitions.entrySet()) {
+                if (filter == null || filter.getPortfolio() == null || filter.getPortfolio().equals(entry.getKey())) {
+                    entries.add(entry);
+                }
+            }
+            List<A> states = entries.parallelStream()
+                .map(entry -> {
+                    A state = factory.apply(entry.getKey());
+                    scan(entry.getValue(), filter, (columns, row) -> accumulator.accept(state, columns, row));
+                    return state;
+                })
+                .toList();
+            Map<String, A> result = new LinkedHashMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                result.put(entries.get(i).getKey(), states.get(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Тикеры, по которым есть живые сделки (открытые или закрытые) во всех портфелях, в алфавитном порядке.
+     */
+    public SortedSet<String> symbols() {
+        lock.readLock().lock();
+        try {
+            SortedSet<String> result = new TreeSet<>();
+            for (TradeColumns data : partitions.values()) {
+                boolean[] used = new boolean[data.dictionary().size()];
+                long[] ids = data.ids();
+                int[] symbols = data.symbols();
+                int rows = data.rows();
+                for (int row = 0; row < rows; row++) {
+                    if (ids[row] != TradeColumns.DEAD) {
+                        used[symbols[row]] = true;
+                    }
+                }
+                for (int symbol = 0; symbol < used.length; symbol++) {
+                    if (used[symbol]) {
+                        result.add(data.dictionary().symbol(symbol));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Открытые позиции по тикерам в алфавитном порядке: одного портфеля или всех (portfolio == null).
+     */
+    public List<OpenPosition> openPositions(String portfolio) {
+        lock.readLock().lock();
+        try {
+            if (portfolio != null) {
+                TradeColumns data = partitions.get(portfolio);
+                return data != null ? openPositions(data) : new ArrayList<>();
+            }
+            List<List<OpenPosition>> byPortfolio = new ArrayList<>();
+            for (TradeColumns data : partitions.values()) {
+                byPortfolio.add(openPositions(data));
+            }
+            return merge(byPortfolio);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Открытые позиции каждого портфеля, прочитанные под одной блокировкой.
+     */
+    public Map<String, List<OpenPosition>> openPositionsByPortfolio() {
+        lock.readLock().lock();
+        try {
+            Map<String, List<OpenPosition>> result = new LinkedHashMap<>();
+            partitions.forEach((portfolio, data) -> result.put(portfolio, openPositions(data)));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сводные позиции нескольких портфелей. Коды тикеров у портфелей свои, поэтому позиции складываются по имени тикера.
+     */
+    public static List<OpenPosition> merge(Collection<List<OpenPosition>> portfolios) {
+        Map<String, OpenPosition> merged = new TreeMap<>();
+        for (List<OpenPosition> positions : portfolios) {
+            for (OpenPosition position : positions) {
+                merged.merge(position.symbol(), position, (a, b) -> new OpenPosition(a.symbol(),
+                    a.trades() + b.trades(), a.quantity() + b.quantity(), a.costScaled() + b.costScaled()));
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private Collection<TradeColumns> selected(TradeFilter filter) {
+        if (filter == null || filter.getPortfolio() == null) {
+            return partitions.values();
+        }
+        TradeColumns data = partitions.get(filter.getPortfolio());
+        return data != null ? List.of(data) : List.of();
+    }
+
+    private static void scan(TradeColumns data, TradeFilter filter, RowVisitor visitor) {
+        int symbol = -1;
+        if (filter != null && filter.getSymbol() != null) {
+            symbol = data.dictionary().code(filter.getSymbol());
+            if (symbol < 0) {
+                return;
+            }
+        }
+        TradeFilter.Status status = filter != null ? filter.getStatus() : null;
+        int from = filter != null && filter.getFrom() != null ? TradeColumns.epochDay(filter.getFrom()) : Integer.MIN_VALUE;
+        int to = filter != null && filter.getTo() != null ? TradeColumns.epochDay(filter.getTo()) : Integer.MAX_VALUE;
+        int openOn = filter != null && filter.getOpenOn() != null
+            ? TradeColumns.epochDay(filter.getOpenOn()) : TradeColumns.NO_DAY;
+
+        long[] ids = data.ids();
+        int[] symbols = data.symbols();
+        int[] entryDays = data.entryDays();
+        int[] exitDays = data.exitDays();
+        int rows = data.rows();
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] == TradeColumns.DEAD
+                    || (symbol >= 0 && symbols[row] != symbol)
+                    || entryDays[row] < from || entryDays[row] > to) {
+                continue;
+            }
+            boolean open = exitDays[row] == TradeColumns.NO_DAY;
+            if ((status == TradeFilter.Status.OPEN && !open) || (status == TradeFilter.Status.CLOSED && open)) {
+                continue;
+            }
+            if (openOn != TradeColumns.NO_DAY && (entryDays[row] > openOn || (!open && exitDays[row] <= openOn))) {
+                continue;
+            }
+            visitor.visit(data, row);
+        }
+    }
+
+    // Суммы копятся в массивах по коду тикера
+    private static List<OpenPosition> openPositions(TradeColumns data) {
+        int symbolCount = data.dictionary().size();
+        int[] trades = new int[symbolCount];
+        long[] quantity = new long[symbolCount];
+        long[] cost = new long[symbolCount];
+        long[] ids = data.ids();
+        int[] symbols = data.symbols();
+        int[] exitDays = data.exitDays();
+        int[] quantities = data.quantities();
+        long[] entryPrices = data.entryPrices();
+        int rows = data.rows();
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] == TradeColumns.DEAD || exitDays[row] != TradeColumns.NO_DAY) {
+                continue;
+            }
+            int symbol = symbols[row];
+            trades[symbol]++;
+            quantity[symbol] += quantities[row];
+            cost[symbol] += entryPrices[row] * quantities[row];
+        }
+        List<OpenPosition> positions = new ArrayList<>();
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            if (trades[symbol] > 0) {
+                positions.add(new OpenPosition(data.dictionary().symbol(symbol), trades[symbol], quantity[symbol], cost[symbol]));
+            }
+        }
+        positions.sort(Comparator.comparing(OpenPosition::symbol));
+        return positions;
+    }
+
+    private TreeMap<String, TradeColumns> loadFromDatabase() {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        return readOnlyTransaction.execute(status -> {
+            try (Stream<TradeColumnRow> trades = tradeRepository.streamColumnRows()) {
+                return partition(trades);
+            }
+        });
+    }
+
+    private static TreeMap<String, TradeColumns> partition(Stream<TradeColumnRow> trades) {
+        TreeMap<String, TradeColumns> loaded = new TreeMap<>();
+        trades.forEach(trade -> loaded.computeIfAbsent(trade.portfolioId(), key -> new TradeColumns(0)).put(trade));
+        return loaded;
+    }
+}
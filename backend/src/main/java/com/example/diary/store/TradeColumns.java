@@ -0,0 +1,167 @@
+package com.example.diary.store;
+
+import com.example.diary.model.Money;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.projection.TradeColumnRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Сделки по столбцам в примитивных массивах: тикер - код из {@link SymbolDictionary},
+ * цены и ставка - целые в сотых (масштаб колонок numeric(38,2)), даты - номер дня эпохи.
+ * Одна сделка занимает около 45 байт против сотен байт у сущности с BigDecimal, LocalDate и текстом.
+ * <p>
+ * Строка удаленной сделки помечается id {@link #DEAD} и пропускается при сканировании;
+ * когда мертвых строк становится больше живых, массивы уплотняются с сохранением порядка.
+ * Изменение существующей сделки переписывает ее строку на месте, поэтому строки идут в порядке добавления.
+ * Массивы отдаются читателю напрямую и действительны только под блокировкой чтения {@link TradeColumnStore}.
+ */
+public class TradeColumns {
+
+    public static final long DEAD = 0L;
+    public static final int NO_DAY = Integer.MIN_VALUE;
+    public static final long NO_PRICE = -1L;
+    public static final int SCALE = 100;
+
+    private static final int COMPACT_MIN_DEAD = 1024;
+
+    private final SymbolDictionary dictionary = new SymbolDictionary();
+    private final LongIntHashMap index;
+
+    private long[] ids;
+    private int[] symbols;
+    private long[] entryPrices;
+    private long[] exitPrices;
+    private int[] quantities;
+    private int[] entryDays;
+    private int[] exitDays;
+    private int[] rates;
+
+    private int rows;
+    private int dead;
+
+    public TradeColumns(int capacity) {
+        int initial = Math.max(16, capacity);
+        ids = new long[initial];
+        symbols = new int[initial];
+        entryPrices = new long[initial];
+        exitPrices = new long[initial];
+        quantities = new int[initial];
+        entryDays = new int[initial];
+        exitDays = new int[initial];
+        rates = new int[initial];
+        index = new LongIntHashMap(initial);
+    }
+
+    public SymbolDictionary dictionary() { return dictionary; }
+
+    /** Граница сканирования: число строк вместе с мертвыми. */
+    public int rows() { return rows; }
+
+    /** Число живых сделок. */
+    public int size() { return rows - dead; }
+
+    public long[] ids() { return ids; }
+    public int[] symbols() { return symbols; }
+    public long[] entryPrices() { return entryPrices; }
+    public long[] exitPrices() { return exitPrices; }
+    public int[] quantities() { return quantities; }
+    public int[] entryDays() { return entryDays; }
+    public int[] exitDays() { return exitDays; }
+    public int[] rates() { return rates; }
+
+    public static double decode(long scaled) {
+        return (double) scaled / SCALE;
+    }
+
+    public static long encode(BigDecimal value) {
+        return Money.fromDecimal(value);
+    }
+
+    public static int epochDay(LocalDate date) {
+        return date != null ? (int) date.toEpochDay() : NO_DAY;
+    }
+
+    /**
+     * Добавляет сделку или переписывает ее строку, если сделка с таким id уже есть.
+     */
+    void put(Trade trade) {
+        put(trade.getId(), trade.getSymbol(), trade.getEntryPrice(), trade.getExitPrice(), trade.getQuantity(),
+            trade.getEntryDate(), trade.getExitDate(), trade.getMarginAmount());
+    }
+
+    void put(TradeColumnRow trade) {
+        put(trade.id(), trade.symbol(), trade.entryPrice(), trade.exitPrice(), trade.quantity(),
+            trade.entryDate(), trade.exitDate(), trade.marginAmount());
+    }
+
+    private void put(long id, String symbol, BigDecimal entryPrice, BigDecimal exitPrice, Integer quantity,
+                     LocalDate entryDate, LocalDate exitDate, BigDecimal marginAmount) {
+        int row = index.get(id);
+        if (row < 0) {
+            if (rows == ids.length) {
+                grow(rows * 2);
+            }
+            row = rows++;
+            index.put(id, row);
+        }
+        ids[row] = id;
+        symbols[row] = dictionary.encode(symbol);
+        entryPrices[row] = entryPrice != null ? encode(entryPrice) : 0L;
+        exitPrices[row] = exitPrice != null ? encode(exitPrice) : NO_PRICE;
+        quantities[row] = quantity != null ? quantity : 0;
+        entryDays[row] = epochDay(entryDate);
+        exitDays[row] = epochDay(exitDate);
+        rates[row] = marginAmount != null ? (int) encode(marginAmount) : 0;
+    }
+
+    void remove(long id) {
+        int row = index.get(id);
+        if (row < 0) {
+            return;
+        }
+        index.remove(id);
+        ids[row] = DEAD;
+        dead++;
+        if (dead >= COMPACT_MIN_DEAD && dead > rows - dead) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        int target = 0;
+        index.clear();
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] == DEAD) {
+                continue;
+            }
+            if (target != row) {
+                ids[target] = ids[row];
+                symbols[target] = symbols[row];
+                entryPrices[target] = entryPrices[row];
+                exitPrices[target] = exitPrices[row];
+                quantities[target] = quantities[row];
+                entryDays[target] = entryDays[row];
+                exitDays[target] = exitDays[row];
+                rates[target] = rates[row];
+            }
+            index.put(ids[target], target);
+            target++;
+        }
+        rows = target;
+        dead = 0;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        entryPrices = Arrays.copyOf(entryPrices, capacity);
+        exitPrices = Arrays.copyOf(exitPrices, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        entryDays = Arrays.copyOf(entryDays, capacity);
+        exitDays = Arrays.copyOf(exitDays, capacity);
+        rates = Arrays.copyOf(rates, capacity);
+    }
+}
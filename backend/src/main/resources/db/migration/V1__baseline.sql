@@ -0,0 +1,21 @@
+-- Исходная схема, которую раньше создавал ddl-auto=update из сущности Trade.
+-- Существующие базы без истории миграций получают baseline версии 0 (spring.flyway.baseline-version),
+-- поэтому этот скрипт выполняется и для них: IF NOT EXISTS оставляет таблицу как есть
+-- и только создает последовательность, если ее еще нет.
+
+CREATE TABLE IF NOT EXISTS trades (
+    id BIGINT NOT NULL,
+    symbol CHARACTER VARYING(10) NOT NULL,
+    entry_price NUMERIC(38, 2) NOT NULL,
+    exit_price NUMERIC(38, 2),
+    quantity INTEGER NOT NULL CHECK (quantity >= 1),
+    entry_date DATE NOT NULL,
+    exit_date DATE,
+    margin_amount NUMERIC(38, 2) NOT NULL,
+    daily_interest CHARACTER VARYING,
+    notes CHARACTER VARYING,
+    PRIMARY KEY (id)
+);
+
+-- Шаг совпадает с Trade.ID_ALLOCATION_SIZE
+CREATE SEQUENCE IF NOT EXISTS trades_seq START WITH 1 INCREMENT BY 50;
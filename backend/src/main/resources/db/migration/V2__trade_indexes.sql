@@ -0,0 +1,14 @@
+-- Индексы под фильтры TradeRepository и TradeController.
+
+-- Список и keyset-пагинация по дате входа, фильтр диапазона дат входа
+CREATE INDEX IF NOT EXISTS idx_trades_entry_date ON trades (entry_date, id);
+
+-- Фильтр по тикеру с диапазоном дат входа
+CREATE INDEX IF NOT EXISTS idx_trades_symbol_entry_date ON trades (symbol, entry_date);
+
+-- Открытые позиции и закрытые сделки по дате выхода.
+-- В H2 нет частичных индексов (WHERE exit_date IS NULL), поэтому индекс начинается с exit_date:
+-- все открытые сделки лежат в нем одним диапазоном с ключом NULL, и условие exit_date IS NULL
+-- вместе с группировкой по тикеру читается из индекса так же, как из частичного.
+-- Диапазоны exit_date BETWEEN для аналитики используют тот же индекс.
+CREATE INDEX IF NOT EXISTS idx_trades_exit_date_symbol ON trades (exit_date, symbol);
@@ -0,0 +1,11 @@
+-- Сделки разделены по портфелям (счетам). Существующие сделки попадают в портфель по умолчанию.
+
+ALTER TABLE trades ADD COLUMN IF NOT EXISTS portfolio_id CHARACTER VARYING(32) DEFAULT 'default' NOT NULL;
+
+-- Те же индексы, что в V2, с портфелем первым столбцом: запрос по одному портфелю читает
+-- только его диапазон индекса. Индексы V2 остаются для сводных запросов по всем портфелям.
+CREATE INDEX IF NOT EXISTS idx_trades_portfolio_entry_date ON trades (portfolio_id, entry_date, id);
+
+CREATE INDEX IF NOT EXISTS idx_trades_portfolio_symbol_entry_date ON trades (portfolio_id, symbol, entry_date);
+
+CREATE INDEX IF NOT EXISTS idx_trades_portfolio_exit_date_symbol ON trades (portfolio_id, exit_date, symbol);
@@ -0,0 +1,93 @@
+package com.example.diary.config;
+
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PortfolioETagFilterTest {
+
+    private PortfolioETagFilter filter;
+    private PortfolioVersion portfolioVersion;
+    // Сколько раз запрос дошел до "контроллера", по пути
+    private final Map<String, Integer> calls = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        portfolioVersion = new PortfolioVersion();
+        ReflectionTestUtils.setField(portfolioVersion, "eventPublisher", mock(ApplicationEventPublisher.class));
+        filter = new PortfolioETagFilter(new SimpleMeterRegistry(), 256, 1 << 20);
+        ReflectionTestUtils.setField(filter, "portfolioVersion", portfolioVersion);
+        ReflectionTestUtils.setField(filter, "cacheEnabled", true);
+        ReflectionTestUtils.setField(filter, "maxEntryBytes", 1 << 20);
+    }
+
+    @Test
+    void responsesOfDifferentUrlsAreCachedTogether() throws Exception {
+        List<String> paths = List.of("/trades/summary", "/trades/monthly", "/trades/symbols");
+        for (int round = 0; round < 3; round++) {
+            for (String path : paths) {
+                assertEquals(HttpServletResponse.SC_OK, get(path, null).getStatus());
+            }
+        }
+        paths.forEach(path -> assertEquals(1, calls.get(path), path));
+
+        portfolioVersion.publish(TradeChangeEvent.deleted(List.of()));
+        get("/trades/summary", null);
+        assertEquals(2, calls.get("/trades/summary"));
+    }
+
+    @Test
+    void etagIsPerRequestAndMatchesOnlyItsOwnUrl() throws Exception {
+        String summaryTag = get("/trades/summary", null).getHeader(HttpHeaders.ETAG);
+        String monthlyTag = get("/trades/monthly", null).getHeader(HttpHeaders.ETAG);
+
+        assertNotNull(summaryTag);
+        assertNotEquals(summaryTag, monthlyTag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/trades/summary", summaryTag).getStatus());
+        assertEquals(HttpServletResponse.SC_OK, get("/trades/monthly", summaryTag).getStatus());
+        assertEquals(HttpServletResponse.SC_OK, get("/trades/summary", "*").getStatus());
+    }
+
+    @Test
+    void errorResponsesGetNoEtag() throws Exception {
+        MockHttpServletResponse response = get("/trades/missing", null);
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    private MockHttpServletResponse get(String path, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api" + path);
+        request.setContextPath("/api");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            calls.merge(path, 1, Integer::sum);
+            HttpServletResponse http = (HttpServletResponse) res;
+            http.setStatus(path.endsWith("missing") ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_OK);
+            http.setContentType("application/json");
+            http.getOutputStream().write(("{\"path\":\"" + path + "\"}").getBytes(StandardCharsets.UTF_8));
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
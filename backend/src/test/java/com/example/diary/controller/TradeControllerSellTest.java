@@ -0,0 +1,91 @@
+package com.example.diary.controller;
+
+import com.example.diary.event.PortfolioVersion;
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeBatchWriter;
+import com.example.diary.repository.TradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class TradeControllerSellTest {
+
+    private TradeController controller;
+    private TradeRepository tradeRepository;
+    private TradeBatchWriter batchWriter;
+    private PortfolioVersion portfolioVersion;
+
+    @BeforeEach
+    void setUp() {
+        tradeRepository = mock(TradeRepository.class);
+        batchWriter = mock(TradeBatchWriter.class);
+        portfolioVersion = mock(PortfolioVersion.class);
+        controller = new TradeController();
+        ReflectionTestUtils.setField(controller, "tradeRepository", tradeRepository);
+        ReflectionTestUtils.setField(controller, "batchWriter", batchWriter);
+        ReflectionTestUtils.setField(controller, "portfolioVersion", portfolioVersion);
+    }
+
+    @Test
+    void sellClosesLotWithQuantityReadBeforeUpdate() {
+        when(tradeRepository.findById(1L)).thenReturn(Optional.of(trade(10)));
+        when(batchWriter.closeLots(anyList())).thenReturn(new int[] {1});
+
+        ResponseEntity<?> response = controller.sellTrade(1L, 120.0);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(batchWriter).closeLots(argThat(lots -> lots.size() == 1 && lots.get(0).getQuantity() == 10
+            && lots.get(0).getExitPrice().compareTo(new BigDecimal("120")) == 0));
+        verify(tradeRepository, never()).save(any());
+        verify(portfolioVersion).publish(any(TradeChangeEvent.class));
+    }
+
+    @Test
+    void lotChangedConcurrentlyGivesConflictAndNoEvent() {
+        when(tradeRepository.findById(1L)).thenReturn(Optional.of(trade(10)));
+        // Между чтением и обновлением лот уменьшила частичная продажа
+        when(batchWriter.closeLots(anyList())).thenReturn(new int[] {0});
+
+        ResponseEntity<?> response = controller.sellTrade(1L, 120.0);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(portfolioVersion, never()).publish(any());
+    }
+
+    @Test
+    void closedTradeIsNotClosedAgain() {
+        Trade closed = trade(10);
+        closed.setExitDate(LocalDate.of(2026, 3, 1));
+        closed.setExitPrice(new BigDecimal("110.00"));
+        when(tradeRepository.findById(1L)).thenReturn(Optional.of(closed));
+
+        ResponseEntity<?> response = controller.sellTrade(1L, 120.0);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verifyNoInteractions(batchWriter, portfolioVersion);
+    }
+
+    private static Trade trade(int quantity) {
+        Trade trade = new Trade();
+        trade.setId(1L);
+        trade.setPortfolioId("default");
+        trade.setSymbol("SBER");
+        trade.setQuantity(quantity);
+        trade.setEntryPrice(new BigDecimal("100.00"));
+        trade.setEntryDate(LocalDate.of(2026, 1, 10));
+        trade.setMarginAmount(new BigDecimal("18.00"));
+        return trade;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.diary.event;
+
+import com.example.diary.model.Trade;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioVersionTest {
+
+    @Test
+    void failingListenerDoesNotFailPublishAndVersionStillGrows() {
+        List<Object> delivered = new ArrayList<>();
+        ApplicationEventPublisher publisher = event -> {
+            delivered.add(event);
+            if (event instanceof TradeChangeEvent) {
+                throw new IllegalStateException("слушатель упал");
+            }
+        };
+        PortfolioVersion portfolioVersion = new PortfolioVersion();
+        ReflectionTestUtils.setField(portfolioVersion, "eventPublisher", publisher);
+
+        assertDoesNotThrow(() -> portfolioVersion.publish(TradeChangeEvent.bought(new Trade())));
+
+        assertEquals(1, portfolioVersion.get());
+        assertEquals(2, delivered.size());
+        assertEquals(1, ((PortfolioUpdatedEvent) delivered.get(1)).getVersion());
+    }
+}
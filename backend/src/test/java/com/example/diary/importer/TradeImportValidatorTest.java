@@ -0,0 +1,44 @@
+package com.example.diary.importer;
+
+import com.example.diary.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeImportValidatorTest {
+
+    private final TradeImportValidator validator = new TradeImportValidator();
+
+    @Test
+    void datesWithinSupportedRangeAreAccepted() {
+        Trade trade = validator.validate(row("2026-01-10", "2026-03-01"));
+
+        assertEquals(LocalDate.of(2026, 1, 10), trade.getEntryDate());
+        assertEquals(LocalDate.of(2026, 3, 1), trade.getExitDate());
+        validator.validate(row(Trade.MIN_DATE.toString(), Trade.MAX_DATE.toString()));
+    }
+
+    @Test
+    void extremeDatesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(row("0001-01-01", null)));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(row("2026-01-10", "9999-12-31")));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(row("1969-12-31", null)));
+    }
+
+    private static TradeImportRow row(String entryDate, String exitDate) {
+        TradeImportRow row = new TradeImportRow();
+        row.reset(1);
+        row.set("symbol", "SBER");
+        row.set("entryPrice", "100.50");
+        row.set("quantity", "10");
+        row.set("marginAmount", "18");
+        row.set("entryDate", entryDate);
+        if (exitDate != null) {
+            row.set("exitDate", exitDate);
+            row.set("exitPrice", "120.00");
+        }
+        return row;
+    }
+}
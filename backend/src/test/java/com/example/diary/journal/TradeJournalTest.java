@@ -0,0 +1,229 @@
+package com.example.diary.journal;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeRepository;
+import com.example.diary.repository.projection.TradeColumnRow;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TradeJournalTest {
+
+    @TempDir
+    Path directory;
+
+    // Сделки "в БД" по id: из них журнал пересобирается и с ними сверяет число и max id при старте
+    private final TreeMap<Long, Trade> database = new TreeMap<>();
+    private final List<TradeJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        journals.forEach(TradeJournal::close);
+    }
+
+    @Test
+    void firstStartReadsDatabaseAndCleanRestartReplaysJournal() {
+        store(trade(1L, "SBER", 10), trade(2L, "GAZP", 5));
+        TradeJournal first = journal(4096);
+
+        assertEquals(rows(database.values()), first.recoveredRows());
+        assertEquals(TradeJournal.Source.DATABASE, recovery(first).get("source"));
+
+        Trade bought = trade(3L, "LKOH", 2);
+        apply(first, TradeChangeEvent.bought(bought));
+        Trade open = database.get(1L);
+        apply(first, TradeChangeEvent.sold(open, closed(open)));
+        apply(first, TradeChangeEvent.deleted(database.get(2L)));
+        first.close();
+
+        TradeRepository repository = mock(TradeRepository.class);
+        TradeJournal second = journal(4096, repository);
+
+        assertEquals(rows(database.values()), second.recoveredRows());
+        assertEquals(TradeJournal.Source.JOURNAL, recovery(second).get("source"));
+        assertEquals(3L, recovery(second).get("events"));
+        verify(repository, never()).streamTrades(any(), any(), anyInt());
+
+        List<JournalEvent> events = second.events(0, 10);
+        assertEquals(List.of(1L, 2L, 3L), events.stream().map(JournalEvent::sequence).toList());
+        assertEquals(TradeChangeEvent.Type.SOLD, events.get(1).type());
+        assertEquals(List.of(2L), events.get(2).removedIds());
+    }
+
+    @Test
+    void tornLastRecordFallsBackToDatabase() throws IOException {
+        store(trade(1L, "SBER", 10));
+        TradeJournal first = journal(4096);
+        first.recoveredRows();
+        apply(first, TradeChangeEvent.bought(trade(2L, "GAZP", 5)));
+        apply(first, TradeChangeEvent.bought(trade(3L, "LKOH", 2)));
+        Map<String, Object> segment = activeSegment(first);
+        first.close();
+
+        // Портим последний байт последней записи - как при падении посреди записи
+        Path file = directory.resolve((String) segment.get("file"));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) segment.get("usedBytes") - 1] ^= 0x5A;
+        Files.write(file, bytes);
+
+        TradeJournal second = journal(4096);
+
+        assertEquals(rows(database.values()), second.recoveredRows());
+        assertEquals(TradeJournal.Source.DATABASE, recovery(second).get("source"));
+        assertTrue(((String) recovery(second).get("reason")).contains("испорчена запись после 1"));
+        // Журнал пересобран: следующий старт снова читает его, а не БД
+        apply(second, TradeChangeEvent.bought(trade(4L, "MTSS", 1)));
+        second.close();
+        TradeJournal third = journal(4096);
+        assertEquals(rows(database.values()), third.recoveredRows());
+        assertEquals(TradeJournal.Source.JOURNAL, recovery(third).get("source"));
+    }
+
+    @Test
+    void uncleanShutdownFallsBackToDatabase() {
+        store(trade(1L, "SBER", 10));
+        TradeJournal first = journal(4096);
+        first.recoveredRows();
+        apply(first, TradeChangeEvent.bought(trade(2L, "GAZP", 5)));
+        // Без close(): метки штатного закрытия нет
+
+        TradeJournal second = journal(4096);
+
+        assertEquals(rows(database.values()), second.recoveredRows());
+        assertEquals(TradeJournal.Source.DATABASE, recovery(second).get("source"));
+    }
+
+    @Test
+    void compactionFoldsSegmentsIntoSnapshotAndRestartReplaysTheRest() throws IOException {
+        TradeJournal first = journal(512);
+        first.recoveredRows();
+        for (long id = 1; id <= 30; id++) {
+            apply(first, TradeChangeEvent.bought(trade(id, "SBER", (int) id)));
+        }
+        assertTrue(segments().size() > 2);
+
+        Map<String, Object> status = first.compact();
+
+        assertEquals(30L, status.get("snapshotSequence"));
+        assertEquals(1L, status.get("compactions"));
+        assertEquals(1, segments().size());
+        // Свернутые в снимок события больше не отдаются
+        assertTrue(first.events(0, 10).isEmpty());
+
+        Trade open = database.get(7L);
+        apply(first, TradeChangeEvent.sold(open, closed(open)));
+        apply(first, TradeChangeEvent.deleted(database.get(8L)));
+        first.close();
+
+        TradeJournal second = journal(512);
+
+        assertEquals(rows(database.values()), second.recoveredRows());
+        assertEquals(TradeJournal.Source.JOURNAL, recovery(second).get("source"));
+        assertEquals(2L, recovery(second).get("events"));
+        assertEquals(List.of(31L, 32L), second.events(0, 10).stream().map(JournalEvent::sequence).toList());
+    }
+
+    private TradeJournal journal(int segmentBytes) {
+        TradeRepository repository = mock(TradeRepository.class);
+        when(repository.streamTrades(any(), any(), anyInt()))
+            .thenAnswer(invocation -> copies(database.values()).stream());
+        return journal(segmentBytes, repository);
+    }
+
+    private TradeJournal journal(int segmentBytes, TradeRepository repository) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), ArgumentMatchers.<RowMapper<long[]>>any()))
+            .thenAnswer(invocation -> new long[] {database.size(), database.isEmpty() ? 0 : database.lastKey()});
+
+        TradeJournal journal = new TradeJournal();
+        ReflectionTestUtils.setField(journal, "tradeRepository", repository);
+        ReflectionTestUtils.setField(journal, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(journal, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(journal, "entityManager", mock(EntityManager.class));
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(journal, "compactSegments", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(journal, "fetchSize", 100);
+        journals.add(journal);
+        return journal;
+    }
+
+    // Изменение "фиксируется в БД" и затем доходит до журнала, как после коммита
+    private void apply(TradeJournal journal, TradeChangeEvent event) {
+        event.getRemoved().forEach(trade -> database.remove(trade.getId()));
+        event.getAdded().forEach(this::store);
+        journal.onTradeChange(event);
+    }
+
+    private void store(Trade... trades) {
+        for (Trade trade : trades) {
+            database.put(trade.getId(), trade);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> recovery(TradeJournal journal) {
+        return (Map<String, Object>) journal.getStatus().get("recovery");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> activeSegment(TradeJournal journal) {
+        List<Map<String, Object>> segments = (List<Map<String, Object>>) journal.getStatus().get("segments");
+        return segments.stream().filter(segment -> (boolean) segment.get("active")).findFirst().orElseThrow();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegment).toList();
+        }
+    }
+
+    private static List<Trade> copies(Collection<Trade> trades) {
+        return trades.stream().map(Trade::copy).toList();
+    }
+
+    private static List<TradeColumnRow> rows(Collection<Trade> trades) {
+        return trades.stream().map(trade -> new TradeColumnRow(trade.getId(), trade.getPortfolioId(),
+            trade.getSymbol(), trade.getEntryPrice(), trade.getExitPrice(), trade.getQuantity(), trade.getEntryDate(),
+            trade.getExitDate(), trade.getMarginAmount())).toList();
+    }
+
+    private static Trade trade(long id, String symbol, int quantity) {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setSymbol(symbol);
+        trade.setQuantity(quantity);
+        trade.setEntryPrice(new BigDecimal("100.50"));
+        trade.setEntryDate(LocalDate.of(2026, 1, 1).plusDays(id));
+        trade.setMarginAmount(new BigDecimal("18.00"));
+        trade.setNotes("сделка " + id);
+        return trade;
+    }
+
+    private static Trade closed(Trade open) {
+        Trade closed = open.copy();
+        closed.setExitPrice(new BigDecimal("120.00"));
+        closed.setExitDate(open.getEntryDate().plusDays(30));
+        return closed;
+    }
+}
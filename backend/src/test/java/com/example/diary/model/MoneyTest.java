@@ -0,0 +1,39 @@
+package com.example.diary.model;
+
+import com.example.diary.store.TradeColumns;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void fromDecimalRoundsHalfUpLikeDatabase() {
+        // 10.005 в double - 10.00499..., округление через double дало бы 1000
+        assertEquals(1001, Money.fromDecimal(new BigDecimal("10.005")));
+        assertEquals(-1001, Money.fromDecimal(new BigDecimal("-10.005")));
+        assertEquals(1000, Money.fromDecimal(new BigDecimal("10.0049")));
+        assertEquals(1234, Money.fromDecimal(new BigDecimal("12.34")));
+        assertEquals(1200, Money.fromDecimal(new BigDecimal("12")));
+
+        for (String value : new String[] {"10.005", "0.015", "1.115", "99999.995"}) {
+            BigDecimal decimal = new BigDecimal(value);
+            assertEquals(TradeColumns.encode(decimal), Money.fromDecimal(decimal), value);
+            assertEquals(Money.round(decimal).movePointRight(2).longValueExact(), Money.fromDecimal(decimal), value);
+        }
+    }
+
+    @Test
+    void tradeKeepsAmountsAsStoredInDatabase() {
+        Trade trade = new Trade();
+        trade.setEntryPrice(BigDecimal.valueOf(10.005));
+        trade.setMarginAmount(new BigDecimal("18.125"));
+        trade.setExitPrice(null);
+
+        assertEquals(new BigDecimal("10.01"), trade.getEntryPrice());
+        assertEquals(new BigDecimal("18.13"), trade.getMarginAmount());
+        assertNull(trade.getExitPrice());
+    }
+}
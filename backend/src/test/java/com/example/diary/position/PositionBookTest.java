@@ -0,0 +1,125 @@
+package com.example.diary.position;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionBookTest {
+
+    private static final String PORTFOLIO = "default";
+    private static final LocalDate TODAY = LocalDate.of(2026, 4, 1);
+
+    private PositionBook book;
+
+    // Три лота SBER: 10 шт. по 100, 5 шт. по 110, 8 шт. по 120 - в порядке покупок
+    @BeforeEach
+    void setUp() {
+        book = new PositionBook();
+        book.onTradeChange(TradeChangeEvent.imported(List.of(
+            trade(1L, "SBER", LocalDate.of(2026, 1, 10), 10, "100.00", "18"),
+            trade(3L, "SBER", LocalDate.of(2026, 3, 1), 8, "120.00", "18"),
+            trade(2L, "SBER", LocalDate.of(2026, 2, 1), 5, "110.00", "20"),
+            trade(4L, "GAZP", LocalDate.of(2026, 1, 15), 7, "150.00", "18"))));
+    }
+
+    @Test
+    void fifoTakesEarliestLotsAndSplitsTheLastOne() {
+        List<PositionBook.Allocation> allocations = book.match(PORTFOLIO, "SBER", 12, TODAY, LotMethod.FIFO);
+
+        assertAllocations(allocations, new long[] {1, 2}, new int[] {10, 2});
+    }
+
+    @Test
+    void lifoTakesLatestLotsAndSplitsTheLastOne() {
+        List<PositionBook.Allocation> allocations = book.match(PORTFOLIO, "SBER", 12, TODAY, LotMethod.LIFO);
+
+        assertAllocations(allocations, new long[] {3, 2}, new int[] {8, 4});
+    }
+
+    @Test
+    void averageSplitsProportionallyAndGivesRoundingRemainderToLargestFraction() {
+        // 7 из 23: доли 70/23, 35/23, 56/23 - по 3, 1, 2 и одна бумага лоту с остатком 12/23
+        List<PositionBook.Allocation> allocations = book.match(PORTFOLIO, "SBER", 7, TODAY, LotMethod.AVERAGE);
+
+        assertAllocations(allocations, new long[] {1, 2, 3}, new int[] {3, 2, 2});
+    }
+
+    @Test
+    void lotsBoughtAfterSellDateAreNotMatched() {
+        LocalDate sellDate = LocalDate.of(2026, 2, 15);
+
+        assertAllocations(book.match(PORTFOLIO, "SBER", 15, sellDate, LotMethod.LIFO),
+            new long[] {2, 1}, new int[] {5, 10});
+        assertThrows(IllegalArgumentException.class,
+            () -> book.match(PORTFOLIO, "SBER", 16, sellDate, LotMethod.FIFO));
+        assertThrows(IllegalArgumentException.class,
+            () -> book.match(PORTFOLIO, "LKOH", 1, TODAY, LotMethod.FIFO));
+    }
+
+    @Test
+    void partialSellKeepsRemainderAsSmallerLot() {
+        Trade before = trade(1L, "SBER", LocalDate.of(2026, 1, 10), 10, "100.00", "18");
+        Trade remainder = before.copy();
+        remainder.setQuantity(6);
+        Trade sold = before.copy();
+        sold.setId(5L);
+        sold.setQuantity(4);
+        sold.setExitDate(LocalDate.of(2026, 3, 20));
+        sold.setExitPrice(new BigDecimal("130.00"));
+
+        book.onTradeChange(TradeChangeEvent.sold(List.of(before), List.of(sold, remainder)));
+
+        List<Lot> lots = book.lots(PORTFOLIO, "SBER", LotMethod.FIFO);
+        assertEquals(List.of(1L, 2L, 3L), lots.stream().map(Lot::id).toList());
+        assertEquals(6, lots.get(0).quantity());
+
+        PositionBook.Summary summary = book.position(PORTFOLIO, "SBER", TODAY);
+        assertEquals(3, summary.lots());
+        assertEquals(19, summary.quantity());
+        assertEquals(6 * 10000 + 5 * 11000 + 8 * 12000, summary.costCents());
+        assertEquals(lots.stream().mapToLong(Lot::dailyInterestCents).sum(), summary.dailyInterestCents());
+        assertEquals(lots.stream().mapToLong(lot -> lot.interestCents(TODAY)).sum(), summary.accruedInterestCents());
+    }
+
+    @Test
+    void closingAllLotsRemovesPosition() {
+        Trade open = trade(4L, "GAZP", LocalDate.of(2026, 1, 15), 7, "150.00", "18");
+        Trade closed = open.copy();
+        closed.setExitDate(LocalDate.of(2026, 3, 1));
+        closed.setExitPrice(new BigDecimal("160.00"));
+
+        book.onTradeChange(TradeChangeEvent.sold(open, closed));
+
+        assertNull(book.position(PORTFOLIO, "GAZP", TODAY));
+        assertEquals(List.of("SBER"), book.positions(PORTFOLIO, TODAY).stream()
+            .map(PositionBook.Summary::symbol).toList());
+        assertTrue(book.lots(PORTFOLIO, "GAZP", LotMethod.FIFO).isEmpty());
+    }
+
+    private static void assertAllocations(List<PositionBook.Allocation> allocations, long[] ids, int[] quantities) {
+        assertEquals(ids.length, allocations.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], allocations.get(i).lot().id());
+            assertEquals(quantities[i], allocations.get(i).quantity());
+        }
+    }
+
+    private static Trade trade(long id, String symbol, LocalDate entryDate, int quantity, String price, String rate) {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setPortfolioId(PORTFOLIO);
+        trade.setSymbol(symbol);
+        trade.setEntryDate(entryDate);
+        trade.setQuantity(quantity);
+        trade.setEntryPrice(new BigDecimal(price));
+        trade.setMarginAmount(new BigDecimal(rate));
+        return trade;
+    }
+}
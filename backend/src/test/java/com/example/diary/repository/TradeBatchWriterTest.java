@@ -0,0 +1,67 @@
+package com.example.diary.repository;
+
+import com.example.diary.model.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TradeBatchWriterTest {
+
+    private static final String NEXT_ID = "SELECT NEXT VALUE FOR trades_seq";
+
+    private TradeBatchWriter writer;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        // Значение последовательности - верхняя граница блока: 50, 100, ...
+        when(jdbcTemplate.queryForObject(NEXT_ID, Long.class)).thenReturn(50L, 100L, 150L);
+        writer = new TradeBatchWriter();
+        ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    void idsAreTakenFromSequenceBlocks() {
+        List<Trade> trades = trades(Trade.ID_ALLOCATION_SIZE + 2);
+
+        writer.insertAll(trades);
+
+        assertEquals(1L, trades.get(0).getId());
+        assertEquals(50L, trades.get(Trade.ID_ALLOCATION_SIZE - 1).getId());
+        assertEquals(51L, trades.get(Trade.ID_ALLOCATION_SIZE).getId());
+        verify(jdbcTemplate, times(2)).queryForObject(NEXT_ID, Long.class);
+    }
+
+    @Test
+    void retriedRowsKeepIdsAssignedBeforeRollback() {
+        List<Trade> chunk = trades(3);
+        writer.insertAll(chunk);
+
+        // Повтор строк пакета по одной после отката
+        for (Trade trade : chunk) {
+            writer.insertAll(List.of(trade));
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), chunk.stream().map(Trade::getId).toList());
+        verify(jdbcTemplate, times(1)).queryForObject(NEXT_ID, Long.class);
+        verify(jdbcTemplate, times(4)).batchUpdate(anyString(), anyList(), anyInt(), any());
+    }
+
+    private static List<Trade> trades(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            Trade trade = new Trade();
+            trade.setSymbol("SBER");
+            trade.setQuantity(1);
+            return trade;
+        }).toList();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.diary.risk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalSimulationTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    void varAndEsAreTailQuantileAndMeanAndContributionsAddUp() {
+        Random random = new Random(11);
+        int length = 251;
+        int positions = 3;
+        double[] closes = new double[positions * length];
+        for (int i = 0; i < positions; i++) {
+            double price = 100.0 + 50.0 * i;
+            for (int d = 0; d < length; d++) {
+                price *= 1.0 + random.nextGaussian() * 0.02;
+                closes[i * length + d] = price;
+            }
+        }
+        int[] days = new int[length];
+        Arrays.setAll(days, d -> 19_000 + d);
+        HistoricalSimulation.PriceMatrix matrix = new HistoricalSimulation.PriceMatrix(positions, length, days, closes);
+        double[] exposures = {100_000.0, 250_000.0, -50_000.0};
+        int horizon = 5;
+        int count = matrix.scenarioCount(horizon, 1000);
+
+        double[] pnl = HistoricalSimulation.scenarioPnl(matrix, exposures, horizon, count);
+        List<HistoricalSimulation.Level> levels = HistoricalSimulation.evaluate(matrix, exposures, horizon, pnl,
+            new double[] {0.95, 0.99});
+
+        assertEquals(length - horizon, count);
+        for (int s = 0; s < count; s++) {
+            double expected = 0.0;
+            for (int i = 0; i < positions; i++) {
+                expected += exposures[i] * (closes[i * length + s + horizon] / closes[i * length + s] - 1.0);
+            }
+            assertEquals(expected, pnl[s], EPSILON);
+        }
+
+        double[] sorted = pnl.clone();
+        Arrays.sort(sorted);
+        for (HistoricalSimulation.Level level : levels) {
+            int tail = (int) Math.ceil(count * (1.0 - level.confidence()) - 1e-9);
+            double tailSum = 0.0;
+            for (int t = 0; t < tail; t++) {
+                tailSum += sorted[t];
+            }
+            assertEquals(tail, level.tailScenarios());
+            assertEquals(-sorted[tail - 1], level.valueAtRisk(), EPSILON);
+            assertEquals(-tailSum / tail, level.expectedShortfall(), EPSILON);
+            assertTrue(level.expectedShortfall() >= level.valueAtRisk() - EPSILON);
+            assertEquals(level.valueAtRisk(), Arrays.stream(level.varContributions()).sum(), EPSILON);
+            assertEquals(level.expectedShortfall(), Arrays.stream(level.esContributions()).sum(), EPSILON);
+        }
+    }
+
+    @Test
+    void tiedScenariosAtQuantileFillTailOnlyUpToItsSize() {
+        // Доходности сценариев: -50%, +100%, -50%, +100%
+        double[] closes = {100.0, 50.0, 100.0, 50.0, 100.0};
+        HistoricalSimulation.PriceMatrix matrix = new HistoricalSimulation.PriceMatrix(1, 5,
+            new int[] {1, 2, 3, 4, 5}, closes);
+        double[] exposures = {1000.0};
+        double[] pnl = HistoricalSimulation.scenarioPnl(matrix, exposures, 1, 4);
+
+        List<HistoricalSimulation.Level> levels = HistoricalSimulation.evaluate(matrix, exposures, 1, pnl,
+            new double[] {0.5, 0.9});
+
+        HistoricalSimulation.Level half = levels.get(0);
+        assertEquals(2, half.tailScenarios());
+        assertEquals(500.0, half.valueAtRisk(), EPSILON);
+        assertEquals(500.0, half.expectedShortfall(), EPSILON);
+        assertEquals(500.0, half.esContributions()[0], EPSILON);
+
+        HistoricalSimulation.Level high = levels.get(1);
+        assertEquals(1, high.tailScenarios());
+        assertEquals(500.0, high.valueAtRisk(), EPSILON);
+        assertEquals(500.0, high.varContributions()[0], EPSILON);
+    }
+
+    @Test
+    void noScenariosGiveZeroLevels() {
+        HistoricalSimulation.PriceMatrix matrix = new HistoricalSimulation.PriceMatrix(2, 1, new int[] {1},
+            new double[] {100.0, 200.0});
+
+        List<HistoricalSimulation.Level> levels = HistoricalSimulation.evaluate(matrix, new double[] {1.0, 1.0}, 1,
+            new double[0], new double[] {0.95});
+
+        assertEquals(1, levels.size());
+        assertEquals(0.0, levels.get(0).valueAtRisk());
+        assertEquals(0.0, levels.get(0).expectedShortfall());
+        assertEquals(0, levels.get(0).tailScenarios());
+        assertEquals(2, levels.get(0).varContributions().length);
+    }
+}
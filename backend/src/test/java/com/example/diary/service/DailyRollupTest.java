@@ -0,0 +1,73 @@
+package com.example.diary.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyRollupTest {
+
+    private static final int DAY = 20_000;
+
+    @Test
+    void accruedInterestCountsDaysFromEntryToExitExclusive() {
+        DailyRollup rollup = new DailyRollup();
+        // 100 коп. в день с DAY по DAY + 10, 50 коп. в день с DAY + 5 без выхода
+        addTrade(rollup, DAY, DAY + 10, 100);
+        addTrade(rollup, DAY + 5, null, 50);
+
+        assertEquals(0, rollup.accruedInterest(DAY - 1));
+        assertEquals(100, rollup.accruedInterest(DAY));
+        assertEquals(6 * 100 + 50, rollup.accruedInterest(DAY + 5));
+        assertEquals(10 * 100 + 5 * 50, rollup.accruedInterest(DAY + 9));
+        assertEquals(10 * 100 + 6 * 50, rollup.accruedInterest(DAY + 10));
+        // Далеко за покрытым диапазоном открытая сделка продолжает начислять проценты
+        assertEquals(10 * 100 + 3006L * 50, rollup.accruedInterest(DAY + 3010));
+        assertEquals(50, rollup.prefix(DailyRollup.ACCRUAL, DAY + 3010));
+    }
+
+    @Test
+    void accruedInterestMatchesDayByDaySumWhileRangeGrows() {
+        Random random = new Random(7);
+        DailyRollup rollup = new DailyRollup();
+        int trades = 400;
+        int[] entries = new int[trades];
+        int[] exits = new int[trades];
+        long[] rates = new long[trades];
+        for (int t = 0; t < trades; t++) {
+            // Дни в обе стороны от первого, чтобы диапазон расширялся и влево, и вправо
+            entries[t] = DAY + random.nextInt(4000) - 2000;
+            exits[t] = random.nextInt(4) == 0 ? Integer.MAX_VALUE : entries[t] + 1 + random.nextInt(600);
+            rates[t] = 1 + random.nextInt(10_000);
+            addTrade(rollup, entries[t], exits[t] == Integer.MAX_VALUE ? null : exits[t], rates[t]);
+        }
+
+        for (int day = DAY - 2100; day <= DAY + 3000; day += 37) {
+            long expected = 0;
+            for (int t = 0; t < trades; t++) {
+                long end = Math.min((long) exits[t], day + 1L);
+                expected += Math.max(0, end - entries[t]) * rates[t];
+            }
+            assertEquals(expected, rollup.accruedInterest(day), "день " + day);
+        }
+        assertEquals(Arrays.stream(entries).min().getAsInt(), rollup.getFirstDay());
+    }
+
+    @Test
+    void emptyRollupHasNothing() {
+        DailyRollup rollup = new DailyRollup();
+
+        assertNull(rollup.getFirstDay());
+        assertEquals(0, rollup.accruedInterest(DAY));
+        assertEquals(0, rollup.prefix(DailyRollup.EXPOSURE, DAY));
+    }
+
+    private static void addTrade(DailyRollup rollup, int entry, Integer exit, long dailyInterest) {
+        rollup.add(DailyRollup.ACCRUAL, entry, dailyInterest);
+        if (exit != null) {
+            rollup.add(DailyRollup.ACCRUAL, exit, -dailyInterest);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.diary.store;
+
+import com.example.diary.event.TradeChangeEvent;
+import com.example.diary.model.Trade;
+import com.example.diary.repository.TradeFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeColumnStoreTest {
+
+    private TradeColumnStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new TradeColumnStore();
+        store.onTradeChange(TradeChangeEvent.imported(List.of(
+            trade(1L, LocalDate.of(2026, 1, 10), null),
+            trade(2L, LocalDate.of(2026, 1, 10), LocalDate.of(2026, 3, 1)),
+            trade(3L, LocalDate.of(2026, 3, 10), null),
+            trade(4L, LocalDate.of(2026, 1, 5), LocalDate.of(2026, 2, 1)))));
+    }
+
+    @Test
+    void openOnSelectsTradesOpenOnThatDateIncludingOnesClosedLater() {
+        assertEquals(List.of(1L, 2L), ids(openOn(LocalDate.of(2026, 2, 15))));
+        // Закрытая в этот день сделка на конец дня уже не открыта
+        assertEquals(List.of(1L), ids(openOn(LocalDate.of(2026, 3, 1))));
+        assertEquals(List.of(4L), ids(openOn(LocalDate.of(2026, 1, 5))));
+        assertEquals(List.of(1L, 3L), ids(openOn(LocalDate.of(2026, 4, 1))));
+    }
+
+    @Test
+    void openStatusMeansOpenNow() {
+        TradeFilter filter = new TradeFilter();
+        filter.setStatus(TradeFilter.Status.OPEN);
+
+        assertEquals(List.of(1L, 3L), ids(filter));
+    }
+
+    private static TradeFilter openOn(LocalDate date) {
+        TradeFilter filter = new TradeFilter();
+        filter.setOpenOn(date);
+        return filter;
+    }
+
+    private List<Long> ids(TradeFilter filter) {
+        List<Long> ids = new ArrayList<>();
+        store.scan(filter, (columns, row) -> ids.add(columns.ids()[row]));
+        ids.sort(null);
+        return ids;
+    }
+
+    private static Trade trade(long id, LocalDate entryDate, LocalDate exitDate) {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setSymbol("SBER");
+        trade.setQuantity(10);
+        trade.setEntryPrice(new BigDecimal("100.00"));
+        trade.setMarginAmount(new BigDecimal("18"));
+        trade.setEntryDate(entryDate);
+        if (exitDate != null) {
+            trade.setExitDate(exitDate);
+            trade.setExitPrice(new BigDecimal("110.00"));
+        }
+        return trade;
+    }
+}
@@ -2,6 +2,18 @@ import { useState } from 'react';
 import axios from 'axios';
 import * as XLSX from 'xlsx';
 
+const IMPORT_POLL_INTERVAL_MS = 1000;
+
+async function waitForImportJob(jobId) {
+  for (;;) {
+    const response = await axios.get(`/api/trades/import-jobs/${jobId}`, { params: { errorsLimit: 0 } });
+    if (response.data.status === 'COMPLETED' || response.data.status === 'FAILED') {
+      return response.data;
+    }
+    await new Promise((resolve) => setTimeout(resolve, IMPORT_POLL_INTERVAL_MS));
+  }
+}
+
 function BulkImport() {
   const [file, setFile] = useState(null);
   const [loading, setLoading] = useState(false);
@@ -64,10 +76,20 @@ function BulkImport() {
           
           console.log("Sending data to server:", { trades: jsonData });
           
-          // Send data to server
-          const response = await axios.post('/api/trades/bulk-import', { trades: jsonData });
-          console.log("Server response:", response.data);
-          setSuccess(`${response.data.importedCount} сделок успешно импортировано`);
+          // Send data to server: import runs as a background job, poll it until it finishes
+          const submitted = await axios.post('/api/trades/import-jobs', { trades: jsonData });
+          const job = await waitForImportJob(submitted.data.jobId);
+          console.log("Server response:", job);
+          if (job.status === 'FAILED') {
+            const failure = job.message || 'Не удалось импортировать сделки';
+            // Строки до ошибки уже сохранены - повторная загрузка того же файла создаст дубликаты
+            setError(job.importedCount > 0
+              ? `${failure}. Уже сохранено сделок: ${job.importedCount}, повторный импорт файла создаст дубликаты`
+              : failure);
+            return;
+          }
+          setSuccess(`${job.importedCount} сделок успешно импортировано` +
+            (job.errorCount > 0 ? `, строк с ошибками: ${job.errorCount}` : ''));
           setFile(null);
           setPreview([]);
           document.getElementById('file-upload').value = '';
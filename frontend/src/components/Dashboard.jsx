@@ -14,6 +14,7 @@ import {
   Cell,
 } from 'recharts';
 import { format, subMonths } from 'date-fns';
+import { applyTradeDelta, subscribePortfolioUpdates } from '../utils/portfolioUpdates';
 
 const COLORS = ['#0088FE', '#00C49F', '#FFBB28', '#FF8042', '#8884D8'];
 
@@ -25,6 +26,10 @@ function Dashboard() {
 
   useEffect(() => {
     loadTrades();
+    return subscribePortfolioUpdates({
+      onDelta: (delta) => setTrades(prevTrades => applyTradeDelta(prevTrades, delta)),
+      onResync: () => loadTrades(),
+    });
   }, []);
 
   const loadTrades = async () => {
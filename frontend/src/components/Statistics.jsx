@@ -43,7 +43,8 @@ ChartJS.register(
 );
 
 function Statistics() {
-  const [trades, setTrades] = useState([]);
+  // Итоги по тикерам всего портфеля из /api/trades/statistics - список акций, метрики акции и PDF
+  const [symbolRows, setSymbolRows] = useState([]);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState('');
   const [stockPrices, setStockPrices] = useState({});
@@ -70,11 +71,13 @@ function Statistics() {
     },
     monthlyProfits: {},
     upcomingTrades: [],
+    symbols: [],
+    exits: [],
+    entryPrices: [],
   });
 
-  // Load trades and saved stock prices when component mounts
+  // Load saved stock prices when component mounts; statistics are loaded for the selected stock below
   useEffect(() => {
-    loadTrades();
     loadSavedStockPrices();
   }, []);
 
@@ -85,15 +88,12 @@ function Statistics() {
     return new Date(+year, +month - 1, +day);
   };
 
-  // Запускаем расчет потенциальной прибыли после успешной загрузки сделок
+  // Запускаем расчет потенциальной прибыли после загрузки статистики и курсов
   useEffect(() => {
-    // Если есть и сделки, и сохраненные курсы, запускаем расчет
-    if (trades.length > 0 && Object.keys(stockPrices).length > 0) {
-      console.log('Запускаем расчет потенциальной прибыли после загрузки сделок');
-      // Убираем задержку - вызываем сразу
-      calculatePotentialProfit(trades, stockPrices);
+    if (stats.symbols.length > 0 && Object.keys(stockPrices).length > 0) {
+      calculatePotentialProfit(stats.symbols, stockPrices);
     }
-  }, [trades, stockPrices]);
+  }, [stats.symbols, stockPrices]);
 
   // Periodically reload stock prices (every 30 seconds) - увеличиваем интервал для оптимизации
   useEffect(() => {
@@ -124,13 +124,8 @@ function Statistics() {
             
             if (hasValidPrices) {
               console.log('DEBUG loadSavedStockPrices: Valid stock prices found:', prices);
+              // Потенциальная прибыль пересчитается эффектом по новым курсам
               setStockPrices(prices);
-              
-              // Немедленно пересчитываем потенциальную прибыль при загрузке курсов
-              if (trades.length > 0) {
-                calculatePotentialProfit(trades, prices);
-                console.log("DEBUG loadSavedStockPrices: Пересчитана потенциальная прибыль с сохраненными курсами:", prices);
-              }
             } else {
               console.warn('DEBUG loadSavedStockPrices: No valid stock prices found in stored data');
             }
@@ -148,486 +143,166 @@ function Statistics() {
     }
   };
 
-  const loadTrades = async () => {
+  // Статистика считается на сервере за один проход и кэшируется там же
+  const loadStats = async (symbol) => {
     try {
-      setLoading(true);
-      const response = await axios.get('/api/trades');
-      console.log('Statistics API response:', response);
-      
-      if (Array.isArray(response.data)) {
-        setTrades(response.data);
-        // Extract unique stock symbols
-        const symbols = [...new Set(response.data.map(trade => trade.symbol))].sort();
-        setAvailableStocks(symbols);
-        calculateStats(response.data);
-        setError('');
-      } else {
-        console.error('Statistics API returned non-array data:', response.data);
-        setTrades([]);
-        setError('Данные получены в неверном формате. Пожалуйста, обратитесь к администратору.');
-      }
-    } catch (err) {
-      console.error('Error loading statistics:', err);
-      setError('Не удалось загрузить данные. Пожалуйста, попробуйте позже.');
-      setTrades([]);
-    } finally {
-      setLoading(false);
-    }
-  };
-
-  const calculateStats = (tradesData) => {
-    const calculatedStats = {
-      totalCostOpen: 0,
-      totalInterestDaily: 0,
-      totalInterestMonthly: 0,
-      totalTradesOpen: 0,
-      totalTradesClosed: 0,
-      totalProfit: 0,
-      totalProfitAfterInterest: 0,
-      totalAccruedInterest: 0,
-      totalSharesOpen: 0,
-      avgCreditRate: 0,
-      profitBySymbol: {},
-      symbolCounts: {},
-      monthlyProfits: {},
-      monthlyInterests: {},
-      valueAtRisk: 0,
-      expectedShortfall: 0,
-      maxDrawdown: 0,
-      upcomingTrades: [],
-      holdingPeriods: {},
-      roi: 0,
-      sharpeRatio: 0,
-      potentialProfit: 0,
-      potentialProfitAfterInterest: 0,
-      totalOverallProfit: 0,
-      totalOverallProfitAfterInterest: 0,
-      totalInterestPaid: 0,
-    };
-
-    let totalClosedInterest = 0;
-    let totalAmountInvested = 0;
-    let totalRateWeighted = 0;
-    let totalOpenRateWeighted = 0;
-    let openPositionsValue = 0;
-    let retentionPeriods = [];
-    let portfolioReturns = [];
+      const params = symbol && symbol !== 'all' ? { symbol } : {};
+      const response = await axios.get('/api/trades/statistics', { params });
+      const { overview, holdingPeriods, symbols, monthly, exits, entryPrices, drawdown, risk, upcomingTrades } = response.data;
 
-    // Sort trades by exit date for upcoming events calculation
-    const sortedTrades = [...tradesData].sort((a, b) => {
-      if (!a.exitDate) return 1;
-      if (!b.exitDate) return -1;
-      return new Date(a.exitDate) - new Date(b.exitDate);
-    });
+      // Без фильтра строки по тикерам - весь портфель: из них список акций и метрики отдельной акции
+      if (!params.symbol) {
+        setSymbolRows(symbols);
+        setAvailableStocks(symbols.map(row => row.symbol));
+      }
 
-    // Get open trades for upcoming events
-    const openTrades = sortedTrades.filter(trade => !trade.exitDate);
-    const today = new Date();
+      const profitBySymbol = {};
+      const symbolCounts = {};
+      symbols.forEach(row => {
+        symbolCounts[row.symbol] = row.trades;
+        if (row.closedTrades > 0) {
+          profitBySymbol[row.symbol] = row.priceProfit;
+        }
+      });
 
-    tradesData.forEach(trade => {
-      // Count trades by symbol
-      calculatedStats.symbolCounts[trade.symbol] = (calculatedStats.symbolCounts[trade.symbol] || 0) + 1;
+      const monthlyProfits = {};
+      const monthlyInterests = {};
+      monthly.forEach(row => {
+        monthlyProfits[row.month] = row.priceProfit;
+        monthlyInterests[row.month] = row.interestPaid;
+      });
 
-      const totalCost = Number(trade.entryPrice) * Number(trade.quantity);
-      const roundedTotalCost = Math.round(totalCost * 100) / 100;
-      
-      const dailyInterest = roundedTotalCost * Number(trade.marginAmount) / 100 / 365;
-      const roundedDailyInterest = Math.round(dailyInterest * 100) / 100;
-      const monthlyInterest = roundedDailyInterest * 30;
+      const hasClosedPeriods = Object.values(holdingPeriods.closed).some(count => count > 0);
 
-      if (!trade.exitDate) {
-        // Open trade
-        const entryDateOpen = parseDateLocal(trade.entryDate);
-        const daysHeld = Math.max(1, Math.ceil((today - entryDateOpen) / (1000 * 60 * 60 * 24)));
-        const accruedInterest = roundedDailyInterest * daysHeld;
-        
-        calculatedStats.totalCostOpen += roundedTotalCost;
-        calculatedStats.totalInterestDaily += roundedDailyInterest;
-        calculatedStats.totalInterestMonthly += monthlyInterest;
-        calculatedStats.totalTradesOpen += 1;
-        calculatedStats.totalSharesOpen += Number(trade.quantity);
-        calculatedStats.totalAccruedInterest += accruedInterest;
-        
-        // Calculate weighted average credit rate
-        totalOpenRateWeighted += Number(trade.marginAmount) * roundedTotalCost;
-        openPositionsValue += roundedTotalCost;
-        
-        // Store upcoming trades data
-        calculatedStats.upcomingTrades.push({
-          symbol: trade.symbol,
-          quantity: trade.quantity,
-          entryPrice: trade.entryPrice,
-          entryDate: trade.entryDate,
-          dailyInterest: roundedDailyInterest,
-          daysHeld,
+      setStats({
+        totalCostOpen: overview.openCost,
+        totalInterestDaily: overview.openDailyInterest,
+        totalInterestMonthly: overview.openMonthlyInterest,
+        totalTradesOpen: overview.openTrades,
+        totalTradesClosed: overview.closedTrades,
+        totalProfit: overview.priceProfit,
+        totalProfitAfterInterest: overview.netProfit,
+        totalAccruedInterest: overview.accruedInterest,
+        totalSharesOpen: overview.openShares,
+        avgCreditRate: overview.avgCreditRate,
+        profitBySymbol,
+        symbolCounts,
+        monthlyProfits,
+        monthlyInterests,
+        valueAtRisk: risk.valueAtRisk,
+        expectedShortfall: risk.expectedShortfall,
+        maxDrawdown: drawdown.maxDrawdown,
+        upcomingTrades: upcomingTrades.map(trade => ({
+          ...trade,
           potentialProfit: 0,
           potentialProfitAfterInterest: 0
-        });
-      } else {
-        // Closed trade
-        calculatedStats.totalTradesClosed += 1;
-        
-        if (trade.exitPrice) {
-          const profit = (Number(trade.exitPrice) - Number(trade.entryPrice)) * Number(trade.quantity);
-          const roundedProfit = Math.round(profit * 100) / 100;
-          calculatedStats.totalProfit += roundedProfit;
-          
-          // For ROI calculation
-          totalAmountInvested += roundedTotalCost;
-          
-          // Profit by symbol
-          calculatedStats.profitBySymbol[trade.symbol] = (calculatedStats.profitBySymbol[trade.symbol] || 0) + roundedProfit;
-          
-          // Monthly profits
-          const exitMonth = format(parseDateLocal(trade.exitDate), 'yyyy-MM');
-          calculatedStats.monthlyProfits[exitMonth] = (calculatedStats.monthlyProfits[exitMonth] || 0) + roundedProfit;
-          
-          // Monthly interests
-          calculatedStats.monthlyInterests[exitMonth] = (calculatedStats.monthlyInterests[exitMonth] || 0) + roundedDailyInterest * 30;
-          
-          if (trade.entryDate && trade.exitDate) {
-            const entryDate = parseDateLocal(trade.entryDate);
-            const exitDate = parseDateLocal(trade.exitDate);
-            const daysHeldClosed = Math.max(1, Math.ceil((exitDate - entryDate) / (1000 * 60 * 60 * 24)));
-            
-            // Calculate interest for closed trade (for reference)
-            const interestForPeriod = dailyInterest * daysHeldClosed;
-            const roundedInterestForPeriod = Math.round(interestForPeriod * 100) / 100;
-            totalClosedInterest += roundedInterestForPeriod;
-            
-            // Add to holding periods stats
-            retentionPeriods.push(daysHeldClosed);
-            
-            // Add return percentage for Sharpe ratio
-            const returnPercentage = roundedProfit / roundedTotalCost;
-            portfolioReturns.push(returnPercentage);
-            
-            // Calculate weighted average credit rate
-            totalRateWeighted += Number(trade.marginAmount) * roundedTotalCost;
-          }
-        }
-      }
-    });
-    
-    // Store total interest paid for closed trades (for reference)
-    calculatedStats.totalInterestPaid = totalClosedInterest;
-    calculatedStats.totalAccruedInterest = Math.round(calculatedStats.totalAccruedInterest * 100) / 100;
-    
-    // Calculate average credit rate
-    if (openPositionsValue > 0) {
-      calculatedStats.avgCreditRate = Math.round((totalOpenRateWeighted / openPositionsValue) * 100) / 100;
-    } else if (totalAmountInvested > 0) {
-      calculatedStats.avgCreditRate = Math.round((totalRateWeighted / totalAmountInvested) * 100) / 100;
-    }
-    
-    // Calculate ROI
-    if (totalAmountInvested > 0) {
-      calculatedStats.roi = Math.round((calculatedStats.totalProfit / totalAmountInvested) * 10000) / 100;
-    }
-    
-    // Calculate value at risk (simplified)
-    if (portfolioReturns.length > 0) {
-      // Sort returns in ascending order
-      const sortedReturns = [...portfolioReturns].sort((a, b) => a - b);
-      // Take 5% worst return as 95% VaR
-      const varIndex = Math.floor(sortedReturns.length * 0.05);
-      if (varIndex < sortedReturns.length) {
-        calculatedStats.valueAtRisk = Math.round(Math.abs(sortedReturns[varIndex]) * calculatedStats.totalCostOpen * 100) / 100;
-      }
-      
-      // Calculate expected shortfall (average of returns below VaR)
-      const belowVarReturns = sortedReturns.slice(0, varIndex + 1);
-      if (belowVarReturns.length > 0) {
-        const avgBelowVar = belowVarReturns.reduce((sum, val) => sum + val, 0) / belowVarReturns.length;
-        calculatedStats.expectedShortfall = Math.round(Math.abs(avgBelowVar) * calculatedStats.totalCostOpen * 100) / 100;
-      }
-      
-      // Calculate Sharpe ratio (simplified)
-      if (portfolioReturns.length > 1) {
-        const avgReturn = portfolioReturns.reduce((sum, val) => sum + val, 0) / portfolioReturns.length;
-        const variance = portfolioReturns.reduce((sum, val) => sum + Math.pow(val - avgReturn, 2), 0) / portfolioReturns.length;
-        const stdDev = Math.sqrt(variance);
-        if (stdDev > 0) {
-          calculatedStats.sharpeRatio = Math.round((avgReturn / stdDev) * 100) / 100;
-        }
-      }
-    }
-    
-    // Calculate maximum drawdown (simplified)
-    calculatedStats.maxDrawdown = Math.round(calculatedStats.totalCostOpen * 0.15 * 100) / 100; // Example: 15% of current portfolio
-    
-    // Process holding periods
-    if (retentionPeriods.length > 0) {
-      // Group by duration range
-      const periods = {
-        '1-7': 0,
-        '8-30': 0,
-        '31-90': 0,
-        '91+': 0
-      };
-      
-      retentionPeriods.forEach(days => {
-        if (days <= 7) periods['1-7']++;
-        else if (days <= 30) periods['8-30']++;
-        else if (days <= 90) periods['31-90']++;
-        else periods['91+']++;
+        })),
+        holdingPeriods: hasClosedPeriods ? { closed: holdingPeriods.closed } : {},
+        roi: overview.roi,
+        sharpeRatio: risk.sharpeRatio,
+        potentialProfit: 0,
+        potentialProfitAfterInterest: 0,
+        totalOverallProfit: 0,
+        totalOverallProfitAfterInterest: 0,
+        totalInterestPaid: overview.interestPaid,
+        symbols,
+        exits,
+        entryPrices,
       });
-      
-      calculatedStats.holdingPeriods['closed'] = periods;
-    }
-    
-    // Sort upcoming trades by accrued interest (most expensive first)
-    calculatedStats.upcomingTrades.sort((a, b) => (b.dailyInterest * b.daysHeld) - (a.dailyInterest * a.daysHeld));
-    // Limit to top 5
-    calculatedStats.upcomingTrades = calculatedStats.upcomingTrades.slice(0, 5);
-    
-    // Set calculated stats
-    setStats(calculatedStats);
-    
-    // Сразу же рассчитываем потенциальную прибыль, если есть курсы
-    if (Object.keys(stockPrices).length > 0) {
-      calculatePotentialProfit(tradesData, stockPrices);
+      setError('');
+    } catch (err) {
+      console.error('Error loading statistics:', err);
+      setError('Не удалось загрузить статистику. Пожалуйста, попробуйте позже.');
+    } finally {
+      setLoading(false);
     }
   };
 
-  // Функция расчета потенциальной прибыли
-  const calculatePotentialProfit = (tradesData, prices = stockPrices) => {
-    console.log("DEBUG calculatePotentialProfit: Начат расчет потенциальной прибыли");
-    console.log("DEBUG calculatePotentialProfit: Цены акций:", JSON.stringify(prices));
-    console.log("DEBUG calculatePotentialProfit: Количество сделок:", tradesData.length);
-    
-    // Проверяем наличие курсов акций
+  // Потенциальная прибыль открытых позиций по курсам из localStorage: по строкам тикеров из статистики,
+  // накопленные проценты по открытым сделкам посчитаны сервером
+  const calculatePotentialProfit = (rows, prices = stockPrices) => {
     if (!prices || Object.keys(prices).length === 0) {
       console.warn("DEBUG calculatePotentialProfit: Нет сохраненных курсов для расчета потенциальной прибыли");
       return;
     }
-    
-    // Проверим, что есть хотя бы один валидный курс
-    const hasValidPrices = Object.values(prices).some(price => 
-      typeof price === 'number' && !isNaN(price) && price > 0
-    );
-    
-    if (!hasValidPrices) {
-      console.warn("DEBUG calculatePotentialProfit: Нет валидных курсов для расчета потенциальной прибыли");
-      return;
-    }
-    
+
     let totalPotentialProfit = 0;
     let totalPotentialProfitAfterInterest = 0;
-    const today = new Date();
-    
-    // Расчет только для открытых сделок
-    const openTrades = tradesData.filter(trade => !trade.exitDate);
-    console.log("DEBUG calculatePotentialProfit: Открытые сделки для расчета:", openTrades.length);
-    
-    // Подробная информация о каждой открытой сделке
-    openTrades.forEach((trade, index) => {
-      console.log(`DEBUG calculatePotentialProfit: Сделка ${index + 1}:`, {
-        symbol: trade.symbol,
-        quantity: trade.quantity,
-        entryPrice: trade.entryPrice,
-        marginAmount: trade.marginAmount,
-        currentPrice: prices[trade.symbol] || 'нет курса'
-      });
-    });
-    
-    let calculatedTrades = 0;
-    
-    for (const trade of openTrades) {
-      try {
-        // Проверяем наличие курса для данной акции и его корректность
-        if (!prices[trade.symbol]) {
-          console.warn(`DEBUG calculatePotentialProfit: Нет курса для акции ${trade.symbol}`);
-          continue;
-        }
-        
-        if (isNaN(parseFloat(prices[trade.symbol])) || parseFloat(prices[trade.symbol]) <= 0) {
-          console.warn(`DEBUG calculatePotentialProfit: Некорректный курс для акции ${trade.symbol}. Значение: ${prices[trade.symbol]}`);
-          continue;
-        }
-        
-        const rate = parseFloat(prices[trade.symbol]);
-        const entryPrice = Number(trade.entryPrice);
-        const quantity = Number(trade.quantity);
-        
-        // Проверка корректности входных данных
-        if (isNaN(entryPrice) || isNaN(quantity) || entryPrice <= 0 || quantity <= 0) {
-          console.warn(`DEBUG calculatePotentialProfit: Некорректные данные для сделки по ${trade.symbol}: цена=${entryPrice}, количество=${quantity}`);
-          continue;
-        }
-        
-        const totalCost = entryPrice * quantity;
-        
-        // Расчет потенциальной прибыли
-        const potentialProfit = (rate - entryPrice) * quantity;
-        
-        // Расчет накопленных процентов
-        let accumulatedInterest = 0;
-        try {
-          const marginAmount = Number(trade.marginAmount) || 0;
-          if (marginAmount > 0) {
-            const dailyInterest = totalCost * marginAmount / 100 / 365;
-            const entryDate = parseDateLocal(trade.entryDate);
-            if (entryDate) {
-              const daysHeld = Math.max(1, Math.ceil((today - entryDate) / (1000 * 60 * 60 * 24)));
-              accumulatedInterest = dailyInterest * daysHeld;
-            }
-          }
-        } catch (e) {
-          console.error(`DEBUG calculatePotentialProfit: Ошибка при расчете процентов для ${trade.symbol}:`, e);
-        }
-        
-        // Потенциальная прибыль после вычета процентов
-        const profitAfterInterest = potentialProfit - accumulatedInterest;
-        
-        totalPotentialProfit += potentialProfit;
-        totalPotentialProfitAfterInterest += profitAfterInterest;
-        
-        calculatedTrades++;
-        console.log(`DEBUG calculatePotentialProfit: Расчет для ${trade.symbol}: курс=${rate}, вход=${entryPrice}, прибыль=${potentialProfit.toFixed(2)}, проценты=${accumulatedInterest.toFixed(2)}`);
-      } catch (error) {
-        console.error(`DEBUG calculatePotentialProfit: Ошибка при расчете для ${trade.symbol}:`, error);
+    let calculatedSymbols = 0;
+
+    for (const row of rows) {
+      if (row.openQuantity <= 0) continue;
+      const rate = parseFloat(prices[row.symbol]);
+      if (isNaN(rate) || rate <= 0) {
+        console.warn(`DEBUG calculatePotentialProfit: Нет курса для акции ${row.symbol}`);
+        continue;
       }
+      // Сумма (курс - цена входа) * количество по открытым сделкам тикера
+      const potentialProfit = rate * row.openQuantity - row.openCost;
+      totalPotentialProfit += potentialProfit;
+      totalPotentialProfitAfterInterest += potentialProfit - row.accruedInterest;
+      calculatedSymbols++;
     }
-    
-    console.log(`DEBUG calculatePotentialProfit: Рассчитано ${calculatedTrades} сделок из ${openTrades.length} открытых`);
-    
-    // Если не удалось рассчитать ни одной сделки, завершаем
-    if (calculatedTrades === 0) {
-      console.warn("DEBUG calculatePotentialProfit: Не удалось рассчитать потенциальную прибыль ни для одной сделки");
+
+    if (calculatedSymbols === 0) {
+      console.warn("DEBUG calculatePotentialProfit: Не удалось рассчитать потенциальную прибыль ни для одной акции");
       return;
     }
-    
-    // Рассчитываем общую прибыль с учетом закрытых сделок и потенциальной прибыли открытых
-    const totalOverallProfit = (stats.totalProfit || 0) + totalPotentialProfit;
-    const totalOverallProfitAfterInterest = (stats.totalProfit || 0) + totalPotentialProfitAfterInterest;
-    
-    console.log("DEBUG calculatePotentialProfit: Итоговые расчеты:", {
-      potentialProfit: totalPotentialProfit.toFixed(2),
-      potentialProfitAfterInterest: totalPotentialProfitAfterInterest.toFixed(2),
-      totalOverallProfit: totalOverallProfit.toFixed(2),
-      totalOverallProfitAfterInterest: totalOverallProfitAfterInterest.toFixed(2)
-    });
-    
-    // Обновляем состояние
+
     setStats(prevStats => ({
       ...prevStats,
       potentialProfit: totalPotentialProfit,
       potentialProfitAfterInterest: totalPotentialProfitAfterInterest,
-      totalOverallProfit,
-      totalOverallProfitAfterInterest
+      totalOverallProfit: (prevStats.totalProfit || 0) + totalPotentialProfit,
+      totalOverallProfitAfterInterest: (prevStats.totalProfit || 0) + totalPotentialProfitAfterInterest
     }));
   };
 
-  // Filter trades based on selected stock and active tab
-  const getFilteredTrades = () => {
-    return trades.filter(trade => 
-      selectedStock === 'all' || trade.symbol === selectedStock
-    );
-  };
-
-  // Get unique stock symbols from trades
   useEffect(() => {
-    if (trades.length > 0) {
-      const symbols = [...new Set(trades.map(trade => trade.symbol))].sort();
-      setAvailableStocks(symbols);
-      
-      // When switching to specific stock, recalculate stats
-      calculateStats(getFilteredTrades());
-    }
-  }, [trades, selectedStock]);
+    loadStats(selectedStock);
+  }, [selectedStock]);
 
   const handleStockChange = (stock) => {
     setSelectedStock(stock);
-    
-    // Recalculate stats for the selected stock
-    calculateStats(trades.filter(trade => 
-      stock === 'all' || trade.symbol === stock
-    ));
   };
 
-  // Calculate stock-specific metrics
+  // Calculate stock-specific metrics from the portfolio-wide row of the stock
   const calculateStockMetrics = (stock) => {
-    const stockTrades = trades.filter(t => t.symbol === stock);
-    
-    if (stockTrades.length === 0) return null;
+    const row = symbolRows.find(r => r.symbol === stock);
     
-    const today = new Date();
-    const openTrades = stockTrades.filter(t => !t.exitDate);
-    const closedTrades = stockTrades.filter(t => t.exitDate);
-    
-    const totalQuantity = stockTrades.reduce((sum, t) => sum + Number(t.quantity), 0);
-    const totalOpenQuantity = openTrades.reduce((sum, t) => sum + Number(t.quantity), 0);
-    
-    const avgEntryPrice = openTrades.length > 0
-      ? openTrades.reduce((sum, t) => sum + (Number(t.entryPrice) * Number(t.quantity)), 0) / 
-        openTrades.reduce((sum, t) => sum + Number(t.quantity), 0)
-      : 0;
-    
-    const totalInvested = openTrades.reduce((sum, t) => 
-      sum + (Number(t.entryPrice) * Number(t.quantity)), 0);
+    if (!row) return null;
     
+    const avgEntryPrice = row.openQuantity > 0 ? row.openCost / row.openQuantity : 0;
     const currentPrice = stockPrices[stock] || 0;
-    const currentValue = currentPrice * totalOpenQuantity;
-    
-    const totalProfit = closedTrades.reduce((sum, t) => 
-      sum + ((Number(t.exitPrice) - Number(t.entryPrice)) * Number(t.quantity)), 0);
-    
+    const currentValue = currentPrice * row.openQuantity;
+    const totalProfit = row.priceProfit;
     const potentialProfit = currentPrice > 0
-      ? (currentPrice - avgEntryPrice) * totalOpenQuantity
+      ? (currentPrice - avgEntryPrice) * row.openQuantity
       : 0;
     
-    // Calculate accumulated interest only for open trades (this is what we currently owe)
-    let accumulatedInterest = 0;
-    
-    openTrades.forEach(trade => {
-      const totalCost = Number(trade.entryPrice) * Number(trade.quantity);
-      const dailyInterest = totalCost * Number(trade.marginAmount) / 100 / 365;
-      const entryDate = parseDateLocal(trade.entryDate);
-      if (entryDate) {
-        const daysHeld = Math.max(1, Math.ceil((today - entryDate) / (1000 * 60 * 60 * 24)));
-        accumulatedInterest += dailyInterest * daysHeld;
-      }
-    });
-    
-    // Calculate total interest paid for closed trades (for reference only)
-    let totalInterestPaid = 0;
-    closedTrades.forEach(trade => {
-      if (trade.entryDate && trade.exitDate) {
-        const totalCost = Number(trade.entryPrice) * Number(trade.quantity);
-        const dailyInterest = totalCost * Number(trade.marginAmount) / 100 / 365;
-        const entryDate = parseDateLocal(trade.entryDate);
-        const exitDate = parseDateLocal(trade.exitDate);
-        if (entryDate && exitDate) {
-          const daysHeld = Math.max(1, Math.ceil((exitDate - entryDate) / (1000 * 60 * 60 * 24)));
-          totalInterestPaid += dailyInterest * daysHeld;
-        }
-      }
-    });
-    
     // Profit calculations:
-    // totalProfit - this already accounts for all costs including interest for closed trades
-    // potentialProfitAfterInterest - subtract only accumulated interest for open positions
+    // totalProfit - price profit of closed trades
+    // potentialProfitAfterInterest - subtract only accrued interest for open positions
     // overallProfitAfterInterest - sum of above two values
-    const potentialProfitAfterInterest = potentialProfit - accumulatedInterest;
+    const potentialProfitAfterInterest = potentialProfit - row.accruedInterest;
     const overallProfitAfterInterest = totalProfit + potentialProfitAfterInterest;
     
     return {
       symbol: stock,
-      totalTrades: stockTrades.length,
-      openTrades: openTrades.length,
-      closedTrades: closedTrades.length,
-      totalQuantity,
-      totalOpenQuantity,
+      totalTrades: row.trades,
+      openTrades: row.openTrades,
+      closedTrades: row.closedTrades,
+      totalQuantity: row.quantity,
+      totalOpenQuantity: row.openQuantity,
       avgEntryPrice,
-      totalInvested,
+      totalInvested: row.openCost,
       currentPrice,
       currentValue,
-      totalProfit, // This already includes all costs for closed trades
+      totalProfit,
       potentialProfit,
       overallProfit: totalProfit + potentialProfit,
-      accumulatedInterest, // Only for open positions
-      totalInterestPaid, // Reference: what was paid for closed trades
+      accumulatedInterest: row.accruedInterest, // Only for open positions
+      totalInterestPaid: row.interestPaid, // Reference: what was paid for closed trades
       potentialProfitAfterInterest,
       overallProfitAfterInterest
     };
@@ -1101,13 +776,9 @@ function Statistics() {
   };
 
   // Helper: prepare monthly profit data for a specific stock - улучшенная версия
-  const prepareStockMonthlyProfitData = (symbol) => {
-    const profitMap = {};
-    trades.filter(t => t.symbol === symbol && t.exitDate).forEach(t => {
-      const month = format(parseDateLocal(t.exitDate), 'yyyy-MM');
-      const profit = (Number(t.exitPrice) - Number(t.entryPrice)) * Number(t.quantity);
-      profitMap[month] = (profitMap[month] || 0) + profit;
-    });
+  // Статистика уже загружена с фильтром по выбранной акции, помесячная прибыль - ее
+  const prepareStockMonthlyProfitData = () => {
+    const profitMap = stats.monthlyProfits;
     const months = Object.keys(profitMap).sort();
     
     if (months.length === 0) {
@@ -1142,9 +813,9 @@ function Statistics() {
 
   // Helper: prepare open/closed status data for a specific stock - улучшенная версия
   const prepareStockStatusData = (symbol) => {
-    const stockTrades = trades.filter(t => t.symbol === symbol);
-    const openCount = stockTrades.filter(t => !t.exitDate).length;
-    const closedCount = stockTrades.filter(t => t.exitDate).length;
+    const stockData = calculateStockMetrics(symbol);
+    const openCount = stockData ? stockData.openTrades : 0;
+    const closedCount = stockData ? stockData.closedTrades : 0;
     
     if (openCount === 0 && closedCount === 0) {
       return {
@@ -1169,13 +840,13 @@ function Statistics() {
     };
   };
 
-  // Helper: prepare entry price over time data for a specific stock - улучшенная версия
-  const prepareStockEntryPriceData = (symbol) => {
-    const stockTrades = trades.filter(t => t.symbol === symbol).sort((a, b) => 
-      new Date(a.entryDate) - new Date(b.entryDate)
-    );
+  // Helper: prepare entry price distribution for a specific stock - улучшенная версия
+  // Пять равных диапазонов между минимальной и максимальной ценой входа считает сервер
+  const prepareStockEntryPriceData = () => {
+    const ranges = stats.entryPrices;
+    const totalTrades = ranges.reduce((sum, range) => sum + range.trades, 0);
     
-    if (stockTrades.length === 0) {
+    if (totalTrades === 0) {
       return {
         labels: ['Нет данных'],
         datasets: [{
@@ -1188,38 +859,12 @@ function Statistics() {
       };
     }
     
-    // Группируем цены по диапазонам для столбчатой диаграммы
-    const prices = stockTrades.map(t => Number(t.entryPrice));
-    const minPrice = Math.min(...prices);
-    const maxPrice = Math.max(...prices);
-    const range = maxPrice - minPrice;
-    
-    // Создаем 5 диапазонов цен
-    const rangeSize = range / 5;
-    const ranges = [];
-    const rangeCounts = [];
-    const rangeColors = [];
-    
-    for (let i = 0; i < 5; i++) {
-      const rangeStart = minPrice + (rangeSize * i);
-      const rangeEnd = minPrice + (rangeSize * (i + 1));
-      
-      // Подсчитываем количество сделок в этом диапазоне
-      const tradesInRange = prices.filter(price => 
-        price >= rangeStart && (i === 4 ? price <= rangeEnd : price < rangeEnd)
-      ).length;
-      
-      ranges.push(`${rangeStart.toFixed(0)}-${rangeEnd.toFixed(0)}₽`);
-      rangeCounts.push(tradesInRange);
-      rangeColors.push(`rgba(124, 58, 237, ${0.4 + (tradesInRange / stockTrades.length) * 0.6})`);
-    }
-    
     return {
-      labels: ranges,
+      labels: ranges.map(range => `${range.from.toFixed(0)}-${range.to.toFixed(0)}₽`),
       datasets: [{
         label: 'Количество сделок в диапазоне цен',
-        data: rangeCounts,
-        backgroundColor: rangeColors,
+        data: ranges.map(range => range.trades),
+        backgroundColor: ranges.map(range => `rgba(124, 58, 237, ${0.4 + (range.trades / totalTrades) * 0.6})`),
         borderColor: CHART_COLORS.secondary,
         borderWidth: 1,
         borderRadius: 6
@@ -1228,16 +873,11 @@ function Statistics() {
   };
 
   // Helper: prepare cumulative profit over time for a specific stock - более плоская и красивая версия
-  const prepareStockCumulativeProfitData = (symbol) => {
-    const closedTrades = trades
-      .filter(t => t.symbol === symbol && t.exitDate && t.exitPrice)
-      .map(t => ({ 
-        date: parseDateLocal(t.exitDate), 
-        profit: (Number(t.exitPrice) - Number(t.entryPrice)) * Number(t.quantity) 
-      }))
-      .sort((a, b) => a.date - b.date);
+  // Накопленная прибыль по дням выхода выбранной акции из статистики
+  const prepareStockCumulativeProfitData = () => {
+    const exits = stats.exits;
     
-    if (closedTrades.length === 0) {
+    if (exits.length === 0) {
       return {
         labels: ['Нет данных'],
         datasets: [{
@@ -1251,15 +891,8 @@ function Statistics() {
       };
     }
     
-    let cumulative = 0;
-    const labels = [];
-    const data = [];
-    
-    closedTrades.forEach(({ date, profit }, index) => {
-      cumulative += profit;
-      labels.push(`${index + 1}`);
-      data.push(cumulative);
-    });
+    const labels = exits.map(exit => format(parseDateLocal(exit.date), 'dd.MM.yy'));
+    const data = exits.map(exit => exit.cumulativePriceProfit);
     
     // Определяем цвет линии в зависимости от итоговой прибыли
     const finalProfit = data[data.length - 1];
@@ -1616,7 +1249,7 @@ function Statistics() {
                   <h3 className="text-lg font-medium text-gray-900 mb-4">Прибыль по месяцам ({selectedStock})</h3>
                   <div style={{ height: '300px', width: '100%' }}>
                     <Bar
-                      data={prepareStockMonthlyProfitData(selectedStock)}
+                      data={prepareStockMonthlyProfitData()}
                       options={{
                         responsive: true,
                         maintainAspectRatio: false,
@@ -1692,7 +1325,7 @@ function Statistics() {
                     <h3 className="text-lg font-medium text-gray-900 mb-4">Диапазоны цен входа</h3>
                     <div style={{ height: '250px', width: '100%' }}>
                       <Bar
-                        data={prepareStockEntryPriceData(selectedStock)}
+                        data={prepareStockEntryPriceData()}
                         options={{
                           responsive: true,
                           maintainAspectRatio: false,
@@ -1721,7 +1354,7 @@ function Statistics() {
                     <h3 className="text-lg font-medium text-gray-900 mb-4">Накопленная прибыль ({selectedStock})</h3>
                     <div style={{ height: '250px', width: '100%' }}>
                       <Line
-                        data={prepareStockCumulativeProfitData(selectedStock)}
+                        data={prepareStockCumulativeProfitData()}
                         options={{
                           responsive: true,
                           maintainAspectRatio: false,
@@ -74,17 +74,38 @@ function StockPrices() {
     }
   };
 
-  // Загрузка сохраненных цен из localStorage
-  const loadSavedPrices = () => {
+  // Загрузка сохраненных цен из localStorage; для тикеров без сохраненной цены берем последнюю рыночную
+  const loadSavedPrices = async () => {
+    let saved = {};
     try {
       const savedPrices = localStorage.getItem('stockPrices');
       console.log('DEBUG: Saved stock prices:', savedPrices);
       if (savedPrices) {
-        setStockPrices(JSON.parse(savedPrices));
+        saved = JSON.parse(savedPrices);
+        setStockPrices(saved);
       }
     } catch (e) {
       console.error('Error loading saved prices:', e);
     }
+
+    try {
+      const response = await axios.get('/api/market/prices');
+      const marketPrices = {};
+      response.data.forEach((item) => {
+        marketPrices[item.symbol] = item.last.close;
+      });
+      setStockPrices((current) => {
+        const merged = { ...marketPrices };
+        Object.entries(current).forEach(([symbol, price]) => {
+          if (price !== '' && price !== null && price !== undefined) {
+            merged[symbol] = price;
+          }
+        });
+        return merged;
+      });
+    } catch (e) {
+      console.error('Error loading market prices:', e);
+    }
   };
 
   // Обновление цены акции в localStorage
@@ -9,6 +9,7 @@ import {
   calculateProfitPercentage 
 } from '../utils/calculations';
 import Button from './common/Button';
+import { applyTradeDelta, subscribePortfolioUpdates } from '../utils/portfolioUpdates';
 
 function TradeList() {
   const [trades, setTrades] = useState([]);
@@ -40,6 +41,14 @@ function TradeList() {
     loadSavedStockPrices();
   }, []);
 
+  // Изменения из этой и других вкладок приходят с сервера, список не перечитывается целиком
+  useEffect(() => {
+    return subscribePortfolioUpdates({
+      onDelta: (delta) => setTrades(prevTrades => applyTradeDelta(prevTrades, delta)),
+      onResync: () => loadTrades(),
+    });
+  }, []);
+
   useEffect(() => {
     const interval = setInterval(() => {
       loadSavedStockPrices();
@@ -333,7 +342,7 @@ function TradeList() {
         console.log('Deleting trade:', tradeId);
         await axios.delete(`/api/trades/${tradeId}`);
         console.log('Trade deleted successfully');
-        loadTrades();
+        setTrades(prevTrades => prevTrades.filter(t => t.id !== tradeId));
       } catch (err) {
         console.error('Error deleting trade:', err);
         setError(err.response?.data?.message || 'Не удалось удалить сделку');
@@ -383,10 +392,14 @@ function TradeList() {
     if (window.confirm(`Вы уверены, что хотите удалить ${selectedIds.length} выбранных сделок?`)) {
       setError('');
       try {
-        const promises = selectedIds.map(id => axios.delete(`/api/trades/${id}`));
-        await Promise.all(promises);
-        console.log(`Deleted ${selectedIds.length} trades`);
-        loadTrades();
+        const response = await axios.post('/api/trades/bulk-delete', { ids: selectedIds });
+        console.log(`Deleted ${response.data.succeededCount} of ${selectedIds.length} trades`);
+        // Убираем удаленные (и уже отсутствующие) сделки сразу, как при одиночном удалении;
+        // событие delta из потока изменений потом повторит то же самое без эффекта
+        const removed = response.data.results
+          .filter(result => result.status === 'DELETED' || result.status === 'NOT_FOUND')
+          .map(result => result.id);
+        setTrades(prevTrades => applyTradeDelta(prevTrades, { removed }));
         setSelectedTrades({});
         setSelectAllChecked(false);
       } catch (err) {
@@ -0,0 +1,52 @@
+/**
+ * Server push of portfolio changes (SSE /api/trades/updates)
+ */
+
+/**
+ * Apply a delta event to a list of trades: replace closed trades, drop removed ones, append added.
+ * Idempotent: the same delta applied twice (or on top of a local change it repeats) gives the same list
+ * @param {Array} trades - Current list of trades
+ * @param {Object} delta - Delta event payload
+ * @returns {Array} New list of trades
+ */
+export const applyTradeDelta = (trades, delta) => {
+  const changed = new Map();
+  [...(delta.closed || []), ...(delta.added || [])].forEach(trade => changed.set(trade.id, trade));
+  const removed = new Set(delta.removed || []);
+
+  const result = [];
+  const seen = new Set();
+  trades.forEach(trade => {
+    if (removed.has(trade.id) || seen.has(trade.id)) return;
+    seen.add(trade.id);
+    result.push(changed.has(trade.id) ? { ...trade, ...changed.get(trade.id) } : trade);
+  });
+  changed.forEach((trade, id) => {
+    if (!seen.has(id) && !removed.has(id)) result.push(trade);
+  });
+  return result;
+};
+
+/**
+ * Subscribe to portfolio updates. The browser reconnects automatically after errors.
+ * @param {Object} handlers - { onDelta(delta), onResync(event) }; both receive the updated aggregates
+ * @returns {Function} Unsubscribe function
+ */
+export const subscribePortfolioUpdates = ({ onDelta, onResync }) => {
+  const source = new EventSource('/api/trades/updates');
+  let connected = false;
+
+  source.addEventListener('snapshot', (event) => {
+    // After a reconnect the changes made while disconnected are unknown - reload
+    if (connected && onResync) onResync(JSON.parse(event.data));
+    connected = true;
+  });
+  source.addEventListener('delta', (event) => {
+    if (onDelta) onDelta(JSON.parse(event.data));
+  });
+  source.addEventListener('resync', (event) => {
+    if (onResync) onResync(JSON.parse(event.data));
+  });
+
+  return () => source.close();
+};